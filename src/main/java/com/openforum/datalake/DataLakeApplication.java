@@ -1,7 +1,10 @@
 package com.openforum.datalake;
 
+import com.openforum.datalake.job.FactPartitionMigrationRunner;
+import com.openforum.datalake.loader.BulkLoadRunner;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.context.ConfigurableApplicationContext;
 import org.springframework.scheduling.annotation.EnableScheduling;
 
 @SpringBootApplication
@@ -9,7 +12,17 @@ import org.springframework.scheduling.annotation.EnableScheduling;
 public class DataLakeApplication {
 
 	public static void main(String[] args) {
-		SpringApplication.run(DataLakeApplication.class, args);
+		SpringApplication application = new SpringApplication(DataLakeApplication.class);
+		String profile = BulkLoadRunner.isRequested(args) ? BulkLoadRunner.PROFILE
+				: FactPartitionMigrationRunner.isRequested(args) ? FactPartitionMigrationRunner.PROFILE : null;
+		if (profile == null) {
+			application.run(args);
+			return;
+		}
+		// One-shot command: no web server or Kafka listeners, exit when done
+		application.setAdditionalProfiles(profile);
+		ConfigurableApplicationContext context = application.run(args);
+		System.exit(SpringApplication.exit(context));
 	}
 
 }
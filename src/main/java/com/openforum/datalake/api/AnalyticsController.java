@@ -1,13 +1,22 @@
 package com.openforum.datalake.api;
 
+import com.openforum.datalake.domain.ActivityInterval;
 import com.openforum.datalake.domain.DimMemberHealth;
 import com.openforum.datalake.domain.DimThread;
-import com.openforum.datalake.dto.DailyActiveUsersPoint;
+import com.openforum.datalake.dto.ActiveUsersMetric;
+import com.openforum.datalake.dto.ActivityPoint;
 import com.openforum.datalake.dto.DeflectionSavingsMetric;
 import com.openforum.datalake.dto.ResponsivenessMetric;
+import com.openforum.datalake.dto.RetentionCohort;
+import com.openforum.datalake.repository.ActiveUserBitmapRepository;
+import com.openforum.datalake.repository.ActivityBucketRepository;
+import com.openforum.datalake.repository.DailyTenantActivityRepository;
 import com.openforum.datalake.repository.DimMemberHealthRepository;
 import com.openforum.datalake.repository.DimThreadRepository;
-import com.openforum.datalake.repository.FactActivityRepository;
+import com.openforum.datalake.repository.FactCodeDictionary;
+import com.openforum.datalake.repository.ResponseTimeSketchRepository;
+import com.openforum.datalake.sketch.DDSketch;
+import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.security.oauth2.jwt.Jwt;
@@ -17,23 +26,38 @@ import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
 import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
 import java.time.temporal.ChronoUnit;
-import java.util.HashMap;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Map;
+import java.util.UUID;
+import java.util.function.Function;
 
 @RestController
 @RequestMapping("/analytics/v1")
 public class AnalyticsController {
 
-    private final FactActivityRepository factActivityRepository;
+    private final DailyTenantActivityRepository dailyTenantActivityRepository;
+    private final ActivityBucketRepository activityBucketRepository;
+    private final ActiveUserBitmapRepository activeUserBitmapRepository;
+    private final ResponseTimeSketchRepository responseTimeSketchRepository;
+    private final FactCodeDictionary factCodeDictionary;
     private final DimThreadRepository dimThreadRepository;
     private final DimMemberHealthRepository dimMemberHealthRepository;
 
-    public AnalyticsController(FactActivityRepository factActivityRepository,
+    public AnalyticsController(DailyTenantActivityRepository dailyTenantActivityRepository,
+            ActivityBucketRepository activityBucketRepository,
+            ActiveUserBitmapRepository activeUserBitmapRepository,
+            ResponseTimeSketchRepository responseTimeSketchRepository,
+            FactCodeDictionary factCodeDictionary,
             DimThreadRepository dimThreadRepository,
             DimMemberHealthRepository dimMemberHealthRepository) {
-        this.factActivityRepository = factActivityRepository;
+        this.dailyTenantActivityRepository = dailyTenantActivityRepository;
+        this.activityBucketRepository = activityBucketRepository;
+        this.activeUserBitmapRepository = activeUserBitmapRepository;
+        this.responseTimeSketchRepository = responseTimeSketchRepository;
+        this.factCodeDictionary = factCodeDictionary;
         this.dimThreadRepository = dimThreadRepository;
         this.dimMemberHealthRepository = dimMemberHealthRepository;
     }
@@ -44,40 +68,154 @@ public class AnalyticsController {
 
     // 4.1 Community Health
 
+    /**
+     * Activity of the tenant per {@code interval} bucket (hour, day, week or
+     * month, in UTC) over the UTC days in {@code [from, to)}, by default the
+     * last 2 days, 30 days, 12 weeks or 12 months including today. The
+     * {@code metric} is
+     * <ul>
+     * <li>{@code activities}: activities per bucket, for every interval;</li>
+     * <li>{@code dau}: exact active users per day;</li>
+     * <li>{@code wau}, {@code mau}: estimated active users over the 7 or 30
+     * days up to each day, or per calendar week or month respectively.</li>
+     * </ul>
+     * Other combinations are rejected.
+     */
     @GetMapping("/activity")
-    public ResponseEntity<List<DailyActiveUsersPoint>> getActivity(
+    public ResponseEntity<List<ActivityPoint>> getActivity(
             @AuthenticationPrincipal Jwt jwt,
             @RequestParam(defaultValue = "dau") String metric,
-            @RequestParam(defaultValue = "day") String interval) {
+            @RequestParam(defaultValue = "day") String interval,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to) {
+        ActivityInterval bucket = parseInterval(interval);
+        if (bucket == null) {
+            return ResponseEntity.badRequest().build();
+        }
+        LocalDate today = LocalDate.now(ZoneOffset.UTC);
+        LocalDate start = from != null ? from : defaultStart(bucket, today);
+        LocalDate end = to != null ? to : today.plusDays(1);
+        Function<Short, List<ActivityPoint>> series = series(metric.toLowerCase(), bucket, start, end);
+        if (series == null || !start.isBefore(end)) {
+            return ResponseEntity.badRequest().build();
+        }
+        // A tenant without a code has no activity yet
+        return ResponseEntity.ok(factCodeDictionary.findTenantCode(getTenantId(jwt)).map(series).orElse(List.of()));
+    }
+
+    private Function<Short, List<ActivityPoint>> series(String metric, ActivityInterval bucket, LocalDate start,
+            LocalDate end) {
+        return switch (metric) {
+            case "activities" -> tenantCode -> activityBucketRepository.findActivities(tenantCode, bucket, start, end);
+            case "dau" -> bucket == ActivityInterval.DAY
+                    ? tenantCode -> dailyTenantActivityRepository.findDailyActiveUsers(tenantCode, start, end)
+                    : null;
+            case "wau" -> activeUsers(bucket, ActivityInterval.WEEK, 7, start, end);
+            case "mau" -> activeUsers(bucket, ActivityInterval.MONTH, 30, start, end);
+            default -> null;
+        };
+    }
+
+    private Function<Short, List<ActivityPoint>> activeUsers(ActivityInterval bucket, ActivityInterval calendar,
+            int windowDays, LocalDate start, LocalDate end) {
+        if (bucket == ActivityInterval.DAY) {
+            return tenantCode -> dailyTenantActivityRepository.findActiveUsers(tenantCode, start, end, windowDays);
+        }
+        if (bucket == calendar) {
+            return tenantCode -> activityBucketRepository.findActiveUsers(tenantCode, bucket, start, end);
+        }
+        return null;
+    }
+
+    private static ActivityInterval parseInterval(String interval) {
+        return Arrays.stream(ActivityInterval.values())
+                .filter(candidate -> candidate.name().equalsIgnoreCase(interval))
+                .findFirst()
+                .orElse(null);
+    }
+
+    private static LocalDate defaultStart(ActivityInterval bucket, LocalDate today) {
+        return switch (bucket) {
+            case HOUR -> today.minusDays(1);
+            case DAY -> today.minusDays(29);
+            case WEEK -> bucket.startOf(today).minusWeeks(11);
+            case MONTH -> bucket.startOf(today).minusMonths(11);
+        };
+    }
+
+    /**
+     * Estimated distinct active users over the UTC days in {@code [from, to)}.
+     */
+    @GetMapping("/activity/active-users")
+    public ResponseEntity<ActiveUsersMetric> getActiveUsers(
+            @AuthenticationPrincipal Jwt jwt,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to) {
+        if (!from.isBefore(to)) {
+            return ResponseEntity.badRequest().build();
+        }
         String tenantId = getTenantId(jwt);
-        // Only DAU supported for now
-        Instant startDate = Instant.now().minus(30, ChronoUnit.DAYS);
-        return ResponseEntity.ok(factActivityRepository.countDailyActiveUsers(tenantId, startDate));
+        long activeUsers = factCodeDictionary.findTenantCode(tenantId)
+                .map(tenantCode -> activityBucketRepository.countActiveUsers(tenantCode, from, to))
+                .orElse(0L);
+        return ResponseEntity.ok(new ActiveUsersMetric(from, to, activeUsers));
     }
 
+    /**
+     * Retention of the tenant's cohorts of members by the {@code week} or
+     * {@code month} (in UTC) of their first activity, over the UTC days in
+     * {@code [from, to)}, by default the last 12 weeks or months including
+     * the current one.
+     */
     @GetMapping("/retention")
-    public ResponseEntity<Map<String, Object>> getRetention(
-            @AuthenticationPrincipal Jwt jwt) {
-        // Placeholder for complex cohort analysis
-        Map<String, Object> response = new HashMap<>();
-        response.put("message", "Retention analysis not yet implemented");
-        return ResponseEntity.ok(response);
+    public ResponseEntity<List<RetentionCohort>> getRetention(
+            @AuthenticationPrincipal Jwt jwt,
+            @RequestParam(defaultValue = "month") String interval,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to) {
+        ActivityInterval bucket = parseInterval(interval);
+        if (bucket != ActivityInterval.WEEK && bucket != ActivityInterval.MONTH) {
+            return ResponseEntity.badRequest().build();
+        }
+        LocalDate today = LocalDate.now(ZoneOffset.UTC);
+        LocalDate start = from != null ? from : defaultStart(bucket, today);
+        LocalDate end = to != null ? to : today.plusDays(1);
+        if (!start.isBefore(end)) {
+            return ResponseEntity.badRequest().build();
+        }
+        return ResponseEntity.ok(factCodeDictionary.findTenantCode(getTenantId(jwt))
+                .map(tenantCode -> activeUserBitmapRepository.findRetention(tenantCode, bucket, start, end))
+                .orElse(List.of()));
     }
 
+    /**
+     * Answer rate of the tenant's threads, and the median, 90th and 99th
+     * percentile of the first response time of those answered that were
+     * created on the UTC days in {@code [from, to)}, each bound open when
+     * left out, and in {@code categoryId} if given. The percentiles are
+     * estimated within 1%, and 0 when no such thread was answered.
+     */
     @GetMapping("/responsiveness")
     public ResponseEntity<ResponsivenessMetric> getResponsiveness(
-            @AuthenticationPrincipal Jwt jwt) {
+            @AuthenticationPrincipal Jwt jwt,
+            @RequestParam(required = false) UUID categoryId,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to) {
+        if (from != null && to != null && !from.isBefore(to)) {
+            return ResponseEntity.badRequest().build();
+        }
         String tenantId = getTenantId(jwt);
         long totalThreads = dimThreadRepository.countTotalThreads(tenantId);
         long answeredThreads = dimThreadRepository.countAnsweredThreads(tenantId);
         double answerRate = totalThreads > 0 ? (double) answeredThreads / totalThreads : 0.0;
 
-        // Median time calculation would require a more complex DB query or fetching all
-        // data
-        int medianResponseTimeMinutes = 0; // Placeholder
+        DDSketch responseTimes = responseTimeSketchRepository.findResponseTimes(tenantId, categoryId, from, to);
+        return ResponseEntity.ok(new ResponsivenessMetric(answerRate, percentile(responseTimes, 0.5),
+                percentile(responseTimes, 0.9), percentile(responseTimes, 0.99)));
+    }
 
-        return ResponseEntity
-                .ok(new ResponsivenessMetric(answerRate, medianResponseTimeMinutes));
+    private static int percentile(DDSketch sketch, double q) {
+        return sketch.isEmpty() ? 0 : (int) Math.round(sketch.quantile(q));
     }
 
     // 4.2 ROI & Value
@@ -0,0 +1,38 @@
+package com.openforum.datalake.api;
+
+import com.openforum.datalake.dto.DeadLetterEvent;
+import com.openforum.datalake.dto.DeadLetterReplayResult;
+import com.openforum.datalake.ingestor.retry.DeadLetterReplayService;
+import com.openforum.datalake.repository.DeadLetterRepository;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.List;
+
+@RestController
+@RequestMapping("/admin/v1/dead-letters")
+public class DeadLetterAdminController {
+
+    private final DeadLetterRepository deadLetterRepository;
+    private final DeadLetterReplayService deadLetterReplayService;
+
+    public DeadLetterAdminController(DeadLetterRepository deadLetterRepository,
+            DeadLetterReplayService deadLetterReplayService) {
+        this.deadLetterRepository = deadLetterRepository;
+        this.deadLetterReplayService = deadLetterReplayService;
+    }
+
+    @GetMapping
+    public ResponseEntity<List<DeadLetterEvent>> getPending(@RequestParam(defaultValue = "100") Integer limit) {
+        return ResponseEntity.ok(deadLetterRepository.findPending(limit));
+    }
+
+    @PostMapping("/replay")
+    public ResponseEntity<DeadLetterReplayResult> replay(@RequestParam(defaultValue = "1000") Integer limit) {
+        return ResponseEntity.ok(deadLetterReplayService.replay(limit));
+    }
+}
@@ -0,0 +1,57 @@
+package com.openforum.datalake.api;
+
+import com.openforum.datalake.dto.PartitionInfo;
+import com.openforum.datalake.dto.PartitionPruningReport;
+import com.openforum.datalake.repository.FactCodeDictionary;
+import com.openforum.datalake.repository.FactPartitionRepository;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.annotation.AuthenticationPrincipal;
+import org.springframework.security.oauth2.jwt.Jwt;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+
+@RestController
+@RequestMapping("/admin/v1/partitions")
+public class PartitionAdminController {
+
+    private final FactPartitionRepository factPartitionRepository;
+    private final FactCodeDictionary factCodeDictionary;
+
+    public PartitionAdminController(FactPartitionRepository factPartitionRepository,
+            FactCodeDictionary factCodeDictionary) {
+        this.factPartitionRepository = factPartitionRepository;
+        this.factCodeDictionary = factCodeDictionary;
+    }
+
+    @GetMapping
+    public ResponseEntity<List<PartitionInfo>> getPartitions() {
+        return ResponseEntity.ok(factPartitionRepository.findPartitions());
+    }
+
+    /**
+     * Which partitions a tenant query over {@code [from, to)} scans; defaults to
+     * the last 30 days like the activity endpoint.
+     */
+    @GetMapping("/pruning")
+    public ResponseEntity<PartitionPruningReport> getPruning(
+            @AuthenticationPrincipal Jwt jwt,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Instant from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Instant to) {
+        String tenantId = (String) jwt.getClaim("tenant_id");
+        Instant end = to != null ? to : Instant.now();
+        Instant start = from != null ? from : end.minus(30, ChronoUnit.DAYS);
+        return ResponseEntity.ok(new PartitionPruningReport(start, end,
+                factPartitionRepository.findPartitions().stream()
+                        .mapToInt(partition -> Math.max(1, partition.subpartitions())).sum(),
+                factCodeDictionary.findTenantCode(tenantId)
+                        .map(tenantCode -> factPartitionRepository.explainScannedPartitions(tenantCode, start, end))
+                        .orElse(List.of())));
+    }
+}
@@ -0,0 +1,39 @@
+package com.openforum.datalake.api;
+
+import com.openforum.datalake.dto.RebuildStatus;
+import com.openforum.datalake.ingestor.rebuild.RebuildService;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+@RestController
+@RequestMapping("/admin/v1/rebuild")
+public class RebuildAdminController {
+
+    private final RebuildService rebuildService;
+
+    public RebuildAdminController(RebuildService rebuildService) {
+        this.rebuildService = rebuildService;
+    }
+
+    @GetMapping
+    public ResponseEntity<RebuildStatus> getStatus() {
+        return ResponseEntity.ok(rebuildService.status());
+    }
+
+    /**
+     * Starts rebuilding {@code dim_threads} and {@code fact_activity} from
+     * {@code forum-events-v1}; poll {@code GET} for progress.
+     */
+    @PostMapping
+    public ResponseEntity<RebuildStatus> start() {
+        try {
+            return ResponseEntity.status(HttpStatus.ACCEPTED).body(rebuildService.start());
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(rebuildService.status());
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package com.openforum.datalake.api;
+
+import com.openforum.datalake.dto.ActivityRollupReconciliation;
+import com.openforum.datalake.job.ActivityRollupReconciliationJob;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.time.LocalDate;
+
+@RestController
+@RequestMapping("/admin/v1/rollups")
+public class RollupAdminController {
+
+    private final ActivityRollupReconciliationJob reconciliationJob;
+
+    public RollupAdminController(ActivityRollupReconciliationJob reconciliationJob) {
+        this.reconciliationJob = reconciliationJob;
+    }
+
+    /**
+     * Checks the daily activity rollup of the UTC days in {@code [from, to)}
+     * against the facts; with {@code repair}, recomputes the days that differ.
+     */
+    @PostMapping("/daily-activity/reconcile")
+    public ResponseEntity<ActivityRollupReconciliation> reconcile(
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+            @RequestParam(defaultValue = "false") boolean repair) {
+        if (!from.isBefore(to)) {
+            return ResponseEntity.badRequest().build();
+        }
+        return ResponseEntity.ok(reconciliationJob.reconcile(from, to, repair));
+    }
+}
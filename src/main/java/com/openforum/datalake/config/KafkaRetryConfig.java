@@ -0,0 +1,66 @@
+package com.openforum.datalake.config;
+
+import com.openforum.datalake.ingestor.IngestionMetrics.Stage;
+import com.openforum.datalake.ingestor.retry.FailedEventRouter;
+import org.apache.kafka.clients.admin.NewTopic;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.kafka.ConcurrentKafkaListenerContainerFactoryConfigurer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.kafka.config.ConcurrentKafkaListenerContainerFactory;
+import org.springframework.kafka.config.TopicBuilder;
+import org.springframework.kafka.core.ConsumerFactory;
+import org.springframework.kafka.core.KafkaAdmin;
+import org.springframework.kafka.listener.ContainerProperties;
+import org.springframework.kafka.listener.DefaultErrorHandler;
+import org.springframework.util.backoff.FixedBackOff;
+
+/**
+ * Retry and dead-letter topology of {@code forum-events-v1}; see
+ * {@link FailedEventRouter}.
+ */
+@Configuration
+public class KafkaRetryConfig {
+
+    /**
+     * Applied by Spring Boot to the default listener container factory. A batch
+     * that fails as a whole (typically a database outage) is redelivered
+     * {@code in-place-attempts} times; after that its failing record is routed
+     * to the retry topics and the partition moves on.
+     */
+    @Bean
+    public DefaultErrorHandler kafkaErrorHandler(FailedEventRouter failedEventRouter,
+            @Value("${datalake.ingestion.retry.in-place-attempts:2}") long inPlaceAttempts,
+            @Value("${datalake.ingestion.retry.in-place-interval-ms:1000}") long inPlaceIntervalMillis) {
+        return new DefaultErrorHandler((record, e) -> failedEventRouter.route(record, null, Stage.WRITE, e),
+                new FixedBackOff(inPlaceIntervalMillis, inPlaceAttempts));
+    }
+
+    /**
+     * Retry listeners acknowledge manually so that a record that is not yet due
+     * can be nacked, pausing only its own container until then.
+     */
+    @Bean
+    public ConcurrentKafkaListenerContainerFactory<Object, Object> retryListenerContainerFactory(
+            ConcurrentKafkaListenerContainerFactoryConfigurer configurer, ConsumerFactory<Object, Object> consumerFactory) {
+        ConcurrentKafkaListenerContainerFactory<Object, Object> factory = new ConcurrentKafkaListenerContainerFactory<>();
+        configurer.configure(factory, consumerFactory);
+        factory.getContainerProperties().setAckMode(ContainerProperties.AckMode.MANUAL);
+        return factory;
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = "datalake.ingestion.listeners.enabled", matchIfMissing = true)
+    public KafkaAdmin.NewTopics retryTopics() {
+        return new KafkaAdmin.NewTopics(
+                topic(FailedEventRouter.RETRY_TOPIC_0),
+                topic(FailedEventRouter.RETRY_TOPIC_1),
+                topic(FailedEventRouter.RETRY_TOPIC_2),
+                topic(FailedEventRouter.DEAD_LETTER_TOPIC));
+    }
+
+    private static NewTopic topic(String name) {
+        return TopicBuilder.name(name).build();
+    }
+}
@@ -1,5 +1,6 @@
 package com.openforum.datalake.config;
 
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.security.config.annotation.web.builders.HttpSecurity;
@@ -7,12 +8,22 @@ import org.springframework.security.config.annotation.web.configuration.EnableWe
 import org.springframework.security.web.SecurityFilterChain;
 
 @Configuration
+@ConditionalOnWebApplication // not needed by the command-line bulk loader
 @EnableWebSecurity
 public class SecurityConfig {
 
+    /**
+     * Authority of tokens granted the {@code datalake:admin} scope, the only
+     * ones let into the operator endpoints under {@code /admin}; tenant
+     * tokens get 403 there.
+     */
+    static final String ADMIN_AUTHORITY = "SCOPE_datalake:admin";
+
     @Bean
     public SecurityFilterChain filterChain(HttpSecurity http) throws Exception {
-        http.authorizeHttpRequests(authorize -> authorize.anyRequest().authenticated())
+        http.authorizeHttpRequests(authorize -> authorize
+                        .requestMatchers("/admin/**").hasAuthority(ADMIN_AUTHORITY)
+                        .anyRequest().authenticated())
                 .oauth2ResourceServer(
                         oauth2 -> oauth2.jwt(org.springframework.security.config.Customizer.withDefaults()));
         return http.build();
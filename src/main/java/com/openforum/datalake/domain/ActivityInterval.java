@@ -0,0 +1,44 @@
+package com.openforum.datalake.domain;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.temporal.TemporalAdjusters;
+
+/**
+ * Bucket size of the activity series, in UTC. Weeks start on Monday.
+ */
+public enum ActivityInterval {
+    HOUR,
+    DAY,
+    WEEK,
+    MONTH;
+
+    /**
+     * First day of the bucket holding {@code day}; hours start with their day.
+     */
+    public LocalDate startOf(LocalDate day) {
+        return switch (this) {
+            case HOUR, DAY -> day;
+            case WEEK -> day.with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY));
+            case MONTH -> day.withDayOfMonth(1);
+        };
+    }
+
+    /**
+     * First day of the first bucket starting on or after {@code day}.
+     */
+    public LocalDate endOf(LocalDate day) {
+        LocalDate start = startOf(day);
+        if (start.equals(day)) {
+            return day;
+        }
+        return this == WEEK ? start.plusWeeks(1) : start.plusMonths(1);
+    }
+
+    /**
+     * First day of the bucket after the one holding {@code day}.
+     */
+    public LocalDate next(LocalDate day) {
+        return endOf(startOf(day).plusDays(1));
+    }
+}
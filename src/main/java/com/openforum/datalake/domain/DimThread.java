@@ -7,8 +7,8 @@ import jakarta.persistence.Table;
 import org.hibernate.annotations.JdbcTypeCode;
 import org.hibernate.type.SqlTypes;
 
-import com.fasterxml.jackson.databind.JsonNode;
-import com.openforum.datalake.ingestor.EventEnvelope;
+import com.openforum.datalake.ingestor.DecodedEvent;
+import com.openforum.datalake.ingestor.events.ThreadCreated;
 
 import java.time.Instant;
 import java.util.ArrayList;
@@ -175,32 +175,22 @@ public class DimThread {
         this.replyCount = replyCount;
     }
 
-    public static DimThread from(EventEnvelope event) {
-        return from(event.payload(), event.tenantId(), event.occurredAt());
+    public static DimThread from(DecodedEvent event) {
+        return from((ThreadCreated) event.payload(), event.tenantId(), event.occurredAt());
     }
 
     // Static Factory Method for Mapping
-    public static DimThread from(JsonNode json, String tenantId, Instant occurredAt) {
-        UUID threadId = UUID.fromString(json.get("threadId").asText());
-        UUID categoryId = json.has("categoryId") ? UUID.fromString(json.get("categoryId").asText()) : null;
-        UUID authorId = UUID.fromString(json.get("authorId").asText());
-        String title = json.get("title").asText();
+    public static DimThread from(ThreadCreated thread, String tenantId, Instant occurredAt) {
         String status = "OPEN"; // Default status
-
-        // Parse tags
-        List<String> tags = new ArrayList<>();
-        if (json.has("tags")) {
-            json.get("tags").forEach(t -> tags.add(t.asText()));
-        }
-
-        Instant createdAt = Instant.parse(json.get("createdAt").asText());
+        List<String> tags = thread.tags() != null ? new ArrayList<>(thread.tags()) : new ArrayList<>();
+        Instant createdAt = thread.createdAt() != null ? thread.createdAt() : occurredAt;
 
         return new DimThread.Builder()
-                .threadId(threadId)
+                .threadId(thread.threadId())
                 .tenantId(tenantId)
-                .categoryId(categoryId)
-                .authorId(authorId)
-                .title(title)
+                .categoryId(thread.categoryId())
+                .authorId(thread.authorId())
+                .title(thread.title())
                 .status(status)
                 .tags(tags)
                 .createdAt(createdAt)
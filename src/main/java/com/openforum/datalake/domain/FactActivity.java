@@ -5,12 +5,13 @@ import jakarta.persistence.Embeddable;
 import jakarta.persistence.EmbeddedId;
 import jakarta.persistence.Entity;
 import jakarta.persistence.Table;
+import jakarta.persistence.Transient;
+import org.hibernate.annotations.Formula;
 import org.hibernate.annotations.JdbcTypeCode;
 import org.hibernate.type.SqlTypes;
 
-import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.openforum.datalake.ingestor.EventEnvelope;
+import com.openforum.datalake.ingestor.DecodedEvent;
+import com.openforum.datalake.ingestor.RawJson;
 
 import java.io.Serializable;
 import java.time.Instant;
@@ -28,15 +29,22 @@ public class FactActivity {
     @Column(name = "event_id", nullable = false)
     private UUID eventId;
 
-    @Column(name = "tenant_id", nullable = false)
+    // Stored as dictionary codes, see FactCodeDictionary; the strings are read back through the dictionaries
+    @Formula("(SELECT t.tenant_id FROM dim_tenants t WHERE t.tenant_code = tenant_code)")
     private String tenantId;
 
+    @Column(name = "tenant_code", nullable = false)
+    private Short tenantCode;
+
     @Column(name = "user_id")
     private UUID userId;
 
-    @Column(name = "activity_type")
+    @Formula("(SELECT a.activity_type FROM dim_activity_types a WHERE a.activity_code = activity_code)")
     private String activityType;
 
+    @Column(name = "activity_code")
+    private Short activityCode;
+
     @Column(name = "target_id")
     private UUID targetId;
 
@@ -44,6 +52,20 @@ public class FactActivity {
     @Column(name = "metadata", columnDefinition = "jsonb")
     private Map<String, Object> metadata;
 
+    // Payload fields promoted into typed columns, see MetadataPromotion
+    @Column(name = "category_id")
+    private UUID categoryId;
+
+    @Column(name = "sentiment")
+    private Double sentiment;
+
+    @Column(name = "is_admin")
+    private Boolean isAdmin;
+
+    // Payload JSON exactly as received; JDBC writers store it without re-encoding
+    @Transient
+    private RawJson rawMetadata;
+
     public FactActivity() {
     }
 
@@ -86,6 +108,14 @@ public class FactActivity {
         this.tenantId = tenantId;
     }
 
+    public Short getTenantCode() {
+        return tenantCode;
+    }
+
+    public void setTenantCode(Short tenantCode) {
+        this.tenantCode = tenantCode;
+    }
+
     public UUID getUserId() {
         return userId;
     }
@@ -102,6 +132,14 @@ public class FactActivity {
         this.activityType = activityType;
     }
 
+    public Short getActivityCode() {
+        return activityCode;
+    }
+
+    public void setActivityCode(Short activityCode) {
+        this.activityCode = activityCode;
+    }
+
     public UUID getTargetId() {
         return targetId;
     }
@@ -118,6 +156,38 @@ public class FactActivity {
         this.metadata = metadata;
     }
 
+    public UUID getCategoryId() {
+        return categoryId;
+    }
+
+    public void setCategoryId(UUID categoryId) {
+        this.categoryId = categoryId;
+    }
+
+    public Double getSentiment() {
+        return sentiment;
+    }
+
+    public void setSentiment(Double sentiment) {
+        this.sentiment = sentiment;
+    }
+
+    public Boolean getIsAdmin() {
+        return isAdmin;
+    }
+
+    public void setIsAdmin(Boolean isAdmin) {
+        this.isAdmin = isAdmin;
+    }
+
+    public RawJson getRawMetadata() {
+        return rawMetadata;
+    }
+
+    public void setRawMetadata(RawJson rawMetadata) {
+        this.rawMetadata = rawMetadata;
+    }
+
     public static class Builder {
         private UUID id;
         private UUID eventId;
@@ -174,30 +244,18 @@ public class FactActivity {
         }
     }
 
-    public static FactActivity from(EventEnvelope event, String activityType, UUID targetId) {
+    public static FactActivity from(DecodedEvent event, String activityType, UUID targetId) {
         FactActivity fact = new FactActivity();
         fact.setId(new FactActivityId(UUID.randomUUID(), event.occurredAt()));
         fact.setEventId(event.eventId());
         fact.setTenantId(event.tenantId());
-        fact.setUserId(extractUserId(event));
+        fact.setUserId(event.payload() != null ? event.payload().authorId() : null);
         fact.setActivityType(activityType);
         fact.setTargetId(targetId);
-        fact.setMetadata(convertJsonNodeToMap(event.payload()));
+        fact.setRawMetadata(event.payloadJson());
         return fact;
     }
 
-    private static UUID extractUserId(EventEnvelope event) {
-        if (event.payload().has("authorId")) {
-            return UUID.fromString(event.payload().get("authorId").asText());
-        }
-        return null;
-    }
-
-    @SuppressWarnings("unchecked")
-    private static Map<String, Object> convertJsonNodeToMap(JsonNode jsonNode) {
-        return new ObjectMapper().convertValue(jsonNode, Map.class);
-    }
-
     @Embeddable
     public static class FactActivityId implements Serializable {
         @Column(name = "id")
@@ -0,0 +1,10 @@
+package com.openforum.datalake.dto;
+
+import java.time.LocalDate;
+
+/**
+ * Estimated distinct active users of a tenant over the UTC days in
+ * {@code [from, to)}.
+ */
+public record ActiveUsersMetric(LocalDate from, LocalDate to, long activeUsers) {
+}
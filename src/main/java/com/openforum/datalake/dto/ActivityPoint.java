@@ -0,0 +1,16 @@
+package com.openforum.datalake.dto;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+
+/**
+ * One bucket of an activity series: the bucket's start and the activities or
+ * active users counted in it.
+ */
+public record ActivityPoint(Instant start, long count) {
+
+    public static ActivityPoint ofDay(LocalDate day, long count) {
+        return new ActivityPoint(day.atStartOfDay(ZoneOffset.UTC).toInstant(), count);
+    }
+}
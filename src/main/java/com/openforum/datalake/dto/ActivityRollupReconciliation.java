@@ -0,0 +1,18 @@
+package com.openforum.datalake.dto;
+
+import java.time.LocalDate;
+import java.util.List;
+
+/**
+ * Result of checking {@code agg_daily_tenant_activity} against
+ * {@code fact_activity} over the UTC days in {@code [from, to)}. Lists every
+ * tenant day whose rolled up activity, per type, or active users differ from
+ * the facts; {@code repaired} tells whether those days were recomputed.
+ */
+public record ActivityRollupReconciliation(LocalDate from, LocalDate to, List<Mismatch> mismatches,
+        boolean repaired) {
+
+    public record Mismatch(String tenantId, LocalDate day, long rolledUpActivities, long activities,
+            long rolledUpActiveUsers, long activeUsers) {
+    }
+}
@@ -0,0 +1,18 @@
+package com.openforum.datalake.dto;
+
+import java.time.Instant;
+import java.util.UUID;
+
+public record DeadLetterEvent(
+        long id,
+        String originalTopic,
+        int originalPartition,
+        long originalOffset,
+        UUID eventId,
+        String eventType,
+        String failureStage,
+        String failureReason,
+        int attempts,
+        Instant failedAt,
+        Instant replayedAt) {
+}
@@ -0,0 +1,4 @@
+package com.openforum.datalake.dto;
+
+public record DeadLetterReplayResult(int replayed, long pending) {
+}
@@ -0,0 +1,10 @@
+package com.openforum.datalake.dto;
+
+/**
+ * One partition of {@code fact_activity}. {@code bound} is PostgreSQL's own
+ * rendering, e.g. {@code FOR VALUES FROM (...) TO (...)} or {@code DEFAULT}.
+ * {@code subpartitions} is the number of tenant hash partitions, zero for a
+ * plain partition.
+ */
+public record PartitionInfo(String name, String bound, long estimatedRows, long totalBytes, int subpartitions) {
+}
@@ -0,0 +1,12 @@
+package com.openforum.datalake.dto;
+
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * Partitions the planner scans for a tenant's activity between {@code from}
+ * and {@code to}; pruning works when this is a small subset of all partitions.
+ * Months split by tenant hash count and are reported by their sub-partitions.
+ */
+public record PartitionPruningReport(Instant from, Instant to, int totalPartitions, List<String> scannedPartitions) {
+}
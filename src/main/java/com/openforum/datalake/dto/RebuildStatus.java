@@ -0,0 +1,15 @@
+package com.openforum.datalake.dto;
+
+import java.time.Instant;
+
+/**
+ * Progress of the running or last rebuild. {@code remainingRecords} is how far
+ * the copy is behind the live consumer.
+ */
+public record RebuildStatus(Phase phase, Instant startedAt, Instant finishedAt, long recordsRead, long factsWritten,
+        long failedEvents, long remainingRecords, String error) {
+
+    public enum Phase {
+        IDLE, COPYING, SWAPPING, COMPLETED, FAILED
+    }
+}
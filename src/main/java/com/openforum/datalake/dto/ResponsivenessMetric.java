@@ -1,4 +1,5 @@
 package com.openforum.datalake.dto;
 
-public record ResponsivenessMetric(double answerRate, int medianResponseTimeMinutes) {
+public record ResponsivenessMetric(double answerRate, int medianResponseTimeMinutes, int p90ResponseTimeMinutes,
+        int p99ResponseTimeMinutes) {
 }
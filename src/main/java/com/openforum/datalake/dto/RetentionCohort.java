@@ -0,0 +1,14 @@
+package com.openforum.datalake.dto;
+
+import java.time.LocalDate;
+import java.util.List;
+
+/**
+ * The members first active in the week or month starting on {@code start},
+ * and how many of them were active in it and each following period up to
+ * the end of the range: {@code retained.get(k)} counts those active {@code k}
+ * periods after the cohort's, so {@code retained.get(0)} equals
+ * {@code members}.
+ */
+public record RetentionCohort(LocalDate start, long members, List<Long> retained) {
+}
@@ -0,0 +1,19 @@
+package com.openforum.datalake.ingestor;
+
+import com.openforum.datalake.ingestor.events.ForumEvent;
+
+import java.time.Instant;
+import java.util.UUID;
+
+/**
+ * An {@link EventEnvelope} after decoding: the payload is typed ({@code null}
+ * for event types we do not ingest) and its original JSON is kept as a slice.
+ */
+public record DecodedEvent(
+        UUID eventId,
+        String tenantId,
+        String eventType,
+        Instant occurredAt,
+        ForumEvent payload,
+        RawJson payloadJson) {
+}
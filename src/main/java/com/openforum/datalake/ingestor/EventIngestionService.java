@@ -0,0 +1,344 @@
+package com.openforum.datalake.ingestor;
+
+import com.openforum.datalake.domain.DimThread;
+import com.openforum.datalake.domain.FactActivity;
+import com.openforum.datalake.ingestor.IngestionMetrics.Outcome;
+import com.openforum.datalake.ingestor.IngestionMetrics.Stage;
+import com.openforum.datalake.ingestor.counters.ThreadCounterBatch;
+import com.openforum.datalake.ingestor.counters.ThreadCounterBuffer;
+import com.openforum.datalake.ingestor.counters.ThreadCounterRecorder;
+import com.openforum.datalake.ingestor.dedupe.EventDeduplicator;
+import com.openforum.datalake.ingestor.events.PostCreated;
+import com.openforum.datalake.ingestor.events.ReactionAdded;
+import com.openforum.datalake.ingestor.events.SubscriptionCreated;
+import com.openforum.datalake.ingestor.events.ThreadCreated;
+import com.openforum.datalake.repository.DimThreadRepository;
+import com.openforum.datalake.repository.FactActivityBatchWriter;
+import com.openforum.datalake.repository.ImportCopyWriter;
+import com.openforum.datalake.repository.ThreadCounterWriter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.UUID;
+import java.util.function.BiConsumer;
+
+/**
+ * Applies decoded events to the warehouse: dimension side effects, fact rows
+ * and the processed-event ledger, all in one transaction per call.
+ */
+@Service
+public class EventIngestionService {
+
+    private static final Logger log = LoggerFactory.getLogger(EventIngestionService.class);
+
+    private final DimThreadRepository dimThreadRepository;
+    private final FactActivityBatchWriter factActivityBatchWriter;
+    private final EventDeduplicator eventDeduplicator;
+    private final MetadataProjection metadataProjection;
+    private final MetadataPromotion metadataPromotion;
+    private final ThreadCounterBuffer threadCounterBuffer;
+    private final ThreadCounterWriter threadCounterWriter;
+    private final ImportCopyWriter importCopyWriter;
+    private final IngestionMetrics ingestionMetrics;
+    private final boolean bulkCopyImports;
+
+    public EventIngestionService(DimThreadRepository dimThreadRepository,
+            FactActivityBatchWriter factActivityBatchWriter, EventDeduplicator eventDeduplicator,
+            MetadataProjection metadataProjection, MetadataPromotion metadataPromotion,
+            ThreadCounterBuffer threadCounterBuffer, ThreadCounterWriter threadCounterWriter,
+            ImportCopyWriter importCopyWriter,
+            IngestionMetrics ingestionMetrics,
+            @Value("${datalake.ingestion.imports.bulk-copy:true}") boolean bulkCopyImports) {
+        this.dimThreadRepository = dimThreadRepository;
+        this.factActivityBatchWriter = factActivityBatchWriter;
+        this.eventDeduplicator = eventDeduplicator;
+        this.metadataProjection = metadataProjection;
+        this.metadataPromotion = metadataPromotion;
+        this.threadCounterBuffer = threadCounterBuffer;
+        this.threadCounterWriter = threadCounterWriter;
+        this.importCopyWriter = importCopyWriter;
+        this.ingestionMetrics = ingestionMetrics;
+        this.bulkCopyImports = bulkCopyImports;
+    }
+
+    /**
+     * Ingests a single event.
+     */
+    @Transactional
+    public void ingest(DecodedEvent event) {
+        long start = System.nanoTime();
+        boolean duplicate = eventDeduplicator.isDuplicate(event.eventId());
+        ingestionMetrics.recordStage(Stage.DEDUPE, event.eventType(), System.nanoTime() - start);
+        if (duplicate) {
+            ingestionMetrics.count(Outcome.DUPLICATE, event.eventType());
+            log.debug("Event {} already processed. Skipping.", event.eventId());
+            return;
+        }
+
+        start = System.nanoTime();
+        FactActivity fact = mapEvent(event);
+        if (fact != null) {
+            write(List.of(event), List.of(fact), threadCounterBuffer);
+        }
+        eventDeduplicator.markProcessed(List.of(event.eventId()));
+        ingestionMetrics.recordStage(Stage.WRITE, event.eventType(), System.nanoTime() - start);
+    }
+
+    /**
+     * Ingests events whose ids are unique within the list. Duplicates are
+     * filtered for the whole list at once and all facts are written with
+     * multi-row {@code INSERT ... ON CONFLICT DO NOTHING} statements. Events
+     * that cannot be mapped are logged and skipped.
+     * <p>
+     * {@code ThreadImported} and {@code PostImported} events take the
+     * {@link ImportCopyWriter} fast lane unless
+     * {@code datalake.ingestion.imports.bulk-copy} is disabled.
+     *
+     * @return number of fact rows inserted
+     */
+    @Transactional
+    public int ingestBatch(List<DecodedEvent> events) {
+        return ingestBatch(events, (event, e) -> {
+        });
+    }
+
+    /**
+     * Like {@link #ingestBatch(List)}, additionally handing each event that
+     * could not be mapped to {@code onFailure}. The handler runs inside the
+     * transaction; anything it must not do before commit is up to the caller.
+     */
+    @Transactional
+    public int ingestBatch(List<DecodedEvent> events, BiConsumer<DecodedEvent, Exception> onFailure) {
+        return ingestBatch(events, onFailure, false);
+    }
+
+    /**
+     * Like {@link #ingestBatch(List, BiConsumer)}. With
+     * {@code transactionalOffsets} the caller moves its Kafka positions in
+     * this transaction, as
+     * {@link com.openforum.datalake.ingestor.offsets.PostgresOffsetStore}
+     * does, so no record is applied twice and the processed-event ledger is
+     * not consulted. It is still written, for the retry consumers and a later
+     * switch back to Kafka offsets. Thread counters are then applied in this
+     * transaction instead of write-behind, so they commit with the facts and
+     * positions.
+     */
+    @Transactional
+    public int ingestBatch(List<DecodedEvent> events, BiConsumer<DecodedEvent, Exception> onFailure,
+            boolean transactionalOffsets) {
+        long start = System.nanoTime();
+        Set<UUID> alreadyProcessed = Set.of();
+        if (!transactionalOffsets) {
+            alreadyProcessed = eventDeduplicator.findDuplicates(events.stream().map(DecodedEvent::eventId).toList());
+            ingestionMetrics.recordStage(Stage.DEDUPE, IngestionMetrics.BATCH, System.nanoTime() - start);
+        }
+
+        start = System.nanoTime();
+        List<DecodedEvent> imported = new ArrayList<>();
+        List<DecodedEvent> mapped = new ArrayList<>(events.size());
+        List<FactActivity> facts = new ArrayList<>(events.size());
+        List<DimThread> importedThreads = new ArrayList<>();
+        List<FactActivity> importedFacts = new ArrayList<>();
+        List<UUID> processedEventIds = new ArrayList<>(events.size());
+        ThreadCounterBatch counterBatch = transactionalOffsets ? new ThreadCounterBatch() : null;
+        ThreadCounterRecorder counters = transactionalOffsets ? counterBatch : threadCounterBuffer;
+        for (DecodedEvent event : events) {
+            if (alreadyProcessed.contains(event.eventId())) {
+                ingestionMetrics.count(Outcome.DUPLICATE, event.eventType());
+                log.debug("Event {} already processed. Skipping.", event.eventId());
+                continue;
+            }
+            try {
+                if (bulkCopyImports && stageImport(event, importedThreads, importedFacts, counters)) {
+                    imported.add(event);
+                    processedEventIds.add(event.eventId());
+                    continue;
+                }
+                FactActivity fact = mapEvent(event);
+                if (fact != null) {
+                    facts.add(fact);
+                    mapped.add(event);
+                }
+                processedEventIds.add(event.eventId());
+            } catch (Exception e) {
+                ingestionMetrics.count(Outcome.FAILED, event.eventType());
+                log.error("Error processing event {}", event.eventId(), e);
+                onFailure.accept(event, e);
+            }
+        }
+
+        int inserted = write(mapped, facts, counters);
+        if (!importedThreads.isEmpty() || !importedFacts.isEmpty()) {
+            // Threads saved through JPA in this batch must be visible to the set-wise merge
+            dimThreadRepository.flush();
+            inserted += importCopyWriter.load(importedThreads, importedFacts);
+        }
+        if (transactionalOffsets) {
+            // Threads saved through JPA in this batch must be visible to the counter updates too
+            dimThreadRepository.flush();
+            threadCounterWriter.applyInTransaction(counterBatch.deltas(), counterBatch.createdThreads());
+        }
+        eventDeduplicator.markProcessed(processedEventIds);
+        ingestionMetrics.recordStage(Stage.WRITE, IngestionMetrics.BATCH, System.nanoTime() - start);
+        ingestionMetrics.recordBatch(events.size());
+        imported.forEach(event -> ingestionMetrics.count(Outcome.INGESTED, event.eventType()));
+        return inserted;
+    }
+
+    /**
+     * Inserts the facts of {@code events}, index by index, and applies the
+     * side effects of those events whose fact was actually inserted. A
+     * redelivered event that got past the dedupe check, say one processed by
+     * another instance before a rebalance, is thereby counted as a duplicate
+     * instead of being applied twice.
+     *
+     * @return number of fact rows inserted
+     */
+    private int write(List<DecodedEvent> events, List<FactActivity> facts, ThreadCounterRecorder counters) {
+        Set<UUID> inserted = factActivityBatchWriter.insertReturningEventIds(facts);
+        for (DecodedEvent event : events) {
+            if (inserted.contains(event.eventId())) {
+                applySideEffects(event, counters);
+                ingestionMetrics.count(Outcome.INGESTED, event.eventType());
+            } else {
+                ingestionMetrics.count(Outcome.DUPLICATE, event.eventType());
+                log.debug("Fact of event {} already stored. Skipping.", event.eventId());
+            }
+        }
+        return inserted.size();
+    }
+
+    /**
+     * Collects an import event for the bulk load instead of applying it.
+     *
+     * @return false if the event is not an import
+     */
+    private boolean stageImport(DecodedEvent event, List<DimThread> threads, List<FactActivity> facts,
+            ThreadCounterRecorder counters) {
+        switch (event.eventType()) {
+            case "ThreadImported": {
+                DimThread thread = DimThread.from((ThreadCreated) event.payload(), event.tenantId(),
+                        event.occurredAt());
+                threads.add(thread);
+                counters.recordThreadCreated(thread.getThreadId());
+                facts.add(toFact(event, "THREAD_IMPORTED", thread.getThreadId()));
+                return true;
+            }
+            case "PostImported": {
+                UUID threadId = Objects.requireNonNull(((PostCreated) event.payload()).threadId(),
+                        "PostImported without threadId");
+                facts.add(toFact(event, "POST_IMPORTED", threadId));
+                return true;
+            }
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Maps an event to the thread and fact rows it yields without writing
+     * anything or recording thread counters, for rebuilds that load the rows
+     * in bulk and derive the counters afterwards.
+     *
+     * @return false if the event type is ignored
+     */
+    public boolean mapRows(DecodedEvent event, List<DimThread> threads, List<FactActivity> facts) {
+        switch (event.eventType()) {
+            case "ThreadCreated":
+            case "ThreadImported": {
+                DimThread thread = DimThread.from((ThreadCreated) event.payload(), event.tenantId(),
+                        event.occurredAt());
+                threads.add(thread);
+                String activityType = event.eventType().equals("ThreadCreated") ? "THREAD_CREATED" : "THREAD_IMPORTED";
+                facts.add(toFact(event, activityType, thread.getThreadId()));
+                return true;
+            }
+            case "PostCreated":
+                facts.add(toFact(event, "POST_CREATED", Objects.requireNonNull(
+                        ((PostCreated) event.payload()).threadId(), "PostCreated without threadId")));
+                return true;
+            case "PostImported":
+                facts.add(toFact(event, "POST_IMPORTED", Objects.requireNonNull(
+                        ((PostCreated) event.payload()).threadId(), "PostImported without threadId")));
+                return true;
+            case "ReactionAdded":
+                facts.add(toFact(event, "REACTION", Objects.requireNonNull(
+                        ((ReactionAdded) event.payload()).targetId(), "ReactionAdded without targetId")));
+                return true;
+            case "SubscriptionCreated":
+                facts.add(toFact(event, "SUBSCRIPTION_CREATED", Objects.requireNonNull(
+                        ((SubscriptionCreated) event.payload()).targetId(), "SubscriptionCreated without targetId")));
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Maps an event to the fact row to record for it, or {@code null} for
+     * ignored event types. Writes nothing; see {@link #applySideEffects}.
+     */
+    private FactActivity mapEvent(DecodedEvent event) {
+        switch (event.eventType()) {
+            case "ThreadCreated":
+                return toFact(event, "THREAD_CREATED", ((ThreadCreated) event.payload()).threadId());
+            case "PostCreated":
+                return toFact(event, "POST_CREATED", Objects.requireNonNull(
+                        ((PostCreated) event.payload()).threadId(), "PostCreated without threadId"));
+            case "ReactionAdded":
+                return toFact(event, "REACTION", Objects.requireNonNull(
+                        ((ReactionAdded) event.payload()).targetId(), "ReactionAdded without targetId"));
+            case "SubscriptionCreated":
+                return toFact(event, "SUBSCRIPTION_CREATED", Objects.requireNonNull(
+                        ((SubscriptionCreated) event.payload()).targetId(), "SubscriptionCreated without targetId"));
+            case "ThreadImported":
+                return toFact(event, "THREAD_IMPORTED", ((ThreadCreated) event.payload()).threadId());
+            case "PostImported":
+                return toFact(event, "POST_IMPORTED", Objects.requireNonNull(
+                        ((PostCreated) event.payload()).threadId(), "PostImported without threadId"));
+            default:
+                ingestionMetrics.count(Outcome.SKIPPED, event.eventType());
+                log.debug("Ignored event type: {}", event.eventType());
+                return null;
+        }
+    }
+
+    /**
+     * Applies the dimension side effects of an event whose fact was just
+     * inserted.
+     */
+    private void applySideEffects(DecodedEvent event, ThreadCounterRecorder counters) {
+        switch (event.eventType()) {
+            case "ThreadCreated", "ThreadImported" -> {
+                DimThread thread = DimThread.from((ThreadCreated) event.payload(), event.tenantId(),
+                        event.occurredAt());
+                dimThreadRepository.save(thread);
+                // Replies that overtook the thread are added by the next counter flush
+                counters.recordThreadCreated(thread.getThreadId());
+            }
+            // Reply count, last activity and first response time are applied in bulk by the recorder
+            case "PostCreated" -> counters.recordReply(((PostCreated) event.payload()).threadId(),
+                    event.occurredAt(), true);
+            // Imported history does not count towards the first response time
+            case "PostImported" -> counters.recordReply(((PostCreated) event.payload()).threadId(),
+                    event.occurredAt(), false);
+            default -> {
+            }
+        }
+    }
+
+    private FactActivity toFact(DecodedEvent event, String activityType, UUID targetId) {
+        FactActivity fact = FactActivity.from(event, activityType, targetId);
+        // Before the projection, which may drop promoted fields from the metadata
+        metadataPromotion.apply(fact);
+        metadataProjection.apply(fact);
+        return fact;
+    }
+}
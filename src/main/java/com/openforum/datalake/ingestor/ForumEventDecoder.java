@@ -0,0 +1,133 @@
+package com.openforum.datalake.ingestor;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.openforum.datalake.ingestor.events.ForumEvent;
+import com.openforum.datalake.ingestor.events.PostCreated;
+import com.openforum.datalake.ingestor.events.ReactionAdded;
+import com.openforum.datalake.ingestor.events.SubscriptionCreated;
+import com.openforum.datalake.ingestor.events.ThreadCreated;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Decodes the raw bytes of a Kafka record into a {@link DecodedEvent} in a
+ * single pass with Jackson's streaming parser: envelope fields are read token
+ * by token and the payload is bound directly to its typed record, without an
+ * intermediate {@code String} or {@code JsonNode} tree.
+ */
+@Component
+public class ForumEventDecoder {
+
+    private static final Logger log = LoggerFactory.getLogger(ForumEventDecoder.class);
+
+    private final JsonFactory jsonFactory;
+    private final ObjectReader instantReader;
+    private final Map<String, ObjectReader> payloadReaders;
+    private final ObjectReader rawThreadReader;
+
+    public ForumEventDecoder(ObjectMapper objectMapper) {
+        this.jsonFactory = objectMapper.getFactory();
+        this.instantReader = objectMapper.readerFor(Instant.class);
+        ObjectReader threadReader = objectMapper.readerFor(ThreadCreated.class);
+        ObjectReader postReader = objectMapper.readerFor(PostCreated.class);
+        this.payloadReaders = Map.of(
+                "ThreadCreated", threadReader,
+                "ThreadImported", threadReader,
+                "PostCreated", postReader,
+                "PostImported", postReader,
+                "ReactionAdded", objectMapper.readerFor(ReactionAdded.class),
+                "SubscriptionCreated", objectMapper.readerFor(SubscriptionCreated.class));
+        this.rawThreadReader = threadReader;
+    }
+
+    /**
+     * @return the decoded event, or {@code null} if the message is neither an
+     *         envelope nor a raw event whose type can be inferred
+     * @throws IOException if the bytes are not valid JSON
+     */
+    public DecodedEvent decode(byte[] data) throws IOException {
+        return decode(data, 0, data.length);
+    }
+
+    /**
+     * Decodes the event held in {@code data[offset, offset + length)}; the
+     * payload slice refers to the same array.
+     */
+    public DecodedEvent decode(byte[] data, int offset, int length) throws IOException {
+        try (JsonParser parser = jsonFactory.createParser(data, offset, length)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new IOException("Expected a JSON object but found " + parser.currentToken());
+            }
+
+            UUID eventId = null;
+            String tenantId = null;
+            String eventType = null;
+            Instant occurredAt = null;
+            ForumEvent payload = null;
+            RawJson payloadJson = null;
+            boolean payloadTyped = false;
+
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.currentName();
+                JsonToken value = parser.nextToken();
+                switch (field) {
+                    case "eventId" -> eventId = value == JsonToken.VALUE_NULL ? null : UUID.fromString(parser.getText());
+                    case "tenantId" -> tenantId = value == JsonToken.VALUE_NULL ? null : parser.getText();
+                    case "eventType" -> eventType = value == JsonToken.VALUE_NULL ? null : parser.getText();
+                    case "occurredAt" -> occurredAt = instantReader.readValue(parser);
+                    case "payload" -> {
+                        // Token offsets are relative to the start of the parsed range
+                        int start = offset + (int) parser.currentTokenLocation().getByteOffset();
+                        ObjectReader reader = eventType == null ? null : payloadReaders.get(eventType);
+                        if (reader != null && value == JsonToken.START_OBJECT) {
+                            payload = reader.readValue(parser);
+                            payloadTyped = true;
+                        } else {
+                            parser.skipChildren();
+                        }
+                        int end = offset + (int) parser.currentLocation().getByteOffset();
+                        payloadJson = new RawJson(data, start, end - start);
+                    }
+                    default -> parser.skipChildren();
+                }
+            }
+
+            if (eventType == null) {
+                return inferRawEvent(data, offset, length);
+            }
+            if (!payloadTyped && payloadJson != null) {
+                // Payload preceded eventType in the envelope; bind it from its slice
+                ObjectReader reader = payloadReaders.get(eventType);
+                if (reader != null) {
+                    payload = reader.readValue(data, payloadJson.offset(), payloadJson.length());
+                }
+            }
+            return new DecodedEvent(eventId, tenantId, eventType, occurredAt, payload, payloadJson);
+        }
+    }
+
+    /**
+     * Fallback for producers that publish a bare ThreadCreated payload without an envelope.
+     */
+    private DecodedEvent inferRawEvent(byte[] data, int offset, int length) throws IOException {
+        log.warn("Received raw event without envelope. Attempting to infer type.");
+        ThreadCreated thread = rawThreadReader.readValue(data, offset, length);
+        if (thread.threadId() == null || thread.title() == null) {
+            return null;
+        }
+        String tenantId = thread.tenantId() != null ? thread.tenantId() : "unknown";
+        Instant occurredAt = thread.createdAt() != null ? thread.createdAt() : Instant.now();
+        return new DecodedEvent(UUID.randomUUID(), tenantId, "ThreadCreated", occurredAt, thread,
+                new RawJson(data, offset, length));
+    }
+}
@@ -0,0 +1,125 @@
+package com.openforum.datalake.ingestor;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Micrometer instrumentation of the ingest path:
+ * <ul>
+ * <li>{@code datalake.ingest.stage} timers tagged with {@code stage} (parse,
+ * dedupe, write) and {@code type}. Parsing is timed per event type; in batch
+ * mode dedupe and write cover the whole batch and are tagged
+ * {@code type=batch}.</li>
+ * <li>{@code datalake.ingest.events} counters tagged with {@code outcome}
+ * (ingested, duplicate, skipped, failed, retried, dead_lettered) and
+ * {@code type}.</li>
+ * <li>{@code datalake.ingest.batch.size}, events per ingested batch.</li>
+ * <li>{@code datalake.ingest.lag} (records) and
+ * {@code datalake.ingest.freshness} (seconds since the newest ingested record
+ * was produced) gauges per topic partition.</li>
+ * </ul>
+ * Meters are cached per tag combination so that recording does not allocate.
+ */
+@Component
+public class IngestionMetrics {
+
+    public static final String BATCH = "batch";
+    public static final String UNKNOWN = "unknown";
+
+    public enum Stage {
+        PARSE, DEDUPE, WRITE
+    }
+
+    public enum Outcome {
+        INGESTED, DUPLICATE, SKIPPED, FAILED, RETRIED, DEAD_LETTERED
+    }
+
+    private final MeterRegistry registry;
+    private final DistributionSummary batchSize;
+    private final Map<String, Timer> timers = new ConcurrentHashMap<>();
+    private final Map<String, Counter> counters = new ConcurrentHashMap<>();
+    private final Map<Integer, PartitionPosition> partitions = new ConcurrentHashMap<>();
+
+    public IngestionMetrics(MeterRegistry registry) {
+        this.registry = registry;
+        this.batchSize = DistributionSummary.builder("datalake.ingest.batch.size")
+                .description("Events per ingested batch")
+                .register(registry);
+    }
+
+    public void recordStage(Stage stage, String type, long nanos) {
+        String stageTag = stage.name().toLowerCase();
+        timers.computeIfAbsent(stageTag + '/' + type, key -> Timer.builder("datalake.ingest.stage")
+                .description("Time spent per ingest stage")
+                .tag("stage", stageTag)
+                .tag("type", type)
+                .register(registry))
+                .record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void count(Outcome outcome, String type) {
+        count(outcome, type, 1);
+    }
+
+    public void count(Outcome outcome, String type, int events) {
+        if (events <= 0) {
+            return;
+        }
+        String outcomeTag = outcome.name().toLowerCase();
+        counters.computeIfAbsent(outcomeTag + '/' + type, key -> Counter.builder("datalake.ingest.events")
+                .description("Consumed events by outcome")
+                .tag("outcome", outcomeTag)
+                .tag("type", type)
+                .register(registry))
+                .increment(events);
+    }
+
+    public void recordBatch(int events) {
+        batchSize.record(events);
+    }
+
+    /**
+     * Updates the gauges of a partition after its records were ingested.
+     *
+     * @param newestTimestamp producer timestamp of the newest ingested record
+     * @param lag             records behind the end of the partition, or -1 if
+     *                        the consumer does not know yet
+     */
+    public void recordPosition(String topic, int partition, long newestTimestamp, long lag) {
+        PartitionPosition position = partitions.computeIfAbsent(partition, p -> register(topic, p));
+        position.newestTimestamp.accumulateAndGet(newestTimestamp, Math::max);
+        if (lag >= 0) {
+            position.lag.set(lag);
+        }
+    }
+
+    private PartitionPosition register(String topic, int partition) {
+        PartitionPosition position = new PartitionPosition();
+        String partitionTag = Integer.toString(partition);
+        Gauge.builder("datalake.ingest.lag", position.lag, AtomicLong::get)
+                .description("Records between the last ingested offset and the end of the partition")
+                .tags("topic", topic, "partition", partitionTag)
+                .register(registry);
+        Gauge.builder("datalake.ingest.freshness", position.newestTimestamp,
+                        newest -> (System.currentTimeMillis() - newest.get()) / 1000.0)
+                .description("Age of the newest ingested record")
+                .baseUnit("seconds")
+                .tags("topic", topic, "partition", partitionTag)
+                .register(registry);
+        return position;
+    }
+
+    private static final class PartitionPosition {
+        private final AtomicLong lag = new AtomicLong();
+        private final AtomicLong newestTimestamp = new AtomicLong();
+    }
+}
@@ -1,188 +1,416 @@
 package com.openforum.datalake.ingestor;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.openforum.datalake.domain.DimThread;
-import com.openforum.datalake.repository.DimThreadRepository;
-import com.openforum.datalake.domain.FactActivity;
-import com.openforum.datalake.repository.FactActivityRepository;
+import com.openforum.datalake.ingestor.IngestionMetrics.Outcome;
+import com.openforum.datalake.ingestor.IngestionMetrics.Stage;
+import com.openforum.datalake.ingestor.offsets.PostgresOffsetStore;
+import com.openforum.datalake.ingestor.retry.FailedEventRouter;
+import jakarta.annotation.PreDestroy;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.TopicPartition;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.kafka.listener.BatchListenerFailedException;
+import org.springframework.kafka.listener.ConsumerSeekAware;
 import org.springframework.stereotype.Component;
-import org.springframework.transaction.annotation.Transactional;
 
-import java.time.Duration;
-import java.time.Instant;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.BiConsumer;
 
+/**
+ * Consumes {@code forum-events-v1}. By default positions are committed to
+ * Kafka after each record or poll and redeliveries are caught by the dedupe
+ * ledger. With {@code datalake.ingestion.offsets.store=postgres} they are
+ * stored by the {@link PostgresOffsetStore} in the ingest transaction
+ * instead, the consumer seeks to them on assignment and lanes are sharded by
+ * partition, so that each transaction owns the positions it advances.
+ */
 @Component
-public class KafkaEventConsumer {
+public class KafkaEventConsumer implements ConsumerSeekAware {
+
+    public static final String GROUP_ID = "datalake-consumer-group-v4";
 
     private static final Logger log = LoggerFactory.getLogger(KafkaEventConsumer.class);
 
-    private final FactActivityRepository factActivityRepository;
-    private final DimThreadRepository dimThreadRepository;
-    private final ObjectMapper objectMapper;
+    private final ForumEventDecoder forumEventDecoder;
+    private final EventIngestionService eventIngestionService;
+    private final IngestionMetrics ingestionMetrics;
+    private final FailedEventRouter failedEventRouter;
+    private final PostgresOffsetStore offsetStore;
+    private final boolean offsetsInPostgres;
+    private final int lanes;
+    private final ExecutorService laneExecutor;
 
-    public KafkaEventConsumer(FactActivityRepository factActivityRepository, DimThreadRepository dimThreadRepository,
-            ObjectMapper objectMapper) {
-        this.factActivityRepository = factActivityRepository;
-        this.dimThreadRepository = dimThreadRepository;
-        this.objectMapper = objectMapper;
+    public KafkaEventConsumer(ForumEventDecoder forumEventDecoder, EventIngestionService eventIngestionService,
+            IngestionMetrics ingestionMetrics, FailedEventRouter failedEventRouter, PostgresOffsetStore offsetStore,
+            @Value("${datalake.ingestion.offsets.store:kafka}") String offsetStoreType,
+            @Value("${datalake.ingestion.parallelism.lanes:1}") int lanes) {
+        this.forumEventDecoder = forumEventDecoder;
+        this.eventIngestionService = eventIngestionService;
+        this.ingestionMetrics = ingestionMetrics;
+        this.failedEventRouter = failedEventRouter;
+        this.offsetStore = offsetStore;
+        this.offsetsInPostgres = switch (offsetStoreType.toLowerCase()) {
+            case "kafka" -> false;
+            case "postgres" -> true;
+            default -> throw new IllegalArgumentException(
+                    "datalake.ingestion.offsets.store must be kafka or postgres, not " + offsetStoreType);
+        };
+        this.lanes = Math.max(1, lanes);
+        this.laneExecutor = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("ingest-lane-", 0).factory());
     }
 
-    @KafkaListener(topics = "forum-events-v1", groupId = "datalake-consumer-group-v4")
-    @Transactional
-    public void consume(String message) {
-        System.out.println("Received message: " + message);
-        try {
-            JsonNode rootNode = objectMapper.readTree(message);
-            EventEnvelope event;
-
-            if (rootNode.has("eventType")) {
-                event = objectMapper.treeToValue(rootNode, EventEnvelope.class);
-            } else {
-                // Fallback for raw events
-                log.warn("Received raw event without envelope. Attempting to infer type.");
-                event = inferEvent(rootNode);
+    @KafkaListener(id = "forum-events-record", topics = "forum-events-v1", groupId = GROUP_ID,
+            autoStartup = "#{${datalake.ingestion.listeners.enabled:true}"
+                    + " && !${datalake.ingestion.batch.enabled:false}}")
+    public void consume(ConsumerRecord<String, byte[]> record, Consumer<?, ?> consumer) {
+        List<Unparseable> unparseable = new ArrayList<>(1);
+        DecodedEvent event = decode(record, 0, unparseable);
+        if (offsetsInPostgres) {
+            List<DecodedEvent> events = event == null ? List.of() : List.of(event);
+            Map<TopicPartition, Long> nextOffsets = Map.of(partitionOf(record), record.offset() + 1);
+            BiConsumer<DecodedEvent, Exception> onFailure =
+                    (failed, e) -> failedEventRouter.route(record, failed.eventType(), Stage.WRITE, e);
+            try {
+                offsetStore.ingest(GROUP_ID, List.of(record), events, nextOffsets, onFailure);
+            } catch (RuntimeException e) {
+                if (event == null) {
+                    throw e;
+                }
+                ingestionMetrics.count(Outcome.FAILED, event.eventType());
+                log.error("Error processing event {}", event.eventId(), e);
+                failedEventRouter.route(record, event.eventType(), Stage.WRITE, e);
+                // Move past the routed record, so a seek to the stored position does not route it again
+                offsetStore.ingest(GROUP_ID, List.of(), List.of(), nextOffsets, onFailure);
             }
-
-            if (event == null) {
-                log.error("Could not infer event type for message: {}", message);
-                return;
+        } else if (event != null) {
+            log.debug("Received event: {} type: {}", event.eventId(), event.eventType());
+            try {
+                eventIngestionService.ingest(event);
+            } catch (Exception e) {
+                ingestionMetrics.count(Outcome.FAILED, event.eventType());
+                log.error("Error processing event {}", event.eventId(), e);
+                failedEventRouter.route(record, event.eventType(), Stage.WRITE, e);
             }
+        }
+        routeUnparseable(unparseable, 1);
+        reportPositions(List.of(record), consumer);
+    }
 
-            log.info("Received event: {} type: {}", event.eventId(), event.eventType());
+    /**
+     * Resumes assigned partitions from the positions stored in Postgres, if
+     * that is where they are kept. Partitions without one start from the
+     * committed Kafka offset or {@code auto.offset.reset}.
+     */
+    @Override
+    public void onPartitionsAssigned(Map<TopicPartition, Long> assignments, ConsumerSeekCallback callback) {
+        if (!offsetsInPostgres) {
+            return;
+        }
+        offsetStore.committedOffsets(GROUP_ID, assignments.keySet()).forEach((partition, offset) -> {
+            log.info("Resuming {} at offset {} stored in Postgres", partition, offset);
+            callback.seek(partition.topic(), partition.partition(), offset);
+        });
+    }
 
-            if (factActivityRepository.existsByEventId(event.eventId())) {
-                log.info("Event {} already processed. Skipping.", event.eventId());
-                return;
+    /**
+     * Batch mode. The poll is sharded into lanes by
+     * {@link com.openforum.datalake.ingestor.events.ForumEvent#orderingKey()
+     * thread or target}; each lane keeps record order and is ingested in its own
+     * transaction on a virtual thread, so unrelated threads are written in
+     * parallel. The listener returns only when every lane has finished, which
+     * is when the container commits the poll's offsets.
+     * <p>
+     * Events that fail on their own are routed to the retry topics once their
+     * lane has committed. If a whole lane fails, offsets are committed up to the
+     * first record of the earliest failed lane and the rest of the poll is
+     * redelivered, after the configured in-place attempts; records of lanes that
+     * did commit are then skipped by the deduplicator.
+     * <p>
+     * Unparseable records go to the dead-letter topic only once the records
+     * before them are sure to be committed: after the poll, or up to the
+     * failed lane. A redelivered poll thus does not dead-letter them twice.
+     */
+    @KafkaListener(id = "forum-events-batch", topics = "forum-events-v1", groupId = GROUP_ID,
+            batch = "true",
+            autoStartup = "#{${datalake.ingestion.listeners.enabled:true}"
+                    + " && ${datalake.ingestion.batch.enabled:false}}",
+            properties = {
+                    "max.poll.records:${datalake.ingestion.batch.max-records:500}",
+                    "fetch.min.bytes:${datalake.ingestion.batch.min-bytes:1}",
+                    "fetch.max.wait.ms:${datalake.ingestion.batch.linger-ms:500}"
+            })
+    public void consumeBatch(List<ConsumerRecord<String, byte[]>> records, Consumer<?, ?> consumer) {
+        List<Unparseable> unparseable = new ArrayList<>();
+        List<Lane> shards = shard(records, unparseable);
+        if (shards.isEmpty()) {
+            routeUnparseable(unparseable, records.size());
+            reportPositions(records, consumer);
+            return;
+        }
+        if (shards.size() == 1) {
+            // Nothing to parallelise; stay on the listener thread
+            Lane lane = shards.get(0);
+            try {
+                log.debug("Batch of {} messages wrote {} facts", records.size(), ingestLane(lane));
+            } catch (RuntimeException e) {
+                countFailed(lane);
+                routeUnparseable(unparseable, lane.firstIndex());
+                throw new BatchListenerFailedException("Failed to ingest batch", e, lane.firstIndex());
             }
+            routeUnparseable(unparseable, records.size());
+            reportPositions(records, consumer);
+            return;
+        }
 
-            processEvent(event);
+        List<Future<Integer>> results = new ArrayList<>(shards.size());
+        for (Lane lane : shards) {
+            results.add(laneExecutor.submit(() -> ingestLane(lane)));
+        }
 
-        } catch (JsonProcessingException e) {
-            log.error("Failed to parse event", e);
-        } catch (Exception e) {
-            e.printStackTrace();
-            log.error("Error processing event", e);
+        int inserted = 0;
+        Lane failedLane = null;
+        Throwable failure = null;
+        for (int i = 0; i < shards.size(); i++) {
+            Lane lane = shards.get(i);
+            try {
+                inserted += awaitUninterruptibly(results.get(i));
+            } catch (ExecutionException e) {
+                countFailed(lane);
+                log.error("Ingest lane starting at record {} failed", lane.firstIndex(), e.getCause());
+                if (failedLane == null || lane.firstIndex() < failedLane.firstIndex()) {
+                    failedLane = lane;
+                    failure = e.getCause();
+                }
+            }
         }
+        if (failedLane != null) {
+            routeUnparseable(unparseable, failedLane.firstIndex());
+            throw new BatchListenerFailedException("Failed to ingest batch", failure, failedLane.firstIndex());
+        }
+        log.debug("Batch of {} messages wrote {} facts across {} lanes", records.size(), inserted, shards.size());
+        routeUnparseable(unparseable, records.size());
+        reportPositions(records, consumer);
     }
 
-    private EventEnvelope inferEvent(JsonNode node) {
-        if (node.has("threadId") && node.has("title")) {
-            // Assume ThreadCreated
-            UUID eventId = UUID.randomUUID();
-            String tenantId = node.has("tenantId") ? node.get("tenantId").asText() : "unknown";
-            Instant occurredAt = node.has("createdAt") ? Instant.parse(node.get("createdAt").asText()) : Instant.now();
-            return new EventEnvelope(eventId, tenantId, "ThreadCreated", occurredAt, node);
+    /**
+     * With offsets in Kafka, failed events are routed once the lane has
+     * committed: a rolled back lane is redelivered and would fail again. With
+     * offsets in Postgres they are routed before the commit that moves the
+     * position past them; a rolled back lane may then route an event twice,
+     * which the deduplicating retry consumer absorbs.
+     */
+    private int ingestLane(Lane lane) {
+        List<Map.Entry<DecodedEvent, Exception>> failures = new ArrayList<>();
+        BiConsumer<DecodedEvent, Exception> onFailure = offsetsInPostgres
+                ? (event, e) -> route(lane, event, e)
+                : (event, e) -> failures.add(Map.entry(event, e));
+        int inserted;
+        try {
+            inserted = ingest(lane.records(), lane.events(), lane.nextOffsets(), onFailure);
+        } catch (RuntimeException e) {
+            failures.clear();
+            inserted = isolateFailures(lane, e, onFailure);
         }
-        return null;
+        failures.forEach(failure -> route(lane, failure.getKey(), failure.getValue()));
+        return inserted;
     }
 
-    private void processEvent(EventEnvelope event) {
-        try {
-            switch (event.eventType()) {
-                case "ThreadCreated":
-                    handleThreadCreated(event);
-                    break;
-                case "PostCreated":
-                    handlePostCreated(event);
-                    break;
-                case "ReactionAdded":
-                    handleReactionAdded(event);
-                    break;
-                case "SubscriptionCreated":
-                    handleSubscriptionCreated(event);
-                    break;
-                case "ThreadImported":
-                    handleThreadImported(event);
-                    break;
-                case "PostImported":
-                    handlePostImported(event);
-                    break;
-                default:
-                    log.info("Ignored event type: {}", event.eventType());
+    /**
+     * A lane whose transaction failed (for instance a constraint violation at
+     * flush) does not say which event caused it, so its events are ingested one
+     * by one and only those that fail on their own are reported. If every event
+     * fails the cause is most likely not the data, and the lane fails as a whole.
+     */
+    private int isolateFailures(Lane lane, RuntimeException laneFailure, BiConsumer<DecodedEvent, Exception> onFailure) {
+        if (lane.events().size() <= 1) {
+            throw laneFailure;
+        }
+        log.warn("Ingest lane starting at record {} failed; retrying its {} events one by one", lane.firstIndex(),
+                lane.events().size(), laneFailure);
+        int inserted = 0;
+        List<Map.Entry<DecodedEvent, Exception>> rolledBack = new ArrayList<>();
+        for (int i = 0; i < lane.events().size(); i++) {
+            DecodedEvent event = lane.events().get(i);
+            ConsumerRecord<String, byte[]> record = lane.records().get(i);
+            try {
+                inserted += ingest(List.of(record), List.of(event), Map.of(partitionOf(record), record.offset() + 1),
+                        onFailure);
+            } catch (RuntimeException e) {
+                rolledBack.add(Map.entry(event, e));
             }
-        } catch (DataIntegrityViolationException e) {
-            log.warn("Idempotency check failed (Duplicate): {}", event.eventId());
         }
+        if (rolledBack.size() == lane.events().size()) {
+            throw laneFailure;
+        }
+        rolledBack.forEach(failure -> onFailure.accept(failure.getKey(), failure.getValue()));
+        if (offsetsInPostgres) {
+            // Move past trailing records that yielded no event
+            ingest(List.of(), List.of(), lane.nextOffsets(), onFailure);
+        }
+        return inserted;
     }
 
-    private void handleThreadCreated(EventEnvelope event) {
-        // Use static factory method for mapping
-        DimThread thread = DimThread.from(event);
-        dimThreadRepository.save(thread);
-
-        // Use static factory method for mapping
-        FactActivity fact = FactActivity.from(event, "THREAD_CREATED", thread.getThreadId());
-        factActivityRepository.save(fact);
+    private int ingest(List<ConsumerRecord<String, byte[]>> records, List<DecodedEvent> events,
+            Map<TopicPartition, Long> nextOffsets, BiConsumer<DecodedEvent, Exception> onFailure) {
+        if (offsetsInPostgres) {
+            return offsetStore.ingest(GROUP_ID, records, events, nextOffsets, onFailure);
+        }
+        return eventIngestionService.ingestBatch(events, onFailure);
     }
 
-    private void handlePostCreated(EventEnvelope event) {
-        JsonNode payload = event.payload();
-        UUID threadId = UUID.fromString(payload.get("threadId").asText());
-
-        // Update DimThread
-        dimThreadRepository.findById(threadId).ifPresent(thread -> {
-            thread.setLastActivityAt(event.occurredAt());
-            thread.setReplyCount(thread.getReplyCount() + 1);
+    private void route(Lane lane, DecodedEvent event, Exception e) {
+        failedEventRouter.route(lane.records().get(lane.events().indexOf(event)), event.eventType(), Stage.WRITE, e);
+    }
 
-            // Calculate response time if first reply
-            if (thread.getReplyCount() == 1) {
-                long diff = Duration.between(thread.getCreatedAt(), event.occurredAt()).toMinutes();
-                thread.setResponseTimeMinutes((int) diff);
+    // Sends the unparseable records before the poll index to the dead-letter topic
+    private void routeUnparseable(List<Unparseable> unparseable, int beforeIndex) {
+        for (Unparseable record : unparseable) {
+            if (record.index() >= beforeIndex) {
+                return;
             }
+            failedEventRouter.route(record.record(), null, Stage.PARSE, record.cause());
+        }
+    }
 
-            dimThreadRepository.save(thread);
-        });
+    /**
+     * Decodes the poll and groups it into lanes ordered by their first record.
+     * Lanes are sharded by thread or target, or by partition when positions are
+     * stored in Postgres; only the latter has lanes without events, to advance
+     * past records that yielded none. A redelivery of an eventId within the
+     * poll is dropped. Records that fail to parse are added to
+     * {@code unparseable} in poll order.
+     */
+    private List<Lane> shard(List<ConsumerRecord<String, byte[]>> records, List<Unparseable> unparseable) {
+        Lane[] byKey = new Lane[lanes];
+        List<Lane> ordered = new ArrayList<>();
+        Set<UUID> seen = new HashSet<>(records.size());
+        for (int index = 0; index < records.size(); index++) {
+            ConsumerRecord<String, byte[]> record = records.get(index);
+            DecodedEvent event = decode(record, index, unparseable);
+            // Keep the first occurrence of an eventId redelivered within the same poll
+            if (event != null && !seen.add(event.eventId())) {
+                ingestionMetrics.count(Outcome.DUPLICATE, event.eventType());
+                event = null;
+            }
+            int slot;
+            if (offsetsInPostgres) {
+                slot = Math.floorMod(record.partition(), lanes);
+            } else if (event != null) {
+                UUID key = event.payload() != null ? event.payload().orderingKey() : null;
+                slot = key == null ? 0 : Math.floorMod(key.hashCode(), lanes);
+            } else {
+                continue;
+            }
+            if (byKey[slot] == null) {
+                byKey[slot] = new Lane(index, new ArrayList<>(), new ArrayList<>(), new HashMap<>());
+                ordered.add(byKey[slot]);
+            }
+            Lane lane = byKey[slot];
+            lane.nextOffsets().merge(partitionOf(record), record.offset() + 1, Math::max);
+            if (event != null) {
+                lane.events().add(event);
+                lane.records().add(record);
+            }
+        }
+        return ordered;
+    }
 
-        // Use static factory method for mapping
-        FactActivity fact = FactActivity.from(event, "POST_CREATED", threadId);
-        factActivityRepository.save(fact);
+    private static TopicPartition partitionOf(ConsumerRecord<?, ?> record) {
+        return new TopicPartition(record.topic(), record.partition());
     }
 
-    private void handleReactionAdded(EventEnvelope event) {
-        UUID targetId = UUID.fromString(event.payload().get("targetId").asText());
-        FactActivity fact = FactActivity.from(event, "REACTION", targetId);
-        factActivityRepository.save(fact);
+    // The poll must not be acknowledged while a lane may still be writing
+    private static int awaitUninterruptibly(Future<Integer> result) throws ExecutionException {
+        boolean interrupted = false;
+        try {
+            while (true) {
+                try {
+                    return result.get();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
     }
 
-    private void handleSubscriptionCreated(EventEnvelope event) {
-        UUID targetId = UUID.fromString(event.payload().get("targetId").asText());
-        FactActivity fact = FactActivity.from(event, "SUBSCRIPTION_CREATED", targetId);
-        factActivityRepository.save(fact);
+    /**
+     * @return the decoded event, or {@code null} if the record is of an unknown
+     *         type or was added to {@code unparseable}
+     */
+    private DecodedEvent decode(ConsumerRecord<String, byte[]> record, int index, List<Unparseable> unparseable) {
+        byte[] message = record.value();
+        long start = System.nanoTime();
+        try {
+            DecodedEvent event = forumEventDecoder.decode(message);
+            ingestionMetrics.recordStage(Stage.PARSE, event == null ? IngestionMetrics.UNKNOWN : event.eventType(),
+                    System.nanoTime() - start);
+            if (event == null) {
+                ingestionMetrics.count(Outcome.SKIPPED, IngestionMetrics.UNKNOWN);
+                log.warn("Could not infer event type for message: {}", new String(message, StandardCharsets.UTF_8));
+            }
+            return event;
+        } catch (IOException | IllegalArgumentException e) {
+            ingestionMetrics.count(Outcome.FAILED, IngestionMetrics.UNKNOWN);
+            log.error("Failed to parse event", e);
+            unparseable.add(new Unparseable(index, record, e));
+            return null;
+        }
     }
 
-    private void handleThreadImported(EventEnvelope event) {
-        JsonNode payload = event.payload();
-        // Create DimThread
-        DimThread thread = DimThread.from(payload, event.tenantId(), event.occurredAt());
-        dimThreadRepository.save(thread);
+    private void countFailed(Lane lane) {
+        lane.events().forEach(event -> ingestionMetrics.count(Outcome.FAILED, event.eventType()));
+    }
 
-        // Create FactActivity
-        FactActivity fact = FactActivity.from(event, "THREAD_IMPORTED", thread.getThreadId());
-        factActivityRepository.save(fact);
+    /**
+     * Publishes lag and freshness for the partitions of records that were
+     * ingested. Runs on the listener thread, which owns the consumer.
+     */
+    private void reportPositions(List<ConsumerRecord<String, byte[]>> records, Consumer<?, ?> consumer) {
+        Map<TopicPartition, Long> newestByPartition = new HashMap<>();
+        for (ConsumerRecord<String, byte[]> record : records) {
+            newestByPartition.merge(new TopicPartition(record.topic(), record.partition()), record.timestamp(),
+                    Math::max);
+        }
+        newestByPartition.forEach((partition, newest) -> ingestionMetrics.recordPosition(partition.topic(),
+                partition.partition(), newest,
+                consumer == null ? -1 : consumer.currentLag(partition).orElse(-1)));
     }
 
-    private void handlePostImported(EventEnvelope event) {
-        JsonNode payload = event.payload();
-        UUID threadId = UUID.fromString(payload.get("threadId").asText());
+    @PreDestroy
+    void shutdownLanes() {
+        laneExecutor.close();
+    }
 
-        // Update DimThread
-        dimThreadRepository.findById(threadId).ifPresent(thread -> {
-            thread.setLastActivityAt(event.occurredAt());
-            thread.setReplyCount(thread.getReplyCount() + 1);
-            // Note: We might want to skip response time calculation for imports or keep it
-            // if data is accurate
-            dimThreadRepository.save(thread);
-        });
+    /**
+     * Events of one lane in record order with their records, the poll index of
+     * the first record and the position after the last record per partition.
+     */
+    private record Lane(int firstIndex, List<DecodedEvent> events, List<ConsumerRecord<String, byte[]>> records,
+            Map<TopicPartition, Long> nextOffsets) {
+    }
 
-        // Create FactActivity
-        FactActivity fact = FactActivity.from(event, "POST_IMPORTED", threadId);
-        factActivityRepository.save(fact);
+    /**
+     * A record of the poll that failed to parse, with its poll index.
+     */
+    private record Unparseable(int index, ConsumerRecord<String, byte[]> record, Exception cause) {
     }
 }
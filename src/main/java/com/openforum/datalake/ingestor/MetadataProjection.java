@@ -0,0 +1,97 @@
+package com.openforum.datalake.ingestor;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.openforum.datalake.domain.FactActivity;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Decides what of an event payload is stored in {@code fact_activity.metadata}.
+ * <p>
+ * In raw pass-through mode the payload bytes are handed to the writer as a
+ * slice of the Kafka record and bound to the {@code jsonb} parameter as they
+ * are. With an allow-list configured only those top-level fields are kept;
+ * they are copied token by token, still without building a {@code Map}.
+ */
+@Component
+public class MetadataProjection {
+
+    private final JsonFactory jsonFactory;
+    private final ObjectReader mapReader;
+    private final Set<String> allowedFields;
+    private final boolean rawPassthrough;
+
+    public MetadataProjection(ObjectMapper objectMapper,
+            @Value("${datalake.ingestion.metadata.fields:}") List<String> allowedFields,
+            @Value("${datalake.ingestion.metadata.raw-passthrough:true}") boolean rawPassthrough) {
+        this.jsonFactory = objectMapper.getFactory();
+        this.mapReader = objectMapper.readerFor(Map.class);
+        this.allowedFields = Set.copyOf(allowedFields);
+        this.rawPassthrough = rawPassthrough;
+    }
+
+    /**
+     * Projects the fact's payload and, unless raw pass-through is enabled,
+     * materialises it as a {@code Map} for writers that re-encode it.
+     */
+    public void apply(FactActivity fact) {
+        RawJson projected = project(fact.getRawMetadata());
+        if (rawPassthrough) {
+            fact.setRawMetadata(projected);
+        } else {
+            fact.setMetadata(toMap(projected));
+            fact.setRawMetadata(null);
+        }
+    }
+
+    public RawJson project(RawJson payload) {
+        if (payload == null || allowedFields.isEmpty()) {
+            return payload;
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream(Math.min(payload.length(), 512));
+        try (JsonParser parser = jsonFactory.createParser(payload.source(), payload.offset(), payload.length());
+                JsonGenerator generator = jsonFactory.createGenerator(out)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                return null;
+            }
+            generator.writeStartObject();
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.currentName();
+                parser.nextToken();
+                if (allowedFields.contains(field)) {
+                    generator.writeFieldName(field);
+                    generator.copyCurrentStructure(parser);
+                } else {
+                    parser.skipChildren();
+                }
+            }
+            generator.writeEndObject();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unreadable event payload", e);
+        }
+        return RawJson.of(out.toByteArray());
+    }
+
+    public Map<String, Object> toMap(RawJson payload) {
+        if (payload == null) {
+            return null;
+        }
+        try {
+            return mapReader.readValue(payload.source(), payload.offset(), payload.length());
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unreadable event payload", e);
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package com.openforum.datalake.ingestor;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.openforum.datalake.domain.FactActivity;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Copies configured top-level payload fields into the typed
+ * {@code fact_activity} columns {@code category_id}, {@code sentiment} and
+ * {@code is_admin}, so analytics can filter and group by them through an
+ * index instead of extracting them from {@code metadata} row by row. Runs
+ * before {@link MetadataProjection}, so a field is promoted even if it is not
+ * kept in {@code metadata}.
+ * <p>
+ * A value of the wrong JSON type (or a string that is not a UUID) leaves the
+ * column {@code null}. {@link com.openforum.datalake.repository.MetadataBackfillRepository}
+ * applies the same rules in SQL to rows written before the columns existed.
+ */
+@Component
+public class MetadataPromotion {
+
+    public static final String CATEGORY_ID = "category_id";
+    public static final String SENTIMENT = "sentiment";
+    public static final String IS_ADMIN = "is_admin";
+
+    private final JsonFactory jsonFactory;
+    private final String categoryIdField;
+    private final String sentimentField;
+    private final String isAdminField;
+
+    public MetadataPromotion(ObjectMapper objectMapper,
+            @Value("${datalake.ingestion.metadata.promoted.category-id:categoryId}") String categoryIdField,
+            @Value("${datalake.ingestion.metadata.promoted.sentiment:sentiment}") String sentimentField,
+            @Value("${datalake.ingestion.metadata.promoted.is-admin:isAdmin}") String isAdminField) {
+        this.jsonFactory = objectMapper.getFactory();
+        this.categoryIdField = blankToNull(categoryIdField);
+        this.sentimentField = blankToNull(sentimentField);
+        this.isAdminField = blankToNull(isAdminField);
+    }
+
+    /**
+     * @return the payload field each promoted column is read from, for the
+     *         columns whose field is configured
+     */
+    public Map<String, String> sourceFields() {
+        Map<String, String> fields = new LinkedHashMap<>();
+        if (categoryIdField != null) {
+            fields.put(CATEGORY_ID, categoryIdField);
+        }
+        if (sentimentField != null) {
+            fields.put(SENTIMENT, sentimentField);
+        }
+        if (isAdminField != null) {
+            fields.put(IS_ADMIN, isAdminField);
+        }
+        return fields;
+    }
+
+    public void apply(FactActivity fact) {
+        if (categoryIdField == null && sentimentField == null && isAdminField == null) {
+            return;
+        }
+        if (fact.getRawMetadata() != null) {
+            promote(fact, fact.getRawMetadata());
+        } else if (fact.getMetadata() != null) {
+            promote(fact, fact.getMetadata());
+        }
+    }
+
+    private void promote(FactActivity fact, RawJson payload) {
+        try (JsonParser parser = jsonFactory.createParser(payload.source(), payload.offset(), payload.length())) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                return;
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.currentName();
+                JsonToken value = parser.nextToken();
+                if (field.equals(categoryIdField)) {
+                    fact.setCategoryId(value == JsonToken.VALUE_STRING ? toUuid(parser.getText()) : null);
+                } else if (field.equals(sentimentField)) {
+                    fact.setSentiment(value.isNumeric() ? parser.getDoubleValue() : null);
+                } else if (field.equals(isAdminField)) {
+                    fact.setIsAdmin(value.isBoolean() ? value == JsonToken.VALUE_TRUE : null);
+                }
+                parser.skipChildren();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unreadable event payload", e);
+        }
+    }
+
+    private void promote(FactActivity fact, Map<String, Object> metadata) {
+        if (categoryIdField != null) {
+            fact.setCategoryId(metadata.get(categoryIdField) instanceof String text ? toUuid(text) : null);
+        }
+        if (sentimentField != null) {
+            fact.setSentiment(metadata.get(sentimentField) instanceof Number number ? number.doubleValue() : null);
+        }
+        if (isAdminField != null) {
+            fact.setIsAdmin(metadata.get(isAdminField) instanceof Boolean flag ? flag : null);
+        }
+    }
+
+    // Only the canonical 36 character form, which is what the backfill's regex accepts
+    private static UUID toUuid(String text) {
+        if (text.length() != 36) {
+            return null;
+        }
+        try {
+            return UUID.fromString(text);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private static String blankToNull(String field) {
+        return field == null || field.isBlank() ? null : field.strip();
+    }
+}
@@ -0,0 +1,18 @@
+package com.openforum.datalake.ingestor;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A JSON value as a slice of the bytes it was decoded from. Holding the slice
+ * lets the payload be stored without re-encoding it.
+ */
+public record RawJson(byte[] source, int offset, int length) {
+
+    public static RawJson of(byte[] json) {
+        return new RawJson(json, 0, json.length);
+    }
+
+    public String asString() {
+        return new String(source, offset, length, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,173 @@
+package com.openforum.datalake.ingestor.counters;
+
+import com.openforum.datalake.repository.PendingThreadReplyRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Holds reply counters of posts that were flushed before their thread existed,
+ * which happens whenever a {@code PostCreated} overtakes its
+ * {@code ThreadCreated} on another partition or import lane.
+ * <p>
+ * Memory is accounted at a fixed estimate per thread. When the buffer grows
+ * beyond {@code datalake.ingestion.thread-counters.orphans.max-bytes} its
+ * oldest half is spilled to {@code pending_thread_replies}, which also
+ * receives everything still buffered on shutdown. Counters of threads that do
+ * not appear within {@code orphans.ttl-minutes} are dropped, in memory and in
+ * the spill table alike. A crash loses what was buffered but not spilled.
+ */
+@Component
+public class OrphanReplyBuffer {
+
+    /**
+     * Heap retained per buffered thread: the map node, UUID key, the
+     * {@link OrphanedReplies} and {@link ThreadCounterDelta} records and up to
+     * three {@link Instant}s, with object headers and padding.
+     */
+    static final long ENTRY_BYTES = 200;
+
+    private static final Logger log = LoggerFactory.getLogger(OrphanReplyBuffer.class);
+
+    private final PendingThreadReplyRepository repository;
+    private final long maxBytes;
+    private final Duration ttl;
+    private final Clock clock;
+    private final Map<UUID, OrphanedReplies> orphans = new HashMap<>();
+    private final Counter expired;
+
+    @Autowired
+    public OrphanReplyBuffer(PendingThreadReplyRepository repository, MeterRegistry registry,
+            @Value("${datalake.ingestion.thread-counters.orphans.max-bytes:16777216}") long maxBytes,
+            @Value("${datalake.ingestion.thread-counters.orphans.ttl-minutes:1440}") long ttlMinutes) {
+        this(repository, registry, maxBytes, Duration.ofMinutes(ttlMinutes), Clock.systemUTC());
+    }
+
+    OrphanReplyBuffer(PendingThreadReplyRepository repository, MeterRegistry registry, long maxBytes,
+            Duration ttl, Clock clock) {
+        this.repository = repository;
+        this.maxBytes = maxBytes;
+        this.ttl = ttl;
+        this.clock = clock;
+        Gauge.builder("datalake.ingest.orphans", this, OrphanReplyBuffer::bufferedThreads)
+                .description("Threads with replies buffered in memory until the thread is created")
+                .register(registry);
+        Gauge.builder("datalake.ingest.orphans.memory", this, OrphanReplyBuffer::bufferedBytes)
+                .description("Estimated heap held by buffered orphan replies")
+                .baseUnit("bytes")
+                .register(registry);
+        this.expired = Counter.builder("datalake.ingest.orphans.expired")
+                .description("Threads whose buffered replies expired before the thread was created")
+                .register(registry);
+    }
+
+    /**
+     * Buffers counters of threads that do not exist yet, spilling the oldest
+     * entries if the memory budget is exceeded.
+     */
+    public synchronized void park(Map<UUID, ThreadCounterDelta> deltas) {
+        Instant now = clock.instant();
+        deltas.forEach((threadId, delta) -> orphans.merge(threadId, new OrphanedReplies(delta, now),
+                OrphanedReplies::plus));
+        if (bufferedBytes() > maxBytes) {
+            spillOldest(orphans.size() - (int) (maxBytes / 2 / ENTRY_BYTES));
+        }
+    }
+
+    /**
+     * Removes the counters buffered or spilled for threads that were just
+     * created.
+     */
+    public synchronized Map<UUID, ThreadCounterDelta> claim(Collection<UUID> threadIds) {
+        if (threadIds.isEmpty()) {
+            return Map.of();
+        }
+        Map<UUID, ThreadCounterDelta> claimed = new HashMap<>(repository.claim(threadIds));
+        for (UUID threadId : threadIds) {
+            OrphanedReplies orphan = orphans.remove(threadId);
+            if (orphan != null) {
+                claimed.merge(threadId, orphan.delta(), ThreadCounterDelta::plus);
+            }
+        }
+        return claimed;
+    }
+
+    /**
+     * Removes the counters of every buffered thread that exists by now,
+     * including threads created by other instances, and drops buffered and
+     * spilled counters past their time to live. Spilled counters of existing
+     * threads are adopted by
+     * {@link com.openforum.datalake.repository.ThreadCounterWriter#adoptPendingReplies}.
+     */
+    public synchronized Map<UUID, ThreadCounterDelta> claimResolved() {
+        Map<UUID, ThreadCounterDelta> claimed = new HashMap<>();
+        for (UUID threadId : repository.findExistingThreads(List.copyOf(orphans.keySet()))) {
+            claimed.merge(threadId, orphans.remove(threadId).delta(), ThreadCounterDelta::plus);
+        }
+
+        Instant cutoff = clock.instant().minus(ttl);
+        int before = orphans.size();
+        orphans.values().removeIf(orphan -> orphan.firstSeenAt().isBefore(cutoff));
+        int dropped = before - orphans.size() + repository.expire(cutoff);
+        if (dropped > 0) {
+            expired.increment(dropped);
+            log.warn("Dropped reply counters of {} threads not created within {}", dropped, ttl);
+        }
+        return claimed;
+    }
+
+    /**
+     * Moves everything buffered to the spill table.
+     *
+     * @return false if the spill failed and counters are still buffered
+     */
+    public synchronized boolean spillAll() {
+        return spillOldest(orphans.size());
+    }
+
+    private boolean spillOldest(int count) {
+        if (count <= 0) {
+            return true;
+        }
+        List<Map.Entry<UUID, OrphanedReplies>> oldest = new ArrayList<>(orphans.entrySet());
+        oldest.sort(Map.Entry.comparingByValue(Comparator.comparing(OrphanedReplies::firstSeenAt)));
+        Map<UUID, OrphanedReplies> spilled = new HashMap<>();
+        for (Map.Entry<UUID, OrphanedReplies> entry : oldest.subList(0, Math.min(count, oldest.size()))) {
+            spilled.put(entry.getKey(), entry.getValue());
+        }
+        try {
+            repository.spill(spilled);
+        } catch (RuntimeException e) {
+            // Stay over budget rather than lose counters; the next park retries
+            log.warn("Could not spill {} orphan reply counters", spilled.size(), e);
+            return false;
+        }
+        orphans.keySet().removeAll(spilled.keySet());
+        log.debug("Spilled reply counters of {} threads to pending_thread_replies", spilled.size());
+        return true;
+    }
+
+    synchronized int bufferedThreads() {
+        return orphans.size();
+    }
+
+    synchronized long bufferedBytes() {
+        return orphans.size() * ENTRY_BYTES;
+    }
+}
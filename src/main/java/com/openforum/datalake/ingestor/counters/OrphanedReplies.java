@@ -0,0 +1,17 @@
+package com.openforum.datalake.ingestor.counters;
+
+import java.time.Instant;
+
+/**
+ * Reply counters of a thread that does not exist yet.
+ *
+ * @param firstSeenAt when the first of these replies was found without its
+ *                    thread; entries expire relative to it
+ */
+public record OrphanedReplies(ThreadCounterDelta delta, Instant firstSeenAt) {
+
+    public OrphanedReplies plus(OrphanedReplies other) {
+        return new OrphanedReplies(delta.plus(other.delta),
+                firstSeenAt.isBefore(other.firstSeenAt) ? firstSeenAt : other.firstSeenAt);
+    }
+}
@@ -0,0 +1,38 @@
+package com.openforum.datalake.ingestor.counters;
+
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Thread counter changes of one ingest transaction, collected to be applied
+ * in that transaction with
+ * {@link com.openforum.datalake.repository.ThreadCounterWriter#applyInTransaction}
+ * rather than through the write-behind {@link ThreadCounterBuffer}.
+ */
+public class ThreadCounterBatch implements ThreadCounterRecorder {
+
+    private final Map<UUID, ThreadCounterDelta> deltas = new HashMap<>();
+    private final Set<UUID> createdThreads = new HashSet<>();
+
+    @Override
+    public void recordReply(UUID threadId, Instant occurredAt, boolean countsForResponseTime) {
+        deltas.merge(threadId, ThreadCounterDelta.reply(occurredAt, countsForResponseTime), ThreadCounterDelta::plus);
+    }
+
+    @Override
+    public void recordThreadCreated(UUID threadId) {
+        createdThreads.add(threadId);
+    }
+
+    public Map<UUID, ThreadCounterDelta> deltas() {
+        return deltas;
+    }
+
+    public Set<UUID> createdThreads() {
+        return createdThreads;
+    }
+}
@@ -0,0 +1,173 @@
+package com.openforum.datalake.ingestor.counters;
+
+import com.openforum.datalake.repository.ThreadCounterWriter;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Write-behind buffer for {@code dim_threads} reply counters. Replies to the
+ * same thread are coalesced in memory and flushed as a single relative
+ * {@code UPDATE} per thread per interval, instead of a read-modify-write of
+ * the whole row for every post.
+ * <p>
+ * Replies recorded inside a transaction only reach the buffer once it
+ * commits, so a rolled back batch is never counted. Pending counters are
+ * flushed on shutdown; a crash loses at most one interval of counter updates
+ * (the facts themselves are unaffected). Readers of {@code reply_count} may
+ * lag by up to {@code datalake.ingestion.thread-counters.flush-interval-ms}.
+ * <p>
+ * Counters of threads that do not exist yet are handed to the
+ * {@link OrphanReplyBuffer} and merged into the flush that follows the
+ * thread's creation. Threads created by other instances are picked up every
+ * {@code orphans.recheck-interval-ms}.
+ * <p>
+ * With {@code datalake.ingestion.offsets.store=postgres} ingestion bypasses
+ * this buffer and applies its counters in the ingest transaction, see
+ * {@link ThreadCounterBatch}; counters it spills are still adopted from here.
+ */
+@Component
+public class ThreadCounterBuffer implements ThreadCounterRecorder {
+
+    private static final Logger log = LoggerFactory.getLogger(ThreadCounterBuffer.class);
+
+    private final ThreadCounterWriter writer;
+    private final OrphanReplyBuffer orphans;
+    private final ConcurrentHashMap<UUID, ThreadCounterDelta> pending = new ConcurrentHashMap<>();
+    private final Set<UUID> createdThreads = ConcurrentHashMap.newKeySet();
+
+    public ThreadCounterBuffer(ThreadCounterWriter writer, OrphanReplyBuffer orphans) {
+        this.writer = writer;
+        this.orphans = orphans;
+    }
+
+    @Override
+    public void recordReply(UUID threadId, Instant occurredAt, boolean countsForResponseTime) {
+        ThreadCounterDelta delta = ThreadCounterDelta.reply(occurredAt, countsForResponseTime);
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            pending.merge(threadId, delta, ThreadCounterDelta::plus);
+            return;
+        }
+        transactionLocal().deltas().merge(threadId, delta, ThreadCounterDelta::plus);
+    }
+
+    /**
+     * Notes that {@code threadId} was created, so that the next flush adopts
+     * replies that arrived before it.
+     */
+    @Override
+    public void recordThreadCreated(UUID threadId) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            createdThreads.add(threadId);
+            return;
+        }
+        transactionLocal().createdThreads().add(threadId);
+    }
+
+    private TransactionLocal transactionLocal() {
+        TransactionLocal local = (TransactionLocal) TransactionSynchronizationManager.getResource(this);
+        if (local == null) {
+            TransactionLocal state = new TransactionLocal(new HashMap<>(), new HashSet<>());
+            TransactionSynchronizationManager.bindResource(this, state);
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    state.deltas().forEach((threadId, delta) -> pending.merge(threadId, delta,
+                            ThreadCounterDelta::plus));
+                    createdThreads.addAll(state.createdThreads());
+                }
+
+                @Override
+                public void afterCompletion(int status) {
+                    TransactionSynchronizationManager.unbindResourceIfPossible(ThreadCounterBuffer.this);
+                }
+            });
+            local = state;
+        }
+        return local;
+    }
+
+    /**
+     * Writes all pending counters, together with the orphaned counters of
+     * threads created since the last flush.
+     *
+     * @return threads that did not exist when flushed; their counters are
+     *         parked in the {@link OrphanReplyBuffer}
+     */
+    @Scheduled(fixedDelayString = "${datalake.ingestion.thread-counters.flush-interval-ms:1000}")
+    public synchronized List<UUID> flush() {
+        if (pending.isEmpty() && createdThreads.isEmpty()) {
+            return List.of();
+        }
+        // Threads noted after this drain were possibly missing from this flush; the next flush adopts their replies
+        List<UUID> created = new ArrayList<>();
+        for (UUID threadId : createdThreads) {
+            if (createdThreads.remove(threadId)) {
+                created.add(threadId);
+            }
+        }
+        Map<UUID, ThreadCounterDelta> batch = new HashMap<>(orphans.claim(created));
+        for (UUID threadId : pending.keySet()) {
+            // A reply recorded after this remove starts a fresh delta for the next flush
+            ThreadCounterDelta delta = pending.remove(threadId);
+            if (delta != null) {
+                batch.merge(threadId, delta, ThreadCounterDelta::plus);
+            }
+        }
+        List<UUID> missing;
+        try {
+            missing = writer.apply(batch);
+        } catch (RuntimeException e) {
+            // Put the counters back so the next flush retries them
+            batch.forEach((threadId, delta) -> pending.merge(threadId, delta, ThreadCounterDelta::plus));
+            throw e;
+        }
+        if (!missing.isEmpty()) {
+            Map<UUID, ThreadCounterDelta> orphaned = new HashMap<>();
+            missing.forEach(threadId -> orphaned.put(threadId, batch.get(threadId)));
+            orphans.park(orphaned);
+            log.debug("Parked reply counters for {} unknown threads", missing.size());
+        }
+        return missing;
+    }
+
+    /**
+     * Applies the spilled counters of threads that exist by now, whoever
+     * created them, and queues the buffered ones for the next flush.
+     */
+    @Scheduled(fixedDelayString = "${datalake.ingestion.thread-counters.orphans.recheck-interval-ms:60000}")
+    public synchronized void adoptResolvedOrphans() {
+        int adopted = writer.adoptPendingReplies();
+        if (adopted > 0) {
+            log.debug("Applied spilled reply counters of {} threads", adopted);
+        }
+        orphans.claimResolved().forEach((threadId, delta) -> pending.merge(threadId, delta, ThreadCounterDelta::plus));
+    }
+
+    @PreDestroy
+    void flushOnShutdown() {
+        flush();
+        orphans.spillAll();
+    }
+
+    int pendingThreads() {
+        return pending.size();
+    }
+
+    private record TransactionLocal(Map<UUID, ThreadCounterDelta> deltas, Set<UUID> createdThreads) {
+    }
+}
@@ -0,0 +1,37 @@
+package com.openforum.datalake.ingestor.counters;
+
+import java.time.Instant;
+
+/**
+ * Coalesced reply activity for one thread since the last flush.
+ *
+ * @param replies        number of replies to add to {@code reply_count}
+ * @param lastActivityAt latest reply time seen
+ * @param firstReplyAt   earliest reply time that counts towards the first
+ *                       response time, or {@code null} if none does (imports)
+ */
+public record ThreadCounterDelta(int replies, Instant lastActivityAt, Instant firstReplyAt) {
+
+    public static ThreadCounterDelta reply(Instant occurredAt, boolean countsForResponseTime) {
+        return new ThreadCounterDelta(1, occurredAt, countsForResponseTime ? occurredAt : null);
+    }
+
+    public ThreadCounterDelta plus(ThreadCounterDelta other) {
+        return new ThreadCounterDelta(replies + other.replies, later(lastActivityAt, other.lastActivityAt),
+                earlier(firstReplyAt, other.firstReplyAt));
+    }
+
+    private static Instant later(Instant a, Instant b) {
+        if (a == null || b == null) {
+            return a == null ? b : a;
+        }
+        return a.isAfter(b) ? a : b;
+    }
+
+    private static Instant earlier(Instant a, Instant b) {
+        if (a == null || b == null) {
+            return a == null ? b : a;
+        }
+        return a.isBefore(b) ? a : b;
+    }
+}
@@ -0,0 +1,24 @@
+package com.openforum.datalake.ingestor.counters;
+
+import java.time.Instant;
+import java.util.UUID;
+
+/**
+ * Receives the thread counter changes of ingested events.
+ */
+public interface ThreadCounterRecorder {
+
+    /**
+     * Counts one reply to {@code threadId}.
+     *
+     * @param countsForResponseTime whether the reply may set the thread's first
+     *                              response time (false for imported history)
+     */
+    void recordReply(UUID threadId, Instant occurredAt, boolean countsForResponseTime);
+
+    /**
+     * Notes that {@code threadId} was created, so that replies that arrived
+     * before it are adopted.
+     */
+    void recordThreadCreated(UUID threadId);
+}
@@ -0,0 +1,112 @@
+package com.openforum.datalake.ingestor.dedupe;
+
+import com.openforum.datalake.repository.ProcessedEventLedger;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Decides whether events were already ingested. An in-memory Bloom filter
+ * answers the common "never seen" case without a round trip; only possible
+ * hits are confirmed against the {@code processed_events} ledger.
+ * <p>
+ * The filter is rebuilt from the ledger at startup. Until that completes every
+ * lookup goes to the ledger. Afterwards it only holds the events this instance
+ * recorded, so an event another instance processed since, say before a
+ * rebalance, tests as never seen; the fact insert's {@code ON CONFLICT DO
+ * NOTHING} catches it, and side effects are only applied for facts actually
+ * inserted.
+ */
+@Component
+public class EventDeduplicator {
+
+    private static final Logger log = LoggerFactory.getLogger(EventDeduplicator.class);
+
+    private final ProcessedEventLedger ledger;
+    private final UuidBloomFilter filter;
+    private final long expectedEvents;
+    private final AtomicLong insertions = new AtomicLong();
+    private final AtomicBoolean capacityWarningLogged = new AtomicBoolean();
+    private volatile boolean filterReady;
+
+    public EventDeduplicator(ProcessedEventLedger ledger,
+            @Value("${datalake.ingestion.dedupe.expected-events:10000000}") long expectedEvents,
+            @Value("${datalake.ingestion.dedupe.false-positive-rate:0.001}") double falsePositiveRate) {
+        this.ledger = ledger;
+        this.expectedEvents = expectedEvents;
+        this.filter = UuidBloomFilter.create(expectedEvents, falsePositiveRate);
+    }
+
+    @PostConstruct
+    void rebuildInBackground() {
+        Thread.ofVirtual().name("dedupe-filter-rebuild").start(this::rebuildFilter);
+    }
+
+    /**
+     * Loads every ledger entry into the filter. Ids recorded concurrently are
+     * added by {@link #markProcessed} as well, so nothing is missed.
+     */
+    public void rebuildFilter() {
+        long start = System.nanoTime();
+        try {
+            AtomicLong loaded = new AtomicLong();
+            ledger.forEachEventId(eventId -> {
+                filter.put(eventId);
+                loaded.incrementAndGet();
+            });
+            insertions.addAndGet(loaded.get());
+            filterReady = true;
+            log.info("Dedupe filter rebuilt with {} event ids ({} bits, {} hashes) in {} ms", loaded.get(),
+                    filter.bitCount(), filter.hashCount(), (System.nanoTime() - start) / 1_000_000);
+        } catch (RuntimeException e) {
+            log.error("Failed to rebuild dedupe filter; falling back to ledger lookups", e);
+        }
+    }
+
+    public boolean isDuplicate(UUID eventId) {
+        return !findDuplicates(List.of(eventId)).isEmpty();
+    }
+
+    /**
+     * @return the subset of {@code eventIds} that has already been processed
+     */
+    public Set<UUID> findDuplicates(Collection<UUID> eventIds) {
+        if (!filterReady) {
+            return ledger.findRecorded(eventIds);
+        }
+        List<UUID> possibleHits = new ArrayList<>();
+        for (UUID eventId : eventIds) {
+            if (filter.mightContain(eventId)) {
+                possibleHits.add(eventId);
+            }
+        }
+        return possibleHits.isEmpty() ? Set.of() : ledger.findRecorded(possibleHits);
+    }
+
+    /**
+     * Records events as processed. Must run in the same transaction as the writes
+     * they guard; if that transaction rolls back the filter merely keeps a false
+     * positive, which the ledger check resolves.
+     */
+    public void markProcessed(Collection<UUID> eventIds) {
+        if (eventIds.isEmpty()) {
+            return;
+        }
+        ledger.recordAll(eventIds);
+        eventIds.forEach(filter::put);
+        if (insertions.addAndGet(eventIds.size()) > expectedEvents && capacityWarningLogged.compareAndSet(false, true)) {
+            log.warn("Dedupe filter holds more than the {} expected event ids; false positive rate will rise. "
+                    + "Increase datalake.ingestion.dedupe.expected-events.", expectedEvents);
+        }
+    }
+}
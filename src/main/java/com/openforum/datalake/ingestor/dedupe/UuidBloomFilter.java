@@ -0,0 +1,85 @@
+package com.openforum.datalake.ingestor.dedupe;
+
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Thread-safe Bloom filter specialised for UUID keys. A negative answer is
+ * definitive; a positive answer means "possibly seen" and must be confirmed
+ * against the ledger.
+ */
+public class UuidBloomFilter {
+
+    private final AtomicLongArray words;
+    private final long bitCount;
+    private final int hashCount;
+
+    UuidBloomFilter(long bitCount, int hashCount) {
+        long wordCount = (bitCount + 63) >>> 6;
+        if (wordCount > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Bloom filter too large: " + bitCount + " bits");
+        }
+        this.words = new AtomicLongArray((int) wordCount);
+        this.bitCount = wordCount << 6;
+        this.hashCount = hashCount;
+    }
+
+    /**
+     * Sizes the filter for the given number of insertions and target false positive rate.
+     */
+    public static UuidBloomFilter create(long expectedInsertions, double falsePositiveRate) {
+        if (expectedInsertions <= 0) {
+            throw new IllegalArgumentException("expectedInsertions must be positive");
+        }
+        if (falsePositiveRate <= 0 || falsePositiveRate >= 1) {
+            throw new IllegalArgumentException("falsePositiveRate must be in (0, 1)");
+        }
+        long bits = (long) Math.ceil(-expectedInsertions * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+        int hashes = Math.max(1, (int) Math.round((double) bits / expectedInsertions * Math.log(2)));
+        return new UuidBloomFilter(bits, hashes);
+    }
+
+    public void put(UUID value) {
+        long h1 = mix(value.getMostSignificantBits() ^ Long.rotateLeft(value.getLeastSignificantBits(), 32));
+        long h2 = mix(value.getLeastSignificantBits() + 0x9E3779B97F4A7C15L) | 1L;
+        for (int i = 0; i < hashCount; i++) {
+            long bit = Long.remainderUnsigned(h1 + i * h2, bitCount);
+            int word = (int) (bit >>> 6);
+            long mask = 1L << bit;
+            long current = words.get(word);
+            while ((current & mask) == 0 && !words.compareAndSet(word, current, current | mask)) {
+                current = words.get(word);
+            }
+        }
+    }
+
+    public boolean mightContain(UUID value) {
+        long h1 = mix(value.getMostSignificantBits() ^ Long.rotateLeft(value.getLeastSignificantBits(), 32));
+        long h2 = mix(value.getLeastSignificantBits() + 0x9E3779B97F4A7C15L) | 1L;
+        for (int i = 0; i < hashCount; i++) {
+            long bit = Long.remainderUnsigned(h1 + i * h2, bitCount);
+            if ((words.get((int) (bit >>> 6)) & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public long bitCount() {
+        return bitCount;
+    }
+
+    public int hashCount() {
+        return hashCount;
+    }
+
+    // MurmurHash3 64-bit finaliser
+    private static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
@@ -0,0 +1,22 @@
+package com.openforum.datalake.ingestor.events;
+
+import java.util.UUID;
+
+/**
+ * Typed payload of a forum event, decoded straight from the Kafka record bytes.
+ */
+public sealed interface ForumEvent permits ThreadCreated, PostCreated, ReactionAdded, SubscriptionCreated {
+
+    /**
+     * The author recorded as {@code user_id} on the fact row, if the payload has one.
+     */
+    default UUID authorId() {
+        return null;
+    }
+
+    /**
+     * The thread or target whose events must be applied in order. Events with
+     * different keys may be processed concurrently.
+     */
+    UUID orderingKey();
+}
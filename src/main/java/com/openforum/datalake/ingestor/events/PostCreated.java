@@ -1,12 +1,21 @@
 package com.openforum.datalake.ingestor.events;
 
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+
 import java.time.Instant;
 import java.util.UUID;
 
+// Also the payload shape of PostImported
+@JsonIgnoreProperties(ignoreUnknown = true)
 public record PostCreated(
                 UUID postId,
                 UUID threadId,
                 UUID authorId,
                 String content,
-                Instant createdAt) {
+                Instant createdAt) implements ForumEvent {
+
+    @Override
+    public UUID orderingKey() {
+        return threadId;
+    }
 }
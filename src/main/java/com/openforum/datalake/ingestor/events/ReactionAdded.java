@@ -1,12 +1,21 @@
 package com.openforum.datalake.ingestor.events;
 
+import com.fasterxml.jackson.annotation.JsonAlias;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+
 import java.time.Instant;
 import java.util.UUID;
 
+@JsonIgnoreProperties(ignoreUnknown = true)
 public record ReactionAdded(
                 UUID reactionId,
                 UUID targetId, // Can be threadId or postId
-                UUID userId,
-                String reactionType, // LIKE, UPVOTE, etc.
-                Instant occurredAt) {
+                @JsonAlias("reactorId") UUID userId,
+                @JsonAlias("type") String reactionType, // LIKE, UPVOTE, etc.
+                Instant occurredAt) implements ForumEvent {
+
+    @Override
+    public UUID orderingKey() {
+        return targetId;
+    }
 }
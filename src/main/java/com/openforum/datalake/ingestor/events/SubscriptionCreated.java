@@ -1,12 +1,21 @@
 package com.openforum.datalake.ingestor.events;
 
-import java.time.LocalDateTime;
+import com.fasterxml.jackson.annotation.JsonAlias;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+
+import java.time.Instant;
 import java.util.UUID;
 
+@JsonIgnoreProperties(ignoreUnknown = true)
 public record SubscriptionCreated(
         UUID subscriptionId,
         String tenantId,
-        UUID userId,
+        @JsonAlias("subscriberId") UUID userId,
         UUID targetId, // Thread ID usually
-        LocalDateTime createdAt) {
+        Instant createdAt) implements ForumEvent {
+
+    @Override
+    public UUID orderingKey() {
+        return targetId;
+    }
 }
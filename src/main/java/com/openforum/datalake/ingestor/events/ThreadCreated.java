@@ -1,9 +1,13 @@
 package com.openforum.datalake.ingestor.events;
 
-import java.time.LocalDateTime;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+
+import java.time.Instant;
 import java.util.List;
 import java.util.UUID;
 
+// Also the payload shape of ThreadImported
+@JsonIgnoreProperties(ignoreUnknown = true)
 public record ThreadCreated(
         UUID threadId,
         String tenantId,
@@ -11,5 +15,10 @@ public record ThreadCreated(
         UUID authorId,
         String title,
         List<String> tags,
-        LocalDateTime createdAt) {
+        Instant createdAt) implements ForumEvent {
+
+    @Override
+    public UUID orderingKey() {
+        return threadId;
+    }
 }
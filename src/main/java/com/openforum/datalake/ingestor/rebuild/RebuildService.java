@@ -0,0 +1,370 @@
+package com.openforum.datalake.ingestor.rebuild;
+
+import com.openforum.datalake.domain.DimThread;
+import com.openforum.datalake.domain.FactActivity;
+import com.openforum.datalake.dto.RebuildStatus;
+import com.openforum.datalake.dto.RebuildStatus.Phase;
+import com.openforum.datalake.ingestor.DecodedEvent;
+import com.openforum.datalake.ingestor.EventIngestionService;
+import com.openforum.datalake.ingestor.ForumEventDecoder;
+import com.openforum.datalake.ingestor.KafkaEventConsumer;
+import com.openforum.datalake.ingestor.counters.OrphanReplyBuffer;
+import com.openforum.datalake.ingestor.counters.ThreadCounterBuffer;
+import com.openforum.datalake.ingestor.offsets.PostgresOffsetStore;
+import com.openforum.datalake.ingestor.retry.FailedEventRouter;
+import com.openforum.datalake.repository.FactPartitionRepository;
+import com.openforum.datalake.repository.RebuildCopyWriter;
+import com.openforum.datalake.repository.RebuildTableRepository;
+import org.apache.kafka.clients.admin.Admin;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.ConsumerRecords;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.common.TopicPartition;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.kafka.config.KafkaListenerEndpointRegistry;
+import org.springframework.kafka.core.ConsumerFactory;
+import org.springframework.kafka.core.KafkaAdmin;
+import org.springframework.kafka.listener.MessageListenerContainer;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Recomputes {@code dim_threads} and {@code fact_activity} from the whole of
+ * {@code forum-events-v1}, for when the mapping of events to rows changes.
+ * <p>
+ * A dedicated consumer in group {@code datalake.rebuild.group-id} reads every
+ * partition from the beginning and writes the rows into the shadow tables of
+ * the {@link RebuildTableRepository}, one {@code COPY} batch per lane of
+ * partitions per poll, lanes in parallel. It never reads past the position of
+ * the live consumer, so every event is either in the shadow tables or still
+ * ahead of the live consumer. Once the copy is within
+ * {@code datalake.rebuild.catch-up-records} of it, this instance's listener
+ * containers are paused, pending thread counters are flushed, the copy
+ * catches up exactly, reply counters are derived from the copied facts and
+ * the shadow tables are swapped in. Readers never see a half-built table;
+ * ingestion resumes on the new tables where it paused.
+ * <p>
+ * Only this instance's listeners are paused, so other instances must stop
+ * consuming before a rebuild. Events still waiting in the retry topics are
+ * applied again after the swap; their facts are deduplicated by event id but
+ * a retried reply is counted twice.
+ */
+@Component
+public class RebuildService {
+
+    private static final Logger log = LoggerFactory.getLogger(RebuildService.class);
+
+    private static final Duration POLL_TIMEOUT = Duration.ofSeconds(1);
+
+    private final ConsumerFactory<String, byte[]> consumerFactory;
+    private final KafkaAdmin kafkaAdmin;
+    private final KafkaListenerEndpointRegistry listenerRegistry;
+    private final ForumEventDecoder forumEventDecoder;
+    private final EventIngestionService eventIngestionService;
+    private final RebuildCopyWriter copyWriter;
+    private final RebuildTableRepository tableRepository;
+    private final FactPartitionRepository partitionRepository;
+    private final PostgresOffsetStore offsetStore;
+    private final ThreadCounterBuffer threadCounterBuffer;
+    private final OrphanReplyBuffer orphanReplyBuffer;
+    private final boolean liveOffsetsInPostgres;
+    private final String groupId;
+    private final int parallelism;
+    private final int maxPollRecords;
+    private final long catchUpRecords;
+    private final long pauseTimeoutMillis;
+    private final long lockTimeoutMillis;
+
+    private final AtomicBoolean running = new AtomicBoolean();
+    private final AtomicLong recordsRead = new AtomicLong();
+    private final AtomicLong factsWritten = new AtomicLong();
+    private final AtomicLong failedEvents = new AtomicLong();
+    private volatile Phase phase = Phase.IDLE;
+    private volatile Instant startedAt;
+    private volatile Instant finishedAt;
+    private volatile long remainingRecords;
+    private volatile String error;
+
+    public RebuildService(ConsumerFactory<String, byte[]> consumerFactory, KafkaAdmin kafkaAdmin,
+            KafkaListenerEndpointRegistry listenerRegistry, ForumEventDecoder forumEventDecoder,
+            EventIngestionService eventIngestionService, RebuildCopyWriter copyWriter,
+            RebuildTableRepository tableRepository, FactPartitionRepository partitionRepository,
+            PostgresOffsetStore offsetStore, ThreadCounterBuffer threadCounterBuffer,
+            OrphanReplyBuffer orphanReplyBuffer,
+            @Value("${datalake.ingestion.offsets.store:kafka}") String liveOffsetStore,
+            @Value("${datalake.rebuild.group-id:datalake-rebuild}") String groupId,
+            @Value("${datalake.rebuild.parallelism:4}") int parallelism,
+            @Value("${datalake.rebuild.max-poll-records:5000}") int maxPollRecords,
+            @Value("${datalake.rebuild.catch-up-records:1000}") long catchUpRecords,
+            @Value("${datalake.rebuild.pause-timeout-ms:30000}") long pauseTimeoutMillis,
+            @Value("${datalake.rebuild.lock-timeout-ms:5000}") long lockTimeoutMillis) {
+        this.consumerFactory = consumerFactory;
+        this.kafkaAdmin = kafkaAdmin;
+        this.listenerRegistry = listenerRegistry;
+        this.forumEventDecoder = forumEventDecoder;
+        this.eventIngestionService = eventIngestionService;
+        this.copyWriter = copyWriter;
+        this.tableRepository = tableRepository;
+        this.partitionRepository = partitionRepository;
+        this.offsetStore = offsetStore;
+        this.threadCounterBuffer = threadCounterBuffer;
+        this.orphanReplyBuffer = orphanReplyBuffer;
+        this.liveOffsetsInPostgres = "postgres".equalsIgnoreCase(liveOffsetStore);
+        this.groupId = groupId;
+        this.parallelism = Math.max(1, parallelism);
+        this.maxPollRecords = maxPollRecords;
+        this.catchUpRecords = catchUpRecords;
+        this.pauseTimeoutMillis = pauseTimeoutMillis;
+        this.lockTimeoutMillis = lockTimeoutMillis;
+    }
+
+    /**
+     * Starts a rebuild in the background.
+     *
+     * @throws IllegalStateException if one is already running
+     */
+    public RebuildStatus start() {
+        if (!running.compareAndSet(false, true)) {
+            throw new IllegalStateException("A rebuild is already running");
+        }
+        recordsRead.set(0);
+        factsWritten.set(0);
+        failedEvents.set(0);
+        remainingRecords = 0;
+        error = null;
+        finishedAt = null;
+        startedAt = Instant.now();
+        phase = Phase.COPYING;
+        Thread.ofPlatform().name("rebuild").start(this::runRebuild);
+        return status();
+    }
+
+    public RebuildStatus status() {
+        return new RebuildStatus(phase, startedAt, finishedAt, recordsRead.get(), factsWritten.get(),
+                failedEvents.get(), remainingRecords, error);
+    }
+
+    private void runRebuild() {
+        try {
+            rebuild();
+            phase = Phase.COMPLETED;
+        } catch (Exception e) {
+            log.error("Rebuild failed; the live tables are unchanged", e);
+            error = String.valueOf(e.getMessage());
+            phase = Phase.FAILED;
+        } finally {
+            finishedAt = Instant.now();
+            running.set(false);
+        }
+    }
+
+    void rebuild() throws Exception {
+        if (!partitionRepository.findInterruptedDrains().isEmpty()) {
+            throw new IllegalStateException("A partition drain is unfinished; run the partition maintenance first");
+        }
+        tableRepository.createShadowTables(partitionRepository.findAttachedMonths());
+
+        try (Consumer<String, byte[]> consumer = createConsumer();
+                Admin admin = Admin.create(kafkaAdmin.getConfigurationProperties());
+                ExecutorService lanes = Executors.newThreadPerTaskExecutor(
+                        Thread.ofVirtual().name("rebuild-lane-", 0).factory())) {
+            List<TopicPartition> partitions = consumer.partitionsFor(FailedEventRouter.MAIN_TOPIC).stream()
+                    .map(info -> new TopicPartition(info.topic(), info.partition()))
+                    .toList();
+            consumer.assign(partitions);
+            consumer.seekToBeginning(partitions);
+            consumer.beginningOffsets(partitions).forEach((partition, offset) -> {
+                if (offset > 0) {
+                    log.warn("{} starts at offset {}; events before it are no longer in Kafka and will be missing",
+                            partition, offset);
+                }
+            });
+            log.info("Rebuilding from {} partitions of {} with {} lanes", partitions.size(),
+                    FailedEventRouter.MAIN_TOPIC, parallelism);
+
+            Map<TopicPartition, Long> limits;
+            do {
+                limits = livePositions(admin, partitions);
+                copy(consumer, lanes, limits);
+            } while (remainingRecords > catchUpRecords);
+
+            phase = Phase.SWAPPING;
+            List<MessageListenerContainer> paused = pauseLiveConsumers();
+            try {
+                // Counters of events the live consumer has applied belong to the old tables
+                threadCounterBuffer.flush();
+                if (!orphanReplyBuffer.spillAll()) {
+                    throw new IllegalStateException("Could not spill orphaned reply counters");
+                }
+                limits = livePositions(admin, partitions);
+                do {
+                    copy(consumer, lanes, limits);
+                } while (remainingRecords > 0);
+                int pendingThreads = tableRepository.finishShadowTables();
+                tableRepository.swap(lockTimeoutMillis);
+                log.info("Swapped in rebuilt tables: {} records, {} facts, {} threads with pending replies, "
+                        + "{} failed events", recordsRead.get(), factsWritten.get(), pendingThreads,
+                        failedEvents.get());
+            } finally {
+                paused.forEach(MessageListenerContainer::resume);
+            }
+        }
+    }
+
+    /**
+     * Copies one poll, stopping every partition at its limit, and commits the
+     * rebuild group's positions so its lag can be monitored.
+     */
+    private void copy(Consumer<String, byte[]> consumer, ExecutorService lanes, Map<TopicPartition, Long> limits)
+            throws InterruptedException {
+        Set<TopicPartition> behind = new HashSet<>();
+        Set<TopicPartition> caughtUp = new HashSet<>();
+        for (TopicPartition partition : consumer.assignment()) {
+            (consumer.position(partition) < limits.getOrDefault(partition, 0L) ? behind : caughtUp).add(partition);
+        }
+        consumer.pause(caughtUp);
+        consumer.resume(behind);
+
+        ConsumerRecords<String, byte[]> records = consumer.poll(POLL_TIMEOUT);
+        List<List<ConsumerRecord<String, byte[]>>> shards = new ArrayList<>();
+        for (int i = 0; i < parallelism; i++) {
+            shards.add(new ArrayList<>());
+        }
+        Map<TopicPartition, OffsetAndMetadata> nextOffsets = new HashMap<>();
+        for (TopicPartition partition : records.partitions()) {
+            long limit = limits.getOrDefault(partition, 0L);
+            List<ConsumerRecord<String, byte[]>> shard = shards.get(Math.floorMod(partition.partition(), parallelism));
+            for (ConsumerRecord<String, byte[]> record : records.records(partition)) {
+                if (record.offset() >= limit) {
+                    // Not applied by the live consumer yet; fetch it again once it has been
+                    consumer.seek(partition, record.offset());
+                    break;
+                }
+                shard.add(record);
+                nextOffsets.put(partition, new OffsetAndMetadata(record.offset() + 1));
+            }
+        }
+
+        List<Future<Integer>> results = new ArrayList<>();
+        for (List<ConsumerRecord<String, byte[]>> shard : shards) {
+            if (!shard.isEmpty()) {
+                results.add(lanes.submit(() -> copyLane(shard)));
+            }
+        }
+        for (Future<Integer> result : results) {
+            try {
+                factsWritten.addAndGet(result.get());
+            } catch (ExecutionException e) {
+                throw new IllegalStateException("Rebuild lane failed", e.getCause());
+            }
+        }
+        if (!nextOffsets.isEmpty()) {
+            consumer.commitSync(nextOffsets);
+        }
+
+        long remaining = 0;
+        for (TopicPartition partition : consumer.assignment()) {
+            remaining += Math.max(0, limits.getOrDefault(partition, 0L) - consumer.position(partition));
+        }
+        remainingRecords = remaining;
+    }
+
+    private int copyLane(List<ConsumerRecord<String, byte[]>> records) {
+        List<DimThread> threads = new ArrayList<>();
+        List<FactActivity> facts = new ArrayList<>(records.size());
+        for (ConsumerRecord<String, byte[]> record : records) {
+            recordsRead.incrementAndGet();
+            DecodedEvent event = decode(record);
+            if (event == null) {
+                continue;
+            }
+            try {
+                eventIngestionService.mapRows(event, threads, facts);
+            } catch (RuntimeException e) {
+                failedEvents.incrementAndGet();
+                log.warn("Skipping event {} that could not be mapped: {}", event.eventId(), e.getMessage());
+            }
+        }
+        return copyWriter.load(threads, facts);
+    }
+
+    private DecodedEvent decode(ConsumerRecord<String, byte[]> record) {
+        try {
+            return forumEventDecoder.decode(record.value());
+        } catch (IOException | IllegalArgumentException e) {
+            failedEvents.incrementAndGet();
+            log.warn("Skipping unreadable record {}-{}@{}: {}", record.topic(), record.partition(), record.offset(),
+                    e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * @return the next offset the live consumer will apply per partition;
+     *         partitions it has not consumed yet are absent
+     */
+    private Map<TopicPartition, Long> livePositions(Admin admin, List<TopicPartition> partitions)
+            throws InterruptedException, ExecutionException {
+        if (liveOffsetsInPostgres) {
+            return offsetStore.committedOffsets(KafkaEventConsumer.GROUP_ID, partitions);
+        }
+        Map<TopicPartition, Long> positions = new HashMap<>();
+        admin.listConsumerGroupOffsets(KafkaEventConsumer.GROUP_ID).partitionsToOffsetAndMetadata().get()
+                .forEach((partition, offset) -> {
+                    if (offset != null) {
+                        positions.put(partition, offset.offset());
+                    }
+                });
+        return positions;
+    }
+
+    /**
+     * Pauses every running listener container of this instance and waits until
+     * their in-flight polls have been committed.
+     */
+    private List<MessageListenerContainer> pauseLiveConsumers() throws InterruptedException {
+        List<MessageListenerContainer> containers = listenerRegistry.getListenerContainers().stream()
+                .filter(MessageListenerContainer::isRunning)
+                .toList();
+        containers.forEach(MessageListenerContainer::pause);
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(pauseTimeoutMillis);
+        while (!containers.stream().allMatch(MessageListenerContainer::isContainerPaused)) {
+            if (System.nanoTime() > deadline) {
+                containers.forEach(MessageListenerContainer::resume);
+                throw new IllegalStateException("Listener containers did not pause within " + pauseTimeoutMillis
+                        + " ms");
+            }
+            Thread.sleep(100);
+        }
+        log.info("Paused {} listener containers for the swap", containers.size());
+        return containers;
+    }
+
+    private Consumer<String, byte[]> createConsumer() {
+        Properties overrides = new Properties();
+        overrides.put(ConsumerConfig.ENABLE_AUTO_COMMIT_CONFIG, false);
+        overrides.put(ConsumerConfig.MAX_POLL_RECORDS_CONFIG, maxPollRecords);
+        return consumerFactory.createConsumer(groupId, null, "-rebuild", overrides);
+    }
+}
@@ -0,0 +1,57 @@
+package com.openforum.datalake.ingestor.retry;
+
+import com.openforum.datalake.dto.DeadLetterEvent;
+import com.openforum.datalake.ingestor.DecodedEvent;
+import com.openforum.datalake.ingestor.ForumEventDecoder;
+import com.openforum.datalake.repository.DeadLetterRepository;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.header.Headers;
+import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+
+/**
+ * Persists {@code forum-events-v1-dlt} to {@code dead_letter_events} so that
+ * failures can be inspected and replayed through
+ * {@link DeadLetterReplayService}.
+ */
+@Component
+public class DeadLetterConsumer {
+
+    private final ForumEventDecoder forumEventDecoder;
+    private final DeadLetterRepository deadLetterRepository;
+
+    public DeadLetterConsumer(ForumEventDecoder forumEventDecoder, DeadLetterRepository deadLetterRepository) {
+        this.forumEventDecoder = forumEventDecoder;
+        this.deadLetterRepository = deadLetterRepository;
+    }
+
+    @KafkaListener(id = "forum-events-dlt", topics = FailedEventRouter.DEAD_LETTER_TOPIC,
+            groupId = "datalake-dlt-group", autoStartup = "${datalake.ingestion.listeners.enabled:true}")
+    public void consumeDeadLetter(ConsumerRecord<String, byte[]> record) {
+        Headers headers = record.headers();
+        DecodedEvent event = tryDecode(record.value());
+        String originalTopic = FailedEventRouter.header(headers, FailedEventRouter.HEADER_ORIGINAL_TOPIC);
+        String originalPartition = FailedEventRouter.header(headers, FailedEventRouter.HEADER_ORIGINAL_PARTITION);
+        String originalOffset = FailedEventRouter.header(headers, FailedEventRouter.HEADER_ORIGINAL_OFFSET);
+        deadLetterRepository.save(new DeadLetterEvent(0,
+                originalTopic != null ? originalTopic : record.topic(),
+                originalPartition != null ? Integer.parseInt(originalPartition) : record.partition(),
+                originalOffset != null ? Long.parseLong(originalOffset) : record.offset(),
+                event != null ? event.eventId() : null,
+                event != null ? event.eventType() : null,
+                FailedEventRouter.header(headers, FailedEventRouter.HEADER_STAGE),
+                FailedEventRouter.header(headers, FailedEventRouter.HEADER_REASON),
+                FailedEventRouter.intHeader(headers, FailedEventRouter.HEADER_ATTEMPTS, 0),
+                null, null), record.key(), record.value());
+    }
+
+    private DecodedEvent tryDecode(byte[] message) {
+        try {
+            return forumEventDecoder.decode(message);
+        } catch (IOException | IllegalArgumentException e) {
+            return null;
+        }
+    }
+}
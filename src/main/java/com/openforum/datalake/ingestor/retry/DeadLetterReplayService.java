@@ -0,0 +1,86 @@
+package com.openforum.datalake.ingestor.retry;
+
+import com.openforum.datalake.dto.DeadLetterReplayResult;
+import com.openforum.datalake.repository.DeadLetterRepository;
+import com.openforum.datalake.repository.DeadLetterRepository.PendingReplay;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.kafka.KafkaException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Re-injects dead-lettered records into {@code forum-events-v1} once the cause
+ * of their failure is fixed. Records already ingested in the meantime are
+ * dropped by the deduplicator.
+ */
+@Service
+public class DeadLetterReplayService {
+
+    private static final Logger log = LoggerFactory.getLogger(DeadLetterReplayService.class);
+
+    private static final long SEND_TIMEOUT_SECONDS = 30;
+
+    private final DeadLetterRepository deadLetterRepository;
+    private final FailedEventRouter failedEventRouter;
+    private final TransactionTemplate transactionTemplate;
+    private final int batchSize;
+
+    public DeadLetterReplayService(DeadLetterRepository deadLetterRepository, FailedEventRouter failedEventRouter,
+            PlatformTransactionManager transactionManager,
+            @Value("${datalake.ingestion.retry.replay-batch-size:500}") int batchSize) {
+        this.deadLetterRepository = deadLetterRepository;
+        this.failedEventRouter = failedEventRouter;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.batchSize = Math.max(1, batchSize);
+    }
+
+    /**
+     * Replays up to {@code limit} records, oldest first, in batches. Each batch
+     * is published and then marked replayed in one transaction, so a failed
+     * publish leaves the batch pending. Concurrent replays skip each other's
+     * rows.
+     */
+    public DeadLetterReplayResult replay(int limit) {
+        int replayed = 0;
+        while (replayed < limit) {
+            int size = Math.min(batchSize, limit - replayed);
+            Integer batch = transactionTemplate.execute(status -> replayBatch(size));
+            if (batch == null || batch == 0) {
+                break;
+            }
+            replayed += batch;
+        }
+        long pending = deadLetterRepository.countPending();
+        log.info("Replayed {} dead-lettered records, {} still pending", replayed, pending);
+        return new DeadLetterReplayResult(replayed, pending);
+    }
+
+    private int replayBatch(int size) {
+        List<PendingReplay> batch = deadLetterRepository.lockPendingForReplay(size);
+        if (batch.isEmpty()) {
+            return 0;
+        }
+        CompletableFuture<?>[] sends = batch.stream()
+                .map(pending -> failedEventRouter.republish(pending.recordKey(), pending.payload()))
+                .toArray(CompletableFuture[]::new);
+        try {
+            CompletableFuture.allOf(sends).get(SEND_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new KafkaException("Interrupted while replaying dead letters", e);
+        } catch (ExecutionException | TimeoutException e) {
+            throw new KafkaException("Failed to replay dead letters", e);
+        }
+        deadLetterRepository.markReplayed(batch.stream().map(PendingReplay::id).toList());
+        return batch.size();
+    }
+}
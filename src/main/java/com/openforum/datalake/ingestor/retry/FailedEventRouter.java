@@ -0,0 +1,213 @@
+package com.openforum.datalake.ingestor.retry;
+
+import com.openforum.datalake.ingestor.IngestionMetrics;
+import com.openforum.datalake.ingestor.IngestionMetrics.Outcome;
+import com.openforum.datalake.ingestor.IngestionMetrics.Stage;
+import jakarta.annotation.PreDestroy;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.header.Header;
+import org.apache.kafka.common.header.Headers;
+import org.apache.kafka.common.header.internals.RecordHeaders;
+import org.apache.kafka.common.serialization.ByteArraySerializer;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.kafka.KafkaException;
+import org.springframework.kafka.core.DefaultKafkaProducerFactory;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.core.ProducerFactory;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Clock;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Moves records that failed to ingest off their partition so the rest of it
+ * keeps flowing. Retriable failures go to {@code forum-events-v1-retry-0},
+ * {@code -retry-1} and {@code -retry-2} with exponentially growing delays;
+ * parse failures, validation errors and records out of retries go to
+ * {@code forum-events-v1-dlt}.
+ * <p>
+ * Each routed record carries the failure stage and reason, the number of
+ * retries so far, when it is due, and the coordinates of the record that
+ * first failed.
+ */
+@Component
+public class FailedEventRouter {
+
+    private static final Logger log = LoggerFactory.getLogger(FailedEventRouter.class);
+
+    public static final String MAIN_TOPIC = "forum-events-v1";
+    public static final String RETRY_TOPIC_0 = MAIN_TOPIC + "-retry-0";
+    public static final String RETRY_TOPIC_1 = MAIN_TOPIC + "-retry-1";
+    public static final String RETRY_TOPIC_2 = MAIN_TOPIC + "-retry-2";
+    public static final String DEAD_LETTER_TOPIC = MAIN_TOPIC + "-dlt";
+
+    public static final String HEADER_STAGE = "datalake-failure-stage";
+    public static final String HEADER_REASON = "datalake-failure-reason";
+    public static final String HEADER_ATTEMPTS = "datalake-retry-attempts";
+    public static final String HEADER_DUE_AT = "datalake-retry-due-at";
+    public static final String HEADER_ORIGINAL_TOPIC = "datalake-original-topic";
+    public static final String HEADER_ORIGINAL_PARTITION = "datalake-original-partition";
+    public static final String HEADER_ORIGINAL_OFFSET = "datalake-original-offset";
+
+    private static final String[] RETRY_TOPICS = { RETRY_TOPIC_0, RETRY_TOPIC_1, RETRY_TOPIC_2 };
+    private static final int MAX_REASON_LENGTH = 1000;
+    private static final long SEND_TIMEOUT_SECONDS = 30;
+
+    private final KafkaTemplate<String, byte[]> kafkaTemplate;
+    private final IngestionMetrics ingestionMetrics;
+    private final long initialDelayMillis;
+    private final double multiplier;
+    private final long maxDelayMillis;
+    private final Clock clock;
+
+    /**
+     * Publishes with a byte[] template of its own so that the auto-configured
+     * {@code KafkaTemplate<String, String>} stays in place; connection settings
+     * are taken from the auto-configured producer factory.
+     */
+    @Autowired
+    public FailedEventRouter(ProducerFactory<?, ?> producerFactory, IngestionMetrics ingestionMetrics,
+            @Value("${datalake.ingestion.retry.initial-delay-ms:1000}") long initialDelayMillis,
+            @Value("${datalake.ingestion.retry.multiplier:10}") double multiplier,
+            @Value("${datalake.ingestion.retry.max-delay-ms:300000}") long maxDelayMillis) {
+        this(new KafkaTemplate<>(new DefaultKafkaProducerFactory<>(producerFactory.getConfigurationProperties(),
+                new StringSerializer(), new ByteArraySerializer())), ingestionMetrics, initialDelayMillis, multiplier,
+                maxDelayMillis, Clock.systemUTC());
+    }
+
+    FailedEventRouter(KafkaTemplate<String, byte[]> kafkaTemplate, IngestionMetrics ingestionMetrics,
+            long initialDelayMillis, double multiplier, long maxDelayMillis, Clock clock) {
+        this.kafkaTemplate = kafkaTemplate;
+        this.ingestionMetrics = ingestionMetrics;
+        this.initialDelayMillis = initialDelayMillis;
+        this.multiplier = multiplier;
+        this.maxDelayMillis = maxDelayMillis;
+        this.clock = clock;
+    }
+
+    /**
+     * Sends a failed record to its next retry topic or to the dead-letter topic
+     * and waits for the broker to acknowledge it, so that the caller may then
+     * commit the record's offset.
+     *
+     * @param eventType decoded event type, or {@code null} if unknown
+     * @throws KafkaException if the record could not be published
+     */
+    public void route(ConsumerRecord<?, ?> record, String eventType, Stage stage, Throwable cause) {
+        Throwable rootCause = rootCause(cause);
+        int attempts = intHeader(record.headers(), HEADER_ATTEMPTS, 0);
+        boolean retry = isRetriable(stage, rootCause) && attempts < RETRY_TOPICS.length;
+        String topic = retry ? RETRY_TOPICS[attempts] : DEAD_LETTER_TOPIC;
+
+        Headers headers = new RecordHeaders();
+        for (Header header : record.headers()) {
+            if (!header.key().startsWith("datalake-")) {
+                headers.add(header);
+            }
+        }
+        copyOrSet(headers, record, HEADER_ORIGINAL_TOPIC, record.topic());
+        copyOrSet(headers, record, HEADER_ORIGINAL_PARTITION, Integer.toString(record.partition()));
+        copyOrSet(headers, record, HEADER_ORIGINAL_OFFSET, Long.toString(record.offset()));
+        put(headers, HEADER_STAGE, stage.name().toLowerCase());
+        put(headers, HEADER_REASON, reason(rootCause));
+        put(headers, HEADER_ATTEMPTS, Integer.toString(retry ? attempts + 1 : attempts));
+        if (retry) {
+            put(headers, HEADER_DUE_AT, Long.toString(clock.millis() + delayMillis(attempts)));
+        }
+
+        send(new ProducerRecord<>(topic, null, key(record), (byte[]) record.value(), headers));
+        ingestionMetrics.count(retry ? Outcome.RETRIED : Outcome.DEAD_LETTERED,
+                eventType != null ? eventType : IngestionMetrics.UNKNOWN);
+        log.warn("Routed record {}-{}@{} to {} after {} failure: {}", record.topic(), record.partition(),
+                record.offset(), topic, stage.name().toLowerCase(), reason(rootCause));
+    }
+
+    /**
+     * Re-injects a record into the main topic with no failure history.
+     */
+    public CompletableFuture<?> republish(String key, byte[] payload) {
+        return kafkaTemplate.send(MAIN_TOPIC, key, payload);
+    }
+
+    /**
+     * @return epoch millis before which a retry record must not be processed
+     */
+    public static long dueAt(ConsumerRecord<?, ?> record) {
+        Header header = record.headers().lastHeader(HEADER_DUE_AT);
+        return header == null ? 0 : Long.parseLong(new String(header.value(), StandardCharsets.UTF_8));
+    }
+
+    public static String header(Headers headers, String key) {
+        Header header = headers.lastHeader(key);
+        return header == null ? null : new String(header.value(), StandardCharsets.UTF_8);
+    }
+
+    static int intHeader(Headers headers, String key, int defaultValue) {
+        String value = header(headers, key);
+        return value == null ? defaultValue : Integer.parseInt(value);
+    }
+
+    long delayMillis(int attempts) {
+        return Math.min(maxDelayMillis, Math.round(initialDelayMillis * Math.pow(multiplier, attempts)));
+    }
+
+    /**
+     * Unparseable records and payloads failing validation will not succeed on
+     * a later attempt; everything else (database errors above all) may.
+     */
+    static boolean isRetriable(Stage stage, Throwable cause) {
+        return stage != Stage.PARSE && !(cause instanceof NullPointerException)
+                && !(cause instanceof IllegalArgumentException) && !(cause instanceof ClassCastException);
+    }
+
+    private void send(ProducerRecord<String, byte[]> producerRecord) {
+        try {
+            kafkaTemplate.send(producerRecord).get(SEND_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new KafkaException("Interrupted while routing failed record", e);
+        } catch (ExecutionException | TimeoutException e) {
+            throw new KafkaException("Failed to route record to " + producerRecord.topic(), e);
+        }
+    }
+
+    private static String key(ConsumerRecord<?, ?> record) {
+        return record.key() == null ? null : record.key().toString();
+    }
+
+    private static void copyOrSet(Headers headers, ConsumerRecord<?, ?> record, String key, String value) {
+        Header original = record.headers().lastHeader(key);
+        headers.add(key, original != null ? original.value() : value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static void put(Headers headers, String key, String value) {
+        headers.add(key, value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static Throwable rootCause(Throwable cause) {
+        Throwable root = cause;
+        while (root.getCause() != null && root.getCause() != root) {
+            root = root.getCause();
+        }
+        return root;
+    }
+
+    private static String reason(Throwable root) {
+        String reason = root.getClass().getName() + (root.getMessage() != null ? ": " + root.getMessage() : "");
+        return reason.length() > MAX_REASON_LENGTH ? reason.substring(0, MAX_REASON_LENGTH) : reason;
+    }
+
+    @PreDestroy
+    void closeProducer() {
+        kafkaTemplate.getProducerFactory().reset();
+    }
+}
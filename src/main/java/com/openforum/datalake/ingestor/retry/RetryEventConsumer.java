@@ -0,0 +1,91 @@
+package com.openforum.datalake.ingestor.retry;
+
+import com.openforum.datalake.ingestor.DecodedEvent;
+import com.openforum.datalake.ingestor.EventIngestionService;
+import com.openforum.datalake.ingestor.ForumEventDecoder;
+import com.openforum.datalake.ingestor.IngestionMetrics.Stage;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.kafka.support.Acknowledgment;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Consumes the retry topics. Each topic has its own container so that
+ * waiting for the head record of one delay level does not hold back another.
+ * Records are ingested one at a time; a record that fails again moves on to
+ * the next level or to the dead-letter topic.
+ */
+@Component
+public class RetryEventConsumer {
+
+    private static final Logger log = LoggerFactory.getLogger(RetryEventConsumer.class);
+
+    private final ForumEventDecoder forumEventDecoder;
+    private final EventIngestionService eventIngestionService;
+    private final FailedEventRouter failedEventRouter;
+    private final Clock clock;
+
+    @Autowired
+    public RetryEventConsumer(ForumEventDecoder forumEventDecoder, EventIngestionService eventIngestionService,
+            FailedEventRouter failedEventRouter) {
+        this(forumEventDecoder, eventIngestionService, failedEventRouter, Clock.systemUTC());
+    }
+
+    RetryEventConsumer(ForumEventDecoder forumEventDecoder, EventIngestionService eventIngestionService,
+            FailedEventRouter failedEventRouter, Clock clock) {
+        this.forumEventDecoder = forumEventDecoder;
+        this.eventIngestionService = eventIngestionService;
+        this.failedEventRouter = failedEventRouter;
+        this.clock = clock;
+    }
+
+    @KafkaListener(id = "forum-events-retry-0", topics = FailedEventRouter.RETRY_TOPIC_0,
+            groupId = "datalake-retry-group", containerFactory = "retryListenerContainerFactory",
+            autoStartup = "${datalake.ingestion.listeners.enabled:true}")
+    @KafkaListener(id = "forum-events-retry-1", topics = FailedEventRouter.RETRY_TOPIC_1,
+            groupId = "datalake-retry-group", containerFactory = "retryListenerContainerFactory",
+            autoStartup = "${datalake.ingestion.listeners.enabled:true}")
+    @KafkaListener(id = "forum-events-retry-2", topics = FailedEventRouter.RETRY_TOPIC_2,
+            groupId = "datalake-retry-group", containerFactory = "retryListenerContainerFactory",
+            autoStartup = "${datalake.ingestion.listeners.enabled:true}")
+    public void consumeRetry(ConsumerRecord<String, byte[]> record, Acknowledgment acknowledgment) {
+        long wait = FailedEventRouter.dueAt(record) - clock.millis();
+        if (wait > 0) {
+            // Records behind this one were routed later, so they are not due either
+            acknowledgment.nack(Duration.ofMillis(wait));
+            return;
+        }
+
+        DecodedEvent event;
+        try {
+            event = forumEventDecoder.decode(record.value());
+        } catch (IOException | IllegalArgumentException e) {
+            failedEventRouter.route(record, null, Stage.PARSE, e);
+            acknowledgment.acknowledge();
+            return;
+        }
+        if (event != null) {
+            List<Exception> failures = new ArrayList<>(1);
+            try {
+                eventIngestionService.ingestBatch(List.of(event), (failed, e) -> failures.add(e));
+            } catch (RuntimeException e) {
+                failures.add(e);
+            }
+            if (failures.isEmpty()) {
+                log.info("Event {} ingested on retry from {}", event.eventId(), record.topic());
+            } else {
+                failedEventRouter.route(record, event.eventType(), Stage.WRITE, failures.get(0));
+            }
+        }
+        acknowledgment.acknowledge();
+    }
+}
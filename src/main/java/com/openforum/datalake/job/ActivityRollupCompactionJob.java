@@ -0,0 +1,62 @@
+package com.openforum.datalake.job;
+
+import com.openforum.datalake.repository.ActivityBucketRepository;
+import com.openforum.datalake.repository.ActivityBucketRepository.TenantMonth;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Clock;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.List;
+
+/**
+ * Moves the activity rollup down its cascade. Completed UTC months are
+ * compacted from their days into {@code agg_monthly_tenant_activity} and
+ * {@code agg_monthly_user_sketches}, and compacted again whenever their days
+ * changed since, e.g. by an import or a reconciliation. Hours older than
+ * {@code hourly-retention-days} are dropped from
+ * {@code agg_hourly_tenant_activity}; the daily rollup, which the ingestor
+ * adds to along with the hours, already holds them.
+ */
+@Component
+public class ActivityRollupCompactionJob {
+
+    private static final Logger log = LoggerFactory.getLogger(ActivityRollupCompactionJob.class);
+
+    private final ActivityBucketRepository repository;
+    private final int hourlyRetentionDays;
+    private final Clock clock;
+
+    @Autowired
+    public ActivityRollupCompactionJob(ActivityBucketRepository repository,
+            @Value("${datalake.activity-rollup.compaction.hourly-retention-days:31}") int hourlyRetentionDays) {
+        this(repository, hourlyRetentionDays, Clock.systemUTC());
+    }
+
+    ActivityRollupCompactionJob(ActivityBucketRepository repository, int hourlyRetentionDays, Clock clock) {
+        this.repository = repository;
+        this.hourlyRetentionDays = Math.max(1, hourlyRetentionDays);
+        this.clock = clock.withZone(ZoneOffset.UTC);
+    }
+
+    @Scheduled(cron = "${datalake.activity-rollup.compaction.cron:0 15 3 * * *}", zone = "UTC")
+    public void compact() {
+        LocalDate today = LocalDate.now(clock);
+        try {
+            List<TenantMonth> months = repository.findMonthsToCompact(today.withDayOfMonth(1));
+            for (TenantMonth month : months) {
+                repository.compactMonth(month.tenantCode(), month.month());
+            }
+            int hours = repository.expireHours(
+                    today.minusDays(hourlyRetentionDays).atStartOfDay(ZoneOffset.UTC).toInstant());
+            log.info("Compacted {} tenant months and expired {} hourly activity rows", months.size(), hours);
+        } catch (RuntimeException e) {
+            log.error("Activity rollup compaction failed; will retry on the next run", e);
+        }
+    }
+}
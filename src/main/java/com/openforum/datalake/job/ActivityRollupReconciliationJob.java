@@ -0,0 +1,98 @@
+package com.openforum.datalake.job;
+
+import com.openforum.datalake.dto.ActivityRollupReconciliation;
+import com.openforum.datalake.dto.ActivityRollupReconciliation.Mismatch;
+import com.openforum.datalake.repository.DailyTenantActivityRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Clock;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.List;
+
+/**
+ * Checks the daily tenant rollup {@code agg_daily_tenant_activity} against
+ * {@code fact_activity}. The ingestor keeps the rollup exact, so a mismatch
+ * means facts were written or removed without it, e.g. by hand. Each tenant
+ * day that differs is then recomputed from the facts in a transaction of its
+ * own, so ingestion only ever waits for one tenant day.
+ * <p>
+ * Runs on {@code datalake.activity-rollup.reconcile.cron} over the last
+ * {@code days} completed UTC days, then folds the rollup, hour and active
+ * member sketch stripes of all completed days into one row per tenant, day or
+ * hour, and type, and one sketch per tenant and day. Runs on demand over any
+ * day range through {@code POST /admin/v1/rollups/daily-activity/reconcile}. Days whose fact
+ * partitions were detached no longer have facts to compare with; repairing
+ * them empties their rollup.
+ */
+@Component
+public class ActivityRollupReconciliationJob {
+
+    private static final Logger log = LoggerFactory.getLogger(ActivityRollupReconciliationJob.class);
+
+    private final DailyTenantActivityRepository repository;
+    private final int days;
+    private final boolean repair;
+    private final long lockTimeoutMillis;
+    private final Clock clock;
+
+    @Autowired
+    public ActivityRollupReconciliationJob(DailyTenantActivityRepository repository,
+            @Value("${datalake.activity-rollup.reconcile.days:3}") int days,
+            @Value("${datalake.activity-rollup.reconcile.repair:true}") boolean repair,
+            @Value("${datalake.activity-rollup.reconcile.lock-timeout-ms:5000}") long lockTimeoutMillis) {
+        this(repository, days, repair, lockTimeoutMillis, Clock.systemUTC());
+    }
+
+    ActivityRollupReconciliationJob(DailyTenantActivityRepository repository, int days, boolean repair,
+            long lockTimeoutMillis, Clock clock) {
+        this.repository = repository;
+        this.days = Math.max(1, days);
+        this.repair = repair;
+        this.lockTimeoutMillis = lockTimeoutMillis;
+        this.clock = clock.withZone(ZoneOffset.UTC);
+    }
+
+    @Scheduled(cron = "${datalake.activity-rollup.reconcile.cron:0 45 2 * * *}", zone = "UTC")
+    public void reconcileRecentDays() {
+        LocalDate today = LocalDate.now(clock);
+        try {
+            reconcile(today.minusDays(days), today, repair);
+            log.info("Folded the activity rollup stripes into {} rows", repository.foldStripes(today));
+            int folded = repository.foldSketchStripes(today);
+            log.info("Folded the active member sketch stripes of {} tenant days", folded);
+        } catch (RuntimeException e) {
+            log.error("Activity rollup reconciliation failed; will retry on the next run", e);
+        }
+    }
+
+    /**
+     * Compares the rollup of the UTC days in {@code [from, to)} with the facts
+     * and, with {@code repair}, recomputes the days that differ.
+     */
+    public synchronized ActivityRollupReconciliation reconcile(LocalDate from, LocalDate to, boolean repair) {
+        if (!from.isBefore(to)) {
+            throw new IllegalArgumentException("Empty day range: " + from + " .. " + to);
+        }
+        List<Mismatch> mismatches = repository.findMismatches(from, to);
+        if (mismatches.isEmpty()) {
+            log.info("Activity rollup of {} .. {} matches the facts", from, to);
+            return new ActivityRollupReconciliation(from, to, mismatches, false);
+        }
+        log.warn("Activity rollup of {} .. {} differs from the facts on {} tenant days, first {}", from, to,
+                mismatches.size(), mismatches.get(0));
+        if (!repair) {
+            return new ActivityRollupReconciliation(from, to, mismatches, false);
+        }
+        for (Mismatch mismatch : mismatches) {
+            repository.recompute(mismatch.tenantId(), mismatch.day(), lockTimeoutMillis);
+        }
+        log.info("Recomputed the activity rollup of {} tenant days in {} .. {}", mismatches.size(), from, to);
+        return new ActivityRollupReconciliation(from, to, mismatches, true);
+    }
+}
@@ -0,0 +1,79 @@
+package com.openforum.datalake.job;
+
+import com.openforum.datalake.ingestor.MetadataPromotion;
+import com.openforum.datalake.repository.FactDictionaryBackfillRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ * Moves the facts written before V8 into the dictionary-encoded
+ * {@code fact_activity}, see {@link FactDictionaryBackfillRepository}. Runs
+ * once at startup and then every
+ * {@code datalake.ingestion.dictionary.backfill.interval-ms} until the old
+ * table is gone, in chunks of {@code batch-size} rows that each commit on
+ * their own and are {@code pause-ms} apart, so the service ingests and serves
+ * throughout; facts, rollups and member counters of the history fill in as
+ * the chunks commit.
+ */
+@Component
+public class FactDictionaryBackfillJob {
+
+    private static final Logger log = LoggerFactory.getLogger(FactDictionaryBackfillJob.class);
+
+    private final FactDictionaryBackfillRepository backfillRepository;
+    private final MetadataPromotion metadataPromotion;
+    private final int batchSize;
+    private final long pauseMillis;
+    private volatile boolean completed;
+
+    public FactDictionaryBackfillJob(FactDictionaryBackfillRepository backfillRepository,
+            MetadataPromotion metadataPromotion,
+            @Value("${datalake.ingestion.dictionary.backfill.batch-size:5000}") int batchSize,
+            @Value("${datalake.ingestion.dictionary.backfill.pause-ms:100}") long pauseMillis) {
+        this.backfillRepository = backfillRepository;
+        this.metadataPromotion = metadataPromotion;
+        this.batchSize = Math.max(1, batchSize);
+        this.pauseMillis = Math.max(0, pauseMillis);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    void backfillAtStartup() {
+        Thread.ofVirtual().name("dictionary-backfill").start(this::backfill);
+    }
+
+    @Scheduled(fixedDelayString = "${datalake.ingestion.dictionary.backfill.interval-ms:600000}",
+            initialDelayString = "${datalake.ingestion.dictionary.backfill.interval-ms:600000}")
+    public synchronized void backfill() {
+        if (completed) {
+            return;
+        }
+        try {
+            if (!backfillRepository.isPending()) {
+                completed = true;
+                return;
+            }
+            long start = System.nanoTime();
+            long moved = 0;
+            int chunk;
+            do {
+                chunk = backfillRepository.backfillChunk(metadataPromotion.sourceFields(), batchSize);
+                moved += chunk;
+                if (chunk == batchSize && pauseMillis > 0) {
+                    Thread.sleep(pauseMillis);
+                }
+            } while (chunk == batchSize);
+            completed = true;
+            log.info("Moved {} facts written before V8 into fact_activity in {} ms", moved,
+                    (System.nanoTime() - start) / 1_000_000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (RuntimeException e) {
+            log.error("Fact dictionary backfill failed; will resume on the next run", e);
+        }
+    }
+}
@@ -0,0 +1,167 @@
+package com.openforum.datalake.job;
+
+import com.openforum.datalake.dto.PartitionInfo;
+import com.openforum.datalake.repository.FactPartitionRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Clock;
+import java.time.YearMonth;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * Keeps {@code fact_activity} partitioned by month so that time-bounded
+ * queries prune to the months they touch instead of scanning the default
+ * partition:
+ * <ol>
+ * <li>months that ended up in the default partition are moved into their own
+ * partition,</li>
+ * <li>partitions are created ahead of time for the current and the next
+ * {@code months-ahead} months,</li>
+ * <li>partitions older than {@code retention-months} are detached.</li>
+ * </ol>
+ * Runs once at startup and then on {@code datalake.partitions.cron}. Months
+ * created before {@code tenant-hash-partitions} was changed keep their layout
+ * until {@link #convertPartitions()} is run, see
+ * {@link FactPartitionMigrationRunner}.
+ */
+@Component
+public class FactPartitionMaintenanceJob {
+
+    private static final Logger log = LoggerFactory.getLogger(FactPartitionMaintenanceJob.class);
+
+    private final FactPartitionRepository partitionRepository;
+    private final int monthsAhead;
+    private final int retentionMonths;
+    private final int moveBatchSize;
+    private final long lockTimeoutMillis;
+    private final Clock clock;
+
+    @Autowired
+    public FactPartitionMaintenanceJob(FactPartitionRepository partitionRepository,
+            @Value("${datalake.partitions.months-ahead:3}") int monthsAhead,
+            @Value("${datalake.partitions.retention-months:0}") int retentionMonths,
+            @Value("${datalake.partitions.move-batch-size:10000}") int moveBatchSize,
+            @Value("${datalake.partitions.lock-timeout-ms:5000}") long lockTimeoutMillis) {
+        this(partitionRepository, monthsAhead, retentionMonths, moveBatchSize, lockTimeoutMillis, Clock.systemUTC());
+    }
+
+    FactPartitionMaintenanceJob(FactPartitionRepository partitionRepository, int monthsAhead, int retentionMonths,
+            int moveBatchSize, long lockTimeoutMillis, Clock clock) {
+        this.partitionRepository = partitionRepository;
+        this.monthsAhead = Math.max(0, monthsAhead);
+        this.retentionMonths = retentionMonths;
+        this.moveBatchSize = Math.max(1, moveBatchSize);
+        this.lockTimeoutMillis = lockTimeoutMillis;
+        this.clock = clock;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    void maintainAtStartup() {
+        Thread.ofVirtual().name("partition-maintenance").start(this::maintainPartitions);
+    }
+
+    @Scheduled(cron = "${datalake.partitions.cron:0 15 2 * * *}", zone = "UTC")
+    public synchronized void maintainPartitions() {
+        try {
+            drainDefaultPartition();
+            createUpcomingPartitions();
+            detachExpiredPartitions();
+        } catch (RuntimeException e) {
+            log.error("Partition maintenance failed; will retry on the next run", e);
+        }
+    }
+
+    /**
+     * Moves each month found in the default partition into a table of its own:
+     * its rows are copied in {@code move-batch-size} chunks, each in its own
+     * short transaction, while they stay readable in the default partition,
+     * and are only removed from it when the table is attached. That final step
+     * blocks writes to the default partition; a drain interrupted before it
+     * loses nothing and resumes the copy.
+     */
+    void drainDefaultPartition() {
+        Set<YearMonth> months = new LinkedHashSet<>(partitionRepository.findInterruptedDrains());
+        months.addAll(partitionRepository.findMonthsInDefaultPartition());
+        for (YearMonth month : months) {
+            long start = System.nanoTime();
+            partitionRepository.createDetachedPartition(month);
+            long moved = 0;
+            int chunk;
+            do {
+                chunk = partitionRepository.copyFromDefault(month, moveBatchSize);
+                moved += chunk;
+            } while (chunk > 0);
+            moved += partitionRepository.attachDetachedPartition(month, lockTimeoutMillis);
+            log.info("Moved {} rows of {} out of the default partition into {} in {} ms", moved, month,
+                    FactPartitionRepository.partitionName(month), (System.nanoTime() - start) / 1_000_000);
+        }
+    }
+
+    /**
+     * Rewrites every monthly partition whose tenant hash layout differs from
+     * the configured one. Each month is copied into a replacement table in
+     * {@code move-batch-size} chunks, each in its own short transaction, while
+     * the old partition keeps serving reads and writes; rows written in the
+     * meantime are copied when the replacement is swapped in. Rerunning after
+     * an interruption resumes the copy.
+     *
+     * @return number of months converted
+     */
+    public synchronized int convertPartitions() {
+        int subpartitions = partitionRepository.tenantHashPartitions();
+        int converted = 0;
+        for (PartitionInfo partition : partitionRepository.findPartitions()) {
+            YearMonth month = FactPartitionRepository.parseMonth(partition.name());
+            if (month == null || partition.subpartitions() == subpartitions) {
+                continue;
+            }
+            long start = System.nanoTime();
+            partitionRepository.createReplacementPartition(month);
+            long copied = 0;
+            int chunk;
+            do {
+                chunk = partitionRepository.copyToReplacement(month, moveBatchSize);
+                copied += chunk;
+            } while (chunk > 0);
+            copied += partitionRepository.swapInReplacement(month, lockTimeoutMillis);
+            converted++;
+            log.info("Converted {} to {} tenant hash partitions: {} rows in {} ms", partition.name(), subpartitions,
+                    copied, (System.nanoTime() - start) / 1_000_000);
+        }
+        return converted;
+    }
+
+    void createUpcomingPartitions() {
+        YearMonth current = YearMonth.now(clock);
+        Set<YearMonth> attached = Set.copyOf(partitionRepository.findAttachedMonths());
+        for (int i = 0; i <= monthsAhead; i++) {
+            YearMonth month = current.plusMonths(i);
+            if (!attached.contains(month)) {
+                partitionRepository.createPartition(month);
+                log.info("Created partition {}", FactPartitionRepository.partitionName(month));
+            }
+        }
+    }
+
+    void detachExpiredPartitions() {
+        if (retentionMonths <= 0) {
+            return;
+        }
+        YearMonth oldestKept = YearMonth.now(clock).minusMonths(retentionMonths);
+        for (YearMonth month : partitionRepository.findAttachedMonths()) {
+            if (month.isBefore(oldestKept)) {
+                partitionRepository.detachPartition(month, lockTimeoutMillis);
+                log.info("Detached partition {} past the {} month retention",
+                        FactPartitionRepository.partitionName(month), retentionMonths);
+            }
+        }
+    }
+}
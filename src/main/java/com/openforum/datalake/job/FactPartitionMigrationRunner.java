@@ -0,0 +1,59 @@
+package com.openforum.datalake.job;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.ExitCodeGenerator;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+
+/**
+ * Command-line mode that converts existing {@code fact_activity} months to the
+ * configured {@code datalake.partitions.tenant-hash-partitions} layout:
+ *
+ * <pre>
+ * java -jar datalake.jar --migrate-partitions
+ * </pre>
+ *
+ * Safe to run while the ingestor is up; an interrupted run resumes where it
+ * stopped.
+ */
+@Component
+@Profile(FactPartitionMigrationRunner.PROFILE)
+public class FactPartitionMigrationRunner implements ApplicationRunner, ExitCodeGenerator {
+
+    public static final String PROFILE = "migrate-partitions";
+    public static final String OPTION = "migrate-partitions";
+
+    private static final Logger log = LoggerFactory.getLogger(FactPartitionMigrationRunner.class);
+
+    private final FactPartitionMaintenanceJob maintenanceJob;
+    private volatile int exitCode;
+
+    public FactPartitionMigrationRunner(FactPartitionMaintenanceJob maintenanceJob) {
+        this.maintenanceJob = maintenanceJob;
+    }
+
+    public static boolean isRequested(String[] args) {
+        return Arrays.asList(args).contains("--" + OPTION);
+    }
+
+    @Override
+    public void run(ApplicationArguments args) {
+        try {
+            int converted = maintenanceJob.convertPartitions();
+            log.info("Converted {} partitions", converted);
+        } catch (RuntimeException e) {
+            log.error("Partition migration failed; rerun to resume", e);
+            exitCode = 1;
+        }
+    }
+
+    @Override
+    public int getExitCode() {
+        return exitCode;
+    }
+}
@@ -1,86 +1,193 @@
 package com.openforum.datalake.job;
 
-import com.openforum.datalake.domain.DimMemberHealth;
-import com.openforum.datalake.domain.EngagementLevel;
-import com.openforum.datalake.domain.ChurnRisk;
-import com.openforum.datalake.repository.DimMemberHealthRepository;
-import com.openforum.datalake.repository.FactActivityRepository;
+import com.openforum.datalake.repository.MemberHealthBatchRepository;
+import com.openforum.datalake.repository.MemberHealthBatchRepository.Tenant;
+import com.openforum.datalake.repository.MemberHealthRunRepository;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
 
+import java.time.Clock;
+import java.time.Duration;
 import java.time.Instant;
-import java.time.temporal.ChronoUnit;
-import java.util.List;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.ArrayDeque;
+import java.util.Deque;
 import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
+/**
+ * Rescores the members whose activity over the last {@code window-days} UTC
+ * days changed since they were last scored, and writes
+ * {@code dim_member_health}. The ingestor counts each member's activity per
+ * day in {@code agg_user_daily_activity} and marks them in
+ * {@code member_health_dirty}; a run first expires the days that left the
+ * window, marking their members too, so its cost follows the day's activity
+ * rather than the window's. With a half-life, though, every score changes
+ * daily as its days age, so a run then marks every member with activity in
+ * the window. Members are scored by {@link MemberHealthScoring}; one with no
+ * activity left is scored 0.
+ * <p>
+ * Dirty members are scored as a pipeline of chunks:
+ * <ol>
+ * <li>the calling thread reads the bounds of each tenant's chunks of
+ * {@code chunk-size} dirty members, one member per chunk,</li>
+ * <li>{@code parallelism} workers each have PostgreSQL score a chunk, upsert
+ * it and clear it from the dirty set in one statement, at most two chunks per
+ * worker in flight,</li>
+ * <li>once a chunk and all chunks before it are written, the run's
+ * checkpoint in {@code member_health_runs} moves past its last member, in
+ * a transaction of its own.</li>
+ * </ol>
+ * A run that did not complete is resumed from its checkpoint, over its
+ * original window, by the next run or at startup.
+ */
 @Component
 public class MemberHealthCalculationJob {
 
     private static final Logger log = LoggerFactory.getLogger(MemberHealthCalculationJob.class);
 
-    private final FactActivityRepository factActivityRepository;
-    private final DimMemberHealthRepository dimMemberHealthRepository;
+    private final MemberHealthBatchRepository batchRepository;
+    private final MemberHealthRunRepository runRepository;
+    private final MemberHealthScoring scoring;
+    private final Duration window;
+    private final int parallelism;
+    private final int chunkSize;
+    private final Clock clock;
 
-    public MemberHealthCalculationJob(FactActivityRepository factActivityRepository,
-            DimMemberHealthRepository dimMemberHealthRepository) {
-        this.factActivityRepository = factActivityRepository;
-        this.dimMemberHealthRepository = dimMemberHealthRepository;
+    @Autowired
+    public MemberHealthCalculationJob(MemberHealthBatchRepository batchRepository,
+            MemberHealthRunRepository runRepository, MemberHealthScoring scoring,
+            @Value("${datalake.member-health.window-days:30}") int windowDays,
+            @Value("${datalake.member-health.parallelism:4}") int parallelism,
+            @Value("${datalake.member-health.chunk-size:5000}") int chunkSize) {
+        this(batchRepository, runRepository, scoring, windowDays, parallelism, chunkSize, Clock.systemUTC());
     }
 
-    @Scheduled(cron = "0 0 1 * * ?") // Run daily at 1 AM
-    public void calculateMemberHealth() {
-        log.info("Starting Member Health Calculation Job");
-        Instant startDate = Instant.now().minus(30, ChronoUnit.DAYS);
-
-        List<Object[]> stats = factActivityRepository.findUserActivityStats(startDate);
-
-        for (Object[] row : stats) {
-            UUID userId = (UUID) row[0];
-            // The original code had String tenantId = (String) row[1]; and Long
-            // activityCount = (Long) row[2];
-            // The provided change implies tenantId is no longer in row[1] and activityCount
-            // is now row[1].
-            // Also, tenantId is hardcoded to "default".
-            Long activityCount = (Long) row[1]; // Assuming tenantId is no longer at row[1] and activityCount is now at
-                                                // row[1]
-
-            int score = calculateScore(activityCount);
-            EngagementLevel engagementLevel = determineEngagementLevel(score);
-            ChurnRisk churnRisk = determineChurnRisk(score);
-
-            DimMemberHealth health = new DimMemberHealth();
-            health.setUserId(userId);
-            health.setTenantId("default"); // TODO: Handle multi-tenancy in job
-            health.setHealthScore(score);
-            health.setEngagementLevel(engagementLevel);
-            health.setChurnRisk(churnRisk);
-            health.setCalculatedAt(Instant.now());
-
-            dimMemberHealthRepository.save(health);
+    MemberHealthCalculationJob(MemberHealthBatchRepository batchRepository, MemberHealthRunRepository runRepository,
+            MemberHealthScoring scoring, int windowDays, int parallelism, int chunkSize, Clock clock) {
+        this.batchRepository = batchRepository;
+        this.runRepository = runRepository;
+        this.scoring = scoring;
+        this.window = Duration.ofDays(windowDays);
+        this.parallelism = Math.max(1, parallelism);
+        this.chunkSize = Math.max(1, chunkSize);
+        this.clock = clock.withZone(ZoneOffset.UTC);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    void resumeAtStartup() {
+        if (runRepository.findUnfinished().isPresent()) {
+            Thread.ofVirtual().name("member-health").start(this::calculateMemberHealth);
         }
-        log.info("Completed Member Health Calculation Job. Processed {} users.", stats.size());
     }
 
-    private int calculateScore(Long activityCount) {
-        // Simple logic: 1 activity = 1 point, max 100
-        return (int) Math.min(activityCount, 100);
+    @Scheduled(cron = "${datalake.member-health.cron:0 0 1 * * *}", zone = "UTC")
+    public synchronized void calculateMemberHealth() {
+        MemberHealthRun run = runRepository.findUnfinished().orElse(null);
+        if (run == null) {
+            Instant windowEnd = LocalDate.now(clock).plusDays(1).atStartOfDay(ZoneOffset.UTC).toInstant();
+            Instant windowStart = windowEnd.minus(window);
+            int expired = batchRepository.expireDaysBefore(windowStart);
+            int decaying = scoring.dailyDecay() < 1 ? batchRepository.markActiveMembersDirty() : 0;
+            run = runRepository.start(windowStart, windowEnd);
+            log.info("Starting Member Health Calculation Job over {} .. {}; {} members had days expire, {} more decay",
+                    run.windowStart(), run.windowEnd(), expired, decaying);
+        } else {
+            log.info("Resuming Member Health Calculation Job over {} .. {} after {} members", run.windowStart(),
+                    run.windowEnd(), run.membersScored());
+        }
+
+        long start = System.nanoTime();
+        try (Pipeline pipeline = new Pipeline(run)) {
+            for (Tenant tenant : batchRepository.findTenants()) {
+                if (run.tenantCode() != null && tenant.code() < run.tenantCode()) {
+                    continue;
+                }
+                pipeline.scoreTenant(tenant);
+            }
+            run = pipeline.finish();
+        } catch (RuntimeException e) {
+            log.error("Member Health Calculation Job failed; the next run resumes from its checkpoint", e);
+            return;
+        }
+        runRepository.complete(run);
+        log.info("Completed Member Health Calculation Job. Processed {} users in {} ms.", run.membersScored(),
+                (System.nanoTime() - start) / 1_000_000);
     }
 
-    private EngagementLevel determineEngagementLevel(int score) {
-        if (score >= 80)
-            return EngagementLevel.CHAMPION;
-        if (score >= 20)
-            return EngagementLevel.CONTRIBUTOR;
-        return EngagementLevel.LURKER;
+    /**
+     * Chunks in flight, oldest first, and the checkpoint they advance.
+     */
+    private final class Pipeline implements AutoCloseable {
+
+        private final ExecutorService workers = Executors.newFixedThreadPool(parallelism,
+                Thread.ofPlatform().name("member-health-", 0).factory());
+        private final Deque<Future<ScoredChunk>> inFlight = new ArrayDeque<>();
+        private final Instant calculatedAt = clock.instant();
+        private MemberHealthRun checkpoint;
+
+        Pipeline(MemberHealthRun run) {
+            this.checkpoint = run;
+        }
+
+        void scoreTenant(Tenant tenant) {
+            boolean resumed = checkpoint.tenantCode() != null && checkpoint.tenantCode() == tenant.code();
+            UUID afterUserId = resumed ? checkpoint.lastUserId() : null;
+            for (UUID lastUserId : batchRepository.findChunkBounds(tenant.code(), afterUserId, chunkSize)) {
+                submit(tenant, afterUserId, lastUserId);
+                afterUserId = lastUserId;
+            }
+        }
+
+        private void submit(Tenant tenant, UUID afterUserId, UUID lastUserId) {
+            Instant from = checkpoint.windowStart();
+            Instant to = checkpoint.windowEnd();
+            inFlight.addLast(workers.submit(() -> new ScoredChunk(tenant.code(), lastUserId,
+                    batchRepository.scoreChunk(tenant, afterUserId, lastUserId, from, to, calculatedAt, scoring))));
+            // Bounds the queue: no further chunk is submitted until one is written
+            while (inFlight.size() > 2 * parallelism || (!inFlight.isEmpty() && inFlight.peekFirst().isDone())) {
+                checkpoint(inFlight.removeFirst());
+            }
+        }
+
+        MemberHealthRun finish() {
+            while (!inFlight.isEmpty()) {
+                checkpoint(inFlight.removeFirst());
+            }
+            return checkpoint;
+        }
+
+        private void checkpoint(Future<ScoredChunk> future) {
+            try {
+                ScoredChunk chunk = future.get();
+                checkpoint = checkpoint.advancedTo(chunk.tenantCode(), chunk.lastUserId(),
+                        checkpoint.membersScored() + chunk.scored());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while scoring members", e);
+            } catch (ExecutionException e) {
+                throw new IllegalStateException("Failed to write member health scores", e.getCause());
+            }
+            runRepository.saveProgress(checkpoint);
+        }
+
+        @Override
+        public void close() {
+            workers.shutdownNow();
+            workers.close();
+        }
     }
 
-    private ChurnRisk determineChurnRisk(int score) {
-        if (score < 10)
-            return ChurnRisk.HIGH;
-        if (score < 50)
-            return ChurnRisk.MEDIUM;
-        return ChurnRisk.LOW;
+    private record ScoredChunk(short tenantCode, UUID lastUserId, int scored) {
     }
 }
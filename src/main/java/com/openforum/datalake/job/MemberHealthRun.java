@@ -0,0 +1,21 @@
+package com.openforum.datalake.job;
+
+import java.time.Instant;
+import java.util.UUID;
+
+/**
+ * A run of {@link MemberHealthCalculationJob} over the activity in
+ * {@code [windowStart, windowEnd)}.
+ *
+ * @param tenantCode    tenant of the last member whose score is committed,
+ *                      {@code null} before the first chunk
+ * @param lastUserId    that member
+ * @param membersScored members scored up to and including that member
+ */
+public record MemberHealthRun(long runId, Instant windowStart, Instant windowEnd, Short tenantCode, UUID lastUserId,
+        long membersScored) {
+
+    public MemberHealthRun advancedTo(short tenantCode, UUID lastUserId, long membersScored) {
+        return new MemberHealthRun(runId, windowStart, windowEnd, tenantCode, lastUserId, membersScored);
+    }
+}
@@ -0,0 +1,135 @@
+package com.openforum.datalake.job;
+
+import com.openforum.datalake.domain.ChurnRisk;
+import com.openforum.datalake.domain.EngagementLevel;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The member health model. A member earns {@code weight(activity type)}
+ * points per activity, shrunk by half every {@code half-life-days} of age,
+ * and the score is the points over the window rounded and capped at
+ * {@link #MAX_SCORE}. The defaults weigh every activity 1 without decay, so
+ * the score is the plain activity count.
+ * <p>
+ * {@link EngagementLevel} and {@link ChurnRisk} follow from the score by the
+ * thresholds below. The model is evaluated in PostgreSQL by
+ * {@link com.openforum.datalake.repository.MemberHealthBatchRepository#scoreChunk}.
+ */
+@Component
+public class MemberHealthScoring {
+
+    public static final int MAX_SCORE = 100;
+
+    private final Map<String, Double> weights;
+    private final double otherWeight;
+    private final double halfLifeDays;
+    private final int championMin;
+    private final int contributorMin;
+    private final int highRiskBelow;
+    private final int mediumRiskBelow;
+
+    @Autowired
+    public MemberHealthScoring(
+            @Value("${datalake.member-health.scoring.weights.thread-created:1}") double threadCreated,
+            @Value("${datalake.member-health.scoring.weights.thread-imported:1}") double threadImported,
+            @Value("${datalake.member-health.scoring.weights.post-created:1}") double postCreated,
+            @Value("${datalake.member-health.scoring.weights.post-imported:1}") double postImported,
+            @Value("${datalake.member-health.scoring.weights.reaction:1}") double reaction,
+            @Value("${datalake.member-health.scoring.weights.subscription-created:1}") double subscriptionCreated,
+            @Value("${datalake.member-health.scoring.weights.other:1}") double other,
+            @Value("${datalake.member-health.scoring.half-life-days:0}") double halfLifeDays,
+            @Value("${datalake.member-health.scoring.engagement.champion-min:80}") int championMin,
+            @Value("${datalake.member-health.scoring.engagement.contributor-min:20}") int contributorMin,
+            @Value("${datalake.member-health.scoring.churn.high-below:10}") int highRiskBelow,
+            @Value("${datalake.member-health.scoring.churn.medium-below:50}") int mediumRiskBelow) {
+        this(weights(threadCreated, threadImported, postCreated, postImported, reaction, subscriptionCreated), other,
+                halfLifeDays, championMin, contributorMin, highRiskBelow, mediumRiskBelow);
+    }
+
+    public MemberHealthScoring(Map<String, Double> weights, double otherWeight, double halfLifeDays,
+            int championMin, int contributorMin, int highRiskBelow, int mediumRiskBelow) {
+        if (contributorMin > championMin || highRiskBelow > mediumRiskBelow) {
+            throw new IllegalArgumentException("Member health thresholds must ascend: contributor-min " + contributorMin
+                    + " <= champion-min " + championMin + ", high-below " + highRiskBelow + " <= medium-below "
+                    + mediumRiskBelow);
+        }
+        if (halfLifeDays < 0) {
+            throw new IllegalArgumentException("Negative member health half-life: " + halfLifeDays);
+        }
+        this.weights = Map.copyOf(weights);
+        this.otherWeight = otherWeight;
+        this.halfLifeDays = halfLifeDays;
+        this.championMin = championMin;
+        this.contributorMin = contributorMin;
+        this.highRiskBelow = highRiskBelow;
+        this.mediumRiskBelow = mediumRiskBelow;
+    }
+
+    /**
+     * @return the weight of each activity type with a configured weight
+     */
+    public Map<String, Double> weights() {
+        return weights;
+    }
+
+    /**
+     * @return the weight of activity types without a configured weight
+     */
+    public double otherWeight() {
+        return otherWeight;
+    }
+
+    /**
+     * @return the factor a day's points are multiplied by per day of age, 1
+     *         without decay
+     */
+    public double dailyDecay() {
+        return halfLifeDays > 0 ? Math.pow(0.5, 1 / halfLifeDays) : 1;
+    }
+
+    /**
+     * @return the lowest score of a {@link EngagementLevel#CHAMPION}
+     */
+    public int championMin() {
+        return championMin;
+    }
+
+    /**
+     * @return the lowest score of a {@link EngagementLevel#CONTRIBUTOR}
+     */
+    public int contributorMin() {
+        return contributorMin;
+    }
+
+    /**
+     * @return scores below this are a {@link ChurnRisk#HIGH} risk
+     */
+    public int highRiskBelow() {
+        return highRiskBelow;
+    }
+
+    /**
+     * @return scores below this, and not below {@link #highRiskBelow()}, are a
+     *         {@link ChurnRisk#MEDIUM} risk
+     */
+    public int mediumRiskBelow() {
+        return mediumRiskBelow;
+    }
+
+    private static Map<String, Double> weights(double threadCreated, double threadImported, double postCreated,
+            double postImported, double reaction, double subscriptionCreated) {
+        Map<String, Double> weights = new LinkedHashMap<>();
+        weights.put("THREAD_CREATED", threadCreated);
+        weights.put("THREAD_IMPORTED", threadImported);
+        weights.put("POST_CREATED", postCreated);
+        weights.put("POST_IMPORTED", postImported);
+        weights.put("REACTION", reaction);
+        weights.put("SUBSCRIPTION_CREATED", subscriptionCreated);
+        return weights;
+    }
+}
@@ -0,0 +1,72 @@
+package com.openforum.datalake.job;
+
+import com.openforum.datalake.ingestor.MetadataPromotion;
+import com.openforum.datalake.repository.MetadataBackfillRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.YearMonth;
+import java.util.Map;
+
+/**
+ * Fills the promoted metadata columns of facts written before they existed,
+ * see {@link MetadataBackfillRepository}. Runs once at startup and then every
+ * {@code datalake.ingestion.metadata.backfill.interval-ms} while months are
+ * pending, in chunks of {@code batch-size} rows that each commit on their own
+ * and are {@code pause-ms} apart, so the backfill can be stopped at any point
+ * and does not hold up ingestion.
+ */
+@Component
+public class MetadataBackfillJob {
+
+    private static final Logger log = LoggerFactory.getLogger(MetadataBackfillJob.class);
+
+    private final MetadataBackfillRepository backfillRepository;
+    private final MetadataPromotion metadataPromotion;
+    private final int batchSize;
+    private final long pauseMillis;
+
+    public MetadataBackfillJob(MetadataBackfillRepository backfillRepository, MetadataPromotion metadataPromotion,
+            @Value("${datalake.ingestion.metadata.backfill.batch-size:5000}") int batchSize,
+            @Value("${datalake.ingestion.metadata.backfill.pause-ms:100}") long pauseMillis) {
+        this.backfillRepository = backfillRepository;
+        this.metadataPromotion = metadataPromotion;
+        this.batchSize = Math.max(1, batchSize);
+        this.pauseMillis = Math.max(0, pauseMillis);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    void backfillAtStartup() {
+        Thread.ofVirtual().name("metadata-backfill").start(this::backfill);
+    }
+
+    @Scheduled(fixedDelayString = "${datalake.ingestion.metadata.backfill.interval-ms:600000}",
+            initialDelayString = "${datalake.ingestion.metadata.backfill.interval-ms:600000}")
+    public synchronized void backfill() {
+        Map<String, String> sourceFields = metadataPromotion.sourceFields();
+        if (sourceFields.isEmpty()) {
+            return;
+        }
+        try {
+            for (YearMonth month : backfillRepository.findPendingMonths()) {
+                long start = System.nanoTime();
+                while (backfillRepository.backfillChunk(month, sourceFields, batchSize)) {
+                    if (pauseMillis > 0) {
+                        Thread.sleep(pauseMillis);
+                    }
+                }
+                log.info("Backfilled promoted metadata columns of {} in {} ms", month,
+                        (System.nanoTime() - start) / 1_000_000);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (RuntimeException e) {
+            log.error("Metadata backfill failed; will resume on the next run", e);
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package com.openforum.datalake.job;
+
+import com.openforum.datalake.repository.ActiveUserBitmapRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ * Adds the members the ingestor queued in {@code pending_active_users} to the
+ * weekly and monthly bitmaps the retention endpoint reads, see
+ * {@link ActiveUserBitmapRepository}. Runs every
+ * {@code datalake.retention.bitmaps.interval-ms} until the queue is drained,
+ * in batches of {@code batch-size} queued days that each commit on their own.
+ */
+@Component
+public class RetentionBitmapJob {
+
+    private static final Logger log = LoggerFactory.getLogger(RetentionBitmapJob.class);
+
+    private final ActiveUserBitmapRepository repository;
+    private final int batchSize;
+
+    public RetentionBitmapJob(ActiveUserBitmapRepository repository,
+            @Value("${datalake.retention.bitmaps.batch-size:50000}") int batchSize) {
+        this.repository = repository;
+        this.batchSize = Math.max(1, batchSize);
+    }
+
+    @Scheduled(fixedDelayString = "${datalake.retention.bitmaps.interval-ms:60000}")
+    public synchronized void fold() {
+        try {
+            long start = System.nanoTime();
+            long folded = 0;
+            int batch;
+            do {
+                batch = repository.foldPendingUsers(batchSize);
+                folded += batch;
+            } while (batch == batchSize);
+            if (folded > 0) {
+                log.info("Added {} active member days to the retention bitmaps in {} ms", folded,
+                        (System.nanoTime() - start) / 1_000_000);
+            }
+        } catch (RuntimeException e) {
+            log.error("Retention bitmap update failed; will resume on the next run", e);
+        }
+    }
+}
@@ -0,0 +1,15 @@
+package com.openforum.datalake.loader;
+
+/**
+ * How far a dump file has been loaded.
+ *
+ * @param byteOffset   position just past the last committed record
+ *                     (uncompressed bytes for gzip files)
+ * @param eventsLoaded events read from the file up to {@code byteOffset}
+ */
+public record BulkLoadCheckpoint(String filePath, long byteOffset, long eventsLoaded, boolean completed) {
+
+    public static BulkLoadCheckpoint start(String filePath) {
+        return new BulkLoadCheckpoint(filePath, 0, 0, false);
+    }
+}
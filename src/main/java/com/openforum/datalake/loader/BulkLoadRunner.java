@@ -0,0 +1,223 @@
+package com.openforum.datalake.loader;
+
+import com.openforum.datalake.ingestor.DecodedEvent;
+import com.openforum.datalake.ingestor.EventIngestionService;
+import com.openforum.datalake.ingestor.ForumEventDecoder;
+import com.openforum.datalake.ingestor.RawJson;
+import com.openforum.datalake.ingestor.counters.ThreadCounterBuffer;
+import com.openforum.datalake.repository.BulkLoadCheckpointRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.ExitCodeGenerator;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * Command-line mode that re-seeds the warehouse from NDJSON or gzip dumps of
+ * {@code EventEnvelope} records instead of replaying them through Kafka:
+ *
+ * <pre>
+ * java -jar datalake.jar --bulk-load=/dumps/2024 [--bulk-load=/dumps/extra.ndjson.gz]
+ * </pre>
+ *
+ * Files are loaded in parallel, one per worker, through
+ * {@link EventIngestionService#ingestBatch} so events are mapped exactly as
+ * the Kafka consumer maps them. Progress is checkpointed per file after every
+ * committed batch; a rerun skips completed files and resumes the others. A
+ * batch that committed before its checkpoint was written is replayed and
+ * skipped by the deduplicator.
+ */
+@Component
+@Profile(BulkLoadRunner.PROFILE)
+public class BulkLoadRunner implements ApplicationRunner, ExitCodeGenerator {
+
+    public static final String PROFILE = "bulk-load";
+    public static final String OPTION = "bulk-load";
+
+    private static final Logger log = LoggerFactory.getLogger(BulkLoadRunner.class);
+
+    private final ForumEventDecoder forumEventDecoder;
+    private final EventIngestionService eventIngestionService;
+    private final BulkLoadCheckpointRepository checkpointRepository;
+    private final ThreadCounterBuffer threadCounterBuffer;
+    private final int parallelism;
+    private final int batchSize;
+    private final int bufferSize;
+    private final long reportIntervalSeconds;
+
+    private final AtomicLong eventsRead = new AtomicLong();
+    private final AtomicLong bytesRead = new AtomicLong();
+    private volatile int exitCode;
+
+    public BulkLoadRunner(ForumEventDecoder forumEventDecoder, EventIngestionService eventIngestionService,
+            BulkLoadCheckpointRepository checkpointRepository, ThreadCounterBuffer threadCounterBuffer,
+            @Value("${datalake.bulk-load.parallelism:0}") int parallelism,
+            @Value("${datalake.bulk-load.batch-size:5000}") int batchSize,
+            @Value("${datalake.bulk-load.buffer-size:8388608}") int bufferSize,
+            @Value("${datalake.bulk-load.report-interval-seconds:10}") long reportIntervalSeconds) {
+        this.forumEventDecoder = forumEventDecoder;
+        this.eventIngestionService = eventIngestionService;
+        this.checkpointRepository = checkpointRepository;
+        this.threadCounterBuffer = threadCounterBuffer;
+        this.parallelism = parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors();
+        this.batchSize = batchSize;
+        this.bufferSize = bufferSize;
+        this.reportIntervalSeconds = reportIntervalSeconds;
+    }
+
+    public static boolean isRequested(String[] args) {
+        return Arrays.stream(args).anyMatch(arg -> arg.startsWith("--" + OPTION + "="));
+    }
+
+    @Override
+    public void run(ApplicationArguments args) throws Exception {
+        List<Path> files = collectFiles(args.getOptionValues(OPTION));
+        log.info("Bulk loading {} files with {} workers", files.size(), parallelism);
+
+        long start = System.nanoTime();
+        ScheduledExecutorService reporter = Executors.newSingleThreadScheduledExecutor(
+                Thread.ofPlatform().name("bulk-load-report").daemon().factory());
+        reporter.scheduleAtFixedRate(() -> report("Progress", start), reportIntervalSeconds, reportIntervalSeconds,
+                TimeUnit.SECONDS);
+        int failed = 0;
+        try (ExecutorService workers = Executors.newFixedThreadPool(parallelism,
+                Thread.ofPlatform().name("bulk-load-", 0).factory())) {
+            List<Future<?>> results = new ArrayList<>(files.size());
+            for (Path file : files) {
+                results.add(workers.submit(() -> {
+                    loadFile(file);
+                    return null;
+                }));
+            }
+            for (int i = 0; i < results.size(); i++) {
+                try {
+                    results.get(i).get();
+                } catch (ExecutionException e) {
+                    failed++;
+                    log.error("Failed to load {}; rerun to resume from its checkpoint", files.get(i), e.getCause());
+                }
+            }
+        } finally {
+            reporter.shutdownNow();
+            threadCounterBuffer.flush();
+        }
+        report("Finished", start);
+        if (failed > 0) {
+            log.error("{} of {} files failed", failed, files.size());
+            exitCode = 1;
+        }
+    }
+
+    void loadFile(Path file) throws IOException {
+        String key = file.toAbsolutePath().normalize().toString();
+        BulkLoadCheckpoint checkpoint = checkpointRepository.find(key).orElse(BulkLoadCheckpoint.start(key));
+        if (checkpoint.completed()) {
+            log.info("Skipping {}: already loaded ({} events)", file, checkpoint.eventsLoaded());
+            return;
+        }
+        if (checkpoint.byteOffset() > 0) {
+            log.info("Resuming {} at byte {} ({} events loaded)", file, checkpoint.byteOffset(),
+                    checkpoint.eventsLoaded());
+        }
+
+        long events = checkpoint.eventsLoaded();
+        long committedOffset = checkpoint.byteOffset();
+        Map<UUID, DecodedEvent> batch = new LinkedHashMap<>(batchSize);
+        try (NdjsonRecordReader reader = new NdjsonRecordReader(file, checkpoint.byteOffset(), bufferSize)) {
+            RawJson record;
+            while ((record = reader.next()) != null) {
+                events++;
+                eventsRead.incrementAndGet();
+                DecodedEvent event = decode(file, record);
+                if (event != null) {
+                    batch.putIfAbsent(event.eventId(), event);
+                }
+                if (batch.size() >= batchSize) {
+                    committedOffset = commit(key, batch, reader.offset(), events, committedOffset);
+                }
+            }
+            committedOffset = commit(key, batch, reader.offset(), events, committedOffset);
+        }
+        checkpointRepository.save(new BulkLoadCheckpoint(key, committedOffset, events, true));
+        log.info("Loaded {} ({} events)", file, events);
+    }
+
+    private long commit(String key, Map<UUID, DecodedEvent> batch, long offset, long events, long committedOffset) {
+        if (!batch.isEmpty()) {
+            eventIngestionService.ingestBatch(List.copyOf(batch.values()));
+            batch.clear();
+        }
+        checkpointRepository.save(new BulkLoadCheckpoint(key, offset, events, false));
+        bytesRead.addAndGet(offset - committedOffset);
+        return offset;
+    }
+
+    private DecodedEvent decode(Path file, RawJson record) {
+        try {
+            DecodedEvent event = forumEventDecoder.decode(record.source(), record.offset(), record.length());
+            if (event == null) {
+                log.warn("Skipping record of unknown type in {}", file);
+            }
+            return event;
+        } catch (IOException | IllegalArgumentException e) {
+            log.warn("Skipping unreadable record in {}: {}", file, e.getMessage());
+            return null;
+        }
+    }
+
+    private void report(String label, long start) {
+        double seconds = Math.max((System.nanoTime() - start) / 1e9, 1e-3);
+        long events = eventsRead.get();
+        long bytes = bytesRead.get();
+        log.info("{}: {} events, {} MiB committed in {}s ({} events/s, {} MiB/s)", label, events,
+                bytes >> 20, Math.round(seconds), Math.round(events / seconds),
+                String.format("%.1f", bytes / seconds / (1 << 20)));
+    }
+
+    static List<Path> collectFiles(List<String> locations) throws IOException {
+        List<Path> files = new ArrayList<>();
+        for (String location : locations) {
+            Path path = Path.of(location);
+            if (Files.isDirectory(path)) {
+                try (Stream<Path> entries = Files.walk(path)) {
+                    entries.filter(Files::isRegularFile).filter(BulkLoadRunner::isDump).sorted().forEach(files::add);
+                }
+            } else {
+                files.add(path);
+            }
+        }
+        return files;
+    }
+
+    private static boolean isDump(Path file) {
+        String name = file.getFileName().toString();
+        return name.endsWith(".ndjson") || name.endsWith(".jsonl") || name.endsWith(".json")
+                || name.endsWith(".ndjson.gz") || name.endsWith(".jsonl.gz") || name.endsWith(".json.gz");
+    }
+
+    @Override
+    public int getExitCode() {
+        return exitCode;
+    }
+}
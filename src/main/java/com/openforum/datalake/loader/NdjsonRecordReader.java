@@ -0,0 +1,142 @@
+package com.openforum.datalake.loader;
+
+import com.openforum.datalake.ingestor.RawJson;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Reads newline-delimited JSON records from a plain or gzip file through
+ * large NIO reads. Records are returned as slices of the read buffer, so no
+ * per-record array is allocated; a fresh buffer is used for every refill,
+ * which keeps earlier slices valid until they are no longer referenced.
+ */
+final class NdjsonRecordReader implements Closeable {
+
+    private final FileChannel file;
+    private final ReadableByteChannel source;
+    private final int bufferSize;
+
+    private byte[] buffer = new byte[0];
+    private int position;
+    private int limit;
+    private boolean endOfInput;
+    // Input offset of buffer[0]
+    private long bufferStart;
+
+    /**
+     * @param startOffset input offset to resume from; must be the start of a record
+     */
+    NdjsonRecordReader(Path path, long startOffset, int bufferSize) throws IOException {
+        this.file = FileChannel.open(path, StandardOpenOption.READ);
+        this.bufferSize = bufferSize;
+        try {
+            if (isGzip(path)) {
+                InputStream inflated = new GZIPInputStream(Channels.newInputStream(file), 64 * 1024);
+                inflated.skipNBytes(startOffset);
+                this.source = Channels.newChannel(inflated);
+            } else {
+                file.position(startOffset);
+                this.source = file;
+            }
+        } catch (IOException | RuntimeException e) {
+            file.close();
+            throw e;
+        }
+        this.bufferStart = startOffset;
+    }
+
+    static boolean isGzip(Path path) {
+        return path.getFileName().toString().endsWith(".gz");
+    }
+
+    /**
+     * @return the next non-blank record, or {@code null} at end of input
+     */
+    RawJson next() throws IOException {
+        while (true) {
+            int newline = indexOfNewline();
+            if (newline < 0) {
+                if (endOfInput) {
+                    if (position == limit) {
+                        return null;
+                    }
+                    // Last record without a trailing newline
+                    newline = limit;
+                } else {
+                    refill();
+                    continue;
+                }
+            }
+            int start = position;
+            int end = newline;
+            position = Math.min(newline + 1, limit);
+            while (end > start && isWhitespace(buffer[end - 1])) {
+                end--;
+            }
+            while (start < end && isWhitespace(buffer[start])) {
+                start++;
+            }
+            if (end > start) {
+                return new RawJson(buffer, start, end - start);
+            }
+        }
+    }
+
+    /**
+     * @return input offset just past the last record returned by {@link #next()}
+     */
+    long offset() {
+        return bufferStart + position;
+    }
+
+    private int indexOfNewline() {
+        for (int i = position; i < limit; i++) {
+            if (buffer[i] == '\n') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private void refill() throws IOException {
+        int remaining = limit - position;
+        // Grow when a single record does not fit into the buffer
+        byte[] next = new byte[Math.max(bufferSize, remaining * 2)];
+        System.arraycopy(buffer, position, next, 0, remaining);
+        bufferStart += position;
+        buffer = next;
+        position = 0;
+        limit = remaining;
+
+        ByteBuffer target = ByteBuffer.wrap(buffer, limit, buffer.length - limit);
+        while (target.hasRemaining()) {
+            if (source.read(target) < 0) {
+                endOfInput = true;
+                break;
+            }
+        }
+        limit = target.position();
+    }
+
+    private static boolean isWhitespace(byte b) {
+        return b == ' ' || b == '\t' || b == '\r' || b == '\n';
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            source.close();
+        } finally {
+            file.close();
+        }
+    }
+}
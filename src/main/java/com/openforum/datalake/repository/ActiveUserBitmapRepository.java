@@ -0,0 +1,191 @@
+package com.openforum.datalake.repository;
+
+import com.openforum.datalake.domain.ActivityInterval;
+import com.openforum.datalake.dto.RetentionCohort;
+import com.openforum.datalake.sketch.RoaringBitmap;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.RowCountCallbackHandler;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.sql.Date;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Members active per tenant and calendar week or month, as Roaring bitmaps of
+ * their ordinals in {@code agg_active_user_bitmaps}, and the retention of
+ * cohorts of members computed from them. The ingestor queues members new to
+ * a day in {@code pending_active_users}; {@link #foldPendingUsers(int)} gives
+ * new members the next ordinals of their tenant in {@code dim_user_ordinals}
+ * and adds the queued days to the bitmaps.
+ */
+@Repository
+public class ActiveUserBitmapRepository {
+
+    /**
+     * Queues the members of {@code first_active_users} for
+     * {@link #foldPendingUsers(int)}; part of
+     * {@link InsertedFactCounters#COUNT_INSERTED}.
+     */
+    static final String QUEUE_FIRST_ACTIVE_USERS = """
+            , pending_users AS (
+                INSERT INTO pending_active_users (tenant_code, day, user_id)
+                SELECT tenant_code, day, user_id
+                FROM first_active_users
+                ON CONFLICT DO NOTHING
+            )
+            """;
+
+    static final List<ActivityInterval> GRANULARITIES = List.of(ActivityInterval.WEEK, ActivityInterval.MONTH);
+
+    // Members seen again on an earlier day move to that day's cohort; ordinals are taken in the snapshot of
+    // the statement, which the table lock keeps from changing
+    private static final String DRAIN_SQL = """
+            WITH batch AS (
+                DELETE FROM pending_active_users
+                WHERE ctid = ANY (ARRAY(SELECT ctid FROM pending_active_users LIMIT ?))
+                RETURNING tenant_code, day, user_id
+            ), firsts AS (
+                SELECT tenant_code, user_id, MIN(day) AS first_day
+                FROM batch
+                GROUP BY 1, 2
+            ), earlier AS (
+                UPDATE dim_user_ordinals o SET first_day = f.first_day
+                FROM firsts f
+                WHERE o.tenant_code = f.tenant_code AND o.user_id = f.user_id AND f.first_day < o.first_day
+            ), added AS (
+                INSERT INTO dim_user_ordinals (tenant_code, user_id, ordinal, first_day)
+                SELECT f.tenant_code, f.user_id,
+                       (COALESCE((SELECT MAX(o.ordinal) + 1 FROM dim_user_ordinals o
+                                  WHERE o.tenant_code = f.tenant_code), 0)
+                        + row_number() OVER (PARTITION BY f.tenant_code ORDER BY f.first_day, f.user_id) - 1)::int,
+                       f.first_day
+                FROM firsts f
+                WHERE NOT EXISTS (SELECT 1 FROM dim_user_ordinals o
+                                  WHERE o.tenant_code = f.tenant_code AND o.user_id = f.user_id)
+                RETURNING tenant_code, user_id, ordinal
+            )
+            SELECT b.tenant_code, b.day, COALESCE(a.ordinal, o.ordinal)
+            FROM batch b
+            LEFT JOIN added a ON a.tenant_code = b.tenant_code AND a.user_id = b.user_id
+            LEFT JOIN dim_user_ordinals o ON o.tenant_code = b.tenant_code AND o.user_id = b.user_id
+            """;
+
+    private static final String BITMAP_SQL = """
+            SELECT bitmap FROM agg_active_user_bitmaps
+            WHERE tenant_code = ? AND granularity = ? AND period_start = ?
+            """;
+
+    private static final String UPSERT_BITMAP_SQL = """
+            INSERT INTO agg_active_user_bitmaps (tenant_code, granularity, period_start, bitmap)
+            VALUES (?, ?, ?, ?)
+            ON CONFLICT (tenant_code, granularity, period_start) DO UPDATE SET bitmap = EXCLUDED.bitmap
+            """;
+
+    private static final String BITMAPS_SQL = """
+            SELECT period_start, bitmap FROM agg_active_user_bitmaps
+            WHERE tenant_code = ? AND granularity = ? AND period_start >= ? AND period_start < ?
+            """;
+
+    private static final String COHORTS_SQL = """
+            SELECT first_day, ordinal FROM dim_user_ordinals
+            WHERE tenant_code = ? AND first_day >= ? AND first_day < ?
+            """;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public ActiveUserBitmapRepository(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    /**
+     * Adds up to {@code batchSize} queued members to the bitmaps of their
+     * days' weeks and months, giving members new to their tenant the next
+     * ordinals. Runs one at a time across instances.
+     *
+     * @return number of queued days taken; fewer than {@code batchSize} when
+     *         the queue is drained
+     */
+    @Transactional
+    public int foldPendingUsers(int batchSize) {
+        jdbcTemplate.execute("LOCK TABLE dim_user_ordinals IN SHARE ROW EXCLUSIVE MODE");
+        Map<Period, RoaringBitmap> added = new TreeMap<>(Period.ORDER);
+        RowCountCallbackHandler handler = new RowCountCallbackHandler() {
+            @Override
+            protected void processRow(ResultSet rs, int rowNum) throws SQLException {
+                short tenantCode = rs.getShort(1);
+                LocalDate day = rs.getDate(2).toLocalDate();
+                int ordinal = rs.getInt(3);
+                for (ActivityInterval granularity : GRANULARITIES) {
+                    added.computeIfAbsent(new Period(tenantCode, granularity, granularity.startOf(day)),
+                            period -> new RoaringBitmap()).add(ordinal);
+                }
+            }
+        };
+        jdbcTemplate.query(DRAIN_SQL, handler, batchSize);
+        added.forEach((period, ordinals) -> {
+            Date start = Date.valueOf(period.start());
+            List<byte[]> stored = jdbcTemplate.queryForList(BITMAP_SQL, byte[].class, period.tenantCode(),
+                    period.granularity().name(), start);
+            RoaringBitmap bitmap = stored.isEmpty() ? ordinals : RoaringBitmap.fromBytes(stored.get(0)).or(ordinals);
+            jdbcTemplate.update(UPSERT_BITMAP_SQL, period.tenantCode(), period.granularity().name(), start,
+                    bitmap.toBytes());
+        });
+        return handler.getRowCount();
+    }
+
+    /**
+     * Retention of the cohorts of the weeks or months overlapping the UTC
+     * days in {@code [from, to)}, widened to whole periods: for each period
+     * with members first active in it, how many of them were active in it and
+     * each following period of the range. Members ingested but not folded
+     * yet are left out.
+     */
+    public List<RetentionCohort> findRetention(short tenantCode, ActivityInterval granularity, LocalDate from,
+            LocalDate to) {
+        if (!GRANULARITIES.contains(granularity)) {
+            throw new IllegalArgumentException("Retention is computed per week or month, not per " + granularity);
+        }
+        LocalDate start = granularity.startOf(from);
+        LocalDate end = granularity.endOf(to);
+        Map<LocalDate, RoaringBitmap> cohorts = new TreeMap<>();
+        RowCallbackHandler cohortHandler = rs -> {
+            cohorts.computeIfAbsent(granularity.startOf(rs.getDate(1).toLocalDate()), period -> new RoaringBitmap())
+                    .add(rs.getInt(2));
+        };
+        jdbcTemplate.query(COHORTS_SQL, cohortHandler, tenantCode, Date.valueOf(start), Date.valueOf(end));
+        Map<LocalDate, RoaringBitmap> active = new TreeMap<>();
+        RowCallbackHandler activeHandler = rs -> {
+            active.put(rs.getDate(1).toLocalDate(), RoaringBitmap.fromBytes(rs.getBytes(2)));
+        };
+        jdbcTemplate.query(BITMAPS_SQL, activeHandler, tenantCode, granularity.name(), Date.valueOf(start),
+                Date.valueOf(end));
+
+        List<RetentionCohort> retention = new ArrayList<>();
+        cohorts.forEach((cohortStart, members) -> {
+            List<Long> retained = new ArrayList<>();
+            for (LocalDate period = cohortStart; period.isBefore(end); period = granularity.next(period)) {
+                RoaringBitmap activeMembers = active.get(period);
+                retained.add(activeMembers == null ? 0 : RoaringBitmap.andCardinality(members, activeMembers));
+            }
+            retention.add(new RetentionCohort(cohortStart, members.cardinality(), retained));
+        });
+        return retention;
+    }
+
+    // Bitmaps are upserted in key order, like the rollups
+    private record Period(short tenantCode, ActivityInterval granularity, LocalDate start) {
+
+        static final Comparator<Period> ORDER = Comparator.comparingInt(Period::tenantCode)
+                .thenComparing(period -> period.granularity().name())
+                .thenComparing(Period::start);
+    }
+}
@@ -0,0 +1,264 @@
+package com.openforum.datalake.repository;
+
+import com.openforum.datalake.domain.ActivityInterval;
+import com.openforum.datalake.dto.ActivityPoint;
+import com.openforum.datalake.sketch.HyperLogLog;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.sql.Date;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Activity series of a tenant in hour, day, week or month buckets, read from
+ * the cascade of rollups: {@code agg_hourly_tenant_activity} for hours,
+ * {@code agg_daily_tenant_activity} and {@code agg_daily_user_sketches} for
+ * days and weeks, and {@code agg_monthly_tenant_activity} and
+ * {@code agg_monthly_user_sketches} for compacted months, whose days are then
+ * not read. Also compacts completed months from their days and expires hours.
+ */
+@Repository
+public class ActivityBucketRepository {
+
+    /**
+     * Adds the facts of a preceding {@code inserted} CTE to the hourly tenant
+     * rollup; part of {@link InsertedFactCounters#COUNT_INSERTED}.
+     */
+    static final String COUNT_TENANT_HOURS = """
+            , tenant_hours AS (
+                INSERT INTO agg_hourly_tenant_activity (tenant_code, hour, activity_code, stripe, activity_count)
+                SELECT tenant_code, date_trunc('hour', occurred_at, 'UTC'), COALESCE(activity_code, 0),
+                       1 + pg_backend_pid() % 16, COUNT(*)
+                FROM inserted
+                GROUP BY 1, 2, 3
+                ORDER BY 1, 2, 3
+                ON CONFLICT (tenant_code, hour, activity_code, stripe) DO UPDATE SET
+                    activity_count = agg_hourly_tenant_activity.activity_count + EXCLUDED.activity_count
+            )
+            """;
+
+    private static final String HOURLY_ACTIVITIES_SQL = """
+            SELECT hour, SUM(activity_count)
+            FROM agg_hourly_tenant_activity
+            WHERE tenant_code = ? AND hour >= ? AND hour < ?
+            GROUP BY hour
+            ORDER BY hour
+            """;
+
+    private static final String DAILY_ACTIVITIES_SQL = """
+            SELECT date_trunc(?, day::timestamp)::date, SUM(activity_count)
+            FROM agg_daily_tenant_activity
+            WHERE tenant_code = ? AND day >= ? AND day < ?
+            GROUP BY 1
+            ORDER BY 1
+            """;
+
+    private static final String MONTHLY_ACTIVITIES_SQL = """
+            WITH months AS (
+                SELECT month, activity_count
+                FROM agg_monthly_tenant_activity
+                WHERE tenant_code = ? AND month >= ? AND month < ?
+            )
+            SELECT month, SUM(activity_count)
+            FROM (
+                SELECT month, activity_count FROM months
+                UNION ALL
+                SELECT date_trunc('month', day::timestamp)::date, activity_count
+                FROM agg_daily_tenant_activity
+                WHERE tenant_code = ? AND day >= ? AND day < ?
+                  AND date_trunc('month', day::timestamp)::date NOT IN (SELECT month FROM months)
+            ) b
+            GROUP BY month
+            ORDER BY month
+            """;
+
+    private static final String DAILY_SKETCHES_SQL = """
+            SELECT day, sketch
+            FROM agg_daily_user_sketches
+            WHERE tenant_code = ? AND day >= ? AND day < ?
+            """;
+
+    // Only months wholly in the range stand in for their days
+    private static final String MONTHLY_SKETCHES_SQL = """
+            WITH months AS (
+                SELECT month, sketch
+                FROM agg_monthly_user_sketches
+                WHERE tenant_code = ? AND month >= ? AND month + INTERVAL '1 month' <= ?
+            )
+            SELECT month, sketch FROM months
+            UNION ALL
+            SELECT day, sketch
+            FROM agg_daily_user_sketches
+            WHERE tenant_code = ? AND day >= ? AND day < ?
+              AND date_trunc('month', day::timestamp)::date NOT IN (SELECT month FROM months)
+            """;
+
+    // Per type, so a month whose days changed since it was compacted differs even if its total does not
+    private static final String MONTHS_TO_COMPACT_SQL = """
+            WITH days AS (
+                SELECT tenant_code, date_trunc('month', day::timestamp)::date AS month, activity_code,
+                       SUM(activity_count) AS activity_count
+                FROM agg_daily_tenant_activity
+                WHERE day < ?
+                GROUP BY 1, 2, 3
+            ), months AS (
+                SELECT tenant_code, month, activity_code, activity_count
+                FROM agg_monthly_tenant_activity
+                WHERE month < ?
+            )
+            SELECT DISTINCT tenant_code, month
+            FROM days d
+            FULL JOIN months m USING (tenant_code, month, activity_code)
+            WHERE d.activity_count IS DISTINCT FROM m.activity_count
+            ORDER BY 1, 2
+            """;
+
+    private static final String DELETE_MONTH_SQL =
+            "DELETE FROM agg_monthly_tenant_activity WHERE tenant_code = ? AND month = ?";
+
+    private static final String COMPACT_MONTH_SQL = """
+            INSERT INTO agg_monthly_tenant_activity (tenant_code, month, activity_code, activity_count)
+            SELECT tenant_code, ?, activity_code, SUM(activity_count)
+            FROM agg_daily_tenant_activity
+            WHERE tenant_code = ? AND day >= ? AND day < ?
+            GROUP BY tenant_code, activity_code
+            """;
+
+    private static final String DELETE_MONTH_SKETCH_SQL =
+            "DELETE FROM agg_monthly_user_sketches WHERE tenant_code = ? AND month = ?";
+
+    private static final String INSERT_MONTH_SKETCH_SQL =
+            "INSERT INTO agg_monthly_user_sketches (tenant_code, month, sketch) VALUES (?, ?, ?)";
+
+    private static final String EXPIRE_HOURS_SQL = "DELETE FROM agg_hourly_tenant_activity WHERE hour < ?";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public ActivityBucketRepository(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    /**
+     * Activities of the tenant per bucket over the UTC days in
+     * {@code [from, to)}, widened to whole buckets; buckets without activity
+     * left out. Hours are only kept for the compaction's retention.
+     */
+    public List<ActivityPoint> findActivities(short tenantCode, ActivityInterval interval, LocalDate from,
+            LocalDate to) {
+        Date start = Date.valueOf(interval.startOf(from));
+        Date end = Date.valueOf(interval.endOf(to));
+        return switch (interval) {
+            case HOUR -> jdbcTemplate.query(HOURLY_ACTIVITIES_SQL,
+                    (rs, rowNum) -> new ActivityPoint(rs.getTimestamp(1).toInstant(), rs.getLong(2)),
+                    tenantCode, startOf(from), startOf(to));
+            case DAY, WEEK -> jdbcTemplate.query(DAILY_ACTIVITIES_SQL,
+                    (rs, rowNum) -> ActivityPoint.ofDay(rs.getDate(1).toLocalDate(), rs.getLong(2)),
+                    interval.name().toLowerCase(), tenantCode, start, end);
+            case MONTH -> jdbcTemplate.query(MONTHLY_ACTIVITIES_SQL,
+                    (rs, rowNum) -> ActivityPoint.ofDay(rs.getDate(1).toLocalDate(), rs.getLong(2)),
+                    tenantCode, start, end, tenantCode, start, end);
+        };
+    }
+
+    /**
+     * Estimated active users of the tenant per week or month over the UTC
+     * days in {@code [from, to)}, widened to whole buckets; buckets without
+     * active users left out.
+     */
+    public List<ActivityPoint> findActiveUsers(short tenantCode, ActivityInterval interval, LocalDate from,
+            LocalDate to) {
+        if (interval != ActivityInterval.WEEK && interval != ActivityInterval.MONTH) {
+            throw new IllegalArgumentException("Active users are estimated per week or month, not per " + interval);
+        }
+        Map<LocalDate, HyperLogLog> buckets = new TreeMap<>();
+        readSketches(tenantCode, interval.startOf(from), interval.endOf(to), interval == ActivityInterval.MONTH,
+                (day, sketch) -> buckets.merge(interval.startOf(day), sketch, HyperLogLog::merge));
+        List<ActivityPoint> points = new ArrayList<>();
+        buckets.forEach((start, sketch) -> points.add(ActivityPoint.ofDay(start, sketch.estimate())));
+        return points;
+    }
+
+    /**
+     * Estimated active users of the tenant over the UTC days in
+     * {@code [from, to)}, each counted once.
+     */
+    public long countActiveUsers(short tenantCode, LocalDate from, LocalDate to) {
+        HyperLogLog union = new HyperLogLog();
+        readSketches(tenantCode, from, to, true, (day, sketch) -> union.merge(sketch));
+        return union.estimate();
+    }
+
+    private void readSketches(short tenantCode, LocalDate from, LocalDate to, boolean months,
+            SketchConsumer consumer) {
+        Date start = Date.valueOf(from);
+        Date end = Date.valueOf(to);
+        RowCallbackHandler handler = rs -> {
+            consumer.accept(rs.getDate(1).toLocalDate(), HyperLogLog.fromBytes(rs.getBytes(2)));
+        };
+        if (months) {
+            jdbcTemplate.query(MONTHLY_SKETCHES_SQL, handler, tenantCode,
+                    Date.valueOf(ActivityInterval.MONTH.endOf(from)), end, tenantCode, start, end);
+        } else {
+            jdbcTemplate.query(DAILY_SKETCHES_SQL, handler, tenantCode, start, end);
+        }
+    }
+
+    /**
+     * Tenant months before {@code before} whose days changed since they were
+     * compacted, or were never compacted.
+     */
+    public List<TenantMonth> findMonthsToCompact(LocalDate before) {
+        Date end = Date.valueOf(before);
+        return jdbcTemplate.query(MONTHS_TO_COMPACT_SQL,
+                (rs, rowNum) -> new TenantMonth(rs.getShort(1), rs.getDate(2).toLocalDate()), end, end);
+    }
+
+    /**
+     * Replaces the month's activity and active member sketch with those of
+     * its days. Days written meanwhile are left to the next compaction, which
+     * finds the month differing again.
+     */
+    @Transactional
+    public void compactMonth(short tenantCode, LocalDate month) {
+        Date start = Date.valueOf(month);
+        Date end = Date.valueOf(month.plusMonths(1));
+        jdbcTemplate.update(DELETE_MONTH_SQL, tenantCode, start);
+        jdbcTemplate.update(COMPACT_MONTH_SQL, start, tenantCode, start, end);
+        HyperLogLog sketch = new HyperLogLog();
+        readSketches(tenantCode, month, month.plusMonths(1), false, (day, stripe) -> sketch.merge(stripe));
+        jdbcTemplate.update(DELETE_MONTH_SKETCH_SQL, tenantCode, start);
+        if (!sketch.isEmpty()) {
+            jdbcTemplate.update(INSERT_MONTH_SKETCH_SQL, tenantCode, start, sketch.toBytes());
+        }
+    }
+
+    /**
+     * Drops the hours before {@code before}; their days keep their activity.
+     *
+     * @return number of rows deleted
+     */
+    public int expireHours(Instant before) {
+        return jdbcTemplate.update(EXPIRE_HOURS_SQL, Timestamp.from(before));
+    }
+
+    private static Timestamp startOf(LocalDate day) {
+        return Timestamp.from(day.atStartOfDay(ZoneOffset.UTC).toInstant());
+    }
+
+    @FunctionalInterface
+    private interface SketchConsumer {
+        void accept(LocalDate day, HyperLogLog sketch);
+    }
+
+    public record TenantMonth(short tenantCode, LocalDate month) {
+    }
+}
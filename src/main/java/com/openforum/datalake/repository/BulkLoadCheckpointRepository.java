@@ -0,0 +1,37 @@
+package com.openforum.datalake.repository;
+
+import com.openforum.datalake.loader.BulkLoadCheckpoint;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.util.Optional;
+
+@Repository
+public class BulkLoadCheckpointRepository {
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public BulkLoadCheckpointRepository(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    public Optional<BulkLoadCheckpoint> find(String filePath) {
+        return jdbcTemplate.query(
+                "SELECT file_path, byte_offset, events_loaded, completed FROM bulk_load_checkpoints WHERE file_path = ?",
+                (rs, rowNum) -> new BulkLoadCheckpoint(rs.getString(1), rs.getLong(2), rs.getLong(3), rs.getBoolean(4)),
+                filePath).stream().findFirst();
+    }
+
+    public void save(BulkLoadCheckpoint checkpoint) {
+        jdbcTemplate.update("""
+                INSERT INTO bulk_load_checkpoints (file_path, byte_offset, events_loaded, completed, updated_at)
+                VALUES (?, ?, ?, ?, NOW())
+                ON CONFLICT (file_path) DO UPDATE SET
+                    byte_offset = EXCLUDED.byte_offset,
+                    events_loaded = EXCLUDED.events_loaded,
+                    completed = EXCLUDED.completed,
+                    updated_at = EXCLUDED.updated_at
+                """, checkpoint.filePath(), checkpoint.byteOffset(), checkpoint.eventsLoaded(),
+                checkpoint.completed());
+    }
+}
@@ -0,0 +1,119 @@
+package com.openforum.datalake.repository;
+
+import org.apache.kafka.common.TopicPartition;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Kafka positions stored in {@code consumer_offsets}, as the offset of the
+ * next record to consume per consumer group and partition.
+ */
+@Repository
+public class ConsumerOffsetRepository {
+
+    private static final String CLAIM_SQL = """
+            INSERT INTO consumer_offsets (consumer_group, topic, partition_id, next_offset)
+            VALUES (?, ?, ?, 0)
+            ON CONFLICT DO NOTHING
+            """;
+
+    // Partitions are locked in key order so that overlapping lockers cannot deadlock
+    private static final String LOCK_SQL = """
+            SELECT topic, partition_id, next_offset FROM consumer_offsets
+            WHERE consumer_group = ? AND topic = ? AND partition_id = ANY (?)
+            ORDER BY partition_id
+            FOR UPDATE
+            """;
+
+    // Never moves backwards, so a stale writer cannot rewind a partition
+    private static final String SAVE_SQL = """
+            INSERT INTO consumer_offsets (consumer_group, topic, partition_id, next_offset)
+            VALUES (?, ?, ?, ?)
+            ON CONFLICT (consumer_group, topic, partition_id) DO UPDATE SET
+                next_offset = GREATEST(consumer_offsets.next_offset, EXCLUDED.next_offset),
+                updated_at = NOW()
+            """;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public ConsumerOffsetRepository(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    /**
+     * @return the stored next offsets of those partitions that have one
+     */
+    public Map<TopicPartition, Long> findOffsets(String consumerGroup, Collection<TopicPartition> partitions) {
+        Map<TopicPartition, Long> offsets = new HashMap<>();
+        byTopic(partitions).forEach((topic, ids) -> jdbcTemplate.query(
+                "SELECT partition_id, next_offset FROM consumer_offsets"
+                        + " WHERE consumer_group = ? AND topic = ? AND partition_id = ANY (?)",
+                ps -> {
+                    ps.setString(1, consumerGroup);
+                    ps.setString(2, topic);
+                    ps.setArray(3, ps.getConnection().createArrayOf("integer", ids.toArray()));
+                },
+                rs -> {
+                    offsets.put(new TopicPartition(topic, rs.getInt(1)), rs.getLong(2));
+                }));
+        return offsets;
+    }
+
+    /**
+     * Locks the positions of the partitions until the end of the current
+     * transaction, creating them at offset 0 if they are new.
+     *
+     * @return the stored next offset of every partition
+     */
+    public Map<TopicPartition, Long> lockOffsets(String consumerGroup, Collection<TopicPartition> partitions) {
+        if (partitions.isEmpty()) {
+            return Map.of();
+        }
+        List<TopicPartition> ordered = partitions.stream()
+                .sorted(Comparator.comparing(TopicPartition::topic).thenComparingInt(TopicPartition::partition))
+                .toList();
+        jdbcTemplate.batchUpdate(CLAIM_SQL, ordered, ordered.size(), (ps, partition) -> {
+            ps.setString(1, consumerGroup);
+            ps.setString(2, partition.topic());
+            ps.setInt(3, partition.partition());
+        });
+        Map<TopicPartition, Long> offsets = new HashMap<>();
+        byTopic(ordered).forEach((topic, ids) -> jdbcTemplate.query(LOCK_SQL,
+                ps -> {
+                    ps.setString(1, consumerGroup);
+                    ps.setString(2, topic);
+                    ps.setArray(3, ps.getConnection().createArrayOf("integer", ids.toArray()));
+                },
+                rs -> {
+                    offsets.put(new TopicPartition(rs.getString(1), rs.getInt(2)), rs.getLong(3));
+                }));
+        return offsets;
+    }
+
+    public void saveOffsets(String consumerGroup, Map<TopicPartition, Long> nextOffsets) {
+        if (nextOffsets.isEmpty()) {
+            return;
+        }
+        List<Map.Entry<TopicPartition, Long>> entries = List.copyOf(nextOffsets.entrySet());
+        jdbcTemplate.batchUpdate(SAVE_SQL, entries, entries.size(), (ps, entry) -> {
+            ps.setString(1, consumerGroup);
+            ps.setString(2, entry.getKey().topic());
+            ps.setInt(3, entry.getKey().partition());
+            ps.setLong(4, entry.getValue());
+        });
+    }
+
+    private static Map<String, List<Integer>> byTopic(Collection<TopicPartition> partitions) {
+        Map<String, List<Integer>> byTopic = new HashMap<>();
+        partitions.forEach(partition -> byTopic.computeIfAbsent(partition.topic(), topic -> new ArrayList<>())
+                .add(partition.partition()));
+        return byTopic;
+    }
+}
@@ -0,0 +1,412 @@
+package com.openforum.datalake.repository;
+
+import com.openforum.datalake.dto.ActivityRollupReconciliation.Mismatch;
+import com.openforum.datalake.dto.ActivityPoint;
+import com.openforum.datalake.sketch.HyperLogLog;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.sql.Date;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/**
+ * Reads of the daily tenant rollup {@code agg_daily_tenant_activity} and the
+ * active member sketches {@code agg_daily_user_sketches}, and their
+ * reconciliation with {@code fact_activity}. Both are written by the
+ * ingestor, see {@link InsertedFactCounters}.
+ */
+@Repository
+public class DailyTenantActivityRepository {
+
+    /**
+     * Records the members of a preceding {@code inserted} CTE who are new to
+     * a day, returned as {@code first_active_users} for the other counters;
+     * part of {@link InsertedFactCounters#COUNT_INSERTED}.
+     */
+    static final String COUNT_FIRST_ACTIVE_USERS = """
+            , first_active_users AS (
+                INSERT INTO agg_daily_active_users (day, tenant_code, user_id, activity_code)
+                SELECT DISTINCT ON (1, 2, 3) (occurred_at AT TIME ZONE 'UTC')::date, tenant_code, user_id,
+                       COALESCE(activity_code, 0)
+                FROM inserted
+                WHERE user_id IS NOT NULL
+                ORDER BY 1, 2, 3, occurred_at
+                ON CONFLICT DO NOTHING
+                RETURNING day, tenant_code, user_id, activity_code
+            )
+            """;
+
+    /**
+     * Adds the facts of a preceding {@code inserted} CTE and the members of
+     * {@code first_active_users} to the daily tenant rollup.
+     */
+    static final String COUNT_TENANT_DAYS = """
+            , tenant_days AS (
+                INSERT INTO agg_daily_tenant_activity (tenant_code, day, activity_code, stripe, activity_count,
+                                                       first_active_users)
+                SELECT tenant_code, day, activity_code, 1 + pg_backend_pid() % 16, SUM(activity_count),
+                       SUM(first_active_users)
+                FROM (
+                    SELECT tenant_code, (occurred_at AT TIME ZONE 'UTC')::date AS day,
+                           COALESCE(activity_code, 0) AS activity_code, 1 AS activity_count, 0 AS first_active_users
+                    FROM inserted
+                    UNION ALL
+                    SELECT tenant_code, day, activity_code, 0, 1
+                    FROM first_active_users
+                ) d
+                GROUP BY 1, 2, 3
+                ORDER BY 1, 2, 3
+                ON CONFLICT (tenant_code, day, activity_code, stripe) DO UPDATE SET
+                    activity_count = agg_daily_tenant_activity.activity_count + EXCLUDED.activity_count,
+                    first_active_users = agg_daily_tenant_activity.first_active_users
+                                         + EXCLUDED.first_active_users
+            )
+            """;
+
+    /**
+     * Adds the members of {@code first_active_users} to the sketches of their
+     * days.
+     */
+    static final String SKETCH_FIRST_ACTIVE_USERS = """
+            , new_user_registers AS (
+                SELECT tenant_code, day, array_agg(register ORDER BY register) AS registers,
+                       array_agg(rank ORDER BY register) AS ranks
+                FROM (
+                    SELECT tenant_code, day, hll_register(user_id) AS register, MAX(hll_rank(user_id)) AS rank
+                    FROM first_active_users
+                    GROUP BY 1, 2, 3
+                ) r
+                GROUP BY 1, 2
+            ), user_sketches AS (
+                INSERT INTO agg_daily_user_sketches (tenant_code, day, stripe, sketch)
+                SELECT tenant_code, day, 1 + pg_backend_pid() % 16, hll_add(NULL, registers, ranks)
+                FROM new_user_registers
+                ORDER BY 1, 2
+                ON CONFLICT (tenant_code, day, stripe) DO UPDATE SET
+                    sketch = hll_add(agg_daily_user_sketches.sketch,
+                            (SELECT n.registers FROM new_user_registers n
+                             WHERE n.tenant_code = EXCLUDED.tenant_code AND n.day = EXCLUDED.day),
+                            (SELECT n.ranks FROM new_user_registers n
+                             WHERE n.tenant_code = EXCLUDED.tenant_code AND n.day = EXCLUDED.day))
+            )
+            """;
+
+    private static final String DAILY_ACTIVE_USERS_SQL = """
+            SELECT day, SUM(first_active_users)
+            FROM agg_daily_tenant_activity
+            WHERE tenant_code = ? AND day >= ? AND day < ?
+            GROUP BY day
+            ORDER BY day
+            """;
+
+    // Types are compared one by one; first_active_users only add up per day
+    private static final String MISMATCHES_SQL = """
+            WITH fact_types AS (
+                SELECT tenant_code, (occurred_at AT TIME ZONE 'UTC')::date AS day,
+                       COALESCE(activity_code, 0) AS activity_code, COUNT(*) AS activity_count
+                FROM fact_activity
+                WHERE occurred_at >= ? AND occurred_at < ?
+                GROUP BY 1, 2, 3
+            ), fact_users AS (
+                SELECT tenant_code, (occurred_at AT TIME ZONE 'UTC')::date AS day,
+                       COUNT(DISTINCT user_id) AS active_users
+                FROM fact_activity
+                WHERE occurred_at >= ? AND occurred_at < ?
+                GROUP BY 1, 2
+            ), rolled_types AS (
+                SELECT tenant_code, day, activity_code, SUM(activity_count) AS activity_count,
+                       SUM(first_active_users) AS active_users
+                FROM agg_daily_tenant_activity
+                WHERE day >= ? AND day < ?
+                GROUP BY 1, 2, 3
+            ), days AS (
+                SELECT tenant_code, day,
+                       COALESCE(SUM(r.activity_count), 0) AS rolled_up_activities,
+                       COALESCE(SUM(f.activity_count), 0) AS activities,
+                       COALESCE(SUM(r.active_users), 0) AS rolled_up_active_users,
+                       bool_or(f.activity_count IS DISTINCT FROM r.activity_count) AS types_differ
+                FROM fact_types f
+                FULL JOIN rolled_types r USING (tenant_code, day, activity_code)
+                GROUP BY tenant_code, day
+            )
+            SELECT t.tenant_id, d.day, d.rolled_up_activities, d.activities, d.rolled_up_active_users,
+                   COALESCE(u.active_users, 0)
+            FROM days d
+            JOIN dim_tenants t ON t.tenant_code = d.tenant_code
+            LEFT JOIN fact_users u ON u.tenant_code = d.tenant_code AND u.day = d.day
+            WHERE d.types_differ OR d.rolled_up_active_users <> COALESCE(u.active_users, 0)
+            ORDER BY t.tenant_id, d.day
+            """;
+
+    private static final String DELETE_ACTIVE_USERS_SQL =
+            "DELETE FROM agg_daily_active_users WHERE tenant_code = ? AND day = ?";
+
+    private static final String DELETE_ROLLUP_SQL =
+            "DELETE FROM agg_daily_tenant_activity WHERE tenant_code = ? AND day = ?";
+
+    // Members are attributed to the type of their earliest activity of the day, as V13 seeded them
+    private static final String DERIVE_ACTIVE_USERS_SQL = """
+            INSERT INTO agg_daily_active_users (day, tenant_code, user_id, activity_code)
+            SELECT DISTINCT ON (1, 2, 3) (occurred_at AT TIME ZONE 'UTC')::date, tenant_code, user_id,
+                   COALESCE(activity_code, 0)
+            FROM fact_activity
+            WHERE tenant_code = ? AND user_id IS NOT NULL AND occurred_at >= ? AND occurred_at < ?
+            ORDER BY 1, 2, 3, occurred_at
+            """;
+
+    // Bitmaps only gain members, so queueing all of them again is safe
+    private static final String QUEUE_ACTIVE_USERS_SQL = """
+            INSERT INTO pending_active_users (tenant_code, day, user_id)
+            SELECT tenant_code, day, user_id
+            FROM agg_daily_active_users
+            WHERE tenant_code = ? AND day = ?
+            ON CONFLICT DO NOTHING
+            """;
+
+    private static final String DERIVE_ROLLUP_SQL = """
+            INSERT INTO agg_daily_tenant_activity (tenant_code, day, activity_code, stripe, activity_count,
+                                                   first_active_users)
+            SELECT tenant_code, day, activity_code, 0, SUM(activity_count), SUM(first_active_users)
+            FROM (
+                SELECT tenant_code, (occurred_at AT TIME ZONE 'UTC')::date AS day,
+                       COALESCE(activity_code, 0) AS activity_code, COUNT(*) AS activity_count,
+                       0 AS first_active_users
+                FROM fact_activity
+                WHERE tenant_code = ? AND occurred_at >= ? AND occurred_at < ?
+                GROUP BY 1, 2, 3
+                UNION ALL
+                SELECT tenant_code, day, activity_code, 0, COUNT(*)
+                FROM agg_daily_active_users
+                WHERE tenant_code = ? AND day = ?
+                GROUP BY 1, 2, 3
+            ) d
+            GROUP BY 1, 2, 3
+            """;
+
+    private static final String DELETE_HOURS_SQL =
+            "DELETE FROM agg_hourly_tenant_activity WHERE tenant_code = ? AND hour >= ? AND hour < ?";
+
+    private static final String DERIVE_HOURS_SQL = """
+            INSERT INTO agg_hourly_tenant_activity (tenant_code, hour, activity_code, stripe, activity_count)
+            SELECT tenant_code, date_trunc('hour', occurred_at, 'UTC'), COALESCE(activity_code, 0), 0, COUNT(*)
+            FROM fact_activity
+            WHERE tenant_code = ? AND occurred_at >= ? AND occurred_at < ?
+            GROUP BY 1, 2, 3
+            """;
+
+    private static final String DELETE_SKETCHES_SQL =
+            "DELETE FROM agg_daily_user_sketches WHERE tenant_code = ? AND day = ?";
+
+    // As seeded by V14
+    private static final String DERIVE_SKETCHES_SQL = """
+            INSERT INTO agg_daily_user_sketches (tenant_code, day, stripe, sketch)
+            SELECT tenant_code, day, 0, hll_add(NULL, array_agg(register), array_agg(rank))
+            FROM (
+                SELECT tenant_code, day, hll_register(user_id) AS register, MAX(hll_rank(user_id)) AS rank
+                FROM agg_daily_active_users
+                WHERE tenant_code = ? AND day = ?
+                GROUP BY 1, 2, 3
+            ) r
+            GROUP BY 1, 2
+            """;
+
+    // Ingestion never writes stripe 0, so the folded counts are only added to the counts folded before
+    private static final String FOLD_ROLLUP_STRIPES_SQL = """
+            WITH striped AS (
+                DELETE FROM agg_daily_tenant_activity
+                WHERE day < ? AND stripe <> 0
+                RETURNING tenant_code, day, activity_code, activity_count, first_active_users
+            )
+            INSERT INTO agg_daily_tenant_activity (tenant_code, day, activity_code, stripe, activity_count,
+                                                   first_active_users)
+            SELECT tenant_code, day, activity_code, 0, SUM(activity_count), SUM(first_active_users)
+            FROM striped
+            GROUP BY 1, 2, 3
+            ORDER BY 1, 2, 3
+            ON CONFLICT (tenant_code, day, activity_code, stripe) DO UPDATE SET
+                activity_count = agg_daily_tenant_activity.activity_count + EXCLUDED.activity_count,
+                first_active_users = agg_daily_tenant_activity.first_active_users + EXCLUDED.first_active_users
+            """;
+
+    private static final String FOLD_HOUR_STRIPES_SQL = """
+            WITH striped AS (
+                DELETE FROM agg_hourly_tenant_activity
+                WHERE hour < ? AND stripe <> 0
+                RETURNING tenant_code, hour, activity_code, activity_count
+            )
+            INSERT INTO agg_hourly_tenant_activity (tenant_code, hour, activity_code, stripe, activity_count)
+            SELECT tenant_code, hour, activity_code, 0, SUM(activity_count)
+            FROM striped
+            GROUP BY 1, 2, 3
+            ORDER BY 1, 2, 3
+            ON CONFLICT (tenant_code, hour, activity_code, stripe) DO UPDATE SET
+                activity_count = agg_hourly_tenant_activity.activity_count + EXCLUDED.activity_count
+            """;
+
+    private static final String SKETCHES_SQL = """
+            SELECT day, sketch
+            FROM agg_daily_user_sketches
+            WHERE tenant_code = ? AND day >= ? AND day < ?
+            """;
+
+    // Deleted rows are returned as last written, so stripes added to meanwhile are folded with their additions
+    private static final String DELETE_STRIPED_SKETCHES_SQL = """
+            DELETE FROM agg_daily_user_sketches
+            WHERE (tenant_code, day) IN (
+                SELECT tenant_code, day
+                FROM agg_daily_user_sketches
+                WHERE day < ?
+                GROUP BY 1, 2
+                HAVING COUNT(*) > 1
+            )
+            RETURNING tenant_code, day, sketch
+            """;
+
+    private static final String INSERT_FOLDED_SKETCH_SQL =
+            "INSERT INTO agg_daily_user_sketches (tenant_code, day, stripe, sketch) VALUES (?, ?, 0, ?)";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public DailyTenantActivityRepository(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    /**
+     * Active users of the tenant per UTC day in {@code [from, to)}, days
+     * without activity left out.
+     */
+    public List<ActivityPoint> findDailyActiveUsers(short tenantCode, LocalDate from, LocalDate to) {
+        return jdbcTemplate.query(DAILY_ACTIVE_USERS_SQL,
+                (rs, rowNum) -> ActivityPoint.ofDay(rs.getDate(1).toLocalDate(), rs.getLong(2)),
+                tenantCode, Date.valueOf(from), Date.valueOf(to));
+    }
+
+    /**
+     * Active users of the tenant in the {@code windowDays} UTC days up to and
+     * including each day of {@code [from, to)}, estimated by merging the daily
+     * sketches; days without any active users in their window left out.
+     */
+    public List<ActivityPoint> findActiveUsers(short tenantCode, LocalDate from, LocalDate to,
+            int windowDays) {
+        NavigableMap<LocalDate, HyperLogLog> sketches = findSketches(tenantCode, from.minusDays(windowDays - 1L), to);
+        List<ActivityPoint> points = new ArrayList<>();
+        for (LocalDate day = from; day.isBefore(to); day = day.plusDays(1)) {
+            HyperLogLog window = new HyperLogLog();
+            sketches.subMap(day.minusDays(windowDays - 1L), true, day, true).values().forEach(window::merge);
+            if (!window.isEmpty()) {
+                points.add(ActivityPoint.ofDay(day, window.estimate()));
+            }
+        }
+        return points;
+    }
+
+    private NavigableMap<LocalDate, HyperLogLog> findSketches(short tenantCode, LocalDate from, LocalDate to) {
+        NavigableMap<LocalDate, HyperLogLog> sketches = new TreeMap<>();
+        jdbcTemplate.query(SKETCHES_SQL, rs -> {
+            HyperLogLog stripe = HyperLogLog.fromBytes(rs.getBytes(2));
+            sketches.merge(rs.getDate(1).toLocalDate(), stripe, HyperLogLog::merge);
+        }, tenantCode, Date.valueOf(from), Date.valueOf(to));
+        return sketches;
+    }
+
+    /**
+     * Folds the rollup and hour stripes of the UTC days before {@code before}
+     * into stripe 0, leaving one row per tenant, day or hour, and type.
+     * Ingestion may still add to those days; it waits for the rows being
+     * folded and otherwise adds new stripes, folded on a later run.
+     *
+     * @return number of rows the stripes were folded into
+     */
+    @Transactional
+    public int foldStripes(LocalDate before) {
+        return jdbcTemplate.update(FOLD_ROLLUP_STRIPES_SQL, Date.valueOf(before))
+                + jdbcTemplate.update(FOLD_HOUR_STRIPES_SQL, startOf(before));
+    }
+
+    /**
+     * Folds the sketch stripes of each tenant and UTC day before
+     * {@code before} that has more than one into stripe 0. Ingestion may add
+     * to the days meanwhile; it waits for the rows being folded and otherwise
+     * starts new stripes, folded on a later run.
+     *
+     * @return number of tenant days folded
+     */
+    @Transactional
+    public int foldSketchStripes(LocalDate before) {
+        Map<TenantDay, HyperLogLog> folded = new HashMap<>();
+        jdbcTemplate.query(DELETE_STRIPED_SKETCHES_SQL, rs -> {
+            HyperLogLog stripe = HyperLogLog.fromBytes(rs.getBytes(3));
+            folded.merge(new TenantDay(rs.getShort(1), rs.getDate(2).toLocalDate()), stripe, HyperLogLog::merge);
+        }, Date.valueOf(before));
+        jdbcTemplate.batchUpdate(INSERT_FOLDED_SKETCH_SQL, new ArrayList<>(folded.entrySet()), 100,
+                (ps, entry) -> {
+                    ps.setShort(1, entry.getKey().tenantCode());
+                    ps.setDate(2, Date.valueOf(entry.getKey().day()));
+                    ps.setBytes(3, entry.getValue().toBytes());
+                });
+        return folded.size();
+    }
+
+    /**
+     * Compares the rollup of the UTC days in {@code [from, to)} with the facts
+     * of those days.
+     */
+    public List<Mismatch> findMismatches(LocalDate from, LocalDate to) {
+        Timestamp start = startOf(from);
+        Timestamp end = startOf(to);
+        return jdbcTemplate.query(MISMATCHES_SQL,
+                (rs, rowNum) -> new Mismatch(rs.getString(1), rs.getDate(2).toLocalDate(), rs.getLong(3),
+                        rs.getLong(4), rs.getLong(5), rs.getLong(6)),
+                start, end, start, end, Date.valueOf(from), Date.valueOf(to));
+    }
+
+    /**
+     * Recomputes the tenant's rollup, its hours, the active members and their
+     * sketch of the UTC day from the facts, folding their stripes into one
+     * row per day or hour and type; months compacted from the day are
+     * compacted again by {@link ActivityBucketRepository}, and the active
+     * members are queued again for {@link ActiveUserBitmapRepository}.
+     * Ingestion waits for the transaction, which only covers the one tenant
+     * day, so facts committed meanwhile are neither lost nor counted twice;
+     * gives up after {@code lockTimeoutMillis} if the locks are not granted.
+     */
+    @Transactional
+    public void recompute(String tenantId, LocalDate day, long lockTimeoutMillis) {
+        jdbcTemplate.execute("SET LOCAL lock_timeout = " + lockTimeoutMillis);
+        // Waits for ingest transactions that already counted facts, so those facts are read below; locked in
+        // the order the ingest statement locks them
+        jdbcTemplate.execute(
+                "LOCK TABLE agg_daily_active_users, agg_daily_tenant_activity, agg_daily_user_sketches,"
+                        + " agg_hourly_tenant_activity IN SHARE ROW EXCLUSIVE MODE");
+        short tenantCode = jdbcTemplate.queryForObject("SELECT tenant_code FROM dim_tenants WHERE tenant_id = ?",
+                Short.class, tenantId);
+        Date date = Date.valueOf(day);
+        Timestamp start = startOf(day);
+        Timestamp end = startOf(day.plusDays(1));
+        jdbcTemplate.update(DELETE_ACTIVE_USERS_SQL, tenantCode, date);
+        jdbcTemplate.update(DELETE_ROLLUP_SQL, tenantCode, date);
+        jdbcTemplate.update(DELETE_SKETCHES_SQL, tenantCode, date);
+        jdbcTemplate.update(DERIVE_ACTIVE_USERS_SQL, tenantCode, start, end);
+        jdbcTemplate.update(QUEUE_ACTIVE_USERS_SQL, tenantCode, date);
+        jdbcTemplate.update(DERIVE_ROLLUP_SQL, tenantCode, start, end, tenantCode, date);
+        jdbcTemplate.update(DERIVE_SKETCHES_SQL, tenantCode, date);
+        jdbcTemplate.update(DELETE_HOURS_SQL, tenantCode, start, end);
+        jdbcTemplate.update(DERIVE_HOURS_SQL, tenantCode, start, end);
+    }
+
+    private static Timestamp startOf(LocalDate day) {
+        return Timestamp.from(day.atStartOfDay(ZoneOffset.UTC).toInstant());
+    }
+
+    private record TenantDay(short tenantCode, LocalDate day) {
+    }
+}
@@ -0,0 +1,74 @@
+package com.openforum.datalake.repository;
+
+import com.openforum.datalake.dto.DeadLetterEvent;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.stereotype.Repository;
+
+import java.sql.Timestamp;
+import java.util.List;
+import java.util.UUID;
+
+@Repository
+public class DeadLetterRepository {
+
+    private static final RowMapper<DeadLetterEvent> EVENT_MAPPER = (rs, rowNum) -> {
+        Timestamp replayedAt = rs.getTimestamp("replayed_at");
+        return new DeadLetterEvent(rs.getLong("id"), rs.getString("original_topic"), rs.getInt("original_partition"),
+                rs.getLong("original_offset"), rs.getObject("event_id", UUID.class), rs.getString("event_type"),
+                rs.getString("failure_stage"), rs.getString("failure_reason"), rs.getInt("attempts"),
+                rs.getTimestamp("failed_at").toInstant(), replayedAt == null ? null : replayedAt.toInstant());
+    };
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public DeadLetterRepository(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    /**
+     * Stores a dead-lettered record; a redelivery of the same original record is
+     * ignored.
+     */
+    public void save(DeadLetterEvent event, String recordKey, byte[] payload) {
+        jdbcTemplate.update("""
+                INSERT INTO dead_letter_events (original_topic, original_partition, original_offset, event_id,
+                    event_type, failure_stage, failure_reason, attempts, record_key, payload)
+                VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)
+                ON CONFLICT (original_topic, original_partition, original_offset) DO NOTHING
+                """, event.originalTopic(), event.originalPartition(), event.originalOffset(), event.eventId(),
+                event.eventType(), event.failureStage(), event.failureReason(), event.attempts(), recordKey, payload);
+    }
+
+    /**
+     * @return records not yet replayed, oldest first
+     */
+    public List<DeadLetterEvent> findPending(int limit) {
+        return jdbcTemplate.query("SELECT * FROM dead_letter_events WHERE replayed_at IS NULL ORDER BY id LIMIT ?",
+                EVENT_MAPPER, limit);
+    }
+
+    public long countPending() {
+        return jdbcTemplate.queryForObject("SELECT COUNT(*) FROM dead_letter_events WHERE replayed_at IS NULL",
+                Long.class);
+    }
+
+    /**
+     * Locks the oldest records not yet replayed until the end of the current
+     * transaction, skipping those another replay holds.
+     */
+    public List<PendingReplay> lockPendingForReplay(int limit) {
+        return jdbcTemplate.query("""
+                SELECT id, record_key, payload FROM dead_letter_events
+                WHERE replayed_at IS NULL ORDER BY id LIMIT ? FOR UPDATE SKIP LOCKED
+                """, (rs, rowNum) -> new PendingReplay(rs.getLong(1), rs.getString(2), rs.getBytes(3)), limit);
+    }
+
+    public void markReplayed(List<Long> ids) {
+        jdbcTemplate.update("UPDATE dead_letter_events SET replayed_at = NOW() WHERE id = ANY (?)",
+                ps -> ps.setArray(1, ps.getConnection().createArrayOf("bigint", ids.toArray())));
+    }
+
+    public record PendingReplay(long id, String recordKey, byte[] payload) {
+    }
+}
@@ -0,0 +1,147 @@
+package com.openforum.datalake.repository;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.openforum.datalake.domain.FactActivity;
+import com.openforum.datalake.ingestor.RawJson;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Repository;
+
+import java.io.ByteArrayInputStream;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Writes fact rows with multi-row {@code INSERT ... ON CONFLICT DO NOTHING}
+ * statements instead of one JPA persist per row. Rows whose
+ * {@code (event_id, occurred_at)} already exist are silently skipped. The
+ * same statement adds the inserted rows to the per-user day counters, see
+ * {@link InsertedFactCounters}.
+ * <p>
+ * Metadata is sent as UTF-8 bytes and cast to {@code jsonb} on the server. A
+ * fact carrying {@link FactActivity#getRawMetadata() raw metadata} has its
+ * slice of the Kafka record streamed as is; only {@code Map} metadata is
+ * serialized here.
+ */
+@Repository
+public class FactActivityBatchWriter {
+
+    // 11 bind parameters per row keeps a full chunk well below PostgreSQL's 65535 limit
+    static final int MAX_ROWS_PER_STATEMENT = 1000;
+
+    private static final String INSERT_PREFIX = "WITH inserted AS (INSERT INTO fact_activity "
+            + "(id, event_id, user_id, target_id, occurred_at, tenant_code, activity_code, category_id, sentiment,"
+            + " is_admin, metadata) VALUES ";
+    private static final String ROW_PLACEHOLDERS = "(?, ?, ?, ?, ?, ?, ?, ?, ?, ?, convert_from(?, 'UTF8')::jsonb)";
+    private static final String INSERT_SUFFIX = " ON CONFLICT DO NOTHING"
+            + " RETURNING event_id, tenant_code, user_id, activity_code, occurred_at)"
+            + InsertedFactCounters.COUNT_INSERTED + "SELECT event_id FROM inserted";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ObjectMapper objectMapper;
+    private final FactCodeDictionary factCodeDictionary;
+
+    public FactActivityBatchWriter(JdbcTemplate jdbcTemplate, ObjectMapper objectMapper,
+            FactCodeDictionary factCodeDictionary) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.objectMapper = objectMapper;
+        this.factCodeDictionary = factCodeDictionary;
+    }
+
+    /**
+     * Inserts all facts, one statement per chunk of {@link #MAX_ROWS_PER_STATEMENT}.
+     *
+     * @return number of rows actually inserted (duplicates excluded)
+     */
+    public int insertAll(List<FactActivity> facts) {
+        return insertReturningEventIds(facts).size();
+    }
+
+    /**
+     * Like {@link #insertAll}, but returns the event ids of the rows actually
+     * inserted. An event's dimension and counter side effects must only be
+     * applied if its fact is among them, as a redelivered event is otherwise
+     * applied twice.
+     */
+    public Set<UUID> insertReturningEventIds(List<FactActivity> facts) {
+        factCodeDictionary.encode(facts);
+        Set<UUID> inserted = new HashSet<>();
+        for (int from = 0; from < facts.size(); from += MAX_ROWS_PER_STATEMENT) {
+            List<FactActivity> chunk = facts.subList(from, Math.min(from + MAX_ROWS_PER_STATEMENT, facts.size()));
+            insertChunk(chunk, inserted);
+        }
+        return inserted;
+    }
+
+    private void insertChunk(List<FactActivity> chunk, Set<UUID> inserted) {
+        if (chunk.isEmpty()) {
+            return;
+        }
+        jdbcTemplate.query(buildInsertSql(chunk.size()), ps -> {
+            int index = 1;
+            for (FactActivity fact : chunk) {
+                index = bindRow(ps, index, fact);
+            }
+        }, (RowCallbackHandler) rs -> inserted.add(rs.getObject(1, UUID.class)));
+    }
+
+    private int bindRow(PreparedStatement ps, int index, FactActivity fact) throws SQLException {
+        ps.setObject(index++, fact.getId().getId());
+        ps.setObject(index++, fact.getEventId());
+        ps.setObject(index++, fact.getUserId());
+        ps.setObject(index++, fact.getTargetId());
+        ps.setTimestamp(index++, Timestamp.from(fact.getId().getOccurredAt()));
+        ps.setObject(index++, fact.getTenantCode(), Types.SMALLINT);
+        ps.setObject(index++, fact.getActivityCode(), Types.SMALLINT);
+        ps.setObject(index++, fact.getCategoryId());
+        ps.setObject(index++, fact.getSentiment(), Types.DOUBLE);
+        ps.setObject(index++, fact.getIsAdmin(), Types.BOOLEAN);
+        bindMetadata(ps, index++, fact);
+        return index;
+    }
+
+    private void bindMetadata(PreparedStatement ps, int index, FactActivity fact) throws SQLException {
+        RawJson raw = fact.getRawMetadata();
+        if (raw != null) {
+            if (raw.offset() == 0 && raw.length() == raw.source().length) {
+                ps.setBytes(index, raw.source());
+            } else {
+                // Streams the slice into the bind message without copying it out of the record
+                ps.setBinaryStream(index, new ByteArrayInputStream(raw.source(), raw.offset(), raw.length()),
+                        raw.length());
+            }
+        } else if (fact.getMetadata() != null) {
+            ps.setBytes(index, toJson(fact));
+        } else {
+            ps.setNull(index, Types.BINARY);
+        }
+    }
+
+    private byte[] toJson(FactActivity fact) {
+        try {
+            return objectMapper.writeValueAsBytes(fact.getMetadata());
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("Unserializable metadata for event " + fact.getEventId(), e);
+        }
+    }
+
+    static String buildInsertSql(int rows) {
+        StringBuilder sql = new StringBuilder(INSERT_PREFIX.length() + rows * (ROW_PLACEHOLDERS.length() + 2)
+                + INSERT_SUFFIX.length());
+        sql.append(INSERT_PREFIX);
+        for (int i = 0; i < rows; i++) {
+            if (i > 0) {
+                sql.append(", ");
+            }
+            sql.append(ROW_PLACEHOLDERS);
+        }
+        return sql.append(INSERT_SUFFIX).toString();
+    }
+}
@@ -0,0 +1,143 @@
+package com.openforum.datalake.repository;
+
+import com.openforum.datalake.domain.FactActivity;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The {@code SMALLINT} codes that {@code fact_activity} stores in place of
+ * tenant ids ({@code dim_tenants}) and activity types
+ * ({@code dim_activity_types}). Codes never change once assigned, so each one
+ * is read from the database once per process and then resolved from memory.
+ * <p>
+ * Unknown strings get a code in the caller's transaction, next to the facts
+ * that use it. Such codes are only cached once that transaction commits, so a
+ * rolled back batch cannot leave the cache pointing at a code that does not
+ * exist.
+ */
+@Repository
+public class FactCodeDictionary {
+
+    private static final Dictionary TENANTS = new Dictionary("dim_tenants", "tenant_code", "tenant_id");
+    private static final Dictionary ACTIVITY_TYPES = new Dictionary("dim_activity_types", "activity_code",
+            "activity_type");
+
+    private final JdbcTemplate jdbcTemplate;
+    private final Map<String, Short> tenantCodes = new ConcurrentHashMap<>();
+    private final Map<String, Short> activityCodes = new ConcurrentHashMap<>();
+
+    public FactCodeDictionary(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    /**
+     * Sets the tenant and activity codes of facts that do not carry them yet,
+     * assigning codes to strings seen for the first time.
+     */
+    public void encode(List<FactActivity> facts) {
+        Set<String> tenants = new LinkedHashSet<>();
+        Set<String> activityTypes = new LinkedHashSet<>();
+        for (FactActivity fact : facts) {
+            if (fact.getTenantCode() == null && fact.getTenantId() != null) {
+                tenants.add(fact.getTenantId());
+            }
+            if (fact.getActivityCode() == null && fact.getActivityType() != null) {
+                activityTypes.add(fact.getActivityType());
+            }
+        }
+        if (tenants.isEmpty() && activityTypes.isEmpty()) {
+            return;
+        }
+        Map<String, Short> tenantCodes = resolve(TENANTS, this.tenantCodes, tenants);
+        Map<String, Short> activityCodes = resolve(ACTIVITY_TYPES, this.activityCodes, activityTypes);
+        for (FactActivity fact : facts) {
+            if (fact.getTenantCode() == null && fact.getTenantId() != null) {
+                fact.setTenantCode(tenantCodes.get(fact.getTenantId()));
+            }
+            if (fact.getActivityCode() == null && fact.getActivityType() != null) {
+                fact.setActivityCode(activityCodes.get(fact.getActivityType()));
+            }
+        }
+    }
+
+    public void encode(FactActivity fact) {
+        encode(List.of(fact));
+    }
+
+    /**
+     * @return the tenant's code, or empty if the tenant has no facts
+     */
+    public Optional<Short> findTenantCode(String tenantId) {
+        Short code = tenantCodes.get(tenantId);
+        if (code != null) {
+            return Optional.of(code);
+        }
+        Map<String, Short> found = select(TENANTS, Set.of(tenantId));
+        tenantCodes.putAll(found);
+        return Optional.ofNullable(found.get(tenantId));
+    }
+
+    private Map<String, Short> resolve(Dictionary dictionary, Map<String, Short> cache, Set<String> values) {
+        Map<String, Short> codes = new HashMap<>();
+        Set<String> missing = new LinkedHashSet<>();
+        for (String value : values) {
+            Short code = cache.get(value);
+            if (code != null) {
+                codes.put(value, code);
+            } else {
+                missing.add(value);
+            }
+        }
+        if (missing.isEmpty()) {
+            return codes;
+        }
+        // Look up first: a conflicting insert would still use up an identity value
+        Map<String, Short> existing = select(dictionary, missing);
+        cache.putAll(existing);
+        codes.putAll(existing);
+        missing.removeAll(existing.keySet());
+        if (missing.isEmpty()) {
+            return codes;
+        }
+        jdbcTemplate.update("INSERT INTO " + dictionary.table() + " (" + dictionary.valueColumn()
+                + ") SELECT unnest(?) ON CONFLICT DO NOTHING",
+                ps -> ps.setArray(1, ps.getConnection().createArrayOf("varchar", missing.toArray())));
+        Map<String, Short> assigned = select(dictionary, missing);
+        codes.putAll(assigned);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    cache.putAll(assigned);
+                }
+            });
+        } else {
+            cache.putAll(assigned);
+        }
+        return codes;
+    }
+
+    private Map<String, Short> select(Dictionary dictionary, Set<String> values) {
+        Map<String, Short> codes = new HashMap<>();
+        jdbcTemplate.query("SELECT " + dictionary.valueColumn() + ", " + dictionary.codeColumn() + " FROM "
+                + dictionary.table() + " WHERE " + dictionary.valueColumn() + " = ANY (?)",
+                ps -> ps.setArray(1, ps.getConnection().createArrayOf("varchar", values.toArray())),
+                rs -> {
+                    codes.put(rs.getString(1), rs.getShort(2));
+                });
+        return codes;
+    }
+
+    private record Dictionary(String table, String codeColumn, String valueColumn) {
+    }
+}
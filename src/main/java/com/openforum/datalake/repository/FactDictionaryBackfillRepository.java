@@ -0,0 +1,121 @@
+package com.openforum.datalake.repository;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Moves the facts that V8 left in {@code fact_activity_v7}, which still
+ * stores tenant ids and activity types as strings, into {@code fact_activity},
+ * oldest key first. Each chunk assigns the codes of its strings, moves its
+ * rows and counts them in the counters derived from the facts, see
+ * {@link InsertedFactCounters}, in one transaction, so every row is in
+ * exactly one of the two tables and an interrupted backfill resumes with the
+ * rows still left. The table is dropped with the last chunk.
+ */
+@Repository
+public class FactDictionaryBackfillRepository {
+
+    static final String LEGACY_TABLE = "fact_activity_v7";
+
+    // Locked in each chunk so chunks of several instances do not interleave; nothing else writes the table
+    private static final String LOCK_SQL = "LOCK TABLE " + LEGACY_TABLE + " IN SHARE ROW EXCLUSIVE MODE";
+
+    private static final String CHUNK_SQL = "SELECT id, occurred_at, tenant_id FROM " + LEGACY_TABLE
+            + " ORDER BY id, occurred_at, tenant_id LIMIT ?";
+
+    // Looked up first: a conflicting insert would still use up an identity value
+    private static final String ASSIGN_TENANTS_SQL = """
+            INSERT INTO dim_tenants (tenant_id)
+            SELECT DISTINCT f.tenant_id
+            FROM fact_activity_v7 f
+            JOIN (%s) c USING (id, occurred_at, tenant_id)
+            WHERE NOT EXISTS (SELECT 1 FROM dim_tenants t WHERE t.tenant_id = f.tenant_id)
+            ORDER BY 1
+            ON CONFLICT DO NOTHING
+            """.formatted(CHUNK_SQL);
+
+    private static final String ASSIGN_ACTIVITY_TYPES_SQL = """
+            INSERT INTO dim_activity_types (activity_type)
+            SELECT DISTINCT f.activity_type
+            FROM fact_activity_v7 f
+            JOIN (%s) c USING (id, occurred_at, tenant_id)
+            WHERE f.activity_type IS NOT NULL
+              AND NOT EXISTS (SELECT 1 FROM dim_activity_types a WHERE a.activity_type = f.activity_type)
+            ORDER BY 1
+            ON CONFLICT DO NOTHING
+            """.formatted(CHUNK_SQL);
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public FactDictionaryBackfillRepository(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    /**
+     * Whether facts may still be left in {@code fact_activity_v7}.
+     */
+    public boolean isPending() {
+        return Boolean.TRUE.equals(jdbcTemplate.queryForObject(
+                "SELECT to_regclass(?) IS NOT NULL", Boolean.class, LEGACY_TABLE));
+    }
+
+    /**
+     * Moves the next {@code limit} facts into {@code fact_activity}, filling
+     * the promoted columns in {@code sourceFields} (column to payload field, as
+     * {@link com.openforum.datalake.ingestor.MetadataPromotion#sourceFields()})
+     * from {@code metadata} as the ingestor does. Facts whose event is already
+     * stored, e.g. because it was replayed, are dropped. Drops
+     * {@code fact_activity_v7} once a chunk comes up short.
+     *
+     * @return number of facts taken out of {@code fact_activity_v7}
+     */
+    @Transactional
+    public int backfillChunk(Map<String, String> sourceFields, int limit) {
+        if (!isPending()) {
+            return 0;
+        }
+        jdbcTemplate.execute(LOCK_SQL);
+        jdbcTemplate.update(ASSIGN_TENANTS_SQL, limit);
+        jdbcTemplate.update(ASSIGN_ACTIVITY_TYPES_SQL, limit);
+
+        List<Object> args = new ArrayList<>();
+        StringBuilder columns = new StringBuilder();
+        StringBuilder values = new StringBuilder();
+        StringBuilder extracted = new StringBuilder();
+        for (Map.Entry<String, String> column : sourceFields.entrySet()) {
+            String name = column.getKey();
+            columns.append(", ").append(name);
+            values.append(values.isEmpty() ? "" : ", ").append("m.metadata -> CAST(? AS text) AS ").append(name);
+            args.add(column.getValue());
+            extracted.append(", ").append(MetadataBackfillRepository.EXTRACTIONS.get(name).formatted("v." + name));
+        }
+        args.add(0, limit);
+        // Unknown codes fail the chunk on the NOT NULL tenant_code rather than drop its rows
+        String sql = "WITH chunk AS (" + CHUNK_SQL + "),"
+                + " moved AS (DELETE FROM " + LEGACY_TABLE + " f USING chunk c"
+                + " WHERE f.id = c.id AND f.occurred_at = c.occurred_at AND f.tenant_id = c.tenant_id"
+                + " RETURNING f.*),"
+                + " inserted AS (INSERT INTO fact_activity (id, event_id, user_id, target_id, occurred_at, tenant_code,"
+                + " activity_code, metadata" + columns + ")"
+                + " SELECT m.id, m.event_id, m.user_id, m.target_id, m.occurred_at, t.tenant_code, a.activity_code,"
+                + " m.metadata" + extracted
+                + " FROM moved m CROSS JOIN LATERAL (SELECT " + values + ") v"
+                + " LEFT JOIN dim_tenants t ON t.tenant_id = m.tenant_id"
+                + " LEFT JOIN dim_activity_types a ON a.activity_type = m.activity_type"
+                + " ORDER BY m.id"
+                + " ON CONFLICT DO NOTHING"
+                + " RETURNING event_id, tenant_code, user_id, activity_code, occurred_at)"
+                + InsertedFactCounters.COUNT_INSERTED
+                + " SELECT COUNT(*) FROM moved";
+        int moved = jdbcTemplate.queryForObject(sql, Integer.class, args.toArray());
+        if (moved < limit) {
+            jdbcTemplate.execute("DROP TABLE " + LEGACY_TABLE);
+        }
+        return moved;
+    }
+}
@@ -0,0 +1,378 @@
+package com.openforum.datalake.repository;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.openforum.datalake.dto.PartitionInfo;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.sql.Date;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.YearMonth;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * DDL and data movement for the monthly range partitions of
+ * {@code fact_activity}. Partitions are named {@code fact_activity_yYYYYmMM}
+ * and cover one UTC calendar month. With
+ * {@code datalake.partitions.tenant-hash-partitions} above zero, new months
+ * are themselves partitioned by {@code HASH (tenant_code)} into
+ * {@code fact_activity_yYYYYmMM_hN}, so that tenant-scoped queries read only
+ * their tenant's share of each month.
+ */
+@Repository
+public class FactPartitionRepository {
+
+    public static final String PARENT = "fact_activity";
+    public static final String DEFAULT_PARTITION = "fact_activity_default";
+
+    private static final Pattern PARTITION_NAME = Pattern.compile(PARENT + "_y(\\d{4})m(\\d{2})");
+
+    // A table, its partitions at every level and the indexes of all of them
+    private static final String TREE_RELATIONS_SQL = """
+            WITH tree AS (
+                SELECT CAST(? AS regclass) AS relid
+                UNION
+                SELECT relid FROM pg_partition_tree(CAST(? AS regclass))
+            )
+            SELECT c.relname, c.relkind IN ('i', 'I') FROM pg_class c WHERE c.oid IN (SELECT relid FROM tree)
+            UNION ALL
+            SELECT c.relname, TRUE FROM pg_index x JOIN pg_class c ON c.oid = x.indexrelid
+            WHERE x.indrelid IN (SELECT relid FROM tree)
+            """;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ObjectMapper objectMapper;
+    private final int tenantHashPartitions;
+
+    public FactPartitionRepository(JdbcTemplate jdbcTemplate, ObjectMapper objectMapper,
+            @Value("${datalake.partitions.tenant-hash-partitions:0}") int tenantHashPartitions) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.objectMapper = objectMapper;
+        this.tenantHashPartitions = Math.max(0, tenantHashPartitions);
+    }
+
+    public static String partitionName(YearMonth month) {
+        return String.format("%s_y%04dm%02d", PARENT, month.getYear(), month.getMonthValue());
+    }
+
+    /**
+     * Hash sub-partitions per month that new months are created with; zero for
+     * plain monthly partitions.
+     */
+    public int tenantHashPartitions() {
+        return tenantHashPartitions;
+    }
+
+    /**
+     * The direct partitions of {@code fact_activity}, with sizes summed over
+     * their sub-partitions.
+     */
+    public List<PartitionInfo> findPartitions() {
+        return jdbcTemplate.query("""
+                SELECT c.relname, pg_get_expr(c.relpartbound, c.oid),
+                       (SELECT COALESCE(SUM(GREATEST(l.reltuples, 0)), 0)::bigint
+                        FROM pg_partition_tree(c.oid) t JOIN pg_class l ON l.oid = t.relid WHERE t.isleaf),
+                       (SELECT COALESCE(SUM(pg_total_relation_size(t.relid)), 0)::bigint
+                        FROM pg_partition_tree(c.oid) t WHERE t.isleaf),
+                       (SELECT COUNT(*) FROM pg_inherits s WHERE s.inhparent = c.oid)::int
+                FROM pg_inherits i
+                JOIN pg_class c ON c.oid = i.inhrelid
+                WHERE i.inhparent = ?::regclass
+                ORDER BY c.relname
+                """, (rs, rowNum) -> new PartitionInfo(rs.getString(1), rs.getString(2), rs.getLong(3),
+                rs.getLong(4), rs.getInt(5)), PARENT);
+    }
+
+    /**
+     * Months that have an attached partition, oldest first.
+     */
+    public List<YearMonth> findAttachedMonths() {
+        return findPartitions().stream()
+                .map(PartitionInfo::name)
+                .map(FactPartitionRepository::parseMonth)
+                .filter(Objects::nonNull)
+                .sorted()
+                .toList();
+    }
+
+    /**
+     * Month tables left detached by an interrupted drain. They still carry the
+     * bound constraint from {@link #createDetachedPartition}, which tells them
+     * apart from partitions detached for retention.
+     */
+    public List<YearMonth> findInterruptedDrains() {
+        return jdbcTemplate.query("""
+                SELECT c.relname
+                FROM pg_class c
+                JOIN pg_constraint k ON k.conrelid = c.oid AND k.conname = c.relname || '_bound'
+                WHERE c.relkind IN ('r', 'p') AND c.relname LIKE 'fact\\_activity\\_y%'
+                  AND NOT EXISTS (SELECT 1 FROM pg_inherits i WHERE i.inhrelid = c.oid)
+                ORDER BY c.relname
+                """, (rs, rowNum) -> parseMonth(rs.getString(1)));
+    }
+
+    /**
+     * Months that still have rows in the default partition, oldest first.
+     */
+    public List<YearMonth> findMonthsInDefaultPartition() {
+        return jdbcTemplate.query(
+                "SELECT DISTINCT date_trunc('month', occurred_at AT TIME ZONE 'UTC') FROM " + DEFAULT_PARTITION
+                        + " ORDER BY 1",
+                (rs, rowNum) -> YearMonth.from(rs.getTimestamp(1).toLocalDateTime()));
+    }
+
+    /**
+     * Creates an empty partition. Only safe for months without rows in the
+     * default partition; PostgreSQL rejects it otherwise.
+     */
+    public void createPartition(YearMonth month) {
+        createMonth(PARENT, partitionName(month), month);
+    }
+
+    /**
+     * Creates {@code table} as the partition of {@code parent} for the month,
+     * with hash sub-partitions if configured.
+     */
+    void createMonth(String parent, String table, YearMonth month) {
+        if (tenantHashPartitions == 0) {
+            jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS " + table + " PARTITION OF " + parent + " "
+                    + boundFor(month));
+            return;
+        }
+        jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS " + table + " PARTITION OF " + parent + " "
+                + boundFor(month) + " PARTITION BY HASH (tenant_code)");
+        createHashPartitions(table);
+    }
+
+    /**
+     * Creates the month's table detached from the parent, with the parent's
+     * indexes and a CHECK constraint matching the partition bound so that
+     * attaching it later needs no validation scan.
+     */
+    public void createDetachedPartition(YearMonth month) {
+        createDetachedMonth(partitionName(month), month);
+    }
+
+    private void createDetachedMonth(String table, YearMonth month) {
+        if (tenantHashPartitions == 0) {
+            jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS " + table + " (LIKE " + PARENT + " INCLUDING ALL)");
+        } else {
+            jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS " + table + " (LIKE " + PARENT
+                    + " INCLUDING ALL) PARTITION BY HASH (tenant_code)");
+            createHashPartitions(table);
+        }
+        jdbcTemplate.execute("ALTER TABLE " + table + " DROP CONSTRAINT IF EXISTS " + table + "_bound");
+        jdbcTemplate.execute("ALTER TABLE " + table + " ADD CONSTRAINT " + table + "_bound CHECK (occurred_at >= "
+                + literal(month) + " AND occurred_at < " + literal(month.plusMonths(1)) + ")");
+    }
+
+    private void createHashPartitions(String table) {
+        for (int remainder = 0; remainder < tenantHashPartitions; remainder++) {
+            jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS " + table + "_h" + remainder + " PARTITION OF " + table
+                    + " FOR VALUES WITH (MODULUS " + tenantHashPartitions + ", REMAINDER " + remainder + ")");
+        }
+    }
+
+    /**
+     * Copies the next {@code limit} rows of the month in the default
+     * partition, in primary key order, into the detached month table. The rows
+     * stay in the default partition, readable through {@code fact_activity},
+     * until {@link #attachDetachedPartition} removes them. Resumes after the
+     * highest key already copied, so an interrupted drain picks up where it
+     * stopped.
+     *
+     * @return number of rows copied
+     */
+    public int copyFromDefault(YearMonth month, int limit) {
+        return copyByKey(DEFAULT_PARTITION, partitionName(month), month, limit);
+    }
+
+    /**
+     * Copies the month's rows written to the default partition since the
+     * chunked copy passed them, removes the month from the default partition
+     * and attaches the month table. Writes to the default partition are
+     * blocked for the duration, reads are not; gives up after
+     * {@code lockTimeoutMillis} if the lock is not granted.
+     *
+     * @return number of stragglers copied
+     */
+    @Transactional
+    public int attachDetachedPartition(YearMonth month, long lockTimeoutMillis) {
+        String table = partitionName(month);
+        jdbcTemplate.execute("SET LOCAL lock_timeout = " + lockTimeoutMillis);
+        jdbcTemplate.execute("LOCK TABLE " + DEFAULT_PARTITION + " IN EXCLUSIVE MODE");
+        int stragglers = jdbcTemplate.update("INSERT INTO " + table + " SELECT * FROM " + DEFAULT_PARTITION + " d"
+                + " WHERE d.occurred_at >= ? AND d.occurred_at < ? AND NOT EXISTS (SELECT 1 FROM " + table + " t"
+                + " WHERE t.id = d.id AND t.occurred_at = d.occurred_at AND t.tenant_code = d.tenant_code)",
+                start(month), start(month.plusMonths(1)));
+        jdbcTemplate.update("DELETE FROM " + DEFAULT_PARTITION + " WHERE occurred_at >= ? AND occurred_at < ?",
+                start(month), start(month.plusMonths(1)));
+        jdbcTemplate.execute("ALTER TABLE " + PARENT + " ATTACH PARTITION " + table + " " + boundFor(month));
+        jdbcTemplate.execute("ALTER TABLE " + table + " DROP CONSTRAINT " + table + "_bound");
+        rewalkMetadataBackfill(month);
+        return stragglers;
+    }
+
+    /**
+     * Detaches the month's partition, keeping its table for archiving.
+     * {@code DETACH ... CONCURRENTLY} is not an option while a default
+     * partition exists, so this takes a short exclusive lock on the parent.
+     */
+    @Transactional
+    public void detachPartition(YearMonth month, long lockTimeoutMillis) {
+        jdbcTemplate.execute("SET LOCAL lock_timeout = " + lockTimeoutMillis);
+        jdbcTemplate.execute("ALTER TABLE " + PARENT + " DETACH PARTITION " + partitionName(month));
+    }
+
+    /**
+     * Creates a detached replacement for the month's partition in the
+     * configured layout, named {@code fact_activity_next_yYYYYmMM}; a no-op if
+     * an interrupted conversion left one behind.
+     */
+    public void createReplacementPartition(YearMonth month) {
+        createDetachedMonth(replacementName(month), month);
+    }
+
+    /**
+     * Copies the next {@code limit} rows of the month's partition, in primary
+     * key order, into its replacement. Resumes after the highest key already
+     * copied, so an interrupted conversion picks up where it stopped.
+     *
+     * @return number of rows copied
+     */
+    public int copyToReplacement(YearMonth month, int limit) {
+        return copyByKey(partitionName(month), replacementName(month), month, limit);
+    }
+
+    private int copyByKey(String source, String target, YearMonth month, int limit) {
+        List<Object[]> last = jdbcTemplate.query("SELECT id, occurred_at FROM " + target
+                + " ORDER BY id DESC, occurred_at DESC LIMIT 1",
+                (rs, rowNum) -> new Object[] { rs.getObject(1), rs.getTimestamp(2) });
+        String insert = "INSERT INTO " + target + " SELECT * FROM " + source
+                + " WHERE occurred_at >= ? AND occurred_at < ?";
+        if (last.isEmpty()) {
+            return jdbcTemplate.update(insert + " ORDER BY id, occurred_at LIMIT ? ON CONFLICT DO NOTHING",
+                    start(month), start(month.plusMonths(1)), limit);
+        }
+        return jdbcTemplate.update(insert + " AND (id, occurred_at) > (?, ?) ORDER BY id, occurred_at LIMIT ?"
+                + " ON CONFLICT DO NOTHING", start(month), start(month.plusMonths(1)), last.get(0)[0],
+                last.get(0)[1], limit);
+    }
+
+    /**
+     * Copies the rows written to the month since the chunked copy passed them
+     * and replaces the month's partition with its replacement. Writes to the
+     * month are blocked while the stragglers are copied; the detach and attach
+     * at the end block all access to {@code fact_activity} briefly. Gives up
+     * after {@code lockTimeoutMillis} if a lock is not granted.
+     *
+     * @return number of stragglers copied
+     */
+    @Transactional
+    public int swapInReplacement(YearMonth month, long lockTimeoutMillis) {
+        String table = partitionName(month);
+        String replacement = replacementName(month);
+        jdbcTemplate.execute("SET LOCAL lock_timeout = " + lockTimeoutMillis);
+        jdbcTemplate.execute("LOCK TABLE " + table + " IN SHARE MODE");
+        int stragglers = jdbcTemplate.update("INSERT INTO " + replacement + " SELECT * FROM " + table + " p"
+                + " WHERE NOT EXISTS (SELECT 1 FROM " + replacement + " r"
+                + " WHERE r.id = p.id AND r.occurred_at = p.occurred_at AND r.tenant_code = p.tenant_code)");
+        jdbcTemplate.execute("ALTER TABLE " + PARENT + " DETACH PARTITION " + table);
+        jdbcTemplate.execute("DROP TABLE " + table);
+        renameTree(replacement, table);
+        jdbcTemplate.execute("ALTER TABLE " + PARENT + " ATTACH PARTITION " + table + " " + boundFor(month));
+        // Renaming the table leaves its constraint names alone
+        jdbcTemplate.execute("ALTER TABLE " + table + " DROP CONSTRAINT " + replacement + "_bound");
+        rewalkMetadataBackfill(month);
+        return stragglers;
+    }
+
+    // Rows the metadata backfill rewrote after the chunked copy passed them were copied without their promoted
+    // columns, so a month the backfill covers is walked again
+    private void rewalkMetadataBackfill(YearMonth month) {
+        jdbcTemplate.update("UPDATE metadata_backfill SET last_id = NULL, completed = FALSE, updated_at = NOW()"
+                + " WHERE month = ?", Date.valueOf(month.atDay(1)));
+    }
+
+    /**
+     * Renames table {@code from} and those of its partitions and indexes whose
+     * names start with {@code from} to start with {@code to} instead.
+     */
+    void renameTree(String from, String to) {
+        List<Relation> relations = jdbcTemplate.query(TREE_RELATIONS_SQL,
+                (rs, rowNum) -> new Relation(rs.getString(1), rs.getBoolean(2)), from, from);
+        for (Relation relation : relations) {
+            if (relation.name().startsWith(from)) {
+                jdbcTemplate.execute("ALTER " + (relation.index() ? "INDEX " : "TABLE ") + relation.name()
+                        + " RENAME TO " + to + relation.name().substring(from.length()));
+            }
+        }
+    }
+
+    /**
+     * @return the partitions PostgreSQL plans to scan for a tenant's activity in
+     *         {@code [from, to)}
+     */
+    public List<String> explainScannedPartitions(short tenantCode, Instant from, Instant to) {
+        String plan = jdbcTemplate.queryForObject(
+                "EXPLAIN (FORMAT JSON) SELECT COUNT(*) FROM " + PARENT
+                        + " WHERE tenant_code = ? AND occurred_at >= ? AND occurred_at < ?",
+                String.class, tenantCode, Timestamp.from(from), Timestamp.from(to));
+        try {
+            List<String> relations = new ArrayList<>();
+            collectRelations(objectMapper.readTree(plan), relations);
+            return relations;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unreadable query plan", e);
+        }
+    }
+
+    private static void collectRelations(JsonNode node, List<String> relations) {
+        JsonNode relation = node.get("Relation Name");
+        if (relation != null && !relations.contains(relation.asText())) {
+            relations.add(relation.asText());
+        }
+        node.forEach(child -> collectRelations(child, relations));
+    }
+
+    /**
+     * @return the month of a monthly partition name, or {@code null} for any
+     *         other table
+     */
+    public static YearMonth parseMonth(String tableName) {
+        Matcher matcher = PARTITION_NAME.matcher(tableName);
+        return matcher.matches()
+                ? YearMonth.of(Integer.parseInt(matcher.group(1)), Integer.parseInt(matcher.group(2)))
+                : null;
+    }
+
+    private static String replacementName(YearMonth month) {
+        return PARENT + "_next" + partitionName(month).substring(PARENT.length());
+    }
+
+    static String boundFor(YearMonth month) {
+        return "FOR VALUES FROM (" + literal(month) + ") TO (" + literal(month.plusMonths(1)) + ")";
+    }
+
+    private static String literal(YearMonth month) {
+        return String.format("'%04d-%02d-01 00:00:00+00'", month.getYear(), month.getMonthValue());
+    }
+
+    private static Timestamp start(YearMonth month) {
+        return Timestamp.from(month.atDay(1).atStartOfDay().toInstant(ZoneOffset.UTC));
+    }
+
+    private record Relation(String name, boolean index) {
+    }
+}
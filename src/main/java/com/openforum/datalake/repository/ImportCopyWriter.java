@@ -0,0 +1,123 @@
+package com.openforum.datalake.repository;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.openforum.datalake.domain.DimThread;
+import com.openforum.datalake.domain.FactActivity;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.List;
+
+/**
+ * Bulk path for tenant migrations. Imported threads and facts are streamed
+ * into session-local staging tables with binary {@code COPY} and merged into
+ * {@code dim_threads} and {@code fact_activity} with set-wise statements;
+ * reply counts are added with one aggregate over the facts that were
+ * actually inserted, so redelivered imports are not counted twice; the
+ * per-user day counters of {@link InsertedFactCounters} likewise. Replies
+ * to threads that do not exist yet are added to {@code pending_thread_replies}
+ * and adopted once the thread is created.
+ * <p>
+ * Must run inside a transaction: the staging tables are emptied on commit.
+ */
+@Repository
+public class ImportCopyWriter {
+
+    // A thread imported twice in one load keeps its latest description; counters are never reset
+    private static final String MERGE_THREADS = """
+            INSERT INTO dim_threads (thread_id, tenant_id, category_id, author_id, title, status, tags,
+                                     created_at, last_activity_at, is_answered, reply_count)
+            SELECT DISTINCT ON (thread_id) thread_id, tenant_id, category_id, author_id, title, status, tags,
+                   created_at, last_activity_at, FALSE, 0
+            FROM import_threads
+            ORDER BY thread_id, last_activity_at DESC
+            ON CONFLICT (thread_id) DO UPDATE SET
+                tenant_id = EXCLUDED.tenant_id,
+                category_id = EXCLUDED.category_id,
+                author_id = EXCLUDED.author_id,
+                title = EXCLUDED.title,
+                tags = EXCLUDED.tags,
+                created_at = EXCLUDED.created_at,
+                last_activity_at = GREATEST(dim_threads.last_activity_at, EXCLUDED.last_activity_at)
+            """;
+
+    // Threads are locked in thread_id order before they are counted, as ThreadCounterWriter updates them
+    private static final String MERGE_FACTS = """
+            WITH inserted AS (
+                INSERT INTO fact_activity (id, event_id, user_id, target_id, occurred_at, tenant_code,
+                                           activity_code, category_id, sentiment, is_admin, metadata)
+                SELECT id, event_id, user_id, target_id, occurred_at, tenant_code, activity_code, category_id,
+                       sentiment, is_admin, metadata
+                FROM import_facts
+                ON CONFLICT DO NOTHING
+                RETURNING tenant_code, user_id, activity_code, target_id, occurred_at
+            ), replies AS (
+                SELECT i.target_id AS thread_id, COUNT(*) AS replies, MAX(i.occurred_at) AS last_reply_at
+                FROM inserted i
+                JOIN dim_activity_types a ON a.activity_code = i.activity_code
+                WHERE a.activity_type = 'POST_IMPORTED'
+                GROUP BY i.target_id
+            ), locked AS (
+                SELECT d.thread_id, r.replies, r.last_reply_at
+                FROM dim_threads d
+                JOIN replies r ON r.thread_id = d.thread_id
+                ORDER BY d.thread_id
+                FOR UPDATE OF d
+            ), counted AS (
+                UPDATE dim_threads d SET
+                    reply_count = COALESCE(d.reply_count, 0) + l.replies,
+                    last_activity_at = GREATEST(d.last_activity_at, l.last_reply_at)
+                FROM locked l
+                WHERE d.thread_id = l.thread_id
+            ), orphaned AS (
+                INSERT INTO pending_thread_replies (thread_id, replies, last_activity_at, first_seen_at)
+                SELECT r.thread_id, r.replies, r.last_reply_at, NOW()
+                FROM replies r
+                WHERE NOT EXISTS (SELECT 1 FROM dim_threads d WHERE d.thread_id = r.thread_id)
+                ON CONFLICT (thread_id) DO UPDATE SET
+                    replies = pending_thread_replies.replies + EXCLUDED.replies,
+                    last_activity_at = GREATEST(pending_thread_replies.last_activity_at, EXCLUDED.last_activity_at)
+            )
+            """ + InsertedFactCounters.COUNT_INSERTED + "SELECT COUNT(*) FROM inserted";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final StagingCopy stagingCopy;
+
+    public ImportCopyWriter(JdbcTemplate jdbcTemplate, ObjectMapper objectMapper,
+            FactCodeDictionary factCodeDictionary) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.stagingCopy = new StagingCopy(objectMapper, factCodeDictionary);
+    }
+
+    /**
+     * Loads imported threads and the facts of both imported threads and posts.
+     * Threads are merged first so replies in the same load find their thread.
+     *
+     * @return number of fact rows inserted (duplicates excluded)
+     */
+    public int load(List<DimThread> threads, List<FactActivity> facts) {
+        if (threads.isEmpty() && facts.isEmpty()) {
+            return 0;
+        }
+        return jdbcTemplate.execute((ConnectionCallback<Integer>) connection -> {
+            try (Statement statement = connection.createStatement()) {
+                stagingCopy.createStaging(statement);
+                if (!threads.isEmpty()) {
+                    stagingCopy.copyThreads(connection, threads);
+                    statement.executeUpdate(MERGE_THREADS);
+                }
+                if (facts.isEmpty()) {
+                    return 0;
+                }
+                stagingCopy.copyFacts(connection, facts);
+                try (ResultSet result = statement.executeQuery(MERGE_FACTS)) {
+                    result.next();
+                    return result.getInt(1);
+                }
+            }
+        });
+    }
+}
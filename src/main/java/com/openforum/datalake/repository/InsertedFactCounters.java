@@ -0,0 +1,37 @@
+package com.openforum.datalake.repository;
+
+/**
+ * Keeps the counters derived from {@code fact_activity} in step with it: the
+ * per-user day counters {@code agg_user_daily_activity} and
+ * {@code member_health_dirty} of member health, and the per-tenant daily
+ * rollup {@code agg_daily_tenant_activity} with the members active per day in
+ * {@code agg_daily_active_users} and their sketches in
+ * {@code agg_daily_user_sketches}, and its hours in
+ * {@code agg_hourly_tenant_activity}. Members new to a day are also queued in
+ * {@code pending_active_users} for the retention bitmaps. The fact writers
+ * append {@link #COUNT_INSERTED} to the statement that inserts the facts, so
+ * only rows actually inserted are counted and the counters commit with them.
+ */
+public final class InsertedFactCounters {
+
+    /**
+     * Common table expressions counting the rows of a preceding
+     * {@code inserted} CTE, which must return {@code tenant_code},
+     * {@code user_id}, {@code activity_code} and {@code occurred_at}. Rows
+     * are upserted in key order so concurrent ingest lanes lock them in the
+     * same order; the tenant rollups and sketches, which every lane of a
+     * tenant adds to, are spread over stripes 1 to 16 by backend pid instead.
+     * Stripe 0 is left to the reconciliation, see
+     * {@link DailyTenantActivityRepository}. Only members new to a day are
+     * added to its sketch.
+     */
+    static final String COUNT_INSERTED = MemberHealthBatchRepository.COUNT_MEMBER_DAYS
+            + DailyTenantActivityRepository.COUNT_FIRST_ACTIVE_USERS
+            + DailyTenantActivityRepository.COUNT_TENANT_DAYS
+            + DailyTenantActivityRepository.SKETCH_FIRST_ACTIVE_USERS
+            + ActivityBucketRepository.COUNT_TENANT_HOURS
+            + ActiveUserBitmapRepository.QUEUE_FIRST_ACTIVE_USERS;
+
+    private InsertedFactCounters() {
+    }
+}
@@ -0,0 +1,233 @@
+package com.openforum.datalake.repository;
+
+import com.openforum.datalake.job.MemberHealthScoring;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Set-wise reads and writes for {@link com.openforum.datalake.job.MemberHealthCalculationJob}.
+ * A tenant's members in {@code member_health_dirty} are cut into chunks of
+ * consecutive {@code user_id}s, and each chunk is scored from its
+ * {@code agg_user_daily_activity} days, upserted into
+ * {@code dim_member_health} and cleared from the dirty set by one statement,
+ * so only chunk bounds and counts leave the database.
+ */
+@Repository
+public class MemberHealthBatchRepository {
+
+    /**
+     * Adds the facts of a preceding {@code inserted} CTE to their members' day
+     * counters and marks the members dirty; part of
+     * {@link InsertedFactCounters#COUNT_INSERTED}.
+     */
+    static final String COUNT_MEMBER_DAYS = """
+            , user_days AS (
+                INSERT INTO agg_user_daily_activity (tenant_code, user_id, day, activity_code, activity_count)
+                SELECT tenant_code, user_id, (occurred_at AT TIME ZONE 'UTC')::date, COALESCE(activity_code, 0),
+                       COUNT(*)
+                FROM inserted
+                WHERE user_id IS NOT NULL
+                GROUP BY 1, 2, 3, 4
+                ORDER BY 1, 2, 3, 4
+                ON CONFLICT (tenant_code, user_id, day, activity_code) DO UPDATE SET
+                    activity_count = agg_user_daily_activity.activity_count + EXCLUDED.activity_count
+            ), dirty_members AS (
+                INSERT INTO member_health_dirty (tenant_code, user_id)
+                SELECT DISTINCT tenant_code, user_id
+                FROM inserted
+                WHERE user_id IS NOT NULL
+                ORDER BY 1, 2
+                ON CONFLICT (tenant_code, user_id) DO UPDATE SET
+                    generation = member_health_dirty.generation + 1
+            )
+            """;
+
+    // Days before the window are deleted and their members rescored without them
+    private static final String EXPIRE_SQL = """
+            WITH expired AS (
+                DELETE FROM agg_user_daily_activity WHERE day < ?
+                RETURNING tenant_code, user_id
+            )
+            INSERT INTO member_health_dirty (tenant_code, user_id)
+            SELECT DISTINCT tenant_code, user_id FROM expired
+            ORDER BY 1, 2
+            ON CONFLICT (tenant_code, user_id) DO UPDATE SET generation = member_health_dirty.generation + 1
+            """;
+
+    // Decayed scores change daily without activity; members already dirty stay at their generation
+    private static final String MARK_ACTIVE_SQL = """
+            INSERT INTO member_health_dirty (tenant_code, user_id)
+            SELECT DISTINCT tenant_code, user_id FROM agg_user_daily_activity
+            ORDER BY 1, 2
+            ON CONFLICT (tenant_code, user_id) DO NOTHING
+            """;
+
+    // The last member of every full chunk, and of the tenant
+    private static final String CHUNK_BOUNDS_SQL = """
+            SELECT user_id
+            FROM (
+                SELECT user_id,
+                       row_number() OVER (ORDER BY user_id) AS n,
+                       lead(user_id) OVER (ORDER BY user_id) IS NULL AS last
+                FROM member_health_dirty
+                WHERE tenant_code = ? AND (CAST(? AS uuid) IS NULL OR user_id > ?)
+            ) m
+            WHERE n % ? = 0 OR last
+            ORDER BY user_id
+            """;
+
+    /*
+     * Each day's count is weighted by its activity type and multiplied by
+     * daily_decay once per day of age, the window's last day being 0 days old.
+     * A member the ingestor marked again after this statement's snapshot has
+     * moved to a newer generation and stays dirty.
+     */
+    private static final String SCORE_CHUNK_SQL = """
+            WITH params AS (
+                SELECT CAST(? AS smallint) AS tenant_code, CAST(? AS varchar) AS tenant_id,
+                       CAST(? AS uuid) AS after_user_id, CAST(? AS uuid) AS last_user_id,
+                       CAST(? AS date) AS first_day, CAST(? AS date) AS end_day,
+                       CAST(? AS float8) AS daily_decay, CAST(? AS float8) AS other_weight,
+                       CAST(? AS int) AS champion_min, CAST(? AS int) AS contributor_min,
+                       CAST(? AS int) AS high_risk_below, CAST(? AS int) AS medium_risk_below,
+                       CAST(? AS timestamptz) AS calculated_at
+            ), weights (activity_type, weight) AS (
+                SELECT * FROM unnest(CAST(? AS varchar[]), CAST(? AS float8[]))
+            ), members AS (
+                SELECT d.user_id, d.generation
+                FROM member_health_dirty d
+                JOIN params p ON d.tenant_code = p.tenant_code
+                WHERE (p.after_user_id IS NULL OR d.user_id > p.after_user_id) AND d.user_id <= p.last_user_id
+            ), scored AS (
+                SELECT m.user_id, m.generation,
+                       LEAST(ROUND(COALESCE(SUM(c.activity_count * COALESCE(w.weight, p.other_weight)
+                                                * power(p.daily_decay, p.end_day - 1 - c.day)), 0)),
+                             %d)::int AS score
+                FROM members m
+                CROSS JOIN params p
+                LEFT JOIN agg_user_daily_activity c
+                  ON c.tenant_code = p.tenant_code AND c.user_id = m.user_id
+                 AND c.day >= p.first_day AND c.day < p.end_day
+                LEFT JOIN dim_activity_types a ON a.activity_code = c.activity_code
+                LEFT JOIN weights w ON w.activity_type = a.activity_type
+                GROUP BY m.user_id, m.generation
+            ), upserted AS (
+                INSERT INTO dim_member_health (user_id, tenant_id, health_score, churn_risk, engagement_level,
+                                               calculated_at)
+                SELECT s.user_id, p.tenant_id, s.score,
+                       CASE WHEN s.score < p.high_risk_below THEN 'HIGH'
+                            WHEN s.score < p.medium_risk_below THEN 'MEDIUM'
+                            ELSE 'LOW' END,
+                       CASE WHEN s.score >= p.champion_min THEN 'CHAMPION'
+                            WHEN s.score >= p.contributor_min THEN 'CONTRIBUTOR'
+                            ELSE 'LURKER' END,
+                       p.calculated_at
+                FROM scored s
+                CROSS JOIN params p
+                ORDER BY s.user_id
+                ON CONFLICT (user_id) DO UPDATE SET
+                    tenant_id = EXCLUDED.tenant_id,
+                    health_score = EXCLUDED.health_score,
+                    churn_risk = EXCLUDED.churn_risk,
+                    engagement_level = EXCLUDED.engagement_level,
+                    calculated_at = EXCLUDED.calculated_at
+            ), cleared AS (
+                DELETE FROM member_health_dirty d
+                USING scored s, params p
+                WHERE d.tenant_code = p.tenant_code AND d.user_id = s.user_id AND d.generation = s.generation
+            )
+            SELECT COUNT(*) FROM scored
+            """.formatted(MemberHealthScoring.MAX_SCORE);
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public MemberHealthBatchRepository(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    public List<Tenant> findTenants() {
+        return jdbcTemplate.query("SELECT tenant_code, tenant_id FROM dim_tenants ORDER BY tenant_code",
+                (rs, rowNum) -> new Tenant(rs.getShort(1), rs.getString(2)));
+    }
+
+    /**
+     * Deletes the day counters before {@code windowStart}'s UTC day and marks
+     * their members dirty.
+     *
+     * @return number of members marked
+     */
+    public int expireDaysBefore(Instant windowStart) {
+        return jdbcTemplate.update(EXPIRE_SQL, Date.valueOf(LocalDate.ofInstant(windowStart, ZoneOffset.UTC)));
+    }
+
+    /**
+     * Marks every member with a day counter dirty, which after
+     * {@link #expireDaysBefore} is every member with activity in the window.
+     *
+     * @return number of members marked that were not dirty yet
+     */
+    public int markActiveMembersDirty() {
+        return jdbcTemplate.update(MARK_ACTIVE_SQL);
+    }
+
+    /**
+     * Cuts the tenant's dirty members after {@code afterUserId}, if given, into
+     * chunks of {@code chunkSize} in {@code user_id} order.
+     *
+     * @return the last member of each chunk, in order
+     */
+    public List<UUID> findChunkBounds(short tenantCode, UUID afterUserId, int chunkSize) {
+        return jdbcTemplate.queryForList(CHUNK_BOUNDS_SQL, UUID.class, tenantCode, afterUserId, afterUserId,
+                chunkSize);
+    }
+
+    /**
+     * Scores the tenant's dirty members in {@code (afterUserId, lastUserId]}
+     * by {@code scoring} on their activity over the UTC days in
+     * {@code [from, to)}, upserts their {@code dim_member_health} rows and
+     * clears them from the dirty set.
+     *
+     * @param afterUserId {@code null} to start at the tenant's first member
+     * @return number of members scored
+     */
+    public int scoreChunk(Tenant tenant, UUID afterUserId, UUID lastUserId, Instant from, Instant to,
+            Instant calculatedAt, MemberHealthScoring scoring) {
+        Map<String, Double> weights = scoring.weights();
+        Object[] activityTypes = weights.keySet().toArray();
+        Object[] typeWeights = weights.values().toArray();
+        return jdbcTemplate.query(SCORE_CHUNK_SQL, ps -> {
+            Connection connection = ps.getConnection();
+            ps.setShort(1, tenant.code());
+            ps.setString(2, tenant.id());
+            ps.setObject(3, afterUserId);
+            ps.setObject(4, lastUserId);
+            ps.setDate(5, Date.valueOf(LocalDate.ofInstant(from, ZoneOffset.UTC)));
+            ps.setDate(6, Date.valueOf(LocalDate.ofInstant(to, ZoneOffset.UTC)));
+            ps.setDouble(7, scoring.dailyDecay());
+            ps.setDouble(8, scoring.otherWeight());
+            ps.setInt(9, scoring.championMin());
+            ps.setInt(10, scoring.contributorMin());
+            ps.setInt(11, scoring.highRiskBelow());
+            ps.setInt(12, scoring.mediumRiskBelow());
+            ps.setTimestamp(13, Timestamp.from(calculatedAt));
+            ps.setArray(14, connection.createArrayOf("varchar", activityTypes));
+            ps.setArray(15, connection.createArrayOf("float8", typeWeights));
+        }, rs -> {
+            rs.next();
+            return rs.getInt(1);
+        });
+    }
+
+    public record Tenant(short code, String id) {
+    }
+}
@@ -0,0 +1,55 @@
+package com.openforum.datalake.repository;
+
+import com.openforum.datalake.job.MemberHealthRun;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.stereotype.Repository;
+
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.Optional;
+import java.util.UUID;
+
+@Repository
+public class MemberHealthRunRepository {
+
+    private static final RowMapper<MemberHealthRun> RUN = (rs, rowNum) -> new MemberHealthRun(rs.getLong(1),
+            rs.getTimestamp(2).toInstant(), rs.getTimestamp(3).toInstant(),
+            rs.getObject(4) != null ? rs.getShort(4) : null, rs.getObject(5, UUID.class), rs.getLong(6));
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public MemberHealthRunRepository(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    /**
+     * @return the latest run if it did not complete
+     */
+    public Optional<MemberHealthRun> findUnfinished() {
+        return jdbcTemplate.query("""
+                SELECT run_id, window_start, window_end, tenant_code, last_user_id, members_scored
+                FROM member_health_runs
+                WHERE completed_at IS NULL
+                  AND run_id = (SELECT MAX(run_id) FROM member_health_runs)
+                """, RUN).stream().findFirst();
+    }
+
+    public MemberHealthRun start(Instant windowStart, Instant windowEnd) {
+        return jdbcTemplate.queryForObject("""
+                INSERT INTO member_health_runs (window_start, window_end) VALUES (?, ?)
+                RETURNING run_id, window_start, window_end, tenant_code, last_user_id, members_scored
+                """, RUN, Timestamp.from(windowStart), Timestamp.from(windowEnd));
+    }
+
+    public void saveProgress(MemberHealthRun run) {
+        jdbcTemplate.update(
+                "UPDATE member_health_runs SET tenant_code = ?, last_user_id = ?, members_scored = ? WHERE run_id = ?",
+                run.tenantCode(), run.lastUserId(), run.membersScored(), run.runId());
+    }
+
+    public void complete(MemberHealthRun run) {
+        jdbcTemplate.update("UPDATE member_health_runs SET members_scored = ?, completed_at = NOW() WHERE run_id = ?",
+                run.membersScored(), run.runId());
+    }
+}
@@ -0,0 +1,115 @@
+package com.openforum.datalake.repository;
+
+import com.openforum.datalake.ingestor.MetadataPromotion;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.sql.Date;
+import java.sql.Timestamp;
+import java.time.YearMonth;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Fills the promoted {@code fact_activity} columns of rows written before they
+ * existed, one month of {@code metadata_backfill} at a time, newest first. Each
+ * chunk walks the month's facts by id from where the previous chunk stopped
+ * and saves its position in the same transaction, so an interrupted backfill
+ * resumes where it stopped. Only rows whose columns actually change are
+ * rewritten.
+ */
+@Repository
+public class MetadataBackfillRepository {
+
+    // Mirrors MetadataPromotion: values of the wrong JSON type stay null
+    static final Map<String, String> EXTRACTIONS = Map.of(
+            MetadataPromotion.CATEGORY_ID, "CASE WHEN jsonb_typeof(%1$s) = 'string' AND %1$s #>> '{}'"
+                    + " ~* '^[0-9a-f]{8}-[0-9a-f]{4}-[0-9a-f]{4}-[0-9a-f]{4}-[0-9a-f]{12}$'"
+                    + " THEN (%1$s #>> '{}')::uuid END",
+            MetadataPromotion.SENTIMENT, "CASE WHEN jsonb_typeof(%1$s) = 'number' THEN (%1$s)::float8 END",
+            MetadataPromotion.IS_ADMIN, "CASE WHEN jsonb_typeof(%1$s) = 'boolean' THEN (%1$s)::boolean END");
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public MetadataBackfillRepository(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    public List<YearMonth> findPendingMonths() {
+        return jdbcTemplate.query("SELECT month FROM metadata_backfill WHERE NOT completed ORDER BY month DESC",
+                (rs, i) -> YearMonth.from(rs.getDate(1).toLocalDate()));
+    }
+
+    /**
+     * Processes the next {@code limit} facts of {@code month}, filling the
+     * columns in {@code sourceFields} (column to payload field, as
+     * {@link MetadataPromotion#sourceFields()}) from {@code metadata}. Marks
+     * the month completed once a chunk comes up short.
+     *
+     * @return false once the month is completed
+     */
+    @Transactional
+    public boolean backfillChunk(YearMonth month, Map<String, String> sourceFields, int limit) {
+        List<UUID> lastIds = jdbcTemplate.query("SELECT last_id FROM metadata_backfill WHERE month = ? FOR UPDATE",
+                (rs, i) -> rs.getObject(1, UUID.class), Date.valueOf(month.atDay(1)));
+        if (lastIds.isEmpty()) {
+            return false;
+        }
+        UUID lastId = lastIds.get(0);
+
+        List<Object> args = new ArrayList<>();
+        StringBuilder values = new StringBuilder();
+        StringBuilder extracted = new StringBuilder();
+        StringBuilder assignments = new StringBuilder();
+        StringBuilder current = new StringBuilder();
+        StringBuilder replacement = new StringBuilder();
+        for (Map.Entry<String, String> column : sourceFields.entrySet()) {
+            String name = column.getKey();
+            String separator = assignments.isEmpty() ? "" : ", ";
+            values.append(separator).append("f.metadata -> CAST(? AS text) AS ").append(name);
+            args.add(column.getValue());
+            extracted.append(", ").append(EXTRACTIONS.get(name).formatted("v." + name)).append(" AS ").append(name);
+            assignments.append(separator).append(name).append(" = b.").append(name);
+            current.append(separator).append("f.").append(name);
+            replacement.append(separator).append("b.").append(name);
+        }
+        args.add(start(month));
+        args.add(start(month.plusMonths(1)));
+        if (lastId != null) {
+            args.add(lastId);
+        }
+        args.add(limit);
+        args.add(start(month));
+        args.add(start(month.plusMonths(1)));
+        // The month bounds prune the update to the month's partitions; ROW() keeps a single column a row value for IS DISTINCT FROM
+        String sql = "WITH batch AS (SELECT f.id, f.occurred_at, f.tenant_code" + extracted
+                + " FROM fact_activity f CROSS JOIN LATERAL (SELECT " + values + ") v"
+                + " WHERE f.occurred_at >= ? AND f.occurred_at < ?" + (lastId != null ? " AND f.id > ?" : "")
+                + " ORDER BY f.id LIMIT ?),"
+                + " updated AS (UPDATE fact_activity f SET " + assignments + " FROM batch b"
+                + " WHERE f.id = b.id AND f.occurred_at = b.occurred_at AND f.tenant_code = b.tenant_code"
+                + " AND f.occurred_at >= ? AND f.occurred_at < ?"
+                + " AND ROW(" + current + ") IS DISTINCT FROM ROW(" + replacement + ") RETURNING 1)"
+                + " SELECT (SELECT COUNT(*) FROM batch), (SELECT COUNT(*) FROM updated),"
+                + " (SELECT id FROM batch ORDER BY id DESC LIMIT 1)";
+        Chunk chunk = jdbcTemplate.queryForObject(sql,
+                (rs, i) -> new Chunk(rs.getInt(1), rs.getInt(2), rs.getObject(3, UUID.class)), args.toArray());
+
+        jdbcTemplate.update("UPDATE metadata_backfill SET last_id = ?, rows_updated = rows_updated + ?,"
+                + " completed = ?, updated_at = NOW() WHERE month = ?",
+                chunk.lastId() != null ? chunk.lastId() : lastId, chunk.updated(), chunk.scanned() < limit,
+                Date.valueOf(month.atDay(1)));
+        return chunk.scanned() == limit;
+    }
+
+    private static Timestamp start(YearMonth month) {
+        return Timestamp.from(month.atDay(1).atStartOfDay().toInstant(ZoneOffset.UTC));
+    }
+
+    private record Chunk(int scanned, int updated, UUID lastId) {
+    }
+}
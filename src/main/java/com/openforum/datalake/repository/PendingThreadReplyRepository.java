@@ -0,0 +1,126 @@
+package com.openforum.datalake.repository;
+
+import com.openforum.datalake.ingestor.counters.OrphanedReplies;
+import com.openforum.datalake.ingestor.counters.ThreadCounterDelta;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Repository;
+
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Spill table of the orphan reply buffer: {@code pending_thread_replies}
+ * holds reply counters of threads that did not exist when they were flushed.
+ */
+@Repository
+public class PendingThreadReplyRepository {
+
+    // GREATEST and LEAST ignore NULLs, so an imported reply never clears a first reply time
+    private static final String SPILL_SQL = """
+            INSERT INTO pending_thread_replies (thread_id, replies, last_activity_at, first_reply_at, first_seen_at)
+            VALUES (?, ?, ?, ?, ?)
+            ON CONFLICT (thread_id) DO UPDATE SET
+                replies = pending_thread_replies.replies + EXCLUDED.replies,
+                last_activity_at = GREATEST(pending_thread_replies.last_activity_at, EXCLUDED.last_activity_at),
+                first_reply_at = LEAST(pending_thread_replies.first_reply_at, EXCLUDED.first_reply_at),
+                first_seen_at = LEAST(pending_thread_replies.first_seen_at, EXCLUDED.first_seen_at)
+            """;
+
+    private static final String CLAIM_SQL = """
+            DELETE FROM pending_thread_replies WHERE thread_id = ANY (?)
+            RETURNING thread_id, replies, last_activity_at, first_reply_at
+            """;
+
+    private static final String CLAIM_RESOLVED_SQL = """
+            DELETE FROM pending_thread_replies p USING dim_threads d
+            WHERE p.thread_id = d.thread_id
+            RETURNING p.thread_id, p.replies, p.last_activity_at, p.first_reply_at
+            """;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public PendingThreadReplyRepository(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    /**
+     * Adds the counters to those already spilled for the same threads.
+     */
+    public void spill(Map<UUID, OrphanedReplies> orphans) {
+        if (orphans.isEmpty()) {
+            return;
+        }
+        List<Map.Entry<UUID, OrphanedReplies>> entries = List.copyOf(orphans.entrySet());
+        jdbcTemplate.batchUpdate(SPILL_SQL, entries, entries.size(), (ps, entry) -> {
+            ThreadCounterDelta delta = entry.getValue().delta();
+            ps.setObject(1, entry.getKey());
+            ps.setInt(2, delta.replies());
+            ps.setTimestamp(3, toTimestamp(delta.lastActivityAt()));
+            ps.setTimestamp(4, toTimestamp(delta.firstReplyAt()));
+            ps.setTimestamp(5, toTimestamp(entry.getValue().firstSeenAt()));
+        });
+    }
+
+    /**
+     * Removes and returns the spilled counters of the given threads.
+     */
+    public Map<UUID, ThreadCounterDelta> claim(Collection<UUID> threadIds) {
+        if (threadIds.isEmpty()) {
+            return Map.of();
+        }
+        Map<UUID, ThreadCounterDelta> claimed = new HashMap<>();
+        jdbcTemplate.query(CLAIM_SQL,
+                ps -> ps.setArray(1, ps.getConnection().createArrayOf("uuid", threadIds.toArray())),
+                collectInto(claimed));
+        return claimed;
+    }
+
+    /**
+     * Removes and returns the spilled counters of every thread that exists by
+     * now, whichever instance created it.
+     */
+    public Map<UUID, ThreadCounterDelta> claimResolved() {
+        Map<UUID, ThreadCounterDelta> claimed = new HashMap<>();
+        jdbcTemplate.query(CLAIM_RESOLVED_SQL, collectInto(claimed));
+        return claimed;
+    }
+
+    /**
+     * @return those of the given threads that exist in {@code dim_threads}
+     */
+    public List<UUID> findExistingThreads(Collection<UUID> threadIds) {
+        if (threadIds.isEmpty()) {
+            return List.of();
+        }
+        return jdbcTemplate.query("SELECT thread_id FROM dim_threads WHERE thread_id = ANY (?)",
+                ps -> ps.setArray(1, ps.getConnection().createArrayOf("uuid", threadIds.toArray())),
+                (rs, rowNum) -> rs.getObject(1, UUID.class));
+    }
+
+    /**
+     * @return number of spilled threads first seen before {@code cutoff} that were dropped
+     */
+    public int expire(Instant cutoff) {
+        return jdbcTemplate.update("DELETE FROM pending_thread_replies WHERE first_seen_at < ?",
+                Timestamp.from(cutoff));
+    }
+
+    private static RowCallbackHandler collectInto(Map<UUID, ThreadCounterDelta> claimed) {
+        return rs -> claimed.put(rs.getObject("thread_id", UUID.class), new ThreadCounterDelta(rs.getInt("replies"),
+                toInstant(rs.getTimestamp("last_activity_at")), toInstant(rs.getTimestamp("first_reply_at"))));
+    }
+
+    private static Timestamp toTimestamp(Instant instant) {
+        return instant == null ? null : Timestamp.from(instant);
+    }
+
+    private static Instant toInstant(Timestamp timestamp) {
+        return timestamp == null ? null : timestamp.toInstant();
+    }
+}
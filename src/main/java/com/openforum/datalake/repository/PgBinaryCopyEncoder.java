@@ -0,0 +1,120 @@
+package com.openforum.datalake.repository;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.UUID;
+
+/**
+ * Writes rows in PostgreSQL's binary {@code COPY} format. Values are encoded
+ * in their wire representation, so the server does no text parsing except
+ * for {@code jsonb}, which is always sent as text.
+ */
+final class PgBinaryCopyEncoder implements Closeable {
+
+    private static final byte[] SIGNATURE = { 'P', 'G', 'C', 'O', 'P', 'Y', '\n', (byte) 0xFF, '\r', '\n', 0 };
+    private static final byte JSONB_VERSION = 1;
+    // Microseconds between the Unix epoch and the PostgreSQL epoch (2000-01-01T00:00:00Z)
+    private static final long PG_EPOCH_OFFSET_MICROS = 946_684_800_000_000L;
+
+    private final DataOutputStream out;
+
+    PgBinaryCopyEncoder(OutputStream target) throws IOException {
+        this.out = new DataOutputStream(new BufferedOutputStream(target, 64 * 1024));
+        out.write(SIGNATURE);
+        out.writeInt(0); // flags
+        out.writeInt(0); // header extension length
+    }
+
+    void startRow(int fieldCount) throws IOException {
+        out.writeShort(fieldCount);
+    }
+
+    void writeNull() throws IOException {
+        out.writeInt(-1);
+    }
+
+    void writeInt2(Short value) throws IOException {
+        if (value == null) {
+            writeNull();
+            return;
+        }
+        out.writeInt(2);
+        out.writeShort(value);
+    }
+
+    void writeFloat8(Double value) throws IOException {
+        if (value == null) {
+            writeNull();
+            return;
+        }
+        out.writeInt(8);
+        out.writeDouble(value);
+    }
+
+    void writeBool(Boolean value) throws IOException {
+        if (value == null) {
+            writeNull();
+            return;
+        }
+        out.writeInt(1);
+        out.writeBoolean(value);
+    }
+
+    void writeUuid(UUID value) throws IOException {
+        if (value == null) {
+            writeNull();
+            return;
+        }
+        out.writeInt(16);
+        out.writeLong(value.getMostSignificantBits());
+        out.writeLong(value.getLeastSignificantBits());
+    }
+
+    void writeText(String value) throws IOException {
+        if (value == null) {
+            writeNull();
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    void writeTimestamptz(Instant value) throws IOException {
+        if (value == null) {
+            writeNull();
+            return;
+        }
+        long micros = Math.addExact(Math.multiplyExact(value.getEpochSecond(), 1_000_000L), value.getNano() / 1_000);
+        out.writeInt(8);
+        out.writeLong(micros - PG_EPOCH_OFFSET_MICROS);
+    }
+
+    void writeJsonb(byte[] json, int offset, int length) throws IOException {
+        if (json == null) {
+            writeNull();
+            return;
+        }
+        out.writeInt(length + 1);
+        out.writeByte(JSONB_VERSION);
+        out.write(json, offset, length);
+    }
+
+    /**
+     * Writes the trailer and flushes; closing the target stream ends the copy.
+     */
+    void finish() throws IOException {
+        out.writeShort(-1);
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        out.close();
+    }
+}
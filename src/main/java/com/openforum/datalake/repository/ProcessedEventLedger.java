@@ -0,0 +1,83 @@
+package com.openforum.datalake.repository;
+
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Repository;
+
+import java.sql.Array;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.UUID;
+import java.util.function.Consumer;
+
+/**
+ * JDBC access to the {@code processed_events} ledger, the authoritative record of
+ * which event ids have already been ingested.
+ */
+@Repository
+public class ProcessedEventLedger {
+
+    private static final int STREAM_FETCH_SIZE = 10_000;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public ProcessedEventLedger(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    public Set<UUID> findRecorded(Collection<UUID> eventIds) {
+        Set<UUID> recorded = new HashSet<>();
+        if (eventIds.isEmpty()) {
+            return recorded;
+        }
+        jdbcTemplate.query("SELECT event_id FROM processed_events WHERE event_id = ANY (?)",
+                ps -> ps.setArray(1, uuidArray(ps.getConnection(), eventIds)),
+                (RowCallbackHandler) rs -> recorded.add(rs.getObject(1, UUID.class)));
+        return recorded;
+    }
+
+    public void recordAll(Collection<UUID> eventIds) {
+        if (eventIds.isEmpty()) {
+            return;
+        }
+        jdbcTemplate.update("INSERT INTO processed_events (event_id) SELECT unnest(?) ON CONFLICT DO NOTHING",
+                ps -> ps.setArray(1, uuidArray(ps.getConnection(), eventIds)));
+    }
+
+    /**
+     * Streams every recorded event id through a server-side cursor.
+     */
+    public void forEachEventId(Consumer<UUID> action) {
+        jdbcTemplate.execute((ConnectionCallback<Void>) connection -> {
+            boolean autoCommit = connection.getAutoCommit();
+            // PostgreSQL only honours the fetch size (cursor mode) outside auto-commit
+            if (autoCommit) {
+                connection.setAutoCommit(false);
+            }
+            try (PreparedStatement statement = connection.prepareStatement("SELECT event_id FROM processed_events")) {
+                statement.setFetchSize(STREAM_FETCH_SIZE);
+                try (ResultSet rs = statement.executeQuery()) {
+                    while (rs.next()) {
+                        action.accept(rs.getObject(1, UUID.class));
+                    }
+                }
+            } finally {
+                if (autoCommit) {
+                    connection.rollback();
+                    connection.setAutoCommit(true);
+                }
+            }
+            return null;
+        });
+    }
+
+    private static Array uuidArray(Connection connection, Collection<UUID> eventIds) throws SQLException {
+        return connection.createArrayOf("uuid", eventIds.toArray());
+    }
+}
@@ -0,0 +1,86 @@
+package com.openforum.datalake.repository;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.openforum.datalake.domain.DimThread;
+import com.openforum.datalake.domain.FactActivity;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.sql.Statement;
+import java.util.List;
+
+/**
+ * Bulk path for rebuilds. Threads and facts are streamed into the staging
+ * tables with binary {@code COPY} and merged into the shadow tables created by
+ * {@link RebuildTableRepository}. Reply counters are not maintained per batch;
+ * {@link RebuildTableRepository#finishShadowTables()} derives them from the
+ * facts once the copy is complete.
+ */
+@Repository
+public class RebuildCopyWriter {
+
+    // Redelivered ThreadCreated events keep the latest description
+    private static final String MERGE_THREADS = """
+            INSERT INTO dim_threads_rebuild (thread_id, tenant_id, category_id, author_id, title, status, tags,
+                                             created_at, last_activity_at, is_answered, reply_count)
+            SELECT DISTINCT ON (thread_id) thread_id, tenant_id, category_id, author_id, title, status, tags,
+                   created_at, last_activity_at, FALSE, 0
+            FROM import_threads
+            ORDER BY thread_id, last_activity_at DESC
+            ON CONFLICT (thread_id) DO UPDATE SET
+                tenant_id = EXCLUDED.tenant_id,
+                category_id = EXCLUDED.category_id,
+                author_id = EXCLUDED.author_id,
+                title = EXCLUDED.title,
+                status = EXCLUDED.status,
+                tags = EXCLUDED.tags,
+                created_at = EXCLUDED.created_at,
+                last_activity_at = GREATEST(dim_threads_rebuild.last_activity_at, EXCLUDED.last_activity_at)
+            """;
+
+    private static final String MERGE_FACTS = """
+            INSERT INTO fact_activity_rebuild (id, event_id, user_id, target_id, occurred_at, tenant_code,
+                                               activity_code, category_id, sentiment, is_admin, metadata)
+            SELECT id, event_id, user_id, target_id, occurred_at, tenant_code, activity_code, category_id,
+                   sentiment, is_admin, metadata
+            FROM import_facts
+            ON CONFLICT DO NOTHING
+            """;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final StagingCopy stagingCopy;
+
+    public RebuildCopyWriter(JdbcTemplate jdbcTemplate, ObjectMapper objectMapper,
+            FactCodeDictionary factCodeDictionary) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.stagingCopy = new StagingCopy(objectMapper, factCodeDictionary);
+    }
+
+    /**
+     * Loads one batch of mapped rows into the shadow tables.
+     *
+     * @return number of fact rows inserted (duplicates excluded)
+     */
+    @Transactional
+    public int load(List<DimThread> threads, List<FactActivity> facts) {
+        if (threads.isEmpty() && facts.isEmpty()) {
+            return 0;
+        }
+        return jdbcTemplate.execute((ConnectionCallback<Integer>) connection -> {
+            try (Statement statement = connection.createStatement()) {
+                stagingCopy.createStaging(statement);
+                if (!threads.isEmpty()) {
+                    stagingCopy.copyThreads(connection, threads);
+                    statement.executeUpdate(MERGE_THREADS);
+                }
+                if (facts.isEmpty()) {
+                    return 0;
+                }
+                stagingCopy.copyFacts(connection, facts);
+                return statement.executeUpdate(MERGE_FACTS);
+            }
+        });
+    }
+}
@@ -0,0 +1,290 @@
+package com.openforum.datalake.repository;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.sql.Date;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.ZoneOffset;
+import java.util.List;
+
+/**
+ * Shadow copies of the tables a rebuild recomputes from
+ * {@code forum-events-v1}. {@code dim_threads}, {@code fact_activity},
+ * {@code pending_thread_replies} and the member health inputs
+ * {@code agg_user_daily_activity} and {@code member_health_dirty} are rebuilt
+ * as {@code <table>_rebuild} and swapped in by renaming, together with their
+ * partitions and indexes. The replaced tables are kept as
+ * {@code <table>_retired} until the next rebuild starts.
+ */
+@Repository
+public class RebuildTableRepository {
+
+    public static final List<String> TABLES = List.of("dim_threads", "pending_thread_replies",
+            "agg_user_daily_activity", "member_health_dirty", "agg_daily_active_users", "agg_daily_tenant_activity",
+            "agg_daily_user_sketches", "agg_hourly_tenant_activity", "agg_monthly_tenant_activity",
+            "agg_monthly_user_sketches", "dim_user_ordinals", "agg_active_user_bitmaps", "pending_active_users",
+            "agg_response_sketches", FactPartitionRepository.PARENT);
+
+    private static final String SHADOW = "_rebuild";
+    private static final String RETIRED = "_retired";
+
+    // Imported replies count towards reply_count but not the first response time, as in ThreadCounterWriter
+    private static final String FINISH_SQL = """
+            WITH replies AS (
+                SELECT f.target_id AS thread_id, COUNT(*) AS replies, MAX(f.occurred_at) AS last_reply_at,
+                       MIN(f.occurred_at) FILTER (WHERE a.activity_type = 'POST_CREATED') AS first_reply_at
+                FROM fact_activity_rebuild f
+                JOIN dim_activity_types a ON a.activity_code = f.activity_code
+                WHERE a.activity_type IN ('POST_CREATED', 'POST_IMPORTED')
+                GROUP BY f.target_id
+            ), counted AS (
+                UPDATE dim_threads_rebuild d SET
+                    reply_count = r.replies,
+                    last_activity_at = GREATEST(d.last_activity_at, r.last_reply_at),
+                    response_time_minutes = TRUNC(EXTRACT(EPOCH FROM (r.first_reply_at - d.created_at)) / 60)::int
+                FROM replies r
+                WHERE d.thread_id = r.thread_id
+            )
+            INSERT INTO pending_thread_replies_rebuild (thread_id, replies, last_activity_at, first_reply_at,
+                                                        first_seen_at)
+            SELECT r.thread_id, r.replies, r.last_reply_at, r.first_reply_at, NOW()
+            FROM replies r
+            WHERE NOT EXISTS (SELECT 1 FROM dim_threads_rebuild d WHERE d.thread_id = r.thread_id)
+            """;
+
+    // Days before the member health window are not counted, as MemberHealthCalculationJob would expire them
+    private static final String USER_DAYS_SQL = """
+            INSERT INTO agg_user_daily_activity_rebuild (tenant_code, user_id, day, activity_code, activity_count)
+            SELECT tenant_code, user_id, (occurred_at AT TIME ZONE 'UTC')::date, COALESCE(activity_code, 0), COUNT(*)
+            FROM fact_activity_rebuild
+            WHERE user_id IS NOT NULL AND occurred_at >= ?
+            GROUP BY 1, 2, 3, 4
+            """;
+
+    // Members whose counters may differ from the live ones are all rescored
+    private static final String DIRTY_MEMBERS_SQL = """
+            INSERT INTO member_health_dirty_rebuild (tenant_code, user_id)
+            SELECT tenant_code, user_id FROM agg_user_daily_activity_rebuild
+            UNION
+            SELECT tenant_code, user_id FROM agg_user_daily_activity
+            UNION
+            SELECT tenant_code, user_id FROM member_health_dirty
+            """;
+
+    // As seeded by V13
+    private static final String ACTIVE_USERS_SQL = """
+            INSERT INTO agg_daily_active_users_rebuild (day, tenant_code, user_id, activity_code)
+            SELECT DISTINCT ON (1, 2, 3) (occurred_at AT TIME ZONE 'UTC')::date, tenant_code, user_id,
+                   COALESCE(activity_code, 0)
+            FROM fact_activity_rebuild
+            WHERE user_id IS NOT NULL
+            ORDER BY 1, 2, 3, occurred_at
+            """;
+
+    private static final String TENANT_DAYS_SQL = """
+            INSERT INTO agg_daily_tenant_activity_rebuild (tenant_code, day, activity_code, stripe, activity_count,
+                                                           first_active_users)
+            SELECT tenant_code, day, activity_code, 0, SUM(activity_count), SUM(first_active_users)
+            FROM (
+                SELECT tenant_code, (occurred_at AT TIME ZONE 'UTC')::date AS day,
+                       COALESCE(activity_code, 0) AS activity_code, COUNT(*) AS activity_count,
+                       0 AS first_active_users
+                FROM fact_activity_rebuild
+                GROUP BY 1, 2, 3
+                UNION ALL
+                SELECT tenant_code, day, activity_code, 0, COUNT(*)
+                FROM agg_daily_active_users_rebuild
+                GROUP BY 1, 2, 3
+            ) d
+            GROUP BY 1, 2, 3
+            """;
+
+    // As seeded by V14
+    private static final String USER_SKETCHES_SQL = """
+            INSERT INTO agg_daily_user_sketches_rebuild (tenant_code, day, stripe, sketch)
+            SELECT tenant_code, day, 0, hll_add(NULL, array_agg(register), array_agg(rank))
+            FROM (
+                SELECT tenant_code, day, hll_register(user_id) AS register, MAX(hll_rank(user_id)) AS rank
+                FROM agg_daily_active_users_rebuild
+                GROUP BY 1, 2, 3
+            ) r
+            GROUP BY 1, 2
+            """;
+
+    // Hours before the retention would be expired by ActivityRollupCompactionJob
+    private static final String HOURS_SQL = """
+            INSERT INTO agg_hourly_tenant_activity_rebuild (tenant_code, hour, activity_code, stripe, activity_count)
+            SELECT tenant_code, date_trunc('hour', occurred_at, 'UTC'), COALESCE(activity_code, 0), 0, COUNT(*)
+            FROM fact_activity_rebuild
+            WHERE occurred_at >= ?
+            GROUP BY 1, 2, 3
+            """;
+
+    // Completed months, as V15 compacted them
+    private static final String MONTHS_SQL = """
+            INSERT INTO agg_monthly_tenant_activity_rebuild (tenant_code, month, activity_code, activity_count)
+            SELECT tenant_code, date_trunc('month', day::timestamp)::date, activity_code, SUM(activity_count)
+            FROM agg_daily_tenant_activity_rebuild
+            WHERE day < ?
+            GROUP BY 1, 2, 3
+            """;
+
+    private static final String MONTH_SKETCHES_SQL = """
+            INSERT INTO agg_monthly_user_sketches_rebuild (tenant_code, month, sketch)
+            SELECT tenant_code, month, hll_add(NULL, array_agg(register), array_agg(rank))
+            FROM (
+                SELECT tenant_code, date_trunc('month', day::timestamp)::date AS month,
+                       hll_register(user_id) AS register, MAX(hll_rank(user_id)) AS rank
+                FROM agg_daily_active_users_rebuild
+                WHERE day < ?
+                GROUP BY 1, 2, 3
+            ) r
+            GROUP BY 1, 2
+            """;
+
+    // Ordinals stay as assigned; the bitmaps start empty and RetentionBitmapJob refills them from the queue
+    private static final String ORDINALS_SQL = """
+            INSERT INTO dim_user_ordinals_rebuild (tenant_code, user_id, ordinal, first_day)
+            SELECT tenant_code, user_id, ordinal, first_day FROM dim_user_ordinals
+            """;
+
+    private static final String PENDING_USERS_SQL = """
+            INSERT INTO pending_active_users_rebuild (tenant_code, day, user_id)
+            SELECT tenant_code, day, user_id FROM agg_daily_active_users_rebuild
+            """;
+
+    // As seeded by V17
+    private static final String RESPONSE_SKETCHES_SQL = """
+            INSERT INTO agg_response_sketches_rebuild (tenant_id, day, category_id, sketch)
+            SELECT tenant_id, day, category_id, string_agg(int4send(key) || int4send(threads), ''::bytea ORDER BY key)
+            FROM (
+                SELECT tenant_id, (created_at AT TIME ZONE 'UTC')::date AS day, category_id,
+                       ddsketch_key(response_time_minutes) AS key, COUNT(*)::int AS threads
+                FROM dim_threads_rebuild
+                WHERE response_time_minutes IS NOT NULL AND created_at IS NOT NULL
+                GROUP BY 1, 2, 3, 4
+            ) b
+            GROUP BY 1, 2, 3
+            """;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final FactPartitionRepository factPartitionRepository;
+    private final int memberHealthWindowDays;
+    private final int hourlyRetentionDays;
+
+    public RebuildTableRepository(JdbcTemplate jdbcTemplate, FactPartitionRepository factPartitionRepository,
+            @Value("${datalake.member-health.window-days:30}") int memberHealthWindowDays,
+            @Value("${datalake.activity-rollup.compaction.hourly-retention-days:31}") int hourlyRetentionDays) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.factPartitionRepository = factPartitionRepository;
+        this.memberHealthWindowDays = memberHealthWindowDays;
+        this.hourlyRetentionDays = hourlyRetentionDays;
+    }
+
+    public static String shadowOf(String table) {
+        return table + SHADOW;
+    }
+
+    public static String retiredOf(String table) {
+        return table + RETIRED;
+    }
+
+    /**
+     * Drops the tables retired by the previous rebuild and any shadow tables
+     * left by an unfinished one, and creates empty shadow tables. The
+     * {@code fact_activity} shadow gets a partition for each of
+     * {@code months}, in the configured layout, and a default partition.
+     */
+    @Transactional
+    public void createShadowTables(List<YearMonth> months) {
+        for (String table : TABLES) {
+            jdbcTemplate.execute("DROP TABLE IF EXISTS " + retiredOf(table) + ", " + shadowOf(table));
+        }
+        jdbcTemplate.execute("CREATE TABLE dim_threads_rebuild (LIKE dim_threads INCLUDING ALL)");
+        jdbcTemplate.execute("CREATE TABLE pending_thread_replies_rebuild (LIKE pending_thread_replies INCLUDING ALL)");
+        jdbcTemplate.execute("CREATE TABLE agg_user_daily_activity_rebuild (LIKE agg_user_daily_activity INCLUDING ALL)");
+        jdbcTemplate.execute("CREATE TABLE member_health_dirty_rebuild (LIKE member_health_dirty INCLUDING ALL)");
+        jdbcTemplate.execute("CREATE TABLE agg_daily_active_users_rebuild (LIKE agg_daily_active_users INCLUDING ALL)");
+        jdbcTemplate.execute(
+                "CREATE TABLE agg_daily_tenant_activity_rebuild (LIKE agg_daily_tenant_activity INCLUDING ALL)");
+        jdbcTemplate.execute(
+                "CREATE TABLE agg_daily_user_sketches_rebuild (LIKE agg_daily_user_sketches INCLUDING ALL)");
+        jdbcTemplate.execute(
+                "CREATE TABLE agg_hourly_tenant_activity_rebuild (LIKE agg_hourly_tenant_activity INCLUDING ALL)");
+        jdbcTemplate.execute(
+                "CREATE TABLE agg_monthly_tenant_activity_rebuild (LIKE agg_monthly_tenant_activity INCLUDING ALL)");
+        jdbcTemplate.execute(
+                "CREATE TABLE agg_monthly_user_sketches_rebuild (LIKE agg_monthly_user_sketches INCLUDING ALL)");
+        jdbcTemplate.execute("CREATE TABLE dim_user_ordinals_rebuild (LIKE dim_user_ordinals INCLUDING ALL)");
+        jdbcTemplate.execute(
+                "CREATE TABLE agg_active_user_bitmaps_rebuild (LIKE agg_active_user_bitmaps INCLUDING ALL)");
+        jdbcTemplate.execute("CREATE TABLE pending_active_users_rebuild (LIKE pending_active_users INCLUDING ALL)");
+        jdbcTemplate.execute("CREATE TABLE agg_response_sketches_rebuild (LIKE agg_response_sketches INCLUDING ALL)");
+
+        String facts = shadowOf(FactPartitionRepository.PARENT);
+        jdbcTemplate.execute("CREATE TABLE " + facts + " (LIKE " + FactPartitionRepository.PARENT
+                + " INCLUDING ALL) PARTITION BY RANGE (occurred_at)");
+        jdbcTemplate.execute("CREATE TABLE " + facts + "_default PARTITION OF " + facts + " DEFAULT");
+        for (YearMonth month : months) {
+            String partition = facts + FactPartitionRepository.partitionName(month)
+                    .substring(FactPartitionRepository.PARENT.length());
+            factPartitionRepository.createMonth(facts, partition, month);
+        }
+    }
+
+    /**
+     * Derives the thread reply counters from the copied facts, with the
+     * response time sketches of the threads, and collects replies to threads
+     * that are not in the copy into the {@code pending_thread_replies} shadow,
+     * where they wait for their thread as usual. Derives the per-user day counters of the member health window
+     * and marks every member whose score may change for rescoring. Derives the
+     * daily tenant rollup and active member sketches of all days, in one
+     * stripe, with the hours of the hourly retention and the completed
+     * months compacted. Queues all active members for the retention bitmaps,
+     * which are rebuilt after the swap with the ordinals kept.
+     *
+     * @return number of threads with pending replies
+     */
+    @Transactional
+    public int finishShadowTables() {
+        int pendingThreads = jdbcTemplate.update(FINISH_SQL);
+        jdbcTemplate.update(RESPONSE_SKETCHES_SQL);
+        LocalDate today = LocalDate.now(ZoneOffset.UTC);
+        LocalDate firstDay = today.minusDays(memberHealthWindowDays - 1L);
+        jdbcTemplate.update(USER_DAYS_SQL, Timestamp.from(firstDay.atStartOfDay(ZoneOffset.UTC).toInstant()));
+        jdbcTemplate.update(DIRTY_MEMBERS_SQL);
+        jdbcTemplate.update(ACTIVE_USERS_SQL);
+        jdbcTemplate.update(TENANT_DAYS_SQL);
+        jdbcTemplate.update(USER_SKETCHES_SQL);
+        LocalDate firstHourDay = today.minusDays(hourlyRetentionDays);
+        jdbcTemplate.update(HOURS_SQL, Timestamp.from(firstHourDay.atStartOfDay(ZoneOffset.UTC).toInstant()));
+        Date currentMonth = Date.valueOf(today.withDayOfMonth(1));
+        jdbcTemplate.update(MONTHS_SQL, currentMonth);
+        jdbcTemplate.update(MONTH_SKETCHES_SQL, currentMonth);
+        jdbcTemplate.update(ORDINALS_SQL);
+        jdbcTemplate.update(PENDING_USERS_SQL);
+        return pendingThreads;
+    }
+
+    /**
+     * Replaces the live tables with their shadows in one transaction. Readers
+     * and writers wait for the swap and then see the new tables; gives up
+     * after {@code lockTimeoutMillis} if the locks are not granted.
+     */
+    @Transactional
+    public void swap(long lockTimeoutMillis) {
+        jdbcTemplate.execute("SET LOCAL lock_timeout = " + lockTimeoutMillis);
+        jdbcTemplate.execute("LOCK TABLE " + String.join(", ", TABLES) + " IN ACCESS EXCLUSIVE MODE");
+        for (String table : TABLES) {
+            factPartitionRepository.renameTree(table, retiredOf(table));
+        }
+        for (String table : TABLES) {
+            factPartitionRepository.renameTree(shadowOf(table), table);
+        }
+    }
+}
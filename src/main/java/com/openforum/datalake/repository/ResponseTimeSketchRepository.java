@@ -0,0 +1,104 @@
+package com.openforum.datalake.repository;
+
+import com.openforum.datalake.sketch.DDSketch;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.sql.Date;
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
+
+/**
+ * First response time sketches {@code agg_response_sketches} of threads per
+ * tenant, UTC day the thread was created and category. Merging the sketches
+ * of any days and categories gives the quantiles of their threads' response
+ * times without reading {@code dim_threads}.
+ */
+@Repository
+public class ResponseTimeSketchRepository {
+
+    // Key order, so concurrent flushes lock the rows in the same order
+    private static final Comparator<SketchKey> KEY_ORDER = Comparator.comparing(SketchKey::tenantId)
+            .thenComparing(SketchKey::day)
+            .thenComparing(SketchKey::categoryId, Comparator.nullsFirst(Comparator.naturalOrder()));
+
+    private static final String INSERT_SQL = """
+            INSERT INTO agg_response_sketches (tenant_id, day, category_id, sketch)
+            VALUES (?, ?, CAST(? AS uuid), ?)
+            ON CONFLICT DO NOTHING
+            """;
+
+    private static final String LOCK_SQL = """
+            SELECT sketch FROM agg_response_sketches
+            WHERE tenant_id = ? AND day = ? AND category_id IS NOT DISTINCT FROM CAST(? AS uuid)
+            FOR UPDATE
+            """;
+
+    private static final String UPDATE_SQL = """
+            UPDATE agg_response_sketches SET sketch = ?
+            WHERE tenant_id = ? AND day = ? AND category_id IS NOT DISTINCT FROM CAST(? AS uuid)
+            """;
+
+    private static final String SKETCHES_SQL = """
+            SELECT sketch FROM agg_response_sketches
+            WHERE tenant_id = ?
+              AND day >= COALESCE(CAST(? AS date), '-infinity') AND day < COALESCE(CAST(? AS date), 'infinity')
+              AND (CAST(? AS uuid) IS NULL OR category_id = CAST(? AS uuid))
+            """;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public ResponseTimeSketchRepository(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    /**
+     * Adds the response times to the sketches of their threads' tenant, day
+     * and category.
+     */
+    @Transactional
+    public void add(Collection<FirstResponse> responses) {
+        Map<SketchKey, DDSketch> sketches = new TreeMap<>(KEY_ORDER);
+        for (FirstResponse response : responses) {
+            sketches.computeIfAbsent(new SketchKey(response.tenantId(), response.day(), response.categoryId()),
+                    key -> new DDSketch()).add(response.minutes());
+        }
+        sketches.forEach((key, sketch) -> {
+            Date day = Date.valueOf(key.day());
+            if (jdbcTemplate.update(INSERT_SQL, key.tenantId(), day, key.categoryId(), sketch.toBytes()) == 0) {
+                DDSketch stored = DDSketch.fromBytes(jdbcTemplate.queryForObject(LOCK_SQL, byte[].class,
+                        key.tenantId(), day, key.categoryId()));
+                jdbcTemplate.update(UPDATE_SQL, stored.merge(sketch).toBytes(), key.tenantId(), day,
+                        key.categoryId());
+            }
+        });
+    }
+
+    /**
+     * Response times of the tenant's threads created on the UTC days in
+     * {@code [from, to)}, each bound open when {@code null}, in the category
+     * or, when {@code null}, all categories.
+     */
+    public DDSketch findResponseTimes(String tenantId, UUID categoryId, LocalDate from, LocalDate to) {
+        DDSketch sketch = new DDSketch();
+        jdbcTemplate.query(SKETCHES_SQL, rs -> {
+            sketch.merge(DDSketch.fromBytes(rs.getBytes(1)));
+        }, tenantId, from == null ? null : Date.valueOf(from), to == null ? null : Date.valueOf(to), categoryId,
+                categoryId);
+        return sketch;
+    }
+
+    /**
+     * The first response time of a thread created on {@code day}.
+     */
+    public record FirstResponse(String tenantId, LocalDate day, UUID categoryId, int minutes) {
+    }
+
+    private record SketchKey(String tenantId, LocalDate day, UUID categoryId) {
+    }
+}
@@ -0,0 +1,121 @@
+package com.openforum.datalake.repository;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.openforum.datalake.domain.DimThread;
+import com.openforum.datalake.domain.FactActivity;
+import com.openforum.datalake.ingestor.RawJson;
+import org.postgresql.PGConnection;
+import org.postgresql.copy.PGCopyOutputStream;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+
+/**
+ * Session-local staging tables shared by the bulk writers. Threads and facts
+ * are streamed into {@code import_threads} and {@code import_facts} with
+ * binary {@code COPY}; each writer then merges them into its own target
+ * tables. The staging tables are emptied on commit.
+ */
+final class StagingCopy {
+
+    private static final String CREATE_STAGING = """
+            CREATE TEMP TABLE IF NOT EXISTS import_threads (
+                thread_id UUID, tenant_id TEXT, category_id UUID, author_id UUID, title TEXT,
+                status TEXT, tags JSONB, created_at TIMESTAMPTZ, last_activity_at TIMESTAMPTZ
+            ) ON COMMIT DELETE ROWS;
+            CREATE TEMP TABLE IF NOT EXISTS import_facts (
+                id UUID, event_id UUID, user_id UUID, target_id UUID, occurred_at TIMESTAMPTZ,
+                tenant_code SMALLINT, activity_code SMALLINT, category_id UUID, sentiment FLOAT8, is_admin BOOLEAN,
+                metadata JSONB
+            ) ON COMMIT DELETE ROWS
+            """;
+
+    private static final String COPY_THREADS = "COPY import_threads FROM STDIN (FORMAT binary)";
+    private static final String COPY_FACTS = "COPY import_facts FROM STDIN (FORMAT binary)";
+
+    private final ObjectMapper objectMapper;
+    private final FactCodeDictionary factCodeDictionary;
+
+    StagingCopy(ObjectMapper objectMapper, FactCodeDictionary factCodeDictionary) {
+        this.objectMapper = objectMapper;
+        this.factCodeDictionary = factCodeDictionary;
+    }
+
+    void createStaging(Statement statement) throws SQLException {
+        statement.execute(CREATE_STAGING);
+    }
+
+    void copyThreads(Connection connection, List<DimThread> threads) throws SQLException {
+        try (PgBinaryCopyEncoder copy = new PgBinaryCopyEncoder(copyStream(connection, COPY_THREADS))) {
+            for (DimThread thread : threads) {
+                copy.startRow(9);
+                copy.writeUuid(thread.getThreadId());
+                copy.writeText(thread.getTenantId());
+                copy.writeUuid(thread.getCategoryId());
+                copy.writeUuid(thread.getAuthorId());
+                copy.writeText(thread.getTitle());
+                copy.writeText(thread.getStatus());
+                writeJson(copy, thread.getTags());
+                copy.writeTimestamptz(thread.getCreatedAt());
+                copy.writeTimestamptz(thread.getLastActivityAt());
+            }
+            copy.finish();
+        } catch (IOException e) {
+            throw asSqlException(e);
+        }
+    }
+
+    void copyFacts(Connection connection, List<FactActivity> facts) throws SQLException {
+        factCodeDictionary.encode(facts);
+        try (PgBinaryCopyEncoder copy = new PgBinaryCopyEncoder(copyStream(connection, COPY_FACTS))) {
+            for (FactActivity fact : facts) {
+                copy.startRow(11);
+                copy.writeUuid(fact.getId().getId());
+                copy.writeUuid(fact.getEventId());
+                copy.writeUuid(fact.getUserId());
+                copy.writeUuid(fact.getTargetId());
+                copy.writeTimestamptz(fact.getId().getOccurredAt());
+                copy.writeInt2(fact.getTenantCode());
+                copy.writeInt2(fact.getActivityCode());
+                copy.writeUuid(fact.getCategoryId());
+                copy.writeFloat8(fact.getSentiment());
+                copy.writeBool(fact.getIsAdmin());
+                RawJson raw = fact.getRawMetadata();
+                if (raw != null) {
+                    copy.writeJsonb(raw.source(), raw.offset(), raw.length());
+                } else {
+                    writeJson(copy, fact.getMetadata());
+                }
+            }
+            copy.finish();
+        } catch (IOException e) {
+            throw asSqlException(e);
+        }
+    }
+
+    private void writeJson(PgBinaryCopyEncoder copy, Object value) throws IOException {
+        if (value == null) {
+            copy.writeNull();
+            return;
+        }
+        try {
+            byte[] json = objectMapper.writeValueAsBytes(value);
+            copy.writeJsonb(json, 0, json.length);
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("Unserializable import value", e);
+        }
+    }
+
+    private static PGCopyOutputStream copyStream(Connection connection, String sql) throws SQLException {
+        return new PGCopyOutputStream(connection.unwrap(PGConnection.class), sql);
+    }
+
+    // PgJDBC reports server-side COPY errors as IOExceptions wrapping the SQLException
+    private static SQLException asSqlException(IOException e) {
+        return e.getCause() instanceof SQLException sqlException ? sqlException : new SQLException("COPY failed", e);
+    }
+}
@@ -0,0 +1,156 @@
+package com.openforum.datalake.repository;
+
+import com.openforum.datalake.ingestor.counters.OrphanedReplies;
+import com.openforum.datalake.ingestor.counters.ThreadCounterDelta;
+import com.openforum.datalake.repository.ResponseTimeSketchRepository.FirstResponse;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Applies coalesced reply counters to {@code dim_threads} with one relative
+ * {@code UPDATE} per thread, so concurrent writers never overwrite each
+ * other's increments. Threads are updated in {@code thread_id} order, so
+ * the flush, the ingest lanes, the adoption of spilled counters and imports
+ * lock the rows they share in the same order. Threads given their first
+ * response time are added to the response time sketches in the same
+ * transaction.
+ */
+@Repository
+public class ThreadCounterWriter {
+
+    // The first response time is only set by the flush that moves reply_count off zero
+    private static final String UPDATE_SQL = """
+            UPDATE dim_threads SET
+                reply_count = COALESCE(reply_count, 0) + ?,
+                last_activity_at = GREATEST(last_activity_at, ?),
+                response_time_minutes = CASE
+                    WHEN COALESCE(reply_count, 0) = 0 AND CAST(? AS timestamptz) IS NOT NULL
+                        THEN TRUNC(EXTRACT(EPOCH FROM (CAST(? AS timestamptz) - created_at)) / 60)::int
+                    ELSE response_time_minutes
+                END
+            WHERE thread_id = ?
+            """;
+
+    // Read back under the row locks of the update, so reply_count is this flush's; it set the response time if it
+    // moved reply_count off zero, i.e. to the flushed replies
+    private static final String RESPONDED_SQL = """
+            SELECT thread_id, tenant_id, (created_at AT TIME ZONE 'UTC')::date AS day, category_id, reply_count,
+                   response_time_minutes
+            FROM dim_threads
+            WHERE thread_id = ANY (?) AND response_time_minutes IS NOT NULL AND created_at IS NOT NULL
+            """;
+
+    // PostgreSQL orders uuids bytewise, i.e. by their unsigned halves, unlike UUID.compareTo
+    static final Comparator<UUID> THREAD_ORDER = Comparator
+            .comparing(UUID::getMostSignificantBits, Long::compareUnsigned)
+            .thenComparing(UUID::getLeastSignificantBits, Long::compareUnsigned);
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ResponseTimeSketchRepository responseTimeSketchRepository;
+    private final PendingThreadReplyRepository pendingThreadReplyRepository;
+
+    public ThreadCounterWriter(JdbcTemplate jdbcTemplate, ResponseTimeSketchRepository responseTimeSketchRepository,
+            PendingThreadReplyRepository pendingThreadReplyRepository) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.responseTimeSketchRepository = responseTimeSketchRepository;
+        this.pendingThreadReplyRepository = pendingThreadReplyRepository;
+    }
+
+    /**
+     * @return ids of threads that do not exist (yet), whose deltas were not applied
+     */
+    @Transactional
+    public List<UUID> apply(Map<UUID, ThreadCounterDelta> deltas) {
+        if (deltas.isEmpty()) {
+            return List.of();
+        }
+        List<Map.Entry<UUID, ThreadCounterDelta>> entries = deltas.entrySet().stream()
+                .sorted(Map.Entry.comparingByKey(THREAD_ORDER))
+                .toList();
+        int[][] counts = jdbcTemplate.batchUpdate(UPDATE_SQL, entries, entries.size(), (ps, entry) -> {
+            ThreadCounterDelta delta = entry.getValue();
+            Timestamp firstReplyAt = toTimestamp(delta.firstReplyAt());
+            ps.setInt(1, delta.replies());
+            ps.setTimestamp(2, toTimestamp(delta.lastActivityAt()));
+            ps.setTimestamp(3, firstReplyAt);
+            ps.setTimestamp(4, firstReplyAt);
+            ps.setObject(5, entry.getKey());
+        });
+
+        List<UUID> missing = new ArrayList<>();
+        List<UUID> responded = new ArrayList<>();
+        for (int i = 0; i < entries.size(); i++) {
+            if (counts[0][i] == 0) {
+                missing.add(entries.get(i).getKey());
+            } else if (entries.get(i).getValue().firstReplyAt() != null) {
+                responded.add(entries.get(i).getKey());
+            }
+        }
+        if (!responded.isEmpty()) {
+            responseTimeSketchRepository.add(findFirstResponses(responded, deltas));
+        }
+        return missing;
+    }
+
+    /**
+     * Applies the deltas in the caller's transaction, together with the
+     * counters spilled to {@code pending_thread_replies} for the threads just
+     * created, and spills the deltas of threads that do not exist yet, so all
+     * of them commit or roll back with the rows they were counted from.
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void applyInTransaction(Map<UUID, ThreadCounterDelta> deltas, Collection<UUID> createdThreads) {
+        Map<UUID, ThreadCounterDelta> batch = new HashMap<>(pendingThreadReplyRepository.claim(createdThreads));
+        deltas.forEach((threadId, delta) -> batch.merge(threadId, delta, ThreadCounterDelta::plus));
+        Map<UUID, OrphanedReplies> orphaned = new HashMap<>();
+        Instant now = Instant.now();
+        for (UUID threadId : apply(batch)) {
+            orphaned.put(threadId, new OrphanedReplies(batch.get(threadId), now));
+        }
+        pendingThreadReplyRepository.spill(orphaned);
+    }
+
+    /**
+     * Moves the spilled counters of every thread that exists by now, whoever
+     * created it, onto the thread in one transaction, so they are never
+     * claimed without being applied.
+     *
+     * @return number of threads whose counters were applied
+     */
+    @Transactional
+    public int adoptPendingReplies() {
+        Map<UUID, ThreadCounterDelta> claimed = pendingThreadReplyRepository.claimResolved();
+        apply(claimed);
+        return claimed.size();
+    }
+
+    private List<FirstResponse> findFirstResponses(List<UUID> threadIds, Map<UUID, ThreadCounterDelta> deltas) {
+        List<FirstResponse> responses = new ArrayList<>();
+        jdbcTemplate.query(RESPONDED_SQL,
+                ps -> ps.setArray(1, ps.getConnection().createArrayOf("uuid", threadIds.toArray())),
+                rs -> {
+                    UUID threadId = rs.getObject("thread_id", UUID.class);
+                    if (rs.getInt("reply_count") == deltas.get(threadId).replies()) {
+                        responses.add(new FirstResponse(rs.getString("tenant_id"), rs.getDate("day").toLocalDate(),
+                                rs.getObject("category_id", UUID.class), rs.getInt("response_time_minutes")));
+                    }
+                });
+        return responses;
+    }
+
+    private static Timestamp toTimestamp(Instant instant) {
+        return instant == null ? null : Timestamp.from(instant);
+    }
+}
@@ -0,0 +1,168 @@
+package com.openforum.datalake.sketch;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * DDSketch of non-negative values, answering any quantile within
+ * {@value #RELATIVE_ACCURACY} of the true value relative to it (Masson, Rim
+ * and Lee, "DDSketch: a fast and fully-mergeable quantile sketch with
+ * relative-error guarantees", 2019). Values are counted in logarithmic
+ * buckets, bucket {@code i} holding those in {@code (γ^(i-1), γ^i]} with
+ * {@code γ = (1 + α) / (1 - α)}; two sketches merge by adding their counts,
+ * into exactly the sketch of all values added to either, so sketches of
+ * single days answer quantiles over any range of days.
+ * <p>
+ * The layout is the one {@code ddsketch_key} of V17 is aggregated into: a
+ * big-endian {@code (key, count)} pair of 32-bit integers per non-empty
+ * bucket, in ascending key order. Key 0 counts zero (and negative) values,
+ * key {@code i + 1} bucket {@code i}.
+ */
+public final class DDSketch {
+
+    public static final double RELATIVE_ACCURACY = 0.01;
+
+    private static final double GAMMA = (1 + RELATIVE_ACCURACY) / (1 - RELATIVE_ACCURACY);
+    private static final double LOG_GAMMA = Math.log(GAMMA);
+    private static final int PAIR_BYTES = 2 * Integer.BYTES;
+
+    private long[] counts;
+    private long count;
+
+    public DDSketch() {
+        this(new long[0]);
+    }
+
+    private DDSketch(long[] counts) {
+        this.counts = counts;
+        this.count = Arrays.stream(counts).sum();
+    }
+
+    /**
+     * Reads a sketch as stored.
+     */
+    public static DDSketch fromBytes(byte[] bytes) {
+        if (bytes.length % PAIR_BYTES != 0) {
+            throw new IllegalArgumentException("Expected (key, count) pairs, got " + bytes.length + " bytes");
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        int[] keys = new int[bytes.length / PAIR_BYTES];
+        int[] bucketCounts = new int[keys.length];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = buffer.getInt();
+            bucketCounts[i] = buffer.getInt();
+            if (keys[i] <= (i == 0 ? -1 : keys[i - 1]) || bucketCounts[i] <= 0) {
+                throw new IllegalArgumentException("Unordered key " + keys[i] + " or count " + bucketCounts[i]);
+            }
+        }
+        long[] counts = new long[keys.length == 0 ? 0 : keys[keys.length - 1] + 1];
+        for (int i = 0; i < keys.length; i++) {
+            counts[keys[i]] = bucketCounts[i];
+        }
+        return new DDSketch(counts);
+    }
+
+    /**
+     * The key of the bucket counting {@code value}, as {@code ddsketch_key}
+     * computes it.
+     */
+    static int key(long value) {
+        return value <= 0 ? 0 : (int) Math.ceil(Math.log(value) / LOG_GAMMA) + 1;
+    }
+
+    public void add(long value) {
+        int key = key(value);
+        grow(key + 1);
+        counts[key]++;
+        count++;
+    }
+
+    /**
+     * Adds the values of {@code other} to this sketch.
+     *
+     * @return this sketch
+     */
+    public DDSketch merge(DDSketch other) {
+        grow(other.counts.length);
+        for (int key = 0; key < other.counts.length; key++) {
+            counts[key] += other.counts[key];
+        }
+        count += other.count;
+        return this;
+    }
+
+    /**
+     * The value of rank {@code q * (count - 1)}, within the relative accuracy.
+     *
+     * @throws IllegalStateException if the sketch is empty
+     */
+    public double quantile(double q) {
+        if (q < 0 || q > 1) {
+            throw new IllegalArgumentException("Quantile " + q + " is not in [0, 1]");
+        }
+        if (count == 0) {
+            throw new IllegalStateException("No values to take the " + q + " quantile of");
+        }
+        double rank = q * (count - 1);
+        long seen = 0;
+        int key = 0;
+        while (key < counts.length - 1) {
+            seen += counts[key];
+            if (seen > rank) {
+                break;
+            }
+            key++;
+        }
+        // The point of the bucket within the relative accuracy of both its bounds
+        return key == 0 ? 0 : 2 * Math.pow(GAMMA, key - 1) / (GAMMA + 1);
+    }
+
+    public long count() {
+        return count;
+    }
+
+    public boolean isEmpty() {
+        return count == 0;
+    }
+
+    /**
+     * @throws IllegalStateException if a bucket outgrew its 32-bit count
+     */
+    public byte[] toBytes() {
+        int pairs = (int) Arrays.stream(counts).filter(bucketCount -> bucketCount > 0).count();
+        ByteBuffer buffer = ByteBuffer.allocate(pairs * PAIR_BYTES);
+        for (int key = 0; key < counts.length; key++) {
+            if (counts[key] > Integer.MAX_VALUE) {
+                throw new IllegalStateException("Bucket " + key + " counts " + counts[key] + " values");
+            }
+            if (counts[key] > 0) {
+                buffer.putInt(key).putInt((int) counts[key]);
+            }
+        }
+        return buffer.array();
+    }
+
+    private void grow(int length) {
+        if (counts.length < length) {
+            counts = Arrays.copyOf(counts, length);
+        }
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof DDSketch other)) {
+            return false;
+        }
+        int length = Math.max(counts.length, other.counts.length);
+        return Arrays.equals(Arrays.copyOf(counts, length), Arrays.copyOf(other.counts, length));
+    }
+
+    @Override
+    public int hashCode() {
+        int length = counts.length;
+        while (length > 0 && counts[length - 1] == 0) {
+            length--;
+        }
+        return Arrays.hashCode(Arrays.copyOf(counts, length));
+    }
+}
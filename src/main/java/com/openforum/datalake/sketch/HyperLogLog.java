@@ -0,0 +1,140 @@
+package com.openforum.datalake.sketch;
+
+import java.util.Arrays;
+
+/**
+ * HyperLogLog sketch of a set of 64-bit hashes, estimating the number of
+ * distinct hashes added within about 0.8% (one standard error). Two sketches
+ * merge into the sketch of the union of their sets, so sketches of single days
+ * answer distinct counts over any range of days.
+ * <p>
+ * The layout is the one {@code hll_add} of V14 writes: {@value #REGISTERS}
+ * one-byte registers, indexed by the top {@value #PRECISION} bits of the
+ * hash, each holding the largest rank seen, i.e. the position of the first
+ * set bit in the remaining 50 bits (51 when none is set). Cardinalities are
+ * estimated with Ertl's improved estimator ("New cardinality estimation
+ * algorithms for HyperLogLog sketches", 2017), which needs neither linear
+ * counting nor empirical bias correction for small sets.
+ */
+public final class HyperLogLog {
+
+    public static final int PRECISION = 14;
+    public static final int REGISTERS = 1 << PRECISION;
+
+    private static final int RANK_BITS = Long.SIZE - PRECISION;
+    private static final double ALPHA_INFINITY = 1 / (2 * Math.log(2));
+
+    private final byte[] registers;
+
+    public HyperLogLog() {
+        this(new byte[REGISTERS]);
+    }
+
+    private HyperLogLog(byte[] registers) {
+        this.registers = registers;
+    }
+
+    /**
+     * Reads a sketch as stored; the bytes are copied.
+     */
+    public static HyperLogLog fromBytes(byte[] bytes) {
+        if (bytes.length != REGISTERS) {
+            throw new IllegalArgumentException("Expected " + REGISTERS + " registers, got " + bytes.length);
+        }
+        return new HyperLogLog(bytes.clone());
+    }
+
+    public void add(long hash) {
+        int register = (int) (hash >>> RANK_BITS);
+        int rank = Long.numberOfLeadingZeros(hash << PRECISION | 1L << (PRECISION - 1)) + 1;
+        if (registers[register] < rank) {
+            registers[register] = (byte) rank;
+        }
+    }
+
+    /**
+     * Adds the set of {@code other} to this sketch.
+     *
+     * @return this sketch
+     */
+    public HyperLogLog merge(HyperLogLog other) {
+        byte[] theirs = other.registers;
+        for (int i = 0; i < REGISTERS; i++) {
+            if (registers[i] < theirs[i]) {
+                registers[i] = theirs[i];
+            }
+        }
+        return this;
+    }
+
+    public long estimate() {
+        int[] histogram = new int[RANK_BITS + 2];
+        for (byte rank : registers) {
+            histogram[rank]++;
+        }
+        double m = REGISTERS;
+        double z = m * tau(1 - histogram[RANK_BITS + 1] / m);
+        for (int k = RANK_BITS; k >= 1; k--) {
+            z = 0.5 * (z + histogram[k]);
+        }
+        z += m * sigma(histogram[0] / m);
+        return Math.round(ALPHA_INFINITY * m * m / z);
+    }
+
+    public byte[] toBytes() {
+        return registers.clone();
+    }
+
+    public boolean isEmpty() {
+        for (byte rank : registers) {
+            if (rank != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof HyperLogLog other && Arrays.equals(registers, other.registers);
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(registers);
+    }
+
+    // Share of empty registers -> correction for them; infinite when all are empty, so the estimate is 0
+    private static double sigma(double x) {
+        if (x == 1) {
+            return Double.POSITIVE_INFINITY;
+        }
+        double y = 1;
+        double z = x;
+        double previous;
+        do {
+            x *= x;
+            previous = z;
+            z += x * y;
+            y += y;
+        } while (z != previous);
+        return z;
+    }
+
+    // Share of registers below the maximum rank -> correction for the saturated ones
+    private static double tau(double x) {
+        if (x == 0 || x == 1) {
+            return 0;
+        }
+        double y = 1;
+        double z = 1 - x;
+        double previous;
+        do {
+            x = Math.sqrt(x);
+            previous = z;
+            y *= 0.5;
+            z -= (1 - x) * (1 - x) * y;
+        } while (z != previous);
+        return z / 3;
+    }
+}
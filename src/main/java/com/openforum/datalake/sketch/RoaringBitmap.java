@@ -0,0 +1,400 @@
+package com.openforum.datalake.sketch;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+/**
+ * Compressed set of non-negative ints, such as the ordinals of the members
+ * active in a period. Values are split by their high 16 bits into containers
+ * of up to 65536 low halves, each a sorted array while it holds at most
+ * {@value #ARRAY_MAX_CARDINALITY} values and a 65536-bit bitmap beyond, so a
+ * set of {@code n} dense ordinals takes about {@code n / 8} bytes and a sparse
+ * one about {@code 2n}. Unions and intersection counts work container by
+ * container without decompressing.
+ * <p>
+ * {@link #toBytes()} writes the portable Roaring format without run
+ * containers (cookie {@value #SERIAL_COOKIE_NO_RUNCONTAINER}), which the
+ * Roaring libraries read.
+ */
+public final class RoaringBitmap {
+
+    private static final int SERIAL_COOKIE_NO_RUNCONTAINER = 12346;
+    private static final int ARRAY_MAX_CARDINALITY = 4096;
+    private static final int BITMAP_WORDS = 1 << 10;
+
+    private char[] keys;
+    private Container[] containers;
+    private int size;
+
+    public RoaringBitmap() {
+        this(new char[4], new Container[4], 0);
+    }
+
+    private RoaringBitmap(char[] keys, Container[] containers, int size) {
+        this.keys = keys;
+        this.containers = containers;
+        this.size = size;
+    }
+
+    public static RoaringBitmap of(int... values) {
+        RoaringBitmap bitmap = new RoaringBitmap();
+        for (int value : values) {
+            bitmap.add(value);
+        }
+        return bitmap;
+    }
+
+    /**
+     * Reads a bitmap as written by {@link #toBytes()}.
+     */
+    public static RoaringBitmap fromBytes(byte[] bytes) {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+        int cookie = buffer.getInt();
+        if (cookie != SERIAL_COOKIE_NO_RUNCONTAINER) {
+            throw new IllegalArgumentException("Not a Roaring bitmap without run containers: cookie " + cookie);
+        }
+        int size = buffer.getInt();
+        char[] keys = new char[Math.max(size, 1)];
+        int[] cardinalities = new int[size];
+        for (int i = 0; i < size; i++) {
+            keys[i] = buffer.getChar();
+            cardinalities[i] = buffer.getChar() + 1;
+        }
+        buffer.position(buffer.position() + size * Integer.BYTES);
+        Container[] containers = new Container[Math.max(size, 1)];
+        for (int i = 0; i < size; i++) {
+            Container container = new Container();
+            container.cardinality = cardinalities[i];
+            if (cardinalities[i] > ARRAY_MAX_CARDINALITY) {
+                container.bitmap = new long[BITMAP_WORDS];
+                buffer.asLongBuffer().get(container.bitmap);
+                buffer.position(buffer.position() + BITMAP_WORDS * Long.BYTES);
+            } else {
+                container.values = new char[cardinalities[i]];
+                buffer.asCharBuffer().get(container.values);
+                buffer.position(buffer.position() + cardinalities[i] * Character.BYTES);
+            }
+            containers[i] = container;
+        }
+        return new RoaringBitmap(keys, containers, size);
+    }
+
+    public void add(int value) {
+        if (value < 0) {
+            throw new IllegalArgumentException("Negative value " + value);
+        }
+        char key = (char) (value >>> 16);
+        int index = Arrays.binarySearch(keys, 0, size, key);
+        if (index < 0) {
+            index = -index - 1;
+            insert(index, key, new Container());
+        }
+        containers[index].add((char) value);
+    }
+
+    public boolean contains(int value) {
+        if (value < 0) {
+            return false;
+        }
+        int index = Arrays.binarySearch(keys, 0, size, (char) (value >>> 16));
+        return index >= 0 && containers[index].contains((char) value);
+    }
+
+    public long cardinality() {
+        long cardinality = 0;
+        for (int i = 0; i < size; i++) {
+            cardinality += containers[i].cardinality;
+        }
+        return cardinality;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Adds the values of {@code other} to this bitmap.
+     *
+     * @return this bitmap
+     */
+    public RoaringBitmap or(RoaringBitmap other) {
+        int i = 0;
+        for (int j = 0; j < other.size; j++) {
+            char key = other.keys[j];
+            while (i < size && keys[i] < key) {
+                i++;
+            }
+            if (i < size && keys[i] == key) {
+                containers[i].or(other.containers[j]);
+            } else {
+                insert(i, key, other.containers[j].copy());
+            }
+            i++;
+        }
+        return this;
+    }
+
+    /**
+     * Number of values in both bitmaps.
+     */
+    public static long andCardinality(RoaringBitmap a, RoaringBitmap b) {
+        long cardinality = 0;
+        int i = 0;
+        int j = 0;
+        while (i < a.size && j < b.size) {
+            if (a.keys[i] < b.keys[j]) {
+                i++;
+            } else if (a.keys[i] > b.keys[j]) {
+                j++;
+            } else {
+                cardinality += a.containers[i++].andCardinality(b.containers[j++]);
+            }
+        }
+        return cardinality;
+    }
+
+    public int[] toArray() {
+        int[] values = new int[Math.toIntExact(cardinality())];
+        int n = 0;
+        for (int i = 0; i < size; i++) {
+            int high = keys[i] << 16;
+            Container container = containers[i];
+            if (container.bitmap == null) {
+                for (int k = 0; k < container.cardinality; k++) {
+                    values[n++] = high | container.values[k];
+                }
+            } else {
+                for (int w = 0; w < BITMAP_WORDS; w++) {
+                    for (long word = container.bitmap[w]; word != 0; word &= word - 1) {
+                        values[n++] = high | w << 6 | Long.numberOfTrailingZeros(word);
+                    }
+                }
+            }
+        }
+        return values;
+    }
+
+    public byte[] toBytes() {
+        int length = 2 * Integer.BYTES + size * (2 * Character.BYTES + Integer.BYTES);
+        int[] offsets = new int[size];
+        for (int i = 0; i < size; i++) {
+            offsets[i] = length;
+            length += containers[i].serializedBytes();
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(SERIAL_COOKIE_NO_RUNCONTAINER).putInt(size);
+        for (int i = 0; i < size; i++) {
+            buffer.putChar(keys[i]).putChar((char) (containers[i].cardinality - 1));
+        }
+        for (int offset : offsets) {
+            buffer.putInt(offset);
+        }
+        for (int i = 0; i < size; i++) {
+            Container container = containers[i];
+            if (container.bitmap == null) {
+                for (int k = 0; k < container.cardinality; k++) {
+                    buffer.putChar(container.values[k]);
+                }
+            } else {
+                for (long word : container.bitmap) {
+                    buffer.putLong(word);
+                }
+            }
+        }
+        return buffer.array();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof RoaringBitmap other) || size != other.size
+                || !Arrays.equals(keys, 0, size, other.keys, 0, other.size)) {
+            return false;
+        }
+        for (int i = 0; i < size; i++) {
+            if (!containers[i].equals(other.containers[i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        int hash = 0;
+        for (int i = 0; i < size; i++) {
+            hash = 31 * hash + keys[i] * 31 + containers[i].hashCode();
+        }
+        return hash;
+    }
+
+    private void insert(int index, char key, Container container) {
+        if (size == keys.length) {
+            keys = Arrays.copyOf(keys, size * 2);
+            containers = Arrays.copyOf(containers, size * 2);
+        }
+        System.arraycopy(keys, index, keys, index + 1, size - index);
+        System.arraycopy(containers, index, containers, index + 1, size - index);
+        keys[index] = key;
+        containers[index] = container;
+        size++;
+    }
+
+    /**
+     * The low halves of the values sharing one high half: a sorted array of
+     * {@code cardinality} values, or a bitmap once there are more than
+     * {@value #ARRAY_MAX_CARDINALITY}. Containers only grow, so each set has
+     * exactly one representation.
+     */
+    private static final class Container {
+
+        private char[] values = new char[4];
+        private long[] bitmap;
+        private int cardinality;
+
+        void add(char value) {
+            if (bitmap != null) {
+                long word = bitmap[value >>> 6];
+                long bit = 1L << value;
+                if ((word & bit) == 0) {
+                    bitmap[value >>> 6] = word | bit;
+                    cardinality++;
+                }
+                return;
+            }
+            int index = Arrays.binarySearch(values, 0, cardinality, value);
+            if (index >= 0) {
+                return;
+            }
+            if (cardinality == ARRAY_MAX_CARDINALITY) {
+                toBitmap();
+                add(value);
+                return;
+            }
+            index = -index - 1;
+            if (cardinality == values.length) {
+                values = Arrays.copyOf(values, Math.min(cardinality * 2, ARRAY_MAX_CARDINALITY));
+            }
+            System.arraycopy(values, index, values, index + 1, cardinality - index);
+            values[index] = value;
+            cardinality++;
+        }
+
+        boolean contains(char value) {
+            if (bitmap != null) {
+                return (bitmap[value >>> 6] & 1L << value) != 0;
+            }
+            return Arrays.binarySearch(values, 0, cardinality, value) >= 0;
+        }
+
+        void or(Container other) {
+            if (bitmap == null && other.bitmap == null) {
+                char[] merged = new char[cardinality + other.cardinality];
+                int n = 0;
+                int i = 0;
+                int j = 0;
+                while (i < cardinality && j < other.cardinality) {
+                    char a = values[i];
+                    char b = other.values[j];
+                    merged[n++] = a <= b ? a : b;
+                    i += a <= b ? 1 : 0;
+                    j += b <= a ? 1 : 0;
+                }
+                while (i < cardinality) {
+                    merged[n++] = values[i++];
+                }
+                while (j < other.cardinality) {
+                    merged[n++] = other.values[j++];
+                }
+                values = merged;
+                cardinality = n;
+                if (cardinality > ARRAY_MAX_CARDINALITY) {
+                    toBitmap();
+                }
+                return;
+            }
+            if (bitmap == null) {
+                toBitmap();
+            }
+            if (other.bitmap != null) {
+                for (int w = 0; w < BITMAP_WORDS; w++) {
+                    bitmap[w] |= other.bitmap[w];
+                }
+            } else {
+                for (int k = 0; k < other.cardinality; k++) {
+                    char value = other.values[k];
+                    bitmap[value >>> 6] |= 1L << value;
+                }
+            }
+            cardinality = 0;
+            for (long word : bitmap) {
+                cardinality += Long.bitCount(word);
+            }
+        }
+
+        int andCardinality(Container other) {
+            if (bitmap != null && other.bitmap != null) {
+                int cardinality = 0;
+                for (int w = 0; w < BITMAP_WORDS; w++) {
+                    cardinality += Long.bitCount(bitmap[w] & other.bitmap[w]);
+                }
+                return cardinality;
+            }
+            if (bitmap != null || other.bitmap != null) {
+                Container array = bitmap == null ? this : other;
+                Container bits = bitmap == null ? other : this;
+                int cardinality = 0;
+                for (int k = 0; k < array.cardinality; k++) {
+                    cardinality += bits.contains(array.values[k]) ? 1 : 0;
+                }
+                return cardinality;
+            }
+            int cardinality = 0;
+            int i = 0;
+            int j = 0;
+            while (i < this.cardinality && j < other.cardinality) {
+                char a = values[i];
+                char b = other.values[j];
+                cardinality += a == b ? 1 : 0;
+                i += a <= b ? 1 : 0;
+                j += b <= a ? 1 : 0;
+            }
+            return cardinality;
+        }
+
+        int serializedBytes() {
+            return bitmap == null ? cardinality * Character.BYTES : BITMAP_WORDS * Long.BYTES;
+        }
+
+        Container copy() {
+            Container copy = new Container();
+            copy.values = values == null ? null : Arrays.copyOf(values, Math.max(cardinality, 1));
+            copy.bitmap = bitmap == null ? null : bitmap.clone();
+            copy.cardinality = cardinality;
+            return copy;
+        }
+
+        private void toBitmap() {
+            bitmap = new long[BITMAP_WORDS];
+            for (int k = 0; k < cardinality; k++) {
+                bitmap[values[k] >>> 6] |= 1L << values[k];
+            }
+            values = null;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Container other) || cardinality != other.cardinality) {
+                return false;
+            }
+            return bitmap != null
+                    ? Arrays.equals(bitmap, other.bitmap)
+                    : other.bitmap == null && Arrays.equals(values, 0, cardinality, other.values, 0, cardinality);
+        }
+
+        @Override
+        public int hashCode() {
+            return bitmap != null ? Arrays.hashCode(bitmap) : Arrays.hashCode(Arrays.copyOf(values, cardinality));
+        }
+    }
+}
@@ -0,0 +1,14 @@
+-- One row per MemberHealthCalculationJob run. Members are scored tenant by
+-- tenant in (tenant_code, user_id) order; tenant_code and last_user_id are the
+-- last member whose score is committed, so a run that did not complete is
+-- resumed from there, over the same window, instead of starting over.
+CREATE TABLE member_health_runs (
+    run_id BIGINT GENERATED ALWAYS AS IDENTITY PRIMARY KEY,
+    window_start TIMESTAMP WITH TIME ZONE NOT NULL,
+    window_end TIMESTAMP WITH TIME ZONE NOT NULL,
+    tenant_code SMALLINT,
+    last_user_id UUID,
+    members_scored BIGINT NOT NULL DEFAULT 0,
+    started_at TIMESTAMP WITH TIME ZONE NOT NULL DEFAULT NOW(),
+    completed_at TIMESTAMP WITH TIME ZONE
+);
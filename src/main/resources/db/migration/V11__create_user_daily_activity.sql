@@ -0,0 +1,37 @@
+-- Per-user activity counts by UTC day, added to by the ingestor in the
+-- statement that inserts the facts. MemberHealthCalculationJob sums a member's
+-- days in its window instead of rescanning fact_activity, and deletes days that
+-- fall out of the window.
+CREATE TABLE agg_user_daily_activity (
+    tenant_code SMALLINT NOT NULL,
+    user_id UUID NOT NULL,
+    day DATE NOT NULL,
+    activity_count INTEGER NOT NULL,
+    PRIMARY KEY (tenant_code, user_id, day)
+);
+
+-- Named as a rebuild names the index of its shadow copy
+CREATE INDEX agg_user_daily_activity_day_idx ON agg_user_daily_activity (day);
+
+-- Members whose window changed since they were last scored: new activity, or
+-- a day expired. The ingestor bumps generation on every change, so the job
+-- only clears the rows it has seen and a member that changed while being
+-- scored stays dirty for the next run.
+CREATE TABLE member_health_dirty (
+    tenant_code SMALLINT NOT NULL,
+    user_id UUID NOT NULL,
+    generation BIGINT NOT NULL DEFAULT 0,
+    PRIMARY KEY (tenant_code, user_id)
+);
+
+-- Seeds the last 90 days, which covers the default 30-day window; longer
+-- windows fill up as days pass. Every member seeded is scored by the next run.
+INSERT INTO agg_user_daily_activity (tenant_code, user_id, day, activity_count)
+SELECT tenant_code, user_id, (occurred_at AT TIME ZONE 'UTC')::date, COUNT(*)
+FROM fact_activity
+WHERE user_id IS NOT NULL
+  AND occurred_at >= NOW() - INTERVAL '90 days'
+GROUP BY 1, 2, 3;
+
+INSERT INTO member_health_dirty (tenant_code, user_id)
+SELECT DISTINCT tenant_code, user_id FROM agg_user_daily_activity;
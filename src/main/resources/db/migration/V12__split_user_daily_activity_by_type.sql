@@ -0,0 +1,27 @@
+-- Member health weighs activity by type, so the per-user day counters are
+-- kept per activity type. They are derived data and are seeded again as in
+-- V11. activity_code 0 counts facts without a type.
+DROP TABLE agg_user_daily_activity;
+
+CREATE TABLE agg_user_daily_activity (
+    tenant_code SMALLINT NOT NULL,
+    user_id UUID NOT NULL,
+    day DATE NOT NULL,
+    activity_code SMALLINT NOT NULL,
+    activity_count INTEGER NOT NULL,
+    PRIMARY KEY (tenant_code, user_id, day, activity_code)
+);
+
+CREATE INDEX agg_user_daily_activity_day_idx ON agg_user_daily_activity (day);
+
+INSERT INTO agg_user_daily_activity (tenant_code, user_id, day, activity_code, activity_count)
+SELECT tenant_code, user_id, (occurred_at AT TIME ZONE 'UTC')::date, COALESCE(activity_code, 0), COUNT(*)
+FROM fact_activity
+WHERE user_id IS NOT NULL
+  AND occurred_at >= NOW() - INTERVAL '90 days'
+GROUP BY 1, 2, 3, 4;
+
+-- Every member with activity is rescored under the weighted model
+INSERT INTO member_health_dirty (tenant_code, user_id)
+SELECT DISTINCT tenant_code, user_id FROM agg_user_daily_activity
+ON CONFLICT (tenant_code, user_id) DO UPDATE SET generation = member_health_dirty.generation + 1;
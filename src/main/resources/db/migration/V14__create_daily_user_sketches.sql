@@ -0,0 +1,52 @@
+-- HyperLogLog sketches of the members active per tenant and UTC day, so the
+-- activity endpoint answers weekly, monthly and any-range active users by
+-- merging a few sketches instead of counting distinct users over
+-- agg_daily_active_users. The layout is the one HyperLogLog reads: 16384
+-- one-byte registers, indexed by the top 14 bits of uuid_hash_extended(user_id,
+-- 0), each holding the largest rank (position of the first set bit in the
+-- remaining 50 bits, 51 when none is set) seen.
+--
+-- The ingestor adds the members new to a day in the statement that inserts the
+-- facts. Like agg_daily_tenant_activity, every connection adds to its own
+-- stripe (pg_backend_pid()); readers merge the stripes, and the reconciliation
+-- job folds the stripes of completed days into stripe 0.
+CREATE TABLE agg_daily_user_sketches (
+    tenant_code SMALLINT NOT NULL,
+    day DATE NOT NULL,
+    stripe INTEGER NOT NULL,
+    sketch BYTEA NOT NULL,
+    PRIMARY KEY (tenant_code, day, stripe)
+);
+
+-- Raises the registers to the given ranks; a NULL sketch starts empty
+CREATE FUNCTION hll_add(sketch BYTEA, registers INTEGER[], ranks INTEGER[]) RETURNS BYTEA
+LANGUAGE plpgsql IMMUTABLE PARALLEL SAFE AS $$
+DECLARE
+    result BYTEA := COALESCE(sketch, decode(repeat('00', 16384), 'hex'));
+BEGIN
+    FOR i IN 1 .. COALESCE(array_length(registers, 1), 0) LOOP
+        IF get_byte(result, registers[i]) < ranks[i] THEN
+            result := set_byte(result, registers[i], ranks[i]);
+        END IF;
+    END LOOP;
+    RETURN result;
+END
+$$;
+
+-- The register and rank of a member
+CREATE FUNCTION hll_register(user_id UUID) RETURNS INTEGER
+LANGUAGE sql IMMUTABLE PARALLEL SAFE
+RETURN (uuid_hash_extended(user_id, 0) >> 50)::INTEGER & 16383;
+
+CREATE FUNCTION hll_rank(user_id UUID) RETURNS INTEGER
+LANGUAGE sql IMMUTABLE PARALLEL SAFE
+RETURN COALESCE(NULLIF(position(B'1' IN uuid_hash_extended(user_id, 0)::BIT(64) << 14), 0), 51);
+
+INSERT INTO agg_daily_user_sketches (tenant_code, day, stripe, sketch)
+SELECT tenant_code, day, 0, hll_add(NULL, array_agg(register), array_agg(rank))
+FROM (
+    SELECT tenant_code, day, hll_register(user_id) AS register, MAX(hll_rank(user_id)) AS rank
+    FROM agg_daily_active_users
+    GROUP BY 1, 2, 3
+) r
+GROUP BY 1, 2;
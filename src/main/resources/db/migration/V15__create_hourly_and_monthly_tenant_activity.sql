@@ -0,0 +1,57 @@
+-- The finer and coarser levels of the daily tenant rollup, so the activity
+-- endpoint reads each bucket at the coarsest resolution that answers it.
+--
+-- Hourly activity is added to by the ingestor in the statement that inserts
+-- the facts, in the connection's own stripe like agg_daily_tenant_activity.
+-- Every hour is also counted in its day, so ActivityRollupCompactionJob drops
+-- the hours older than datalake.activity-rollup.compaction.hourly-retention-days.
+CREATE TABLE agg_hourly_tenant_activity (
+    tenant_code SMALLINT NOT NULL,
+    hour TIMESTAMPTZ NOT NULL,
+    activity_code SMALLINT NOT NULL,
+    stripe INTEGER NOT NULL,
+    activity_count BIGINT NOT NULL,
+    PRIMARY KEY (tenant_code, hour, activity_code, stripe)
+);
+
+-- Completed UTC months, compacted from the daily rollup and sketches by
+-- ActivityRollupCompactionJob. Months not compacted yet, such as the current
+-- one, are read from the days.
+CREATE TABLE agg_monthly_tenant_activity (
+    tenant_code SMALLINT NOT NULL,
+    month DATE NOT NULL,
+    activity_code SMALLINT NOT NULL,
+    activity_count BIGINT NOT NULL,
+    PRIMARY KEY (tenant_code, month, activity_code)
+);
+
+CREATE TABLE agg_monthly_user_sketches (
+    tenant_code SMALLINT NOT NULL,
+    month DATE NOT NULL,
+    sketch BYTEA NOT NULL,
+    PRIMARY KEY (tenant_code, month)
+);
+
+INSERT INTO agg_hourly_tenant_activity (tenant_code, hour, activity_code, stripe, activity_count)
+SELECT tenant_code, date_trunc('hour', occurred_at, 'UTC'), COALESCE(activity_code, 0), 0, COUNT(*)
+FROM fact_activity
+WHERE occurred_at >= date_trunc('day', NOW(), 'UTC') - INTERVAL '31 days'
+GROUP BY 1, 2, 3;
+
+INSERT INTO agg_monthly_tenant_activity (tenant_code, month, activity_code, activity_count)
+SELECT tenant_code, date_trunc('month', day::timestamp)::date, activity_code, SUM(activity_count)
+FROM agg_daily_tenant_activity
+WHERE day < date_trunc('month', NOW() AT TIME ZONE 'UTC')::date
+GROUP BY 1, 2, 3;
+
+-- The union of the days' sketches, as the compaction merges them
+INSERT INTO agg_monthly_user_sketches (tenant_code, month, sketch)
+SELECT tenant_code, month, hll_add(NULL, array_agg(register), array_agg(rank))
+FROM (
+    SELECT tenant_code, date_trunc('month', day::timestamp)::date AS month, hll_register(user_id) AS register,
+           MAX(hll_rank(user_id)) AS rank
+    FROM agg_daily_active_users
+    WHERE day < date_trunc('month', NOW() AT TIME ZONE 'UTC')::date
+    GROUP BY 1, 2, 3
+) r
+GROUP BY 1, 2;
@@ -0,0 +1,48 @@
+-- Members active per tenant and calendar week or month as Roaring bitmaps, so
+-- the retention endpoint intersects a few bitmaps instead of joining facts.
+--
+-- Bitmaps hold dense per-tenant member ordinals. RetentionBitmapJob assigns
+-- them in order of first activity and never changes them; first_day is the
+-- member's first active UTC day, which places them in a cohort.
+CREATE TABLE dim_user_ordinals (
+    tenant_code SMALLINT NOT NULL,
+    user_id UUID NOT NULL,
+    ordinal INTEGER NOT NULL,
+    first_day DATE NOT NULL,
+    PRIMARY KEY (tenant_code, user_id),
+    UNIQUE (tenant_code, ordinal)
+);
+
+CREATE INDEX dim_user_ordinals_tenant_code_first_day_ordinal_idx
+    ON dim_user_ordinals (tenant_code, first_day) INCLUDE (ordinal);
+
+-- granularity is WEEK (starting on Monday) or MONTH. Bitmaps are in the
+-- portable Roaring format without run containers.
+CREATE TABLE agg_active_user_bitmaps (
+    tenant_code SMALLINT NOT NULL,
+    granularity VARCHAR(8) NOT NULL,
+    period_start DATE NOT NULL,
+    bitmap BYTEA NOT NULL,
+    PRIMARY KEY (tenant_code, granularity, period_start)
+);
+
+-- Members new to a day, queued by the ingestor along with
+-- agg_daily_active_users until RetentionBitmapJob adds them to the bitmaps of
+-- the day's week and month.
+CREATE TABLE pending_active_users (
+    tenant_code SMALLINT NOT NULL,
+    day DATE NOT NULL,
+    user_id UUID NOT NULL,
+    PRIMARY KEY (tenant_code, day, user_id)
+);
+
+INSERT INTO dim_user_ordinals (tenant_code, user_id, ordinal, first_day)
+SELECT tenant_code, user_id, (row_number() OVER (PARTITION BY tenant_code ORDER BY MIN(day), user_id) - 1)::int,
+       MIN(day)
+FROM agg_daily_active_users
+GROUP BY tenant_code, user_id;
+
+-- The first run of the job builds the bitmaps of all days
+INSERT INTO pending_active_users (tenant_code, day, user_id)
+SELECT tenant_code, day, user_id
+FROM agg_daily_active_users;
@@ -0,0 +1,35 @@
+-- DDSketches of the first response time (response_time_minutes) of threads
+-- per tenant, UTC day the thread was created and category, so the
+-- responsiveness endpoint answers p50, p90 and p99 for any range of days and
+-- any or all categories by merging a few sketches instead of reading
+-- dim_threads. The layout is the one DDSketch reads: a big-endian
+-- (key, count) pair of 32-bit integers per non-empty bucket, in ascending key
+-- order, with keys as ddsketch_key computes them.
+--
+-- ThreadCounterWriter adds a thread to its sketch in the flush that sets its
+-- response time. Threads without a category share the NULL category's row.
+CREATE TABLE agg_response_sketches (
+    tenant_id VARCHAR(255) NOT NULL,
+    day DATE NOT NULL,
+    category_id UUID,
+    sketch BYTEA NOT NULL,
+    UNIQUE NULLS NOT DISTINCT (tenant_id, day, category_id)
+);
+
+-- The bucket of a response time at 1% relative accuracy: 0 for none, else
+-- 1 + ceil(log base (1.01 / 0.99) of the minutes)
+CREATE FUNCTION ddsketch_key(minutes INTEGER) RETURNS INTEGER
+LANGUAGE sql IMMUTABLE PARALLEL SAFE
+RETURN CASE WHEN minutes <= 0 THEN 0
+            ELSE ceil(ln(minutes::float8) / ln(1.01::float8 / 0.99::float8))::INTEGER + 1 END;
+
+INSERT INTO agg_response_sketches (tenant_id, day, category_id, sketch)
+SELECT tenant_id, day, category_id, string_agg(int4send(key) || int4send(threads), ''::BYTEA ORDER BY key)
+FROM (
+    SELECT tenant_id, (created_at AT TIME ZONE 'UTC')::date AS day, category_id,
+           ddsketch_key(response_time_minutes) AS key, COUNT(*)::INTEGER AS threads
+    FROM dim_threads
+    WHERE response_time_minutes IS NOT NULL AND created_at IS NOT NULL
+    GROUP BY 1, 2, 3, 4
+) b
+GROUP BY 1, 2, 3;
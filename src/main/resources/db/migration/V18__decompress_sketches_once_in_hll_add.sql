@@ -0,0 +1,18 @@
+-- hll_add of V14 read every register of a stored sketch with get_byte, and
+-- stored sketches are compressed: each get_byte decompressed the whole 16 KB
+-- again, so adding members to a day cost a decompression per register even
+-- when none was raised. The sketch is now decompressed once, by copying it,
+-- and only raised registers are written.
+CREATE OR REPLACE FUNCTION hll_add(sketch BYTEA, registers INTEGER[], ranks INTEGER[]) RETURNS BYTEA
+LANGUAGE plpgsql IMMUTABLE PARALLEL SAFE AS $$
+DECLARE
+    result BYTEA := COALESCE(sketch || ''::BYTEA, decode(repeat('00', 16384), 'hex'));
+BEGIN
+    FOR i IN 1 .. COALESCE(array_length(registers, 1), 0) LOOP
+        IF get_byte(result, registers[i]) < ranks[i] THEN
+            result := set_byte(result, registers[i], ranks[i]);
+        END IF;
+    END LOOP;
+    RETURN result;
+END
+$$;
@@ -0,0 +1,11 @@
+-- Narrow idempotency ledger keyed by event_id alone. fact_activity can only enforce
+-- uniqueness on (event_id, occurred_at), so a lookup by event_id there probes every partition.
+
+CREATE TABLE processed_events (
+    event_id UUID PRIMARY KEY,
+    processed_at TIMESTAMP WITH TIME ZONE NOT NULL DEFAULT NOW()
+);
+
+INSERT INTO processed_events (event_id)
+SELECT DISTINCT event_id FROM fact_activity WHERE event_id IS NOT NULL
+ON CONFLICT DO NOTHING;
@@ -0,0 +1,10 @@
+-- Progress of the offline bulk loader, one row per dump file. byte_offset is
+-- the position just past the last record whose batch was committed; for gzip
+-- files it counts uncompressed bytes.
+CREATE TABLE bulk_load_checkpoints (
+    file_path TEXT PRIMARY KEY,
+    byte_offset BIGINT NOT NULL,
+    events_loaded BIGINT NOT NULL,
+    completed BOOLEAN NOT NULL DEFAULT FALSE,
+    updated_at TIMESTAMP WITH TIME ZONE NOT NULL DEFAULT NOW()
+);
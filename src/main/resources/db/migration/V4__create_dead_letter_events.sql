@@ -0,0 +1,21 @@
+-- Records that reached forum-events-v1-dlt, kept for inspection and replay.
+-- original_* identify the record that first failed; replayed_at is set once it
+-- has been re-injected into forum-events-v1.
+CREATE TABLE dead_letter_events (
+    id BIGSERIAL PRIMARY KEY,
+    original_topic VARCHAR(255) NOT NULL,
+    original_partition INTEGER NOT NULL,
+    original_offset BIGINT NOT NULL,
+    event_id UUID,
+    event_type VARCHAR(100),
+    failure_stage VARCHAR(20),
+    failure_reason TEXT,
+    attempts INTEGER NOT NULL DEFAULT 0,
+    record_key TEXT,
+    payload BYTEA NOT NULL,
+    failed_at TIMESTAMP WITH TIME ZONE NOT NULL DEFAULT NOW(),
+    replayed_at TIMESTAMP WITH TIME ZONE,
+    UNIQUE (original_topic, original_partition, original_offset)
+);
+
+CREATE INDEX idx_dead_letter_events_pending ON dead_letter_events (id) WHERE replayed_at IS NULL;
@@ -0,0 +1,13 @@
+-- Reply counters of posts whose thread did not exist yet when they were
+-- flushed, spilled from the in-memory orphan buffer (or written directly by
+-- imports). Rows are merged into dim_threads once the thread is created and
+-- dropped after datalake.ingestion.thread-counters.orphans.ttl-minutes.
+CREATE TABLE pending_thread_replies (
+    thread_id UUID PRIMARY KEY,
+    replies INTEGER NOT NULL,
+    last_activity_at TIMESTAMP WITH TIME ZONE,
+    first_reply_at TIMESTAMP WITH TIME ZONE,
+    first_seen_at TIMESTAMP WITH TIME ZONE NOT NULL
+);
+
+CREATE INDEX idx_pending_thread_replies_first_seen ON pending_thread_replies (first_seen_at);
@@ -0,0 +1,12 @@
+-- Kafka positions of forum-events-v1 when datalake.ingestion.offsets.store is
+-- postgres: next_offset is updated in the same transaction as the facts and
+-- dimensions written from the records before it, and the consumer seeks to it
+-- when a partition is assigned.
+CREATE TABLE consumer_offsets (
+    consumer_group VARCHAR(255) NOT NULL,
+    topic VARCHAR(255) NOT NULL,
+    partition_id INTEGER NOT NULL,
+    next_offset BIGINT NOT NULL,
+    updated_at TIMESTAMP WITH TIME ZONE NOT NULL DEFAULT NOW(),
+    PRIMARY KEY (consumer_group, topic, partition_id)
+);
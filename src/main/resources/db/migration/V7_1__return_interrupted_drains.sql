@@ -0,0 +1,16 @@
+-- Rows of drains interrupted before their month was attached go back to the
+-- default partition, to be moved again by the next maintenance run. V8
+-- rebuilds fact_activity in a new layout that these tables would not match.
+DO $$
+DECLARE
+    drain RECORD;
+BEGIN
+    FOR drain IN
+        SELECT c.relname FROM pg_class c
+        WHERE c.relkind IN ('r', 'p') AND c.relname LIKE 'fact\_activity\_y%' AND NOT c.relispartition
+          AND EXISTS (SELECT 1 FROM pg_constraint k WHERE k.conrelid = c.oid AND k.conname = c.relname || '_bound')
+    LOOP
+        EXECUTE format('INSERT INTO fact_activity SELECT * FROM %I ON CONFLICT DO NOTHING', drain.relname);
+        EXECUTE format('DROP TABLE %I', drain.relname);
+    END LOOP;
+END $$;
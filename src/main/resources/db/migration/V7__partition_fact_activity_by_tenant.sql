@@ -0,0 +1,16 @@
+-- Prepares fact_activity for monthly partitions sub-partitioned by
+-- HASH (tenant_id) (datalake.partitions.tenant-hash-partitions). Unique
+-- constraints of a partitioned table must contain every partition key, so
+-- tenant_id joins the primary key and the event_id key; an event never changes
+-- tenant, so event ids stay unique. Existing months keep their layout until
+-- they are converted with --migrate-partitions.
+ALTER TABLE fact_activity DROP CONSTRAINT fact_activity_pkey;
+ALTER TABLE fact_activity ADD CONSTRAINT fact_activity_pkey PRIMARY KEY (id, occurred_at, tenant_id);
+
+ALTER TABLE fact_activity DROP CONSTRAINT fact_activity_event_id_occurred_at_key;
+ALTER TABLE fact_activity ADD CONSTRAINT fact_activity_event_id_occurred_at_key
+    UNIQUE (event_id, occurred_at, tenant_id);
+
+-- Every API query is tenant-scoped and time-bounded
+CREATE INDEX idx_fact_activity_tenant_occurred_at ON fact_activity (tenant_id, occurred_at);
+DROP INDEX idx_fact_activity_tenant;
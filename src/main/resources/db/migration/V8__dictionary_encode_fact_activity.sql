@@ -0,0 +1,87 @@
+-- Dictionaries for the strings every fact row used to repeat. Codes are
+-- assigned on first use by the ingestor (FactCodeDictionary) and never change.
+-- A SMALLINT code allows 32767 tenants.
+CREATE TABLE dim_tenants (
+    tenant_code SMALLINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    tenant_id VARCHAR(255) NOT NULL UNIQUE
+);
+
+CREATE TABLE dim_activity_types (
+    activity_code SMALLINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    activity_type VARCHAR(50) NOT NULL UNIQUE
+);
+
+INSERT INTO dim_activity_types (activity_type)
+VALUES ('THREAD_CREATED'), ('THREAD_IMPORTED'), ('POST_CREATED'), ('POST_IMPORTED'), ('REACTION'),
+       ('SUBSCRIPTION_CREATED');
+
+-- fact_activity is rebuilt with the codes in place of the strings. The old
+-- tree is renamed to fact_activity_v7*, and its months are recreated empty
+-- with the same layout, hashed by tenant_code where they were hashed by
+-- tenant_id. Only catalog changes happen here; the rows are moved over by
+-- FactDictionaryBackfillJob in short transactions once the service is up,
+-- which also assigns the codes. Unfinished partition conversions restart;
+-- partitions detached for retention keep the old layout.
+DO $$
+DECLARE
+    relation RECORD;
+    month RECORD;
+    remainder INT;
+BEGIN
+    FOR relation IN
+        SELECT relname FROM pg_class WHERE relname LIKE 'fact\_activity\_next\_%' AND relkind IN ('r', 'p')
+    LOOP
+        EXECUTE format('DROP TABLE IF EXISTS %I', relation.relname);
+    END LOOP;
+
+    FOR relation IN
+        WITH tree AS (
+            SELECT relid FROM pg_partition_tree('fact_activity')
+        )
+        SELECT c.relname, c.relkind IN ('i', 'I') AS is_index FROM pg_class c WHERE c.oid IN (SELECT relid FROM tree)
+        UNION ALL
+        SELECT c.relname, TRUE FROM pg_index x JOIN pg_class c ON c.oid = x.indexrelid
+        WHERE x.indrelid IN (SELECT relid FROM tree)
+    LOOP
+        EXECUTE format('ALTER %s %I RENAME TO %I', CASE WHEN relation.is_index THEN 'INDEX' ELSE 'TABLE' END,
+                       relation.relname, replace(relation.relname, 'fact_activity', 'fact_activity_v7'));
+    END LOOP;
+
+    -- Fixed-width columns first so the row needs no alignment padding
+    CREATE TABLE fact_activity (
+        id UUID,
+        event_id UUID,
+        user_id UUID,
+        target_id UUID,
+        occurred_at TIMESTAMP WITH TIME ZONE NOT NULL,
+        tenant_code SMALLINT NOT NULL,
+        activity_code SMALLINT,
+        metadata JSONB,
+        PRIMARY KEY (id, occurred_at, tenant_code),
+        UNIQUE (event_id, occurred_at, tenant_code)
+    ) PARTITION BY RANGE (occurred_at);
+    CREATE TABLE fact_activity_default PARTITION OF fact_activity DEFAULT;
+
+    FOR month IN
+        SELECT replace(c.relname, 'fact_activity_v7', 'fact_activity') AS relname,
+               pg_get_expr(c.relpartbound, c.oid) AS bound,
+               (SELECT COUNT(*) FROM pg_inherits s WHERE s.inhparent = c.oid) AS subpartitions
+        FROM pg_inherits i JOIN pg_class c ON c.oid = i.inhrelid
+        WHERE i.inhparent = 'fact_activity_v7'::regclass AND c.relname <> 'fact_activity_v7_default'
+    LOOP
+        IF month.subpartitions = 0 THEN
+            EXECUTE format('CREATE TABLE %I PARTITION OF fact_activity %s', month.relname, month.bound);
+        ELSE
+            EXECUTE format('CREATE TABLE %I PARTITION OF fact_activity %s PARTITION BY HASH (tenant_code)',
+                           month.relname, month.bound);
+            FOR remainder IN 0 .. month.subpartitions - 1 LOOP
+                EXECUTE format('CREATE TABLE %I PARTITION OF %I FOR VALUES WITH (MODULUS %s, REMAINDER %s)',
+                               month.relname || '_h' || remainder, month.relname, month.subpartitions, remainder);
+            END LOOP;
+        END IF;
+    END LOOP;
+END $$;
+
+-- Every API query is tenant-scoped and time-bounded
+CREATE INDEX idx_fact_activity_tenant_occurred_at ON fact_activity (tenant_code, occurred_at);
+CREATE INDEX idx_fact_activity_brin_occurred_at ON fact_activity USING BRIN (occurred_at);
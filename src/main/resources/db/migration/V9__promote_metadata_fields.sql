@@ -0,0 +1,34 @@
+-- Payload fields that analytics filter and group by, promoted out of
+-- fact_activity.metadata into typed columns (datalake.ingestion.metadata.promoted).
+-- Adding nullable columns does not rewrite the table. The ingestor fills them
+-- for new rows; older rows are filled by MetadataBackfillJob.
+ALTER TABLE fact_activity
+    ADD COLUMN category_id UUID,
+    ADD COLUMN sentiment DOUBLE PRECISION,
+    ADD COLUMN is_admin BOOLEAN;
+
+-- Partial indexes: rows without the field are not indexed, so building them
+-- now, before the backfill, writes next to nothing
+CREATE INDEX idx_fact_activity_tenant_category ON fact_activity (tenant_code, category_id, occurred_at)
+    WHERE category_id IS NOT NULL;
+CREATE INDEX idx_fact_activity_tenant_sentiment ON fact_activity (tenant_code, occurred_at) INCLUDE (sentiment)
+    WHERE sentiment IS NOT NULL;
+CREATE INDEX idx_fact_activity_tenant_admin ON fact_activity (tenant_code, occurred_at)
+    WHERE is_admin;
+
+-- Backfill progress, one row per month of facts written before this
+-- migration. last_id is the highest fact id of the month already processed.
+CREATE TABLE metadata_backfill (
+    month DATE PRIMARY KEY,
+    last_id UUID,
+    rows_updated BIGINT NOT NULL DEFAULT 0,
+    completed BOOLEAN NOT NULL DEFAULT FALSE,
+    updated_at TIMESTAMP WITH TIME ZONE NOT NULL DEFAULT NOW()
+);
+
+INSERT INTO metadata_backfill (month)
+SELECT to_date(substr(c.relname, length('fact_activity_') + 1), '"y"YYYY"m"MM')
+FROM pg_inherits i JOIN pg_class c ON c.oid = i.inhrelid
+WHERE i.inhparent = 'fact_activity'::regclass AND c.relname ~ '^fact_activity_y\d{4}m\d{2}$'
+UNION
+SELECT DISTINCT date_trunc('month', occurred_at AT TIME ZONE 'UTC')::date FROM fact_activity_default;
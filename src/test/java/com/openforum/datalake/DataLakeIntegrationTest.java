@@ -3,6 +3,7 @@ package com.openforum.datalake;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.openforum.datalake.repository.DimThreadRepository;
 import com.openforum.datalake.repository.FactActivityRepository;
+import com.openforum.datalake.repository.FactCodeDictionary;
 import com.openforum.datalake.domain.FactActivity;
 import com.openforum.datalake.ingestor.EventEnvelope;
 import org.junit.jupiter.api.Test;
@@ -47,6 +48,9 @@ class DataLakeIntegrationTest {
     @Autowired
     private FactActivityRepository factActivityRepository;
 
+    @Autowired
+    private FactCodeDictionary factCodeDictionary;
+
     @Autowired
     private ObjectMapper objectMapper;
 
@@ -124,6 +128,7 @@ class DataLakeIntegrationTest {
         fact1.setEventId(eventId);
         fact1.setTenantId("tenant-1");
         fact1.setActivityType("TEST");
+        factCodeDictionary.encode(fact1);
         factActivityRepository.save(fact1);
 
         FactActivity fact2 = new FactActivity();
@@ -131,6 +136,7 @@ class DataLakeIntegrationTest {
         fact2.setEventId(eventId); // Same eventId
         fact2.setTenantId("tenant-1");
         fact2.setActivityType("TEST");
+        factCodeDictionary.encode(fact2);
 
         org.junit.jupiter.api.Assertions.assertThrows(org.springframework.dao.DataIntegrityViolationException.class,
                 () -> {
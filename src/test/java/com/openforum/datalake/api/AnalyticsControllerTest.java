@@ -3,10 +3,17 @@ package com.openforum.datalake.api;
 import com.openforum.datalake.domain.DimMemberHealth;
 import com.openforum.datalake.domain.EngagementLevel;
 import com.openforum.datalake.domain.DimThread;
-import com.openforum.datalake.dto.DailyActiveUsersPoint;
+import com.openforum.datalake.dto.ActivityPoint;
+import com.openforum.datalake.dto.RetentionCohort;
+import com.openforum.datalake.domain.ActivityInterval;
+import com.openforum.datalake.repository.ActiveUserBitmapRepository;
+import com.openforum.datalake.repository.ActivityBucketRepository;
+import com.openforum.datalake.repository.DailyTenantActivityRepository;
 import com.openforum.datalake.repository.DimMemberHealthRepository;
 import com.openforum.datalake.repository.DimThreadRepository;
-import com.openforum.datalake.repository.FactActivityRepository;
+import com.openforum.datalake.repository.FactCodeDictionary;
+import com.openforum.datalake.repository.ResponseTimeSketchRepository;
+import com.openforum.datalake.sketch.DDSketch;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
@@ -17,9 +24,12 @@ import org.springframework.test.web.servlet.MockMvc;
 
 import java.time.Instant;
 import java.time.LocalDate;
+import java.time.ZoneOffset;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
 
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.eq;
@@ -35,7 +45,19 @@ class AnalyticsControllerTest {
         private MockMvc mockMvc;
 
         @MockBean
-        private FactActivityRepository factActivityRepository;
+        private DailyTenantActivityRepository dailyTenantActivityRepository;
+
+        @MockBean
+        private ActivityBucketRepository activityBucketRepository;
+
+        @MockBean
+        private ActiveUserBitmapRepository activeUserBitmapRepository;
+
+        @MockBean
+        private ResponseTimeSketchRepository responseTimeSketchRepository;
+
+        @MockBean
+        private FactCodeDictionary factCodeDictionary;
 
         @MockBean
         private DimThreadRepository dimThreadRepository;
@@ -46,32 +68,213 @@ class AnalyticsControllerTest {
         @Test
         void shouldGetActivity() throws Exception {
                 String tenantId = "tenant-1";
-                List<DailyActiveUsersPoint> stats = new ArrayList<>();
-                stats.add(new DailyActiveUsersPoint(LocalDate.parse("2023-10-01"), 10L));
-                when(factActivityRepository.countDailyActiveUsers(eq(tenantId), any(Instant.class)))
-                                .thenReturn(stats);
+                List<ActivityPoint> stats = new ArrayList<>();
+                stats.add(ActivityPoint.ofDay(LocalDate.parse("2023-10-01"), 10L));
+                when(factCodeDictionary.findTenantCode(tenantId)).thenReturn(Optional.of((short) 3));
+                when(dailyTenantActivityRepository.findDailyActiveUsers(eq((short) 3), any(LocalDate.class),
+                                any(LocalDate.class))).thenReturn(stats);
 
                 mockMvc.perform(get("/analytics/v1/activity")
                                 .with(SecurityMockMvcRequestPostProcessors.jwt()
                                                 .jwt(jwt -> jwt.claim("tenant_id", tenantId)))
                                 .param("metric", "dau"))
                                 .andExpect(status().isOk())
-                                .andExpect(jsonPath("$[0].date").value("2023-10-01"))
+                                .andExpect(jsonPath("$[0].start").value("2023-10-01T00:00:00Z"))
                                 .andExpect(jsonPath("$[0].count").value(10));
         }
 
+        @Test
+        void shouldGetMonthlyActiveUsersFromTheSketches() throws Exception {
+                String tenantId = "tenant-1";
+                LocalDate today = LocalDate.now(ZoneOffset.UTC);
+                when(factCodeDictionary.findTenantCode(tenantId)).thenReturn(Optional.of((short) 3));
+                when(dailyTenantActivityRepository.findActiveUsers((short) 3, today.minusDays(29), today.plusDays(1),
+                                30)).thenReturn(List.of(ActivityPoint.ofDay(today, 1200L)));
+
+                mockMvc.perform(get("/analytics/v1/activity")
+                                .with(SecurityMockMvcRequestPostProcessors.jwt()
+                                                .jwt(jwt -> jwt.claim("tenant_id", tenantId)))
+                                .param("metric", "mau"))
+                                .andExpect(status().isOk())
+                                .andExpect(jsonPath("$[0].count").value(1200));
+        }
+
+        @Test
+        void shouldGetHourlyActivitiesOfTheRequestedDays() throws Exception {
+                String tenantId = "tenant-1";
+                when(factCodeDictionary.findTenantCode(tenantId)).thenReturn(Optional.of((short) 3));
+                when(activityBucketRepository.findActivities((short) 3, ActivityInterval.HOUR,
+                                LocalDate.parse("2024-05-10"), LocalDate.parse("2024-05-11")))
+                                .thenReturn(List.of(new ActivityPoint(Instant.parse("2024-05-10T13:00:00Z"), 42L)));
+
+                mockMvc.perform(get("/analytics/v1/activity")
+                                .with(SecurityMockMvcRequestPostProcessors.jwt()
+                                                .jwt(jwt -> jwt.claim("tenant_id", tenantId)))
+                                .param("metric", "activities")
+                                .param("interval", "hour")
+                                .param("from", "2024-05-10")
+                                .param("to", "2024-05-11"))
+                                .andExpect(status().isOk())
+                                .andExpect(jsonPath("$[0].start").value("2024-05-10T13:00:00Z"))
+                                .andExpect(jsonPath("$[0].count").value(42));
+        }
+
+        @Test
+        void shouldGetActiveUsersPerCalendarMonthOverTheLastYear() throws Exception {
+                String tenantId = "tenant-1";
+                LocalDate thisMonth = LocalDate.now(ZoneOffset.UTC).withDayOfMonth(1);
+                when(factCodeDictionary.findTenantCode(tenantId)).thenReturn(Optional.of((short) 3));
+                when(activityBucketRepository.findActiveUsers(eq((short) 3), eq(ActivityInterval.MONTH),
+                                eq(thisMonth.minusMonths(11)), any(LocalDate.class)))
+                                .thenReturn(List.of(ActivityPoint.ofDay(thisMonth, 800L)));
+
+                mockMvc.perform(get("/analytics/v1/activity")
+                                .with(SecurityMockMvcRequestPostProcessors.jwt()
+                                                .jwt(jwt -> jwt.claim("tenant_id", tenantId)))
+                                .param("metric", "mau")
+                                .param("interval", "month"))
+                                .andExpect(status().isOk())
+                                .andExpect(jsonPath("$[0].count").value(800));
+        }
+
+        @Test
+        void shouldRejectActiveUsersAtAnotherResolution() throws Exception {
+                mockMvc.perform(get("/analytics/v1/activity")
+                                .with(SecurityMockMvcRequestPostProcessors.jwt()
+                                                .jwt(jwt -> jwt.claim("tenant_id", "tenant-1")))
+                                .param("metric", "dau")
+                                .param("interval", "month"))
+                                .andExpect(status().isBadRequest());
+                mockMvc.perform(get("/analytics/v1/activity")
+                                .with(SecurityMockMvcRequestPostProcessors.jwt()
+                                                .jwt(jwt -> jwt.claim("tenant_id", "tenant-1")))
+                                .param("interval", "fortnight"))
+                                .andExpect(status().isBadRequest());
+        }
+
+        @Test
+        void shouldRejectAnUnknownActivityMetric() throws Exception {
+                mockMvc.perform(get("/analytics/v1/activity")
+                                .with(SecurityMockMvcRequestPostProcessors.jwt()
+                                                .jwt(jwt -> jwt.claim("tenant_id", "tenant-1")))
+                                .param("metric", "yau"))
+                                .andExpect(status().isBadRequest());
+        }
+
+        @Test
+        void shouldCountActiveUsersOverADayRange() throws Exception {
+                String tenantId = "tenant-1";
+                when(factCodeDictionary.findTenantCode(tenantId)).thenReturn(Optional.of((short) 3));
+                when(activityBucketRepository.countActiveUsers((short) 3, LocalDate.parse("2024-01-01"),
+                                LocalDate.parse("2024-04-01"))).thenReturn(4321L);
+
+                mockMvc.perform(get("/analytics/v1/activity/active-users")
+                                .with(SecurityMockMvcRequestPostProcessors.jwt()
+                                                .jwt(jwt -> jwt.claim("tenant_id", tenantId)))
+                                .param("from", "2024-01-01")
+                                .param("to", "2024-04-01"))
+                                .andExpect(status().isOk())
+                                .andExpect(jsonPath("$.activeUsers").value(4321));
+        }
+
+        @Test
+        void shouldReturnNoActivityForTenantWithoutFacts() throws Exception {
+                when(factCodeDictionary.findTenantCode("tenant-new")).thenReturn(Optional.empty());
+
+                mockMvc.perform(get("/analytics/v1/activity")
+                                .with(SecurityMockMvcRequestPostProcessors.jwt()
+                                                .jwt(jwt -> jwt.claim("tenant_id", "tenant-new"))))
+                                .andExpect(status().isOk())
+                                .andExpect(jsonPath("$").isEmpty());
+        }
+
+        @Test
+        void shouldGetMonthlyCohortRetentionOverTheLastYear() throws Exception {
+                String tenantId = "tenant-1";
+                LocalDate thisMonth = LocalDate.now(ZoneOffset.UTC).withDayOfMonth(1);
+                when(factCodeDictionary.findTenantCode(tenantId)).thenReturn(Optional.of((short) 3));
+                when(activeUserBitmapRepository.findRetention(eq((short) 3), eq(ActivityInterval.MONTH),
+                                eq(thisMonth.minusMonths(11)), any(LocalDate.class)))
+                                .thenReturn(List.of(new RetentionCohort(thisMonth.minusMonths(1), 50L,
+                                                List.of(50L, 20L))));
+
+                mockMvc.perform(get("/analytics/v1/retention")
+                                .with(SecurityMockMvcRequestPostProcessors.jwt()
+                                                .jwt(jwt -> jwt.claim("tenant_id", tenantId))))
+                                .andExpect(status().isOk())
+                                .andExpect(jsonPath("$[0].start").value(thisMonth.minusMonths(1).toString()))
+                                .andExpect(jsonPath("$[0].members").value(50))
+                                .andExpect(jsonPath("$[0].retained[1]").value(20));
+        }
+
+        @Test
+        void shouldGetWeeklyCohortRetentionOfTheRequestedDays() throws Exception {
+                String tenantId = "tenant-1";
+                when(factCodeDictionary.findTenantCode(tenantId)).thenReturn(Optional.of((short) 3));
+                when(activeUserBitmapRepository.findRetention((short) 3, ActivityInterval.WEEK,
+                                LocalDate.parse("2024-04-01"), LocalDate.parse("2024-05-01")))
+                                .thenReturn(List.of(new RetentionCohort(LocalDate.parse("2024-04-01"), 8L,
+                                                List.of(8L, 3L, 2L, 2L, 1L))));
+
+                mockMvc.perform(get("/analytics/v1/retention")
+                                .with(SecurityMockMvcRequestPostProcessors.jwt()
+                                                .jwt(jwt -> jwt.claim("tenant_id", tenantId)))
+                                .param("interval", "week")
+                                .param("from", "2024-04-01")
+                                .param("to", "2024-05-01"))
+                                .andExpect(status().isOk())
+                                .andExpect(jsonPath("$[0].retained.length()").value(5));
+        }
+
+        @Test
+        void shouldRejectRetentionPerDay() throws Exception {
+                mockMvc.perform(get("/analytics/v1/retention")
+                                .with(SecurityMockMvcRequestPostProcessors.jwt()
+                                                .jwt(jwt -> jwt.claim("tenant_id", "tenant-1")))
+                                .param("interval", "day"))
+                                .andExpect(status().isBadRequest());
+        }
+
         @Test
         void shouldGetResponsiveness() throws Exception {
                 String tenantId = "tenant-1";
                 when(dimThreadRepository.countTotalThreads(tenantId)).thenReturn(100L);
                 when(dimThreadRepository.countAnsweredThreads(tenantId)).thenReturn(80L);
+                DDSketch responseTimes = new DDSketch();
+                for (int i = 0; i < 100; i++) {
+                        responseTimes.add(i < 50 ? 5 : i < 90 ? 30 : 45);
+                }
+                when(responseTimeSketchRepository.findResponseTimes(tenantId, null, null, null))
+                                .thenReturn(responseTimes);
 
                 mockMvc.perform(get("/analytics/v1/responsiveness")
                                 .with(SecurityMockMvcRequestPostProcessors.jwt()
                                                 .jwt(jwt -> jwt.claim("tenant_id", tenantId))))
                                 .andExpect(status().isOk())
                                 .andExpect(jsonPath("$.answerRate").value(0.8))
-                                .andExpect(jsonPath("$.medianResponseTimeMinutes").value(0));
+                                .andExpect(jsonPath("$.medianResponseTimeMinutes").value(5))
+                                .andExpect(jsonPath("$.p90ResponseTimeMinutes").value(30))
+                                .andExpect(jsonPath("$.p99ResponseTimeMinutes").value(45));
+        }
+
+        @Test
+        void shouldGetResponsivenessOfACategoryAndDays() throws Exception {
+                String tenantId = "tenant-1";
+                UUID categoryId = UUID.randomUUID();
+                when(responseTimeSketchRepository.findResponseTimes(tenantId, categoryId,
+                                LocalDate.parse("2024-04-01"), LocalDate.parse("2024-05-01")))
+                                .thenReturn(new DDSketch());
+
+                mockMvc.perform(get("/analytics/v1/responsiveness")
+                                .with(SecurityMockMvcRequestPostProcessors.jwt()
+                                                .jwt(jwt -> jwt.claim("tenant_id", tenantId)))
+                                .param("categoryId", categoryId.toString())
+                                .param("from", "2024-04-01")
+                                .param("to", "2024-05-01"))
+                                .andExpect(status().isOk())
+                                .andExpect(jsonPath("$.answerRate").value(0.0))
+                                .andExpect(jsonPath("$.medianResponseTimeMinutes").value(0))
+                                .andExpect(jsonPath("$.p99ResponseTimeMinutes").value(0));
         }
 
         @Test
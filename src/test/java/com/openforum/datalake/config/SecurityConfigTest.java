@@ -6,9 +6,17 @@ import com.nimbusds.jose.crypto.RSASSASigner;
 import com.nimbusds.jwt.JWTClaimsSet;
 import com.nimbusds.jwt.SignedJWT;
 import com.openforum.datalake.api.AnalyticsController;
+import com.openforum.datalake.api.RollupAdminController;
+import com.openforum.datalake.dto.ActivityRollupReconciliation;
+import com.openforum.datalake.job.ActivityRollupReconciliationJob;
+import com.openforum.datalake.repository.ActiveUserBitmapRepository;
+import com.openforum.datalake.repository.ActivityBucketRepository;
+import com.openforum.datalake.repository.DailyTenantActivityRepository;
 import com.openforum.datalake.repository.DimMemberHealthRepository;
 import com.openforum.datalake.repository.DimThreadRepository;
-import com.openforum.datalake.repository.FactActivityRepository;
+import com.openforum.datalake.repository.FactCodeDictionary;
+import com.openforum.datalake.repository.ResponseTimeSketchRepository;
+import com.openforum.datalake.sketch.DDSketch;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
@@ -22,13 +30,19 @@ import java.security.KeyFactory;
 import java.security.interfaces.RSAPrivateKey;
 import java.security.spec.PKCS8EncodedKeySpec;
 import java.time.Instant;
+import java.time.LocalDate;
 import java.util.Base64;
 import java.util.Date;
+import java.util.List;
 
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.Mockito.when;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
-@WebMvcTest(AnalyticsController.class)
+@WebMvcTest({ AnalyticsController.class, RollupAdminController.class })
 @Import(SecurityConfig.class)
 public class SecurityConfigTest {
 
@@ -36,7 +50,19 @@ public class SecurityConfigTest {
     private MockMvc mockMvc;
 
     @MockBean
-    private FactActivityRepository factActivityRepository;
+    private DailyTenantActivityRepository dailyTenantActivityRepository;
+
+    @MockBean
+    private ActivityBucketRepository activityBucketRepository;
+
+    @MockBean
+    private ActiveUserBitmapRepository activeUserBitmapRepository;
+
+    @MockBean
+    private ResponseTimeSketchRepository responseTimeSketchRepository;
+
+    @MockBean
+    private FactCodeDictionary factCodeDictionary;
 
     @MockBean
     private DimThreadRepository dimThreadRepository;
@@ -44,6 +70,9 @@ public class SecurityConfigTest {
     @MockBean
     private DimMemberHealthRepository dimMemberHealthRepository;
 
+    @MockBean
+    private ActivityRollupReconciliationJob reconciliationJob;
+
     @Test
     void shouldRejectUnauthenticatedRequest() throws Exception {
         mockMvc.perform(get("/analytics/v1/responsiveness?tenantId=test"))
@@ -59,13 +88,37 @@ public class SecurityConfigTest {
 
     @Test
     void shouldAcceptValidToken() throws Exception {
-        String token = generateToken();
+        String token = generateToken(null);
+        when(responseTimeSketchRepository.findResponseTimes(any(), any(), any(), any())).thenReturn(new DDSketch());
         mockMvc.perform(get("/analytics/v1/responsiveness?tenantId=test")
                 .header("Authorization", "Bearer " + token))
                 .andExpect(status().isOk());
     }
 
-    private String generateToken() throws Exception {
+    @Test
+    void shouldForbidAdminEndpointsToTenantTokens() throws Exception {
+        String token = generateToken("analytics:read");
+        mockMvc.perform(post("/admin/v1/rollups/daily-activity/reconcile?from=2024-05-01&to=2024-05-02")
+                .header("Authorization", "Bearer " + token))
+                .andExpect(status().isForbidden());
+        mockMvc.perform(get("/admin/v1/partitions")
+                .header("Authorization", "Bearer " + token))
+                .andExpect(status().isForbidden());
+    }
+
+    @Test
+    void shouldAcceptAdminToken() throws Exception {
+        String token = generateToken("datalake:admin");
+        LocalDate from = LocalDate.parse("2024-05-01");
+        LocalDate to = LocalDate.parse("2024-05-02");
+        when(reconciliationJob.reconcile(any(), any(), anyBoolean()))
+                .thenReturn(new ActivityRollupReconciliation(from, to, List.of(), false));
+        mockMvc.perform(post("/admin/v1/rollups/daily-activity/reconcile?from=2024-05-01&to=2024-05-02")
+                .header("Authorization", "Bearer " + token))
+                .andExpect(status().isOk());
+    }
+
+    private String generateToken(String scope) throws Exception {
         // Load private key
         String keyContent = new String(Files.readAllBytes(Paths.get("src/test/resources/private_key_pkcs8.pem")))
                 .replaceAll("\\n", "")
@@ -82,6 +135,7 @@ public class SecurityConfigTest {
                 .subject("test-user")
                 .issuer("http://localhost:8080")
                 .expirationTime(Date.from(Instant.now().plusSeconds(3600)))
+                .claim("scope", scope)
                 .build();
 
         SignedJWT signedJWT = new SignedJWT(
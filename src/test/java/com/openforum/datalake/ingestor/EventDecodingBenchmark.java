@@ -0,0 +1,101 @@
+package com.openforum.datalake.ingestor;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.openforum.datalake.domain.FactActivity;
+import com.openforum.datalake.ingestor.events.PostCreated;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the original decode path (String, JsonNode tree, treeToValue and a
+ * fresh ObjectMapper per metadata conversion) with {@link ForumEventDecoder}.
+ * <p>
+ * Run after {@code mvn test-compile} with the GC profiler so that
+ * {@code gc.alloc.rate.norm} reports bytes allocated per event:
+ *
+ * <pre>
+ * java -cp target/test-classes:target/classes:$(cat cp.txt) \
+ *     com.openforum.datalake.ingestor.EventDecodingBenchmark
+ * </pre>
+ *
+ * where {@code cp.txt} comes from {@code mvn dependency:build-classpath -Dmdep.outputFile=cp.txt}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EventDecodingBenchmark {
+
+    @Param({ "200", "20000" })
+    public int contentLength;
+
+    private ObjectMapper objectMapper;
+    private ForumEventDecoder decoder;
+    private byte[] message;
+
+    @Setup
+    public void setUp() throws Exception {
+        objectMapper = new ObjectMapper();
+        objectMapper.registerModule(new JavaTimeModule());
+        decoder = new ForumEventDecoder(objectMapper);
+
+        ObjectNode payload = objectMapper.createObjectNode();
+        payload.put("postId", UUID.randomUUID().toString());
+        payload.put("threadId", UUID.randomUUID().toString());
+        payload.put("authorId", UUID.randomUUID().toString());
+        payload.put("content", "x".repeat(contentLength));
+        payload.put("createdAt", Instant.now().toString());
+        message = objectMapper.writeValueAsBytes(
+                new EventEnvelope(UUID.randomUUID(), "tenant-1", "PostCreated", Instant.now(), payload));
+    }
+
+    @Benchmark
+    @SuppressWarnings("unchecked")
+    public Map<String, Object> treeDecode() throws Exception {
+        String text = new String(message, StandardCharsets.UTF_8);
+        JsonNode root = objectMapper.readTree(text);
+        EventEnvelope envelope = objectMapper.treeToValue(root, EventEnvelope.class);
+        return new ObjectMapper().convertValue(envelope.payload(), Map.class);
+    }
+
+    @Benchmark
+    public DecodedEvent streamingDecode() throws Exception {
+        return decoder.decode(message);
+    }
+
+    @Benchmark
+    public FactActivity streamingDecodeToFact() throws Exception {
+        DecodedEvent event = decoder.decode(message);
+        return FactActivity.from(event, "POST_CREATED", ((PostCreated) event.payload()).threadId());
+    }
+
+    public static void main(String[] args) throws Exception {
+        new Runner(new OptionsBuilder()
+                .include(EventDecodingBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build()).run();
+    }
+}
@@ -0,0 +1,129 @@
+package com.openforum.datalake.ingestor;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.openforum.datalake.ingestor.events.PostCreated;
+import com.openforum.datalake.ingestor.events.ReactionAdded;
+import com.openforum.datalake.ingestor.events.ThreadCreated;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ForumEventDecoderTest {
+
+    private ObjectMapper objectMapper;
+    private ForumEventDecoder decoder;
+
+    @BeforeEach
+    void setUp() {
+        objectMapper = new ObjectMapper();
+        objectMapper.registerModule(new JavaTimeModule());
+        decoder = new ForumEventDecoder(objectMapper);
+    }
+
+    @Test
+    void shouldDecodeEnvelopeAndTypedPayload() throws Exception {
+        UUID eventId = UUID.randomUUID();
+        UUID threadId = UUID.randomUUID();
+        UUID authorId = UUID.randomUUID();
+        Instant now = Instant.now().truncatedTo(ChronoUnit.MILLIS);
+
+        ObjectNode payload = objectMapper.createObjectNode();
+        payload.put("postId", UUID.randomUUID().toString());
+        payload.put("threadId", threadId.toString());
+        payload.put("authorId", authorId.toString());
+        payload.put("content", "Hello");
+        payload.put("createdAt", now.toString());
+        byte[] message = objectMapper.writeValueAsBytes(
+                new EventEnvelope(eventId, "tenant-1", "PostCreated", now, payload));
+
+        DecodedEvent event = decoder.decode(message);
+
+        assertThat(event.eventId()).isEqualTo(eventId);
+        assertThat(event.tenantId()).isEqualTo("tenant-1");
+        assertThat(event.eventType()).isEqualTo("PostCreated");
+        assertThat(event.occurredAt()).isEqualTo(now);
+        assertThat(event.payload()).isInstanceOfSatisfying(PostCreated.class, post -> {
+            assertThat(post.threadId()).isEqualTo(threadId);
+            assertThat(post.authorId()).isEqualTo(authorId);
+            assertThat(post.createdAt()).isEqualTo(now);
+        });
+        // The slice is exactly the payload object as it appeared on the wire
+        assertThat(objectMapper.readTree(event.payloadJson().asString())).isEqualTo(payload);
+    }
+
+    @Test
+    void shouldDecodePayloadThatPrecedesEventType() throws Exception {
+        UUID targetId = UUID.randomUUID();
+        String json = "{\"payload\":{\"targetId\":\"" + targetId + "\",\"reactorId\":\"" + UUID.randomUUID()
+                + "\",\"type\":\"LIKE\"},\"eventId\":\"" + UUID.randomUUID()
+                + "\",\"tenantId\":\"t\",\"eventType\":\"ReactionAdded\",\"occurredAt\":\"2024-05-01T10:00:00Z\"}";
+
+        DecodedEvent event = decoder.decode(json.getBytes(StandardCharsets.UTF_8));
+
+        assertThat(event.payload()).isInstanceOfSatisfying(ReactionAdded.class, reaction -> {
+            assertThat(reaction.targetId()).isEqualTo(targetId);
+            assertThat(reaction.reactionType()).isEqualTo("LIKE");
+        });
+        assertThat(event.occurredAt()).isEqualTo(Instant.parse("2024-05-01T10:00:00Z"));
+    }
+
+    @Test
+    void shouldKeepPayloadSliceForIgnoredEventTypes() throws Exception {
+        String json = "{\"eventId\":\"" + UUID.randomUUID()
+                + "\",\"tenantId\":\"t\",\"eventType\":\"ThreadViewed\",\"occurredAt\":\"2024-05-01T10:00:00Z\","
+                + "\"payload\":{\"nested\":{\"a\":[1,2]}}}";
+
+        DecodedEvent event = decoder.decode(json.getBytes(StandardCharsets.UTF_8));
+
+        assertThat(event.payload()).isNull();
+        assertThat(event.payloadJson().asString()).isEqualTo("{\"nested\":{\"a\":[1,2]}}");
+    }
+
+    @Test
+    void shouldDecodeEventInsideLargerBuffer() throws Exception {
+        String first = "{\"eventId\":\"" + UUID.randomUUID()
+                + "\",\"tenantId\":\"t\",\"eventType\":\"ThreadViewed\",\"payload\":{\"n\":1}}";
+        String second = "{\"eventId\":\"" + UUID.randomUUID()
+                + "\",\"tenantId\":\"t\",\"eventType\":\"ThreadViewed\",\"payload\":{\"n\":2}}";
+        byte[] lines = (first + "\n" + second + "\n").getBytes(StandardCharsets.UTF_8);
+
+        DecodedEvent event = decoder.decode(lines, first.length() + 1, second.length());
+
+        assertThat(event.payloadJson().source()).isSameAs(lines);
+        assertThat(event.payloadJson().asString()).isEqualTo("{\"n\":2}");
+    }
+
+    @Test
+    void shouldInferRawThreadEvent() throws Exception {
+        UUID threadId = UUID.randomUUID();
+        String json = "{\"threadId\":\"" + threadId + "\",\"title\":\"Raw\",\"tenantId\":\"tenant-raw\","
+                + "\"authorId\":\"" + UUID.randomUUID() + "\",\"createdAt\":\"2024-05-01T10:00:00Z\"}";
+
+        DecodedEvent event = decoder.decode(json.getBytes(StandardCharsets.UTF_8));
+
+        assertThat(event.eventType()).isEqualTo("ThreadCreated");
+        assertThat(event.tenantId()).isEqualTo("tenant-raw");
+        assertThat(event.occurredAt()).isEqualTo(Instant.parse("2024-05-01T10:00:00Z"));
+        assertThat(((ThreadCreated) event.payload()).threadId()).isEqualTo(threadId);
+    }
+
+    @Test
+    void shouldReturnNullForUnrecognisedRawEvent() throws Exception {
+        assertThat(decoder.decode("{\"foo\":1}".getBytes(StandardCharsets.UTF_8))).isNull();
+    }
+
+    @Test
+    void shouldRejectInvalidJson() {
+        assertThatThrownBy(() -> decoder.decode("{invalid-json}".getBytes(StandardCharsets.UTF_8)))
+                .isInstanceOf(java.io.IOException.class);
+    }
+}
@@ -1,36 +1,102 @@
 package com.openforum.datalake.ingestor;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.openforum.datalake.domain.DimThread;
 import com.openforum.datalake.domain.FactActivity;
+import com.openforum.datalake.ingestor.counters.ThreadCounterBuffer;
+import com.openforum.datalake.ingestor.counters.ThreadCounterDelta;
+import com.openforum.datalake.ingestor.IngestionMetrics.Stage;
+import com.openforum.datalake.ingestor.dedupe.EventDeduplicator;
+import com.openforum.datalake.ingestor.offsets.PostgresOffsetStore;
+import com.openforum.datalake.ingestor.retry.FailedEventRouter;
+import com.openforum.datalake.repository.ConsumerOffsetRepository;
 import com.openforum.datalake.repository.DimThreadRepository;
-import com.openforum.datalake.repository.FactActivityRepository;
+import com.openforum.datalake.repository.FactActivityBatchWriter;
+import com.openforum.datalake.repository.ImportCopyWriter;
+import com.openforum.datalake.repository.ThreadCounterWriter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.header.internals.RecordHeaders;
+import org.apache.kafka.common.record.TimestampType;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.kafka.listener.BatchListenerFailedException;
+import org.springframework.kafka.listener.ConsumerSeekAware.ConsumerSeekCallback;
 
+import java.nio.charset.StandardCharsets;
 import java.time.Instant;
 import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.OptionalLong;
+import java.util.Set;
 import java.util.UUID;
+import java.util.stream.Collectors;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.verifyNoMoreInteractions;
 import static org.mockito.Mockito.when;
 
 @ExtendWith(MockitoExtension.class)
 class KafkaEventConsumerTest {
 
-    @Mock
-    private FactActivityRepository factActivityRepository;
+    private static final int PARALLEL_LANES = 4;
+    private static final String TOPIC = "forum-events-v1";
 
     @Mock
     private DimThreadRepository dimThreadRepository;
 
+    @Mock
+    private FactActivityBatchWriter factActivityBatchWriter;
+
+    @Mock
+    private EventDeduplicator eventDeduplicator;
+
+    @Mock
+    private ThreadCounterBuffer threadCounterBuffer;
+
+    @Mock
+    private ThreadCounterWriter threadCounterWriter;
+
+    @Mock
+    private ImportCopyWriter importCopyWriter;
+
+    @Mock
+    private FailedEventRouter failedEventRouter;
+
+    @Mock
+    private PostgresOffsetStore offsetStore;
+
+    @Mock
+    private ConsumerOffsetRepository consumerOffsetRepository;
+
+    @Mock
+    private Consumer<String, byte[]> kafkaConsumer;
+
+    private MeterRegistry meterRegistry;
+    private IngestionMetrics ingestionMetrics;
+    private EventIngestionService eventIngestionService;
     private KafkaEventConsumer consumer;
     private ObjectMapper objectMapper;
 
@@ -38,7 +104,14 @@ class KafkaEventConsumerTest {
     void setUp() {
         objectMapper = new ObjectMapper();
         objectMapper.registerModule(new com.fasterxml.jackson.datatype.jsr310.JavaTimeModule());
-        consumer = new KafkaEventConsumer(factActivityRepository, dimThreadRepository, objectMapper);
+        meterRegistry = new SimpleMeterRegistry();
+        ingestionMetrics = new IngestionMetrics(meterRegistry);
+        eventIngestionService = new EventIngestionService(dimThreadRepository, factActivityBatchWriter,
+                eventDeduplicator, new MetadataProjection(objectMapper, List.of(), true),
+                new MetadataPromotion(objectMapper, "categoryId", "sentiment", "isAdmin"), threadCounterBuffer,
+                threadCounterWriter, importCopyWriter, ingestionMetrics, true);
+        consumer = new KafkaEventConsumer(new ForumEventDecoder(objectMapper), eventIngestionService,
+                ingestionMetrics, failedEventRouter, offsetStore, "kafka", 1);
     }
 
     @Test
@@ -61,22 +134,26 @@ class KafkaEventConsumerTest {
                 "ThreadCreated",
                 Instant.now(),
                 payload);
-        String message = objectMapper.writeValueAsString(event);
+        byte[] message = objectMapper.writeValueAsBytes(event);
 
-        when(factActivityRepository.existsByEventId(eventId)).thenReturn(false);
+        when(eventDeduplicator.isDuplicate(eventId)).thenReturn(false);
+        insertingAllFacts();
 
         // When
-        consumer.consume(message);
+        consumer.consume(record(message), kafkaConsumer);
 
         // Then
         ArgumentCaptor<DimThread> threadCaptor = ArgumentCaptor.forClass(DimThread.class);
         verify(dimThreadRepository).save(threadCaptor.capture());
         assertThat(threadCaptor.getValue().getThreadId()).isEqualTo(threadId);
         assertThat(threadCaptor.getValue().getTitle()).isEqualTo("Unit Test Thread");
+        verify(threadCounterBuffer).recordThreadCreated(threadId);
 
-        ArgumentCaptor<FactActivity> factCaptor = ArgumentCaptor.forClass(FactActivity.class);
-        verify(factActivityRepository).save(factCaptor.capture());
-        assertThat(factCaptor.getValue().getEventId()).isEqualTo(eventId);
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<List<FactActivity>> factsCaptor = ArgumentCaptor.forClass(List.class);
+        verify(factActivityBatchWriter).insertReturningEventIds(factsCaptor.capture());
+        assertThat(factsCaptor.getValue().get(0).getEventId()).isEqualTo(eventId);
+        verify(eventDeduplicator).markProcessed(List.of(eventId));
     }
 
     @Test
@@ -100,21 +177,23 @@ class KafkaEventConsumerTest {
                 "ThreadImported",
                 now,
                 thread);
-        String message = objectMapper.writeValueAsString(event);
+        byte[] message = objectMapper.writeValueAsBytes(event);
 
-        when(factActivityRepository.existsByEventId(eventId)).thenReturn(false);
+        when(eventDeduplicator.isDuplicate(eventId)).thenReturn(false);
+        insertingAllFacts();
 
         // When
-        consumer.consume(message);
+        consumer.consume(record(message), kafkaConsumer);
 
         // Then
         ArgumentCaptor<DimThread> threadCaptor = ArgumentCaptor.forClass(DimThread.class);
         verify(dimThreadRepository).save(threadCaptor.capture());
         assertThat(threadCaptor.getValue().getThreadId()).isEqualTo(threadId);
 
-        ArgumentCaptor<FactActivity> factCaptor = ArgumentCaptor.forClass(FactActivity.class);
-        verify(factActivityRepository).save(factCaptor.capture());
-        assertThat(factCaptor.getValue().getActivityType()).isEqualTo("THREAD_IMPORTED");
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<List<FactActivity>> factsCaptor = ArgumentCaptor.forClass(List.class);
+        verify(factActivityBatchWriter).insertReturningEventIds(factsCaptor.capture());
+        assertThat(factsCaptor.getValue().get(0).getActivityType()).isEqualTo("THREAD_IMPORTED");
     }
 
     @Test
@@ -138,27 +217,22 @@ class KafkaEventConsumerTest {
                 "PostImported",
                 now,
                 post);
-        String message = objectMapper.writeValueAsString(event);
+        byte[] message = objectMapper.writeValueAsBytes(event);
 
-        when(factActivityRepository.existsByEventId(eventId)).thenReturn(false);
-        // Mock DimThread lookup for update
-        DimThread mockThread = new DimThread();
-        mockThread.setThreadId(threadId);
-        mockThread.setReplyCount(0);
-        mockThread.setCreatedAt(now.minus(1, ChronoUnit.HOURS));
-        when(dimThreadRepository.findById(threadId)).thenReturn(java.util.Optional.of(mockThread));
+        when(eventDeduplicator.isDuplicate(eventId)).thenReturn(false);
+        insertingAllFacts();
 
         // When
-        consumer.consume(message);
+        consumer.consume(record(message), kafkaConsumer);
 
         // Then
-        ArgumentCaptor<DimThread> threadCaptor = ArgumentCaptor.forClass(DimThread.class);
-        verify(dimThreadRepository).save(threadCaptor.capture());
-        assertThat(threadCaptor.getValue().getReplyCount()).isEqualTo(1);
+        verify(threadCounterBuffer).recordReply(threadId, now, false);
+        verifyNoInteractions(dimThreadRepository);
 
-        ArgumentCaptor<FactActivity> factCaptor = ArgumentCaptor.forClass(FactActivity.class);
-        verify(factActivityRepository).save(factCaptor.capture());
-        assertThat(factCaptor.getValue().getActivityType()).isEqualTo("POST_IMPORTED");
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<List<FactActivity>> factsCaptor = ArgumentCaptor.forClass(List.class);
+        verify(factActivityBatchWriter).insertReturningEventIds(factsCaptor.capture());
+        assertThat(factsCaptor.getValue().get(0).getActivityType()).isEqualTo("POST_IMPORTED");
     }
 
     @Test
@@ -182,27 +256,22 @@ class KafkaEventConsumerTest {
                 "PostCreated",
                 now,
                 payload);
-        String message = objectMapper.writeValueAsString(event);
-
-        when(factActivityRepository.existsByEventId(eventId)).thenReturn(false);
+        byte[] message = objectMapper.writeValueAsBytes(event);
 
-        DimThread mockThread = new DimThread();
-        mockThread.setThreadId(threadId);
-        mockThread.setReplyCount(0);
-        mockThread.setCreatedAt(now.minus(1, ChronoUnit.HOURS));
-        when(dimThreadRepository.findById(threadId)).thenReturn(java.util.Optional.of(mockThread));
+        when(eventDeduplicator.isDuplicate(eventId)).thenReturn(false);
+        insertingAllFacts();
 
         // When
-        consumer.consume(message);
+        consumer.consume(record(message), kafkaConsumer);
 
         // Then
-        ArgumentCaptor<DimThread> threadCaptor = ArgumentCaptor.forClass(DimThread.class);
-        verify(dimThreadRepository).save(threadCaptor.capture());
-        assertThat(threadCaptor.getValue().getReplyCount()).isEqualTo(1);
+        verify(threadCounterBuffer).recordReply(threadId, now, true);
+        verifyNoInteractions(dimThreadRepository);
 
-        ArgumentCaptor<FactActivity> factCaptor = ArgumentCaptor.forClass(FactActivity.class);
-        verify(factActivityRepository).save(factCaptor.capture());
-        assertThat(factCaptor.getValue().getActivityType()).isEqualTo("POST_CREATED");
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<List<FactActivity>> factsCaptor = ArgumentCaptor.forClass(List.class);
+        verify(factActivityBatchWriter).insertReturningEventIds(factsCaptor.capture());
+        assertThat(factsCaptor.getValue().get(0).getActivityType()).isEqualTo("POST_CREATED");
     }
 
     @Test
@@ -225,18 +294,20 @@ class KafkaEventConsumerTest {
                 "ReactionAdded",
                 now,
                 payload);
-        String message = objectMapper.writeValueAsString(event);
+        byte[] message = objectMapper.writeValueAsBytes(event);
 
-        when(factActivityRepository.existsByEventId(eventId)).thenReturn(false);
+        when(eventDeduplicator.isDuplicate(eventId)).thenReturn(false);
+        insertingAllFacts();
 
         // When
-        consumer.consume(message);
+        consumer.consume(record(message), kafkaConsumer);
 
         // Then
-        ArgumentCaptor<FactActivity> factCaptor = ArgumentCaptor.forClass(FactActivity.class);
-        verify(factActivityRepository).save(factCaptor.capture());
-        assertThat(factCaptor.getValue().getActivityType()).isEqualTo("REACTION");
-        assertThat(factCaptor.getValue().getTargetId()).isEqualTo(targetId);
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<List<FactActivity>> factsCaptor = ArgumentCaptor.forClass(List.class);
+        verify(factActivityBatchWriter).insertReturningEventIds(factsCaptor.capture());
+        assertThat(factsCaptor.getValue().get(0).getActivityType()).isEqualTo("REACTION");
+        assertThat(factsCaptor.getValue().get(0).getTargetId()).isEqualTo(targetId);
     }
 
     @Test
@@ -258,18 +329,20 @@ class KafkaEventConsumerTest {
                 "SubscriptionCreated",
                 now,
                 payload);
-        String message = objectMapper.writeValueAsString(event);
+        byte[] message = objectMapper.writeValueAsBytes(event);
 
-        when(factActivityRepository.existsByEventId(eventId)).thenReturn(false);
+        when(eventDeduplicator.isDuplicate(eventId)).thenReturn(false);
+        insertingAllFacts();
 
         // When
-        consumer.consume(message);
+        consumer.consume(record(message), kafkaConsumer);
 
         // Then
-        ArgumentCaptor<FactActivity> factCaptor = ArgumentCaptor.forClass(FactActivity.class);
-        verify(factActivityRepository).save(factCaptor.capture());
-        assertThat(factCaptor.getValue().getActivityType()).isEqualTo("SUBSCRIPTION_CREATED");
-        assertThat(factCaptor.getValue().getTargetId()).isEqualTo(targetId);
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<List<FactActivity>> factsCaptor = ArgumentCaptor.forClass(List.class);
+        verify(factActivityBatchWriter).insertReturningEventIds(factsCaptor.capture());
+        assertThat(factsCaptor.getValue().get(0).getActivityType()).isEqualTo("SUBSCRIPTION_CREATED");
+        assertThat(factsCaptor.getValue().get(0).getTargetId()).isEqualTo(targetId);
     }
 
     @Test
@@ -282,27 +355,480 @@ class KafkaEventConsumerTest {
                 "ThreadCreated",
                 Instant.now(),
                 objectMapper.createObjectNode());
-        String message = objectMapper.writeValueAsString(event);
+        byte[] message = objectMapper.writeValueAsBytes(event);
 
-        when(factActivityRepository.existsByEventId(eventId)).thenReturn(true);
+        when(eventDeduplicator.isDuplicate(eventId)).thenReturn(true);
 
         // When
-        consumer.consume(message);
+        consumer.consume(record(message), kafkaConsumer);
 
         // Then
-        verify(factActivityRepository, org.mockito.Mockito.never()).save(any(FactActivity.class));
+        verifyNoInteractions(factActivityBatchWriter, dimThreadRepository, threadCounterBuffer);
     }
 
     @Test
     void shouldHandleJsonProcessingException() {
         // Given
-        String invalidJson = "{invalid-json}";
+        byte[] invalidJson = "{invalid-json}".getBytes(StandardCharsets.UTF_8);
+
+        ConsumerRecord<String, byte[]> record = record(invalidJson);
 
         // When
-        consumer.consume(invalidJson);
+        consumer.consume(record, kafkaConsumer);
+
+        // Then the record goes to the dead-letter topic instead of blocking the partition
+        verify(eventDeduplicator, org.mockito.Mockito.never()).isDuplicate(any());
+        verify(failedEventRouter).route(eq(record), isNull(), eq(Stage.PARSE), any(JsonProcessingException.class));
+    }
+
+    @Test
+    void shouldRouteFailedEventOfBatchAfterCommit() throws Exception {
+        // Given a reaction and a reply without its threadId
+        UUID reactionEventId = UUID.randomUUID();
+        ObjectNode payload = objectMapper.createObjectNode();
+        payload.put("postId", UUID.randomUUID().toString());
+        List<ConsumerRecord<String, byte[]>> records = records(List.of(
+                objectMapper.writeValueAsBytes(reactionEvent(reactionEventId)),
+                objectMapper.writeValueAsBytes(
+                        new EventEnvelope(UUID.randomUUID(), "tenant-1", "PostCreated", Instant.now(), payload))));
+        when(eventDeduplicator.findDuplicates(anyCollection())).thenReturn(Set.of());
+
+        // When
+        consumer.consumeBatch(records, kafkaConsumer);
+
+        // Then the reaction is written and only the reply is routed for retry
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<List<FactActivity>> factsCaptor = ArgumentCaptor.forClass(List.class);
+        verify(factActivityBatchWriter).insertReturningEventIds(factsCaptor.capture());
+        assertThat(factsCaptor.getValue()).extracting(FactActivity::getEventId).containsExactly(reactionEventId);
+        verify(eventDeduplicator).markProcessed(List.of(reactionEventId));
+        verify(failedEventRouter).route(eq(records.get(1)), eq("PostCreated"), eq(Stage.WRITE),
+                any(NullPointerException.class));
+    }
+
+    @Test
+    void shouldWriteBatchWithSingleInsert() throws Exception {
+        // Given
+        UUID firstEventId = UUID.randomUUID();
+        UUID secondEventId = UUID.randomUUID();
+        byte[] first = objectMapper.writeValueAsBytes(reactionEvent(firstEventId));
+        byte[] second = objectMapper.writeValueAsBytes(reactionEvent(secondEventId));
+
+        when(eventDeduplicator.findDuplicates(anyCollection())).thenReturn(Set.of());
+
+        // When (the duplicate delivery of the first event must be collapsed)
+        consumer.consumeBatch(records(List.of(first, second, first)), kafkaConsumer);
+
+        // Then
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<List<FactActivity>> factsCaptor = ArgumentCaptor.forClass(List.class);
+        verify(factActivityBatchWriter).insertReturningEventIds(factsCaptor.capture());
+        assertThat(factsCaptor.getValue()).extracting(FactActivity::getEventId)
+                .containsExactly(firstEventId, secondEventId);
+    }
+
+    @Test
+    void shouldSkipAlreadyProcessedEventsInBatch() throws Exception {
+        // Given
+        UUID processedEventId = UUID.randomUUID();
+        UUID newEventId = UUID.randomUUID();
+        byte[] processed = objectMapper.writeValueAsBytes(reactionEvent(processedEventId));
+        byte[] fresh = objectMapper.writeValueAsBytes(reactionEvent(newEventId));
+
+        when(eventDeduplicator.findDuplicates(anyCollection())).thenReturn(Set.of(processedEventId));
+
+        // When
+        consumer.consumeBatch(records(List.of(processed, "{invalid-json}".getBytes(StandardCharsets.UTF_8), fresh)),
+                kafkaConsumer);
 
         // Then
-        // No exception thrown, error logged
-        verify(factActivityRepository, org.mockito.Mockito.never()).existsByEventId(any());
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<List<FactActivity>> factsCaptor = ArgumentCaptor.forClass(List.class);
+        verify(factActivityBatchWriter).insertReturningEventIds(factsCaptor.capture());
+        assertThat(factsCaptor.getValue()).extracting(FactActivity::getEventId).containsExactly(newEventId);
+        verify(eventDeduplicator).markProcessed(List.of(newEventId));
+    }
+
+    @Test
+    void shouldNotApplyEventsWhoseFactIsAlreadyStored() throws Exception {
+        // Given a thread and a reply processed by another instance, so the filter does not know them
+        UUID threadId = UUID.randomUUID();
+        ObjectNode thread = objectMapper.createObjectNode();
+        thread.put("threadId", threadId.toString());
+        thread.put("title", "Seen elsewhere");
+        UUID threadEventId = UUID.randomUUID();
+        UUID replyEventId = UUID.randomUUID();
+        UUID newReplyEventId = UUID.randomUUID();
+        Instant now = Instant.now();
+        List<byte[]> messages = List.of(
+                objectMapper.writeValueAsBytes(
+                        new EventEnvelope(threadEventId, "tenant-1", "ThreadCreated", now, thread)),
+                objectMapper.writeValueAsBytes(postEvent(replyEventId, threadId)),
+                objectMapper.writeValueAsBytes(postEvent(newReplyEventId, threadId)));
+        when(eventDeduplicator.findDuplicates(anyCollection())).thenReturn(Set.of());
+        when(factActivityBatchWriter.insertReturningEventIds(anyList())).thenReturn(Set.of(newReplyEventId));
+
+        // When
+        consumer.consumeBatch(records(messages), kafkaConsumer);
+
+        // Then only the reply whose fact was inserted is counted, and the thread is not overwritten
+        verify(threadCounterBuffer).recordReply(eq(threadId), any(Instant.class), eq(true));
+        verifyNoMoreInteractions(threadCounterBuffer);
+        verifyNoInteractions(dimThreadRepository);
+        assertThat(eventCount("duplicate", "ThreadCreated")).isEqualTo(1);
+        assertThat(eventCount("duplicate", "PostCreated")).isEqualTo(1);
+        assertThat(eventCount("ingested", "PostCreated")).isEqualTo(1);
+    }
+
+    @Test
+    void shouldShardBatchByThreadPreservingOrderWithinThread() throws Exception {
+        // Given two threads that land in different lanes, with interleaved replies
+        UUID threadA = UUID.randomUUID();
+        UUID threadB = threadInOtherLane(threadA);
+        List<UUID> eventIds = List.of(UUID.randomUUID(), UUID.randomUUID(), UUID.randomUUID(), UUID.randomUUID(),
+                UUID.randomUUID());
+        List<UUID> threads = List.of(threadA, threadB, threadA, threadB, threadA);
+        List<byte[]> messages = new ArrayList<>();
+        for (int i = 0; i < eventIds.size(); i++) {
+            messages.add(objectMapper.writeValueAsBytes(postEvent(eventIds.get(i), threads.get(i))));
+        }
+        when(eventDeduplicator.findDuplicates(anyCollection())).thenReturn(Set.of());
+
+        // When
+        parallelConsumer().consumeBatch(records(messages), kafkaConsumer);
+
+        // Then each lane is written separately and keeps record order
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<List<FactActivity>> factsCaptor = ArgumentCaptor.forClass(List.class);
+        verify(factActivityBatchWriter, times(2)).insertReturningEventIds(factsCaptor.capture());
+        assertThat(factsCaptor.getAllValues())
+                .extracting(facts -> facts.stream().map(FactActivity::getEventId).toList())
+                .containsExactlyInAnyOrder(
+                        List.of(eventIds.get(0), eventIds.get(2), eventIds.get(4)),
+                        List.of(eventIds.get(1), eventIds.get(3)));
+    }
+
+    @Test
+    void shouldFailBatchAtFirstRecordOfFailedLane() throws Exception {
+        // Given a lane for thread A whose write fails; A's first record is at index 1
+        UUID threadB = UUID.randomUUID();
+        UUID threadA = threadInOtherLane(threadB);
+        List<byte[]> messages = List.of(
+                objectMapper.writeValueAsBytes(postEvent(UUID.randomUUID(), threadB)),
+                objectMapper.writeValueAsBytes(postEvent(UUID.randomUUID(), threadA)),
+                objectMapper.writeValueAsBytes(postEvent(UUID.randomUUID(), threadB)),
+                objectMapper.writeValueAsBytes(postEvent(UUID.randomUUID(), threadA)));
+        when(eventDeduplicator.findDuplicates(anyCollection())).thenReturn(Set.of());
+        when(factActivityBatchWriter.insertReturningEventIds(anyList())).thenAnswer(invocation -> {
+            List<FactActivity> facts = invocation.getArgument(0);
+            if (facts.get(0).getTargetId().equals(threadA)) {
+                throw new IllegalStateException("connection reset");
+            }
+            return eventIds(facts);
+        });
+
+        // When / Then
+        assertThatThrownBy(() -> parallelConsumer().consumeBatch(records(messages), kafkaConsumer))
+                .isInstanceOfSatisfying(BatchListenerFailedException.class,
+                        e -> assertThat(e.getIndex()).isEqualTo(1))
+                .hasRootCauseMessage("connection reset");
+    }
+
+    @Test
+    void shouldDeadLetterUnparseableRecordsOnlyBeforeTheFailedLane() throws Exception {
+        // Given unparseable records before and after the first record of thread A, whose write fails
+        UUID threadB = UUID.randomUUID();
+        UUID threadA = threadInOtherLane(threadB);
+        byte[] invalidJson = "{invalid-json}".getBytes(StandardCharsets.UTF_8);
+        List<ConsumerRecord<String, byte[]>> records = records(List.of(
+                invalidJson,
+                objectMapper.writeValueAsBytes(postEvent(UUID.randomUUID(), threadB)),
+                objectMapper.writeValueAsBytes(postEvent(UUID.randomUUID(), threadA)),
+                invalidJson,
+                objectMapper.writeValueAsBytes(postEvent(UUID.randomUUID(), threadB))));
+        when(eventDeduplicator.findDuplicates(anyCollection())).thenReturn(Set.of());
+        when(factActivityBatchWriter.insertReturningEventIds(anyList())).thenAnswer(invocation -> {
+            List<FactActivity> facts = invocation.getArgument(0);
+            if (facts.get(0).getTargetId().equals(threadA)) {
+                throw new IllegalStateException("connection reset");
+            }
+            return eventIds(facts);
+        });
+
+        // When
+        assertThatThrownBy(() -> parallelConsumer().consumeBatch(records, kafkaConsumer))
+                .isInstanceOfSatisfying(BatchListenerFailedException.class,
+                        e -> assertThat(e.getIndex()).isEqualTo(2));
+
+        // Then only the record whose offset is committed is dead-lettered; the other is redelivered
+        verify(failedEventRouter).route(eq(records.get(0)), isNull(), eq(Stage.PARSE),
+                any(JsonProcessingException.class));
+        verify(failedEventRouter, never()).route(eq(records.get(3)), any(), any(), any());
+    }
+
+    @Test
+    void shouldLoadImportEventsThroughBulkCopy() throws Exception {
+        // Given an import of a thread with one reply, mixed with a live reaction
+        UUID threadId = UUID.randomUUID();
+        ObjectNode thread = objectMapper.createObjectNode();
+        thread.put("threadId", threadId.toString());
+        thread.put("title", "Imported Thread");
+        ObjectNode post = objectMapper.createObjectNode();
+        post.put("postId", UUID.randomUUID().toString());
+        post.put("threadId", threadId.toString());
+        UUID reactionEventId = UUID.randomUUID();
+        List<byte[]> messages = List.of(
+                objectMapper.writeValueAsBytes(
+                        new EventEnvelope(UUID.randomUUID(), "tenant-1", "ThreadImported", Instant.now(), thread)),
+                objectMapper.writeValueAsBytes(
+                        new EventEnvelope(UUID.randomUUID(), "tenant-1", "PostImported", Instant.now(), post)),
+                objectMapper.writeValueAsBytes(reactionEvent(reactionEventId)));
+        when(eventDeduplicator.findDuplicates(anyCollection())).thenReturn(Set.of());
+
+        // When
+        consumer.consumeBatch(records(messages), kafkaConsumer);
+
+        // Then
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<List<DimThread>> threadsCaptor = ArgumentCaptor.forClass(List.class);
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<List<FactActivity>> importsCaptor = ArgumentCaptor.forClass(List.class);
+        verify(dimThreadRepository).flush();
+        verify(importCopyWriter).load(threadsCaptor.capture(), importsCaptor.capture());
+        assertThat(threadsCaptor.getValue()).extracting(DimThread::getThreadId).containsExactly(threadId);
+        assertThat(importsCaptor.getValue()).extracting(FactActivity::getActivityType)
+                .containsExactly("THREAD_IMPORTED", "POST_IMPORTED");
+
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<List<FactActivity>> factsCaptor = ArgumentCaptor.forClass(List.class);
+        verify(factActivityBatchWriter).insertReturningEventIds(factsCaptor.capture());
+        assertThat(factsCaptor.getValue()).extracting(FactActivity::getEventId).containsExactly(reactionEventId);
+        // Replies are counted by the bulk merge; the buffer only learns that the thread exists
+        verify(threadCounterBuffer).recordThreadCreated(threadId);
+        verifyNoMoreInteractions(threadCounterBuffer);
+    }
+
+    @Test
+    void shouldIsolateEventThatFailsLaneTransaction() throws Exception {
+        // Given a lane whose multi-row insert fails because of one of its events
+        UUID goodEventId = UUID.randomUUID();
+        UUID badEventId = UUID.randomUUID();
+        List<ConsumerRecord<String, byte[]>> records = records(List.of(
+                objectMapper.writeValueAsBytes(reactionEvent(goodEventId)),
+                objectMapper.writeValueAsBytes(reactionEvent(badEventId))));
+        when(eventDeduplicator.findDuplicates(anyCollection())).thenReturn(Set.of());
+        when(factActivityBatchWriter.insertReturningEventIds(anyList())).thenAnswer(invocation -> {
+            List<FactActivity> facts = invocation.getArgument(0);
+            if (facts.stream().anyMatch(fact -> fact.getEventId().equals(badEventId))) {
+                throw new IllegalStateException("value too long");
+            }
+            return eventIds(facts);
+        });
+
+        // When
+        consumer.consumeBatch(records, kafkaConsumer);
+
+        // Then the good event is committed on its own and only the bad one is routed
+        verify(eventDeduplicator).markProcessed(List.of(goodEventId));
+        verify(failedEventRouter).route(eq(records.get(1)), eq("ReactionAdded"), eq(Stage.WRITE),
+                any(IllegalStateException.class));
+    }
+
+    @Test
+    void shouldStoreOffsetsPerPartitionInsteadOfDeduplicating() throws Exception {
+        // Given partition 0 stored up to offset 1, so its first record was already applied
+        UUID applied = UUID.randomUUID();
+        UUID p0Fresh = UUID.randomUUID();
+        UUID p1Fresh = UUID.randomUUID();
+        List<ConsumerRecord<String, byte[]>> records = List.of(
+                new ConsumerRecord<>(TOPIC, 0, 0, null, objectMapper.writeValueAsBytes(reactionEvent(applied))),
+                new ConsumerRecord<>(TOPIC, 1, 7, null, objectMapper.writeValueAsBytes(reactionEvent(p1Fresh))),
+                new ConsumerRecord<>(TOPIC, 0, 1, null, objectMapper.writeValueAsBytes(reactionEvent(p0Fresh))),
+                new ConsumerRecord<>(TOPIC, 1, 8, null, "{invalid-json}".getBytes(StandardCharsets.UTF_8)));
+        TopicPartition p0 = new TopicPartition(TOPIC, 0);
+        TopicPartition p1 = new TopicPartition(TOPIC, 1);
+        when(consumerOffsetRepository.lockOffsets(KafkaEventConsumer.GROUP_ID, Set.of(p0)))
+                .thenReturn(Map.of(p0, 1L));
+        when(consumerOffsetRepository.lockOffsets(KafkaEventConsumer.GROUP_ID, Set.of(p1)))
+                .thenReturn(Map.of(p1, 0L));
+        insertingAllFacts();
+
+        // When
+        postgresOffsetConsumer().consumeBatch(records, kafkaConsumer);
+
+        // Then each partition is written with its own position, past the unparseable record too
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<List<FactActivity>> factsCaptor = ArgumentCaptor.forClass(List.class);
+        verify(factActivityBatchWriter, times(2)).insertReturningEventIds(factsCaptor.capture());
+        assertThat(factsCaptor.getAllValues())
+                .extracting(facts -> facts.stream().map(FactActivity::getEventId).toList())
+                .containsExactlyInAnyOrder(List.of(p0Fresh), List.of(p1Fresh));
+        verify(consumerOffsetRepository).saveOffsets(KafkaEventConsumer.GROUP_ID, Map.of(p0, 2L));
+        verify(consumerOffsetRepository).saveOffsets(KafkaEventConsumer.GROUP_ID, Map.of(p1, 9L));
+        assertThat(eventCount("duplicate", "ReactionAdded")).isEqualTo(1);
+        // The ledger is not consulted but still written, for the retry consumers
+        verify(eventDeduplicator, never()).findDuplicates(anyCollection());
+        verify(eventDeduplicator).markProcessed(List.of(p0Fresh));
+        verify(eventDeduplicator).markProcessed(List.of(p1Fresh));
+    }
+
+    @Test
+    void shouldStorePositionPastRoutedRecord() throws Exception {
+        // Given a record whose transaction fails
+        ConsumerRecord<String, byte[]> record = new ConsumerRecord<>(TOPIC, 0, 5, null,
+                objectMapper.writeValueAsBytes(reactionEvent(UUID.randomUUID())));
+        TopicPartition p0 = new TopicPartition(TOPIC, 0);
+        when(consumerOffsetRepository.lockOffsets(KafkaEventConsumer.GROUP_ID, Set.of(p0))).thenReturn(Map.of());
+        when(factActivityBatchWriter.insertReturningEventIds(anyList()))
+                .thenThrow(new IllegalStateException("connection reset"));
+
+        // When
+        postgresOffsetConsumer().consume(record, kafkaConsumer);
+
+        // Then it is routed for retry and the position moves past it, so a seek after a restart skips it
+        verify(failedEventRouter).route(eq(record), eq("ReactionAdded"), eq(Stage.WRITE),
+                any(IllegalStateException.class));
+        verify(consumerOffsetRepository).saveOffsets(KafkaEventConsumer.GROUP_ID, Map.of(p0, 6L));
+    }
+
+    @Test
+    void shouldApplyThreadCountersWithStoredOffsets() throws Exception {
+        // Given a thread and a reply to it, and a reply to a thread created elsewhere
+        UUID threadId = UUID.randomUUID();
+        UUID otherThreadId = UUID.randomUUID();
+        ObjectNode thread = objectMapper.createObjectNode();
+        thread.put("threadId", threadId.toString());
+        List<ConsumerRecord<String, byte[]>> records = List.of(
+                new ConsumerRecord<>(TOPIC, 0, 0, null, objectMapper.writeValueAsBytes(
+                        new EventEnvelope(UUID.randomUUID(), "tenant-1", "ThreadCreated", Instant.now(), thread))),
+                new ConsumerRecord<>(TOPIC, 0, 1, null,
+                        objectMapper.writeValueAsBytes(postEvent(UUID.randomUUID(), threadId))),
+                new ConsumerRecord<>(TOPIC, 0, 2, null,
+                        objectMapper.writeValueAsBytes(postEvent(UUID.randomUUID(), otherThreadId))));
+        TopicPartition p0 = new TopicPartition(TOPIC, 0);
+        when(consumerOffsetRepository.lockOffsets(KafkaEventConsumer.GROUP_ID, Set.of(p0))).thenReturn(Map.of());
+        insertingAllFacts();
+
+        // When
+        postgresOffsetConsumer().consumeBatch(records, kafkaConsumer);
+
+        // Then the counters are applied in the transaction that stores the offsets, not write-behind
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<Map<UUID, ThreadCounterDelta>> deltas = ArgumentCaptor.forClass(Map.class);
+        verify(threadCounterWriter).applyInTransaction(deltas.capture(), eq(Set.of(threadId)));
+        assertThat(deltas.getValue()).containsOnlyKeys(threadId, otherThreadId);
+        assertThat(deltas.getValue().get(threadId).replies()).isEqualTo(1);
+        verify(dimThreadRepository).save(any(DimThread.class));
+        verifyNoInteractions(threadCounterBuffer);
+        verify(consumerOffsetRepository).saveOffsets(KafkaEventConsumer.GROUP_ID, Map.of(p0, 3L));
+    }
+
+    @Test
+    void shouldSeekToOffsetsStoredInPostgresOnAssignment() {
+        TopicPartition partition = new TopicPartition(TOPIC, 2);
+        when(consumerOffsetRepository.findOffsets(KafkaEventConsumer.GROUP_ID, Set.of(partition)))
+                .thenReturn(Map.of(partition, 41L));
+        ConsumerSeekCallback callback = org.mockito.Mockito.mock(ConsumerSeekCallback.class);
+
+        postgresOffsetConsumer().onPartitionsAssigned(Map.of(partition, 12L), callback);
+        consumer.onPartitionsAssigned(Map.of(partition, 12L), callback);
+
+        verify(callback).seek(TOPIC, 2, 41L);
+        verifyNoMoreInteractions(callback);
+    }
+
+    @Test
+    void shouldRecordIngestMetrics() throws Exception {
+        // Given two reactions on partition 3, a redelivery within the poll and a malformed record
+        long producedAt = Instant.now().minusSeconds(60).toEpochMilli();
+        byte[] first = objectMapper.writeValueAsBytes(reactionEvent(UUID.randomUUID()));
+        byte[] second = objectMapper.writeValueAsBytes(reactionEvent(UUID.randomUUID()));
+        List<ConsumerRecord<String, byte[]>> records = new ArrayList<>();
+        for (byte[] message : List.of(first, second, first, "{invalid-json}".getBytes(StandardCharsets.UTF_8))) {
+            records.add(new ConsumerRecord<>(TOPIC, 3, 100 + records.size(), producedAt, TimestampType.CREATE_TIME,
+                    0, 0, null, message, new RecordHeaders(), Optional.empty()));
+        }
+        when(eventDeduplicator.findDuplicates(anyCollection())).thenReturn(Set.of());
+        when(kafkaConsumer.currentLag(new TopicPartition(TOPIC, 3))).thenReturn(OptionalLong.of(42));
+        insertingAllFacts();
+
+        // When
+        consumer.consumeBatch(records, kafkaConsumer);
+
+        // Then
+        assertThat(eventCount("ingested", "ReactionAdded")).isEqualTo(2);
+        assertThat(eventCount("duplicate", "ReactionAdded")).isEqualTo(1);
+        assertThat(eventCount("failed", IngestionMetrics.UNKNOWN)).isEqualTo(1);
+        assertThat(meterRegistry.get("datalake.ingest.stage").tags("stage", "parse", "type", "ReactionAdded")
+                .timer().count()).isEqualTo(3);
+        assertThat(meterRegistry.get("datalake.ingest.stage").tags("stage", "write", "type", IngestionMetrics.BATCH)
+                .timer().count()).isEqualTo(1);
+        assertThat(meterRegistry.get("datalake.ingest.batch.size").summary().totalAmount()).isEqualTo(2);
+        assertThat(meterRegistry.get("datalake.ingest.lag").tag("partition", "3").gauge().value()).isEqualTo(42);
+        assertThat(meterRegistry.get("datalake.ingest.freshness").tag("partition", "3").gauge().value())
+                .isBetween(60.0, 120.0);
+    }
+
+    private void insertingAllFacts() {
+        when(factActivityBatchWriter.insertReturningEventIds(anyList()))
+                .thenAnswer(invocation -> eventIds(invocation.getArgument(0)));
+    }
+
+    private static Set<UUID> eventIds(List<FactActivity> facts) {
+        return facts.stream().map(FactActivity::getEventId).collect(Collectors.toSet());
+    }
+
+    private double eventCount(String outcome, String type) {
+        return meterRegistry.get("datalake.ingest.events").tags("outcome", outcome, "type", type).counter().count();
+    }
+
+    private KafkaEventConsumer parallelConsumer() {
+        return new KafkaEventConsumer(new ForumEventDecoder(objectMapper), eventIngestionService, ingestionMetrics,
+                failedEventRouter, offsetStore, "kafka", PARALLEL_LANES);
+    }
+
+    private KafkaEventConsumer postgresOffsetConsumer() {
+        PostgresOffsetStore store = new PostgresOffsetStore(consumerOffsetRepository, eventIngestionService,
+                ingestionMetrics);
+        return new KafkaEventConsumer(new ForumEventDecoder(objectMapper), eventIngestionService, ingestionMetrics,
+                failedEventRouter, store, "postgres", PARALLEL_LANES);
+    }
+
+    private static ConsumerRecord<String, byte[]> record(byte[] message) {
+        return records(List.of(message)).get(0);
+    }
+
+    private static List<ConsumerRecord<String, byte[]>> records(List<byte[]> messages) {
+        List<ConsumerRecord<String, byte[]>> records = new ArrayList<>(messages.size());
+        for (byte[] message : messages) {
+            records.add(new ConsumerRecord<>(TOPIC, 0, records.size(), null, message));
+        }
+        return records;
+    }
+
+    private static UUID threadInOtherLane(UUID threadId) {
+        UUID other;
+        do {
+            other = UUID.randomUUID();
+        } while (Math.floorMod(other.hashCode(), PARALLEL_LANES)
+                == Math.floorMod(threadId.hashCode(), PARALLEL_LANES));
+        return other;
+    }
+
+    private EventEnvelope postEvent(UUID eventId, UUID threadId) {
+        ObjectNode payload = objectMapper.createObjectNode();
+        payload.put("postId", UUID.randomUUID().toString());
+        payload.put("threadId", threadId.toString());
+        payload.put("authorId", UUID.randomUUID().toString());
+        return new EventEnvelope(eventId, "tenant-1", "PostCreated", Instant.now(), payload);
+    }
+
+    private EventEnvelope reactionEvent(UUID eventId) {
+        ObjectNode payload = objectMapper.createObjectNode();
+        payload.put("reactionId", UUID.randomUUID().toString());
+        payload.put("targetId", UUID.randomUUID().toString());
+        payload.put("reactorId", UUID.randomUUID().toString());
+        payload.put("type", "LIKE");
+        return new EventEnvelope(eventId, "tenant-1", "ReactionAdded", Instant.now(), payload);
     }
 }
@@ -0,0 +1,61 @@
+package com.openforum.datalake.ingestor;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.openforum.datalake.domain.FactActivity;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class MetadataProjectionTest {
+
+    private static final String RECORD = "{\"payload\":{\"threadId\":\"t-1\",\"content\":\"long body\","
+            + "\"tags\":[\"a\",{\"b\":1}],\"score\":2.5}}";
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Test
+    void shouldPassSliceThroughUntouchedWithoutAllowList() {
+        RawJson payload = payloadSlice();
+        FactActivity fact = factWith(payload);
+
+        new MetadataProjection(objectMapper, List.of(), true).apply(fact);
+
+        assertThat(fact.getRawMetadata()).isSameAs(payload);
+        assertThat(fact.getMetadata()).isNull();
+    }
+
+    @Test
+    void shouldKeepOnlyAllowedTopLevelFields() {
+        MetadataProjection projection = new MetadataProjection(objectMapper, List.of("threadId", "tags"), true);
+
+        RawJson projected = projection.project(payloadSlice());
+
+        assertThat(projected.asString()).isEqualTo("{\"threadId\":\"t-1\",\"tags\":[\"a\",{\"b\":1}]}");
+    }
+
+    @Test
+    void shouldMaterialiseMapWhenRawPassthroughIsDisabled() {
+        FactActivity fact = factWith(payloadSlice());
+
+        new MetadataProjection(objectMapper, List.of("score"), false).apply(fact);
+
+        assertThat(fact.getRawMetadata()).isNull();
+        assertThat(fact.getMetadata()).isEqualTo(Map.of("score", 2.5));
+    }
+
+    private static RawJson payloadSlice() {
+        byte[] record = RECORD.getBytes(StandardCharsets.UTF_8);
+        int offset = RECORD.indexOf("{\"threadId");
+        return new RawJson(record, offset, record.length - offset - 1);
+    }
+
+    private static FactActivity factWith(RawJson payload) {
+        FactActivity fact = new FactActivity();
+        fact.setRawMetadata(payload);
+        return fact;
+    }
+}
@@ -0,0 +1,75 @@
+package com.openforum.datalake.ingestor;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.openforum.datalake.domain.FactActivity;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class MetadataPromotionTest {
+
+    private static final String CATEGORY = "3f1c2a4e-9b7d-4c1e-8a2f-5d6e7f809a1b";
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final MetadataPromotion promotion = new MetadataPromotion(objectMapper, "categoryId", "sentiment",
+            "isAdmin");
+
+    @Test
+    void shouldPromoteTopLevelFieldsFromRawPayload() {
+        FactActivity fact = factWith("{\"nested\":{\"sentiment\":9},\"categoryId\":\"" + CATEGORY + "\","
+                + "\"sentiment\":-0.5,\"isAdmin\":true,\"content\":\"text\"}");
+
+        promotion.apply(fact);
+
+        assertThat(fact.getCategoryId()).isEqualTo(UUID.fromString(CATEGORY));
+        assertThat(fact.getSentiment()).isEqualTo(-0.5);
+        assertThat(fact.getIsAdmin()).isTrue();
+    }
+
+    @Test
+    void shouldLeaveColumnsNullForValuesOfTheWrongType() {
+        FactActivity fact = factWith("{\"categoryId\":\"1-2-3-4-5\",\"sentiment\":\"high\",\"isAdmin\":1}");
+
+        promotion.apply(fact);
+
+        assertThat(fact.getCategoryId()).isNull();
+        assertThat(fact.getSentiment()).isNull();
+        assertThat(fact.getIsAdmin()).isNull();
+    }
+
+    @Test
+    void shouldPromoteBeforeTheProjectionDropsTheFields() {
+        FactActivity fact = factWith("{\"sentiment\":1,\"content\":\"text\"}");
+
+        promotion.apply(fact);
+        new MetadataProjection(objectMapper, List.of("content"), false).apply(fact);
+
+        assertThat(fact.getSentiment()).isEqualTo(1.0);
+        assertThat(fact.getMetadata()).isEqualTo(Map.of("content", "text"));
+    }
+
+    @Test
+    void shouldReadMapMetadataAndSkipUnconfiguredColumns() {
+        MetadataPromotion sentimentOnly = new MetadataPromotion(objectMapper, "", "score", " ");
+        FactActivity fact = new FactActivity();
+        fact.setMetadata(Map.of("categoryId", CATEGORY, "score", 3, "isAdmin", true));
+
+        sentimentOnly.apply(fact);
+
+        assertThat(sentimentOnly.sourceFields()).isEqualTo(Map.of(MetadataPromotion.SENTIMENT, "score"));
+        assertThat(fact.getSentiment()).isEqualTo(3.0);
+        assertThat(fact.getCategoryId()).isNull();
+        assertThat(fact.getIsAdmin()).isNull();
+    }
+
+    private static FactActivity factWith(String payload) {
+        FactActivity fact = new FactActivity();
+        fact.setRawMetadata(RawJson.of(payload.getBytes(StandardCharsets.UTF_8)));
+        return fact;
+    }
+}
@@ -0,0 +1,129 @@
+package com.openforum.datalake.ingestor.counters;
+
+import com.openforum.datalake.repository.PendingThreadReplyRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class OrphanReplyBufferTest {
+
+    private static final Instant T0 = Instant.parse("2024-05-01T10:00:00Z");
+    private static final Instant NOW = T0.plus(Duration.ofHours(2));
+
+    @Mock
+    private PendingThreadReplyRepository repository;
+
+    @Mock
+    private Clock clock;
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private OrphanReplyBuffer buffer;
+
+    @BeforeEach
+    void setUp() {
+        // Room for four threads
+        buffer = new OrphanReplyBuffer(repository, registry, 4 * OrphanReplyBuffer.ENTRY_BYTES, Duration.ofHours(1),
+                clock);
+    }
+
+    @Test
+    void shouldCoalesceAndClaimBufferedReplies() {
+        when(clock.instant()).thenReturn(NOW);
+        UUID threadId = UUID.randomUUID();
+        buffer.park(Map.of(threadId, new ThreadCounterDelta(1, T0, T0)));
+        buffer.park(Map.of(threadId, new ThreadCounterDelta(2, T0.plusSeconds(60), null)));
+        UUID spilled = UUID.randomUUID();
+        when(repository.claim(List.of(threadId, spilled)))
+                .thenReturn(Map.of(spilled, new ThreadCounterDelta(5, T0, null)));
+
+        Map<UUID, ThreadCounterDelta> claimed = buffer.claim(List.of(threadId, spilled));
+
+        assertThat(claimed).containsEntry(threadId, new ThreadCounterDelta(3, T0.plusSeconds(60), T0))
+                .containsEntry(spilled, new ThreadCounterDelta(5, T0, null));
+        assertThat(buffer.bufferedThreads()).isZero();
+    }
+
+    @Test
+    void shouldSpillOldestHalfWhenOverBudget() {
+        UUID oldest = UUID.randomUUID();
+        UUID older = UUID.randomUUID();
+        UUID old = UUID.randomUUID();
+        when(clock.instant()).thenReturn(NOW, NOW.plusSeconds(1), NOW.plusSeconds(2), NOW.plusSeconds(3),
+                NOW.plusSeconds(4));
+        buffer.park(Map.of(oldest, delta()));
+        buffer.park(Map.of(older, delta()));
+        buffer.park(Map.of(old, delta()));
+        buffer.park(Map.of(UUID.randomUUID(), delta()));
+        assertThat(registry.get("datalake.ingest.orphans.memory").gauge().value())
+                .isEqualTo(4.0 * OrphanReplyBuffer.ENTRY_BYTES);
+
+        buffer.park(Map.of(UUID.randomUUID(), delta()));
+
+        Map<UUID, OrphanedReplies> spilled = captureSpill();
+        assertThat(spilled).containsOnlyKeys(oldest, older, old);
+        assertThat(spilled.get(oldest)).isEqualTo(new OrphanedReplies(delta(), NOW));
+        assertThat(buffer.bufferedThreads()).isEqualTo(2);
+    }
+
+    @Test
+    void shouldKeepOrphansInMemoryWhenSpillFails() {
+        when(clock.instant()).thenReturn(NOW);
+        doThrow(new IllegalStateException("database down")).when(repository).spill(anyMap());
+
+        for (int i = 0; i < 5; i++) {
+            buffer.park(Map.of(UUID.randomUUID(), delta()));
+        }
+
+        assertThat(buffer.bufferedThreads()).isEqualTo(5);
+    }
+
+    @Test
+    void shouldAdoptCreatedThreadsAndExpireStaleOrphans() {
+        Instant later = NOW.plus(Duration.ofMinutes(90));
+        when(clock.instant()).thenReturn(NOW, later);
+        buffer.park(Map.of(UUID.randomUUID(), delta()));
+        UUID created = UUID.randomUUID();
+        UUID waiting = UUID.randomUUID();
+        buffer.park(Map.of(created, delta(), waiting, delta()));
+        when(repository.findExistingThreads(anyList())).thenReturn(List.of(created));
+        when(repository.expire(any())).thenReturn(2);
+
+        Map<UUID, ThreadCounterDelta> claimed = buffer.claimResolved();
+
+        assertThat(claimed).containsOnlyKeys(created);
+        assertThat(buffer.bufferedThreads()).isEqualTo(1);
+        verify(repository).expire(later.minus(Duration.ofHours(1)));
+        assertThat(registry.get("datalake.ingest.orphans.expired").counter().count()).isEqualTo(3.0);
+    }
+
+    private static ThreadCounterDelta delta() {
+        return new ThreadCounterDelta(1, T0, T0);
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<UUID, OrphanedReplies> captureSpill() {
+        ArgumentCaptor<Map<UUID, OrphanedReplies>> captor = ArgumentCaptor.forClass(Map.class);
+        verify(repository).spill(captor.capture());
+        return captor.getValue();
+    }
+}
@@ -0,0 +1,171 @@
+package com.openforum.datalake.ingestor.counters;
+
+import com.openforum.datalake.repository.ThreadCounterWriter;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class ThreadCounterBufferTest {
+
+    private static final Instant T0 = Instant.parse("2024-05-01T10:00:00Z");
+
+    @Mock
+    private ThreadCounterWriter writer;
+
+    @Mock
+    private OrphanReplyBuffer orphans;
+
+    private ThreadCounterBuffer buffer;
+
+    @BeforeEach
+    void setUp() {
+        buffer = new ThreadCounterBuffer(writer, orphans);
+    }
+
+    @AfterEach
+    void clearSynchronization() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clear();
+        }
+    }
+
+    @Test
+    void shouldCoalesceRepliesPerThread() {
+        UUID hot = UUID.randomUUID();
+        UUID quiet = UUID.randomUUID();
+        buffer.recordReply(hot, T0.plusSeconds(60), true);
+        buffer.recordReply(hot, T0.plusSeconds(180), false);
+        buffer.recordReply(hot, T0.plusSeconds(120), true);
+        buffer.recordReply(quiet, T0, false);
+        when(writer.apply(anyMap())).thenReturn(List.of());
+
+        buffer.flush();
+
+        Map<UUID, ThreadCounterDelta> flushed = captureFlush();
+        assertThat(flushed).containsOnlyKeys(hot, quiet);
+        assertThat(flushed.get(hot)).isEqualTo(new ThreadCounterDelta(3, T0.plusSeconds(180), T0.plusSeconds(60)));
+        assertThat(flushed.get(quiet)).isEqualTo(new ThreadCounterDelta(1, T0, null));
+        assertThat(buffer.pendingThreads()).isZero();
+    }
+
+    @Test
+    void shouldOnlyBufferRepliesOfCommittedTransactions() {
+        UUID threadId = UUID.randomUUID();
+
+        TransactionSynchronizationManager.initSynchronization();
+        buffer.recordReply(threadId, T0, true);
+        assertThat(buffer.pendingThreads()).isZero();
+        completeTransaction(TransactionSynchronization.STATUS_ROLLED_BACK, false);
+
+        TransactionSynchronizationManager.initSynchronization();
+        buffer.recordReply(threadId, T0.plusSeconds(1), true);
+        buffer.recordReply(threadId, T0.plusSeconds(2), true);
+        completeTransaction(TransactionSynchronization.STATUS_COMMITTED, true);
+
+        assertThat(buffer.pendingThreads()).isEqualTo(1);
+        when(writer.apply(anyMap())).thenReturn(List.of());
+        buffer.flush();
+        assertThat(captureFlush().get(threadId).replies()).isEqualTo(2);
+    }
+
+    @Test
+    void shouldKeepCountersWhenFlushFails() {
+        UUID threadId = UUID.randomUUID();
+        buffer.recordReply(threadId, T0, true);
+        when(writer.apply(anyMap())).thenThrow(new IllegalStateException("database down"));
+
+        assertThatThrownBy(buffer::flush).isInstanceOf(IllegalStateException.class);
+
+        assertThat(buffer.pendingThreads()).isEqualTo(1);
+    }
+
+    @Test
+    void shouldNotTouchDatabaseWhenNothingIsPending() {
+        assertThat(buffer.flush()).isEmpty();
+        verifyNoInteractions(writer, orphans);
+    }
+
+    @Test
+    void shouldParkRepliesOfUnknownThreads() {
+        UUID known = UUID.randomUUID();
+        UUID unknown = UUID.randomUUID();
+        buffer.recordReply(known, T0, true);
+        buffer.recordReply(unknown, T0.plusSeconds(5), true);
+        when(writer.apply(anyMap())).thenReturn(List.of(unknown));
+
+        assertThat(buffer.flush()).containsExactly(unknown);
+
+        verify(orphans).park(Map.of(unknown, new ThreadCounterDelta(1, T0.plusSeconds(5), T0.plusSeconds(5))));
+    }
+
+    @Test
+    void shouldMergeOrphanedRepliesIntoFlushAfterThreadCommits() {
+        UUID threadId = UUID.randomUUID();
+        ThreadCounterDelta orphaned = new ThreadCounterDelta(2, T0.plusSeconds(30), T0.plusSeconds(10));
+
+        TransactionSynchronizationManager.initSynchronization();
+        buffer.recordThreadCreated(threadId);
+        buffer.recordReply(threadId, T0.plusSeconds(60), true);
+        // Not adopted before the thread is committed
+        assertThat(buffer.flush()).isEmpty();
+        completeTransaction(TransactionSynchronization.STATUS_COMMITTED, true);
+
+        when(orphans.claim(List.of(threadId))).thenReturn(Map.of(threadId, orphaned));
+        when(writer.apply(anyMap())).thenReturn(List.of());
+        buffer.flush();
+
+        assertThat(captureFlush().get(threadId))
+                .isEqualTo(new ThreadCounterDelta(3, T0.plusSeconds(60), T0.plusSeconds(10)));
+        verify(orphans, never()).park(anyMap());
+    }
+
+    @Test
+    void shouldQueueResolvedOrphansForNextFlush() {
+        UUID threadId = UUID.randomUUID();
+        when(orphans.claimResolved()).thenReturn(Map.of(threadId, new ThreadCounterDelta(4, T0, null)));
+
+        buffer.adoptResolvedOrphans();
+
+        // Spilled counters are applied directly, buffered ones with the next flush
+        verify(writer).adoptPendingReplies();
+        assertThat(buffer.pendingThreads()).isEqualTo(1);
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<UUID, ThreadCounterDelta> captureFlush() {
+        ArgumentCaptor<Map<UUID, ThreadCounterDelta>> captor = ArgumentCaptor.forClass(Map.class);
+        verify(writer).apply(captor.capture());
+        return captor.getValue();
+    }
+
+    private static void completeTransaction(int status, boolean committed) {
+        List<TransactionSynchronization> synchronizations = TransactionSynchronizationManager.getSynchronizations();
+        TransactionSynchronizationManager.clearSynchronization();
+        for (TransactionSynchronization synchronization : synchronizations) {
+            if (committed) {
+                synchronization.afterCommit();
+            }
+            synchronization.afterCompletion(status);
+        }
+    }
+}
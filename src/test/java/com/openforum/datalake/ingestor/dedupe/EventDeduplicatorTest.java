@@ -0,0 +1,101 @@
+package com.openforum.datalake.ingestor.dedupe;
+
+import com.openforum.datalake.repository.ProcessedEventLedger;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.function.Consumer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class EventDeduplicatorTest {
+
+    @Mock
+    private ProcessedEventLedger ledger;
+
+    private EventDeduplicator deduplicator;
+
+    @BeforeEach
+    void setUp() {
+        deduplicator = new EventDeduplicator(ledger, 10_000, 0.01);
+    }
+
+    @Test
+    void shouldUseLedgerUntilFilterIsRebuilt() {
+        UUID eventId = UUID.randomUUID();
+        when(ledger.findRecorded(List.of(eventId))).thenReturn(Set.of(eventId));
+
+        assertThat(deduplicator.isDuplicate(eventId)).isTrue();
+    }
+
+    @Test
+    void shouldSkipLedgerForEventsTheFilterHasNeverSeen() {
+        rebuildWith(List.of());
+
+        assertThat(deduplicator.findDuplicates(List.of(UUID.randomUUID(), UUID.randomUUID()))).isEmpty();
+        verify(ledger, never()).findRecorded(anyCollection());
+    }
+
+    @Test
+    void shouldConfirmPossibleHitsAgainstLedger() {
+        UUID known = UUID.randomUUID();
+        UUID fresh = UUID.randomUUID();
+        rebuildWith(List.of(known));
+        when(ledger.findRecorded(List.of(known))).thenReturn(Set.of(known));
+
+        assertThat(deduplicator.findDuplicates(List.of(known, fresh))).containsExactly(known);
+    }
+
+    @Test
+    void shouldRecordProcessedEventsInLedgerAndFilter() {
+        rebuildWith(List.of());
+        UUID eventId = UUID.randomUUID();
+
+        deduplicator.markProcessed(List.of(eventId));
+
+        verify(ledger).recordAll(List.of(eventId));
+        when(ledger.findRecorded(List.of(eventId))).thenReturn(Set.of(eventId));
+        assertThat(deduplicator.isDuplicate(eventId)).isTrue();
+    }
+
+    @Test
+    void shouldKeepFalsePositiveRateNearTarget() {
+        UuidBloomFilter filter = UuidBloomFilter.create(100_000, 0.01);
+        for (int i = 0; i < 100_000; i++) {
+            filter.put(UUID.randomUUID());
+        }
+
+        int probes = 100_000;
+        int falsePositives = 0;
+        for (int i = 0; i < probes; i++) {
+            if (filter.mightContain(UUID.randomUUID())) {
+                falsePositives++;
+            }
+        }
+
+        assertThat((double) falsePositives / probes).isLessThan(0.015);
+    }
+
+    @SuppressWarnings("unchecked")
+    private void rebuildWith(List<UUID> recorded) {
+        doAnswer(invocation -> {
+            new ArrayList<>(recorded).forEach(invocation.getArgument(0, Consumer.class));
+            return null;
+        }).when(ledger).forEachEventId(any());
+        deduplicator.rebuildFilter();
+    }
+}
@@ -0,0 +1,153 @@
+package com.openforum.datalake.ingestor.offsets;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.openforum.datalake.ingestor.EventEnvelope;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.testcontainers.service.connection.ServiceConnection;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.kafka.config.KafkaListenerEndpointRegistry;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.listener.MessageListenerContainer;
+import org.springframework.kafka.test.context.EmbeddedKafka;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
+
+@SpringBootTest(properties = {
+        "datalake.ingestion.offsets.store=postgres",
+        "datalake.ingestion.batch.enabled=true",
+        "datalake.ingestion.parallelism.lanes=2",
+        // Nothing may depend on the write-behind counter buffer
+        "datalake.ingestion.thread-counters.flush-interval-ms=3600000",
+        "datalake.ingestion.thread-counters.orphans.recheck-interval-ms=3600000"
+})
+@EmbeddedKafka(topics = "forum-events-v1", partitions = 2,
+        bootstrapServersProperty = "spring.kafka.bootstrap-servers")
+@Testcontainers
+class PostgresOffsetIngestionTest {
+
+    private static final String TOPIC = "forum-events-v1";
+
+    @Container
+    @ServiceConnection
+    static PostgreSQLContainer<?> postgres = new PostgreSQLContainer<>("postgres:16-alpine");
+
+    @Autowired
+    private KafkaTemplate<String, String> kafkaTemplate;
+
+    @Autowired
+    private KafkaListenerEndpointRegistry listenerRegistry;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Test
+    void shouldStoreOffsetsWithFactsAndResumeFromThem() throws Exception {
+        for (int i = 0; i < 10; i++) {
+            send(i % 2);
+        }
+
+        await().atMost(Duration.ofSeconds(30)).untilAsserted(() -> {
+            assertThat(countFacts()).isEqualTo(10);
+            assertThat(storedOffset(0) + storedOffset(1)).isEqualTo(10);
+        });
+        // Not consulted, but kept for the retry consumers and a switch back to Kafka offsets
+        assertThat(jdbcTemplate.queryForObject("SELECT COUNT(*) FROM processed_events", Long.class)).isEqualTo(10);
+
+        // Records that Kafka still considers unconsumed but whose position Postgres has passed are not applied
+        MessageListenerContainer container = listenerRegistry.getListenerContainer("forum-events-batch");
+        container.stop();
+        for (int i = 0; i < 3; i++) {
+            send(0);
+        }
+        jdbcTemplate.update("UPDATE consumer_offsets SET next_offset = next_offset + 3 WHERE partition_id = 0");
+        container.start();
+        send(0);
+
+        await().atMost(Duration.ofSeconds(30)).untilAsserted(() -> {
+            assertThat(storedOffset(0)).isEqualTo(9);
+            assertThat(countFacts()).isEqualTo(11);
+        });
+
+        // Reply counters commit with the positions; a reply that overtook its thread is spilled and claimed by it
+        UUID threadId = UUID.randomUUID();
+        UUID lateThreadId = UUID.randomUUID();
+        send(0, "ThreadCreated", thread(threadId));
+        send(0, "PostCreated", reply(threadId));
+        send(0, "PostCreated", reply(threadId));
+        send(1, "PostCreated", reply(lateThreadId));
+
+        await().atMost(Duration.ofSeconds(30)).untilAsserted(() -> {
+            assertThat(storedOffset(0)).isEqualTo(12);
+            assertThat(storedOffset(1)).isEqualTo(6);
+        });
+        assertThat(replyCount(threadId)).isEqualTo(2);
+        assertThat(jdbcTemplate.queryForObject("SELECT replies FROM pending_thread_replies WHERE thread_id = ?",
+                Integer.class, lateThreadId)).isEqualTo(1);
+
+        send(0, "ThreadCreated", thread(lateThreadId));
+
+        await().atMost(Duration.ofSeconds(30)).untilAsserted(() -> assertThat(storedOffset(0)).isEqualTo(13));
+        assertThat(replyCount(lateThreadId)).isEqualTo(1);
+        assertThat(jdbcTemplate.queryForObject("SELECT COUNT(*) FROM pending_thread_replies", Long.class)).isZero();
+    }
+
+    private void send(int partition) throws Exception {
+        ObjectNode payload = objectMapper.createObjectNode();
+        payload.put("reactionId", UUID.randomUUID().toString());
+        payload.put("targetId", UUID.randomUUID().toString());
+        payload.put("reactorId", UUID.randomUUID().toString());
+        payload.put("type", "LIKE");
+        send(partition, "ReactionAdded", payload);
+    }
+
+    private void send(int partition, String eventType, ObjectNode payload) throws Exception {
+        EventEnvelope event = new EventEnvelope(UUID.randomUUID(), "tenant-offsets", eventType, Instant.now(),
+                payload);
+        kafkaTemplate.send(TOPIC, partition, null, objectMapper.writeValueAsString(event)).get();
+    }
+
+    private ObjectNode thread(UUID threadId) {
+        ObjectNode payload = objectMapper.createObjectNode();
+        payload.put("threadId", threadId.toString());
+        payload.put("authorId", UUID.randomUUID().toString());
+        payload.put("title", "Counted with its offsets");
+        return payload;
+    }
+
+    private ObjectNode reply(UUID threadId) {
+        ObjectNode payload = objectMapper.createObjectNode();
+        payload.put("postId", UUID.randomUUID().toString());
+        payload.put("threadId", threadId.toString());
+        payload.put("authorId", UUID.randomUUID().toString());
+        return payload;
+    }
+
+    private int replyCount(UUID threadId) {
+        return jdbcTemplate.queryForObject("SELECT reply_count FROM dim_threads WHERE thread_id = ?", Integer.class,
+                threadId);
+    }
+
+    private long countFacts() {
+        return jdbcTemplate.queryForObject("SELECT COUNT(*) FROM fact_activity f JOIN dim_tenants t USING (tenant_code)"
+                + " WHERE t.tenant_id = 'tenant-offsets'", Long.class);
+    }
+
+    private long storedOffset(int partition) {
+        return jdbcTemplate.queryForList("SELECT next_offset FROM consumer_offsets WHERE topic = ? AND partition_id = ?",
+                Long.class, TOPIC, partition).stream().findFirst().orElse(0L);
+    }
+}
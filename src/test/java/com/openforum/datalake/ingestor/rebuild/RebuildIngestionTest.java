@@ -0,0 +1,142 @@
+package com.openforum.datalake.ingestor.rebuild;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.openforum.datalake.dto.RebuildStatus;
+import com.openforum.datalake.dto.RebuildStatus.Phase;
+import com.openforum.datalake.ingestor.EventEnvelope;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.testcontainers.service.connection.ServiceConnection;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.test.context.EmbeddedKafka;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
+
+@SpringBootTest(properties = {
+        "datalake.ingestion.batch.enabled=true",
+        "datalake.rebuild.catch-up-records=0"
+})
+@EmbeddedKafka(topics = "forum-events-v1", partitions = 2,
+        bootstrapServersProperty = "spring.kafka.bootstrap-servers")
+@Testcontainers
+class RebuildIngestionTest {
+
+    private static final String TOPIC = "forum-events-v1";
+    private static final String TENANT = "tenant-rebuild";
+    private static final Instant CREATED = Instant.parse("2024-05-10T08:00:00Z");
+
+    @Container
+    @ServiceConnection
+    static PostgreSQLContainer<?> postgres = new PostgreSQLContainer<>("postgres:16-alpine");
+
+    @Autowired
+    private KafkaTemplate<String, String> kafkaTemplate;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private RebuildService rebuildService;
+
+    @Test
+    void shouldRebuildTablesFromTheTopicAndSwapThemIn() throws Exception {
+        UUID threadId = UUID.randomUUID();
+        sendThread(threadId);
+        sendPost(threadId, CREATED.plusSeconds(300));
+        sendPost(threadId, CREATED.plusSeconds(600));
+        sendReaction(threadId);
+        await().atMost(Duration.ofSeconds(30)).untilAsserted(() -> {
+            assertThat(countFacts()).isEqualTo(4);
+            assertThat(replyCount(threadId)).isEqualTo(2);
+        });
+
+        // Rows as an older mapping would have written them
+        jdbcTemplate.update("UPDATE dim_threads SET title = 'Old mapping', reply_count = 0 WHERE thread_id = ?",
+                threadId);
+        jdbcTemplate.update("DELETE FROM fact_activity WHERE activity_code = "
+                + "(SELECT activity_code FROM dim_activity_types WHERE activity_type = 'REACTION')");
+
+        rebuildService.start();
+        await().atMost(Duration.ofSeconds(60))
+                .until(() -> rebuildService.status().phase() == Phase.COMPLETED
+                        || rebuildService.status().phase() == Phase.FAILED);
+        RebuildStatus status = rebuildService.status();
+        assertThat(status.error()).isNull();
+        assertThat(status.phase()).isEqualTo(Phase.COMPLETED);
+        assertThat(status.recordsRead()).isEqualTo(4);
+
+        Map<String, Object> thread = jdbcTemplate.queryForMap(
+                "SELECT title, reply_count, response_time_minutes FROM dim_threads WHERE thread_id = ?", threadId);
+        assertThat(thread.get("title")).isEqualTo("Original title");
+        assertThat(thread.get("reply_count")).isEqualTo(2);
+        assertThat(thread.get("response_time_minutes")).isEqualTo(5);
+        assertThat(countFacts()).isEqualTo(4);
+        assertThat(jdbcTemplate.queryForObject("SELECT title FROM dim_threads_retired WHERE thread_id = ?",
+                String.class, threadId)).isEqualTo("Old mapping");
+
+        // Live ingestion resumes on the swapped-in tables
+        sendPost(threadId, CREATED.plusSeconds(1200));
+        await().atMost(Duration.ofSeconds(30)).untilAsserted(() -> {
+            assertThat(countFacts()).isEqualTo(5);
+            assertThat(replyCount(threadId)).isEqualTo(3);
+        });
+    }
+
+    private void sendThread(UUID threadId) throws Exception {
+        ObjectNode payload = objectMapper.createObjectNode();
+        payload.put("threadId", threadId.toString());
+        payload.put("authorId", UUID.randomUUID().toString());
+        payload.put("title", "Original title");
+        payload.put("createdAt", CREATED.toString());
+        send(threadId, "ThreadCreated", CREATED, payload);
+    }
+
+    private void sendPost(UUID threadId, Instant occurredAt) throws Exception {
+        ObjectNode payload = objectMapper.createObjectNode();
+        payload.put("postId", UUID.randomUUID().toString());
+        payload.put("threadId", threadId.toString());
+        payload.put("authorId", UUID.randomUUID().toString());
+        payload.put("content", "Reply");
+        payload.put("createdAt", occurredAt.toString());
+        send(threadId, "PostCreated", occurredAt, payload);
+    }
+
+    private void sendReaction(UUID threadId) throws Exception {
+        ObjectNode payload = objectMapper.createObjectNode();
+        payload.put("reactionId", UUID.randomUUID().toString());
+        payload.put("targetId", threadId.toString());
+        payload.put("reactorId", UUID.randomUUID().toString());
+        payload.put("type", "LIKE");
+        send(threadId, "ReactionAdded", CREATED.plusSeconds(60), payload);
+    }
+
+    private void send(UUID threadId, String type, Instant occurredAt, ObjectNode payload) throws Exception {
+        EventEnvelope event = new EventEnvelope(UUID.randomUUID(), TENANT, type, occurredAt, payload);
+        kafkaTemplate.send(TOPIC, threadId.toString(), objectMapper.writeValueAsString(event)).get();
+    }
+
+    private long countFacts() {
+        return jdbcTemplate.queryForObject("SELECT COUNT(*) FROM fact_activity f JOIN dim_tenants t USING (tenant_code)"
+                + " WHERE t.tenant_id = ?", Long.class, TENANT);
+    }
+
+    private Integer replyCount(UUID threadId) {
+        return jdbcTemplate.queryForList("SELECT reply_count FROM dim_threads WHERE thread_id = ?", Integer.class,
+                threadId).stream().findFirst().orElse(null);
+    }
+}
@@ -0,0 +1,120 @@
+package com.openforum.datalake.ingestor.retry;
+
+import com.openforum.datalake.ingestor.IngestionMetrics;
+import com.openforum.datalake.ingestor.IngestionMetrics.Stage;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.QueryTimeoutException;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.support.SendResult;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.concurrent.CompletableFuture;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class FailedEventRouterTest {
+
+    private static final Instant NOW = Instant.parse("2024-05-01T10:00:00Z");
+    private static final byte[] PAYLOAD = "{\"eventId\":\"x\"}".getBytes(StandardCharsets.UTF_8);
+
+    @Mock
+    private KafkaTemplate<String, byte[]> kafkaTemplate;
+
+    private FailedEventRouter router;
+
+    @BeforeEach
+    void setUp() {
+        router = new FailedEventRouter(kafkaTemplate, new IngestionMetrics(new SimpleMeterRegistry()), 1_000, 10,
+                60_000, Clock.fixed(NOW, ZoneOffset.UTC));
+    }
+
+    @Test
+    void shouldSendTransientFailureToFirstRetryTopic() {
+        when(kafkaTemplate.send(any(ProducerRecord.class))).thenReturn(sent());
+
+        router.route(new ConsumerRecord<>("forum-events-v1", 2, 42L, "key", PAYLOAD), "PostCreated", Stage.WRITE,
+                new RuntimeException("wrapper", new QueryTimeoutException("statement timeout")));
+
+        ProducerRecord<String, byte[]> routed = captureSent();
+        assertThat(routed.topic()).isEqualTo(FailedEventRouter.RETRY_TOPIC_0);
+        assertThat(routed.key()).isEqualTo("key");
+        assertThat(routed.value()).isEqualTo(PAYLOAD);
+        assertThat(header(routed, FailedEventRouter.HEADER_STAGE)).isEqualTo("write");
+        assertThat(header(routed, FailedEventRouter.HEADER_REASON))
+                .isEqualTo(QueryTimeoutException.class.getName() + ": statement timeout");
+        assertThat(header(routed, FailedEventRouter.HEADER_ATTEMPTS)).isEqualTo("1");
+        assertThat(header(routed, FailedEventRouter.HEADER_DUE_AT))
+                .isEqualTo(Long.toString(NOW.toEpochMilli() + 1_000));
+        assertThat(header(routed, FailedEventRouter.HEADER_ORIGINAL_PARTITION)).isEqualTo("2");
+        assertThat(header(routed, FailedEventRouter.HEADER_ORIGINAL_OFFSET)).isEqualTo("42");
+    }
+
+    @Test
+    void shouldBackOffExponentiallyAndKeepOriginalCoordinates() {
+        when(kafkaTemplate.send(any(ProducerRecord.class))).thenReturn(sent());
+        ConsumerRecord<String, byte[]> retried = new ConsumerRecord<>(FailedEventRouter.RETRY_TOPIC_1, 0, 7L, null,
+                PAYLOAD);
+        retried.headers().add(FailedEventRouter.HEADER_ATTEMPTS, "2".getBytes(StandardCharsets.UTF_8));
+        retried.headers().add(FailedEventRouter.HEADER_ORIGINAL_OFFSET, "42".getBytes(StandardCharsets.UTF_8));
+
+        router.route(retried, "PostCreated", Stage.WRITE, new QueryTimeoutException("statement timeout"));
+
+        ProducerRecord<String, byte[]> routed = captureSent();
+        assertThat(routed.topic()).isEqualTo(FailedEventRouter.RETRY_TOPIC_2);
+        assertThat(header(routed, FailedEventRouter.HEADER_ATTEMPTS)).isEqualTo("3");
+        assertThat(header(routed, FailedEventRouter.HEADER_DUE_AT))
+                .isEqualTo(Long.toString(NOW.toEpochMilli() + 60_000)); // 100 s capped at max-delay
+        assertThat(header(routed, FailedEventRouter.HEADER_ORIGINAL_OFFSET)).isEqualTo("42");
+        assertThat(routed.headers().headers(FailedEventRouter.HEADER_ATTEMPTS)).hasSize(1);
+    }
+
+    @Test
+    void shouldDeadLetterPoisonAndExhaustedRecords() {
+        when(kafkaTemplate.send(any(ProducerRecord.class))).thenReturn(sent());
+        ConsumerRecord<String, byte[]> exhausted = new ConsumerRecord<>(FailedEventRouter.RETRY_TOPIC_2, 0, 7L, null,
+                PAYLOAD);
+        exhausted.headers().add(FailedEventRouter.HEADER_ATTEMPTS, "3".getBytes(StandardCharsets.UTF_8));
+
+        router.route(exhausted, "PostCreated", Stage.WRITE, new QueryTimeoutException("statement timeout"));
+        router.route(new ConsumerRecord<>("forum-events-v1", 0, 1L, null, PAYLOAD), "PostCreated", Stage.WRITE,
+                new NullPointerException("PostCreated without threadId"));
+
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<ProducerRecord<String, byte[]>> captor = ArgumentCaptor.forClass(ProducerRecord.class);
+        verify(kafkaTemplate, org.mockito.Mockito.times(2)).send(captor.capture());
+        assertThat(captor.getAllValues()).extracting(ProducerRecord::topic)
+                .containsOnly(FailedEventRouter.DEAD_LETTER_TOPIC);
+        assertThat(header(captor.getAllValues().get(0), FailedEventRouter.HEADER_ATTEMPTS)).isEqualTo("3");
+        assertThat(captor.getAllValues().get(1).headers().lastHeader(FailedEventRouter.HEADER_DUE_AT)).isNull();
+    }
+
+    private ProducerRecord<String, byte[]> captureSent() {
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<ProducerRecord<String, byte[]>> captor = ArgumentCaptor.forClass(ProducerRecord.class);
+        verify(kafkaTemplate).send(captor.capture());
+        return captor.getValue();
+    }
+
+    private static String header(ProducerRecord<String, byte[]> record, String key) {
+        return FailedEventRouter.header(record.headers(), key);
+    }
+
+    private static CompletableFuture<SendResult<String, byte[]>> sent() {
+        return CompletableFuture.completedFuture(null);
+    }
+}
@@ -0,0 +1,90 @@
+package com.openforum.datalake.ingestor.retry;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.openforum.datalake.ingestor.EventEnvelope;
+import com.openforum.datalake.ingestor.EventIngestionService;
+import com.openforum.datalake.ingestor.ForumEventDecoder;
+import com.openforum.datalake.ingestor.IngestionMetrics.Stage;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.QueryTimeoutException;
+import org.springframework.kafka.support.Acknowledgment;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.UUID;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class RetryEventConsumerTest {
+
+    private static final Instant NOW = Instant.parse("2024-05-01T10:00:00Z");
+
+    @Mock
+    private EventIngestionService eventIngestionService;
+
+    @Mock
+    private FailedEventRouter failedEventRouter;
+
+    @Mock
+    private Acknowledgment acknowledgment;
+
+    private ObjectMapper objectMapper;
+    private RetryEventConsumer consumer;
+
+    @BeforeEach
+    void setUp() {
+        objectMapper = new ObjectMapper();
+        objectMapper.registerModule(new JavaTimeModule());
+        consumer = new RetryEventConsumer(new ForumEventDecoder(objectMapper), eventIngestionService,
+                failedEventRouter, Clock.fixed(NOW, ZoneOffset.UTC));
+    }
+
+    @Test
+    void shouldPauseUntilRecordIsDue() throws Exception {
+        ConsumerRecord<String, byte[]> record = retryRecord(NOW.plusSeconds(5));
+
+        consumer.consumeRetry(record, acknowledgment);
+
+        verify(acknowledgment).nack(Duration.ofSeconds(5));
+        verifyNoInteractions(eventIngestionService, failedEventRouter);
+    }
+
+    @Test
+    void shouldRouteRecordThatFailsAgain() throws Exception {
+        ConsumerRecord<String, byte[]> record = retryRecord(NOW.minusSeconds(1));
+        QueryTimeoutException failure = new QueryTimeoutException("statement timeout");
+        when(eventIngestionService.ingestBatch(anyList(), any())).thenThrow(failure);
+
+        consumer.consumeRetry(record, acknowledgment);
+
+        verify(failedEventRouter).route(eq(record), eq("ReactionAdded"), eq(Stage.WRITE), eq(failure));
+        verify(acknowledgment).acknowledge();
+    }
+
+    private ConsumerRecord<String, byte[]> retryRecord(Instant dueAt) throws Exception {
+        ObjectNode payload = objectMapper.createObjectNode();
+        payload.put("targetId", UUID.randomUUID().toString());
+        ConsumerRecord<String, byte[]> record = new ConsumerRecord<>(FailedEventRouter.RETRY_TOPIC_0, 0, 0L, null,
+                objectMapper.writeValueAsBytes(
+                        new EventEnvelope(UUID.randomUUID(), "tenant-1", "ReactionAdded", Instant.now(), payload)));
+        record.headers().add(FailedEventRouter.HEADER_DUE_AT,
+                Long.toString(dueAt.toEpochMilli()).getBytes(StandardCharsets.UTF_8));
+        return record;
+    }
+}
@@ -0,0 +1,67 @@
+package com.openforum.datalake.job;
+
+import com.openforum.datalake.repository.ActivityBucketRepository;
+import com.openforum.datalake.repository.ActivityBucketRepository.TenantMonth;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.List;
+
+import static org.mockito.ArgumentMatchers.anyShort;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class ActivityRollupCompactionJobTest {
+
+    private static final Instant NOW = Instant.parse("2024-06-12T03:15:00Z");
+
+    @Mock
+    private ActivityBucketRepository repository;
+
+    private ActivityRollupCompactionJob job;
+
+    @BeforeEach
+    void setUp() {
+        job = new ActivityRollupCompactionJob(repository, 31, Clock.fixed(NOW, ZoneOffset.UTC));
+    }
+
+    @Test
+    void shouldCompactTheCompletedMonthsThatChangedAndExpireOldHours() {
+        LocalDate may = LocalDate.parse("2024-05-01");
+        LocalDate june = LocalDate.parse("2024-06-01");
+        when(repository.findMonthsToCompact(june)).thenReturn(List.of(
+                new TenantMonth((short) 1, LocalDate.parse("2023-11-01")), new TenantMonth((short) 2, may)));
+
+        job.compact();
+
+        InOrder inOrder = inOrder(repository);
+        inOrder.verify(repository).compactMonth((short) 1, LocalDate.parse("2023-11-01"));
+        inOrder.verify(repository).compactMonth((short) 2, may);
+        inOrder.verify(repository).expireHours(Instant.parse("2024-05-12T00:00:00Z"));
+    }
+
+    @Test
+    void shouldLeaveTheHoursWhenAMonthFailsToCompact() {
+        LocalDate may = LocalDate.parse("2024-05-01");
+        when(repository.findMonthsToCompact(any())).thenReturn(List.of(new TenantMonth((short) 1, may)));
+        doThrow(new IllegalStateException("connection lost")).when(repository).compactMonth((short) 1, may);
+
+        job.compact();
+
+        verify(repository, never()).expireHours(any());
+        verify(repository).compactMonth(anyShort(), any());
+    }
+}
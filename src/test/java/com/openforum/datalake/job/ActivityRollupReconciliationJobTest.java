@@ -0,0 +1,89 @@
+package com.openforum.datalake.job;
+
+import com.openforum.datalake.dto.ActivityRollupReconciliation;
+import com.openforum.datalake.dto.ActivityRollupReconciliation.Mismatch;
+import com.openforum.datalake.repository.DailyTenantActivityRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoMoreInteractions;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class ActivityRollupReconciliationJobTest {
+
+    private static final Instant NOW = Instant.parse("2024-06-01T02:45:00Z");
+    private static final LocalDate TODAY = LocalDate.parse("2024-06-01");
+
+    @Mock
+    private DailyTenantActivityRepository repository;
+
+    private ActivityRollupReconciliationJob job;
+
+    @BeforeEach
+    void setUp() {
+        job = new ActivityRollupReconciliationJob(repository, 3, true, 5000, Clock.fixed(NOW, ZoneOffset.UTC));
+    }
+
+    @Test
+    void shouldCheckTheLastCompletedDays() {
+        when(repository.findMismatches(TODAY.minusDays(3), TODAY)).thenReturn(List.of());
+
+        job.reconcileRecentDays();
+
+        verify(repository, never()).recompute(anyString(), any(), anyLong());
+        verify(repository).foldStripes(TODAY);
+        verify(repository).foldSketchStripes(TODAY);
+    }
+
+    @Test
+    void shouldRecomputeEachTenantDayThatDiffers() {
+        LocalDate from = LocalDate.parse("2024-05-01");
+        LocalDate to = LocalDate.parse("2024-05-31");
+        List<Mismatch> mismatches = List.of(
+                new Mismatch("tenant-a", LocalDate.parse("2024-05-20"), 5, 4, 2, 2),
+                new Mismatch("tenant-b", LocalDate.parse("2024-05-03"), 1, 0, 1, 0));
+        when(repository.findMismatches(from, to)).thenReturn(mismatches);
+
+        ActivityRollupReconciliation result = job.reconcile(from, to, true);
+
+        assertThat(result).isEqualTo(new ActivityRollupReconciliation(from, to, mismatches, true));
+        verify(repository).recompute("tenant-a", LocalDate.parse("2024-05-20"), 5000);
+        verify(repository).recompute("tenant-b", LocalDate.parse("2024-05-03"), 5000);
+        verifyNoMoreInteractions(repository);
+    }
+
+    @Test
+    void shouldOnlyReportWithoutRepair() {
+        LocalDate from = LocalDate.parse("2024-05-01");
+        List<Mismatch> mismatches = List.of(new Mismatch("tenant-a", from, 5, 4, 2, 2));
+        when(repository.findMismatches(from, from.plusDays(1))).thenReturn(mismatches);
+
+        ActivityRollupReconciliation result = job.reconcile(from, from.plusDays(1), false);
+
+        assertThat(result.repaired()).isFalse();
+        assertThat(result.mismatches()).isEqualTo(mismatches);
+        verify(repository, never()).recompute(anyString(), any(), anyLong());
+    }
+
+    @Test
+    void shouldRejectAnEmptyDayRange() {
+        assertThatThrownBy(() -> job.reconcile(TODAY, TODAY, true)).isInstanceOf(IllegalArgumentException.class);
+    }
+}
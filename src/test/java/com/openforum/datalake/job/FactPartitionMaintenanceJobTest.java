@@ -0,0 +1,163 @@
+package com.openforum.datalake.job;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.openforum.datalake.repository.FactPartitionRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.jackson.JacksonAutoConfiguration;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.testcontainers.service.connection.ServiceConnection;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.sql.Timestamp;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.YearMonth;
+import java.time.ZoneOffset;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@DataJpaTest
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Import({ FactPartitionRepository.class, JacksonAutoConfiguration.class })
+@Transactional(propagation = Propagation.NOT_SUPPORTED) // DDL and chunked moves commit on their own
+@Testcontainers
+class FactPartitionMaintenanceJobTest {
+
+    private static final short TENANT = 1;
+    private static final Clock JUNE_2024 = Clock.fixed(Instant.parse("2024-06-15T12:00:00Z"), ZoneOffset.UTC);
+
+    @Container
+    @ServiceConnection
+    static PostgreSQLContainer<?> postgres = new PostgreSQLContainer<>("postgres:16-alpine");
+
+    @Autowired
+    private FactPartitionRepository partitionRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @AfterEach
+    void dropMonthPartitions() {
+        jdbcTemplate.queryForList("""
+                SELECT relname FROM pg_class
+                WHERE relkind IN ('r', 'p') AND relname ~ '^fact_activity_(next_)?y\\d{4}m\\d{2}$'
+                """, String.class).forEach(table -> jdbcTemplate.execute("DROP TABLE " + table));
+        jdbcTemplate.execute("TRUNCATE fact_activity");
+    }
+
+    @Test
+    void shouldMoveDefaultPartitionRowsIntoMonthlyPartitions() {
+        insertFacts("2024-04-30T23:59:59Z", 30);
+        insertFacts("2024-05-01T00:00:00Z", 25);
+
+        job(2, 0).maintainPartitions();
+
+        assertThat(count("fact_activity_default")).isZero();
+        assertThat(count("fact_activity_y2024m04")).isEqualTo(30);
+        assertThat(count("fact_activity_y2024m05")).isEqualTo(25);
+        assertThat(count("fact_activity")).isEqualTo(55);
+        assertThat(partitionRepository.findAttachedMonths()).containsExactly(YearMonth.of(2024, 4),
+                YearMonth.of(2024, 5), YearMonth.of(2024, 6), YearMonth.of(2024, 7), YearMonth.of(2024, 8));
+        // The helper constraint is gone once the table is a real partition
+        assertThat(partitionRepository.findInterruptedDrains()).isEmpty();
+        // One month, and of that only the tenant's hash partition
+        assertThat(partitionRepository.explainScannedPartitions(TENANT, Instant.parse("2024-05-02T00:00:00Z"),
+                Instant.parse("2024-05-09T00:00:00Z"))).singleElement().asString()
+                .startsWith("fact_activity_y2024m05_h");
+    }
+
+    @Test
+    void shouldResumeInterruptedDrain() {
+        insertFacts("2024-03-10T00:00:00Z", 10);
+        partitionRepository.createDetachedPartition(YearMonth.of(2024, 3));
+        // One chunk copied before the drain stopped, and writes went on
+        assertThat(partitionRepository.copyFromDefault(YearMonth.of(2024, 3), 4)).isEqualTo(4);
+        insertFacts("2024-03-20T00:00:00Z", 3);
+        assertThat(count("fact_activity")).isEqualTo(13);
+
+        job(0, 0).maintainPartitions();
+
+        assertThat(count("fact_activity")).isEqualTo(13);
+        assertThat(count("fact_activity_y2024m03")).isEqualTo(13);
+        assertThat(count("fact_activity_default")).isZero();
+        assertThat(partitionRepository.findAttachedMonths()).contains(YearMonth.of(2024, 3));
+    }
+
+    @Test
+    void shouldDetachPartitionsPastRetention() {
+        insertFacts("2023-12-05T00:00:00Z", 5);
+        insertFacts("2024-02-05T00:00:00Z", 5);
+
+        job(0, 5).maintainPartitions();
+
+        assertThat(partitionRepository.findAttachedMonths()).containsExactly(YearMonth.of(2024, 2),
+                YearMonth.of(2024, 6));
+        assertThat(count("fact_activity")).isEqualTo(5);
+        // Detached data is kept for archiving
+        assertThat(count("fact_activity_y2023m12")).isEqualTo(5);
+    }
+
+    @Test
+    void shouldConvertPlainMonthsToTenantHashPartitions() {
+        new FactPartitionRepository(jdbcTemplate, objectMapper, 0).createPartition(YearMonth.of(2024, 5));
+        for (short tenant = 1; tenant <= 4; tenant++) {
+            insertFacts(tenant, "2024-05-0" + tenant + "T10:00:00Z", 6);
+        }
+        // An earlier run was interrupted after copying one chunk, and writes went on
+        partitionRepository.createReplacementPartition(YearMonth.of(2024, 5));
+        assertThat(partitionRepository.copyToReplacement(YearMonth.of(2024, 5), 7)).isEqualTo(7);
+        insertFacts((short) 9, "2024-05-20T10:00:00Z", 3);
+
+        assertThat(job(0, 0).convertPartitions()).isEqualTo(1);
+
+        assertThat(count("fact_activity")).isEqualTo(27);
+        assertThat(count("fact_activity_y2024m05")).isEqualTo(27);
+        assertThat(partitionRepository.findPartitions())
+                .filteredOn(partition -> partition.name().equals("fact_activity_y2024m05"))
+                .singleElement()
+                .satisfies(partition -> assertThat(partition.subpartitions())
+                        .isEqualTo(partitionRepository.tenantHashPartitions()));
+        assertThat(partitionRepository.explainScannedPartitions((short) 2, Instant.parse("2024-05-01T00:00:00Z"),
+                Instant.parse("2024-05-31T00:00:00Z"))).hasSize(1);
+        assertThat(jdbcTemplate.queryForList("SELECT relname FROM pg_class WHERE relname LIKE '%next%'",
+                String.class)).isEmpty();
+        // Nothing left to convert
+        assertThat(job(0, 0).convertPartitions()).isZero();
+    }
+
+    private FactPartitionMaintenanceJob job(int monthsAhead, int retentionMonths) {
+        return new FactPartitionMaintenanceJob(partitionRepository, monthsAhead, retentionMonths, 7, 5_000,
+                JUNE_2024);
+    }
+
+    private void insertFacts(String occurredAt, int rows) {
+        insertFacts(TENANT, occurredAt, rows);
+    }
+
+    private void insertFacts(short tenantCode, String occurredAt, int rows) {
+        for (int i = 0; i < rows; i++) {
+            jdbcTemplate.update("""
+                    INSERT INTO fact_activity (id, event_id, user_id, target_id, occurred_at, tenant_code, activity_code)
+                    VALUES (?, ?, ?, ?, ?, ?, 3)
+                    """, UUID.randomUUID(), UUID.randomUUID(), UUID.randomUUID(), UUID.randomUUID(),
+                    Timestamp.from(Instant.parse(occurredAt)), tenantCode);
+        }
+    }
+
+    private long count(String table) {
+        return jdbcTemplate.queryForObject("SELECT COUNT(*) FROM " + table, Long.class);
+    }
+}
@@ -1,10 +1,8 @@
 package com.openforum.datalake.job;
 
-import com.openforum.datalake.domain.DimMemberHealth;
-import com.openforum.datalake.domain.EngagementLevel;
-import com.openforum.datalake.domain.ChurnRisk;
-import com.openforum.datalake.repository.DimMemberHealthRepository;
-import com.openforum.datalake.repository.FactActivityRepository;
+import com.openforum.datalake.repository.MemberHealthBatchRepository;
+import com.openforum.datalake.repository.MemberHealthBatchRepository.Tenant;
+import com.openforum.datalake.repository.MemberHealthRunRepository;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
@@ -12,96 +10,187 @@ import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 
+import java.time.Clock;
+import java.time.Duration;
 import java.time.Instant;
-import java.util.ArrayList;
-import java.util.Collections;
+import java.time.ZoneOffset;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
 import java.util.UUID;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 @ExtendWith(MockitoExtension.class)
 class MemberHealthCalculationJobTest {
 
+    private static final Instant NOW = Instant.parse("2024-06-01T01:00:00Z");
+    // The 30 UTC days up to and including today
+    private static final Instant WINDOW_END = Instant.parse("2024-06-02T00:00:00Z");
+    private static final Instant WINDOW_START = Instant.parse("2024-05-03T00:00:00Z");
+    private static final Tenant TENANT_1 = new Tenant((short) 1, "tenant-1");
+    private static final Tenant TENANT_2 = new Tenant((short) 2, "tenant-2");
+    private static final MemberHealthScoring SCORING = new MemberHealthScoring(Map.of("POST_CREATED", 2.0), 1, 14,
+            80, 20, 10, 50);
+
     @Mock
-    private FactActivityRepository factActivityRepository;
+    private MemberHealthBatchRepository batchRepository;
 
     @Mock
-    private DimMemberHealthRepository dimMemberHealthRepository;
+    private MemberHealthRunRepository runRepository;
 
     private MemberHealthCalculationJob job;
 
     @BeforeEach
     void setUp() {
-        job = new MemberHealthCalculationJob(factActivityRepository, dimMemberHealthRepository);
+        job = new MemberHealthCalculationJob(batchRepository, runRepository, SCORING, 30, 2, 2,
+                Clock.fixed(NOW, ZoneOffset.UTC));
     }
 
     @Test
-    void shouldCalculateMemberHealth() {
+    void shouldScoreEachChunkInTheDatabase() {
         // Given
-        UUID userId = UUID.randomUUID();
-        String tenantId = "tenant-1";
-        Long activityCount = 85L; // Should be CHAMPION, LOW risk
+        MemberHealthRun run = newRun();
+        when(batchRepository.findTenants()).thenReturn(List.of(TENANT_1));
+        streams(TENANT_1, null, uuid(2), uuid(3));
+        scores(TENANT_1, null, uuid(2), 2);
+        scores(TENANT_1, uuid(2), uuid(3), 1);
+
+        // When
+        job.calculateMemberHealth();
 
-        List<Object[]> stats = new ArrayList<>();
-        // The query returns [userId, count]
-        stats.add(new Object[] { userId, activityCount });
+        // Then
+        verify(batchRepository).expireDaysBefore(WINDOW_START);
+        // Scores decay with a half-life, so every member with activity in the window is rescored
+        verify(batchRepository).markActiveMembersDirty();
+        verify(batchRepository).scoreChunk(TENANT_1, null, uuid(2), WINDOW_START, WINDOW_END, NOW, SCORING);
+        verify(batchRepository).scoreChunk(TENANT_1, uuid(2), uuid(3), WINDOW_START, WINDOW_END, NOW, SCORING);
+        verify(runRepository).complete(run.advancedTo((short) 1, uuid(3), 3));
+    }
 
-        when(factActivityRepository.findUserActivityStats(any(Instant.class))).thenReturn(stats);
+    @Test
+    void shouldCompleteWithoutDirtyMembers() {
+        // Given
+        MemberHealthRun run = newRun();
+        when(batchRepository.findTenants()).thenReturn(List.of(TENANT_1));
 
         // When
         job.calculateMemberHealth();
 
         // Then
-        ArgumentCaptor<DimMemberHealth> healthCaptor = ArgumentCaptor.forClass(DimMemberHealth.class);
-        verify(dimMemberHealthRepository).save(healthCaptor.capture());
-
-        DimMemberHealth savedHealth = healthCaptor.getValue();
-        assertThat(savedHealth.getUserId()).isEqualTo(userId);
-        assertThat(savedHealth.getTenantId()).isEqualTo("default"); // Job hardcodes to default
-        assertThat(savedHealth.getHealthScore()).isEqualTo(85);
-        assertThat(savedHealth.getEngagementLevel()).isEqualTo(EngagementLevel.CHAMPION);
-        assertThat(savedHealth.getChurnRisk()).isEqualTo(ChurnRisk.LOW);
+        verify(batchRepository, never()).scoreChunk(any(), any(), any(), any(), any(), any(), any());
+        verify(runRepository).complete(run);
     }
 
     @Test
-    void shouldCalculateMemberHealthForLurker() {
+    void shouldOnlyRescoreChangedMembersWithoutDecay() {
         // Given
-        UUID userId = UUID.randomUUID();
-        String tenantId = "tenant-1";
-        Long activityCount = 5L; // Should be LURKER, HIGH risk
+        MemberHealthScoring undecayed = new MemberHealthScoring(Map.of("POST_CREATED", 2.0), 1, 0, 80, 20, 10, 50);
+        job = new MemberHealthCalculationJob(batchRepository, runRepository, undecayed, 30, 2, 2,
+                Clock.fixed(NOW, ZoneOffset.UTC));
+        MemberHealthRun run = newRun();
+        when(batchRepository.findTenants()).thenReturn(List.of(TENANT_1));
 
-        List<Object[]> stats = new ArrayList<>();
-        stats.add(new Object[] { userId, activityCount });
+        // When
+        job.calculateMemberHealth();
+
+        // Then
+        verify(batchRepository).expireDaysBefore(WINDOW_START);
+        verify(batchRepository, never()).markActiveMembersDirty();
+        verify(runRepository).complete(run);
+    }
 
-        when(factActivityRepository.findUserActivityStats(any(Instant.class))).thenReturn(stats);
+    @Test
+    void shouldCheckpointEveryChunkInOrder() {
+        // Given
+        MemberHealthRun run = newRun();
+        when(batchRepository.findTenants()).thenReturn(List.of(TENANT_1, TENANT_2));
+        streams(TENANT_1, null, uuid(2), uuid(3));
+        streams(TENANT_2, null, uuid(5));
+        scores(TENANT_1, null, uuid(2), 2);
+        scores(TENANT_1, uuid(2), uuid(3), 1);
+        scores(TENANT_2, null, uuid(5), 2);
 
         // When
         job.calculateMemberHealth();
 
         // Then
-        ArgumentCaptor<DimMemberHealth> healthCaptor = ArgumentCaptor.forClass(DimMemberHealth.class);
-        verify(dimMemberHealthRepository).save(healthCaptor.capture());
+        ArgumentCaptor<MemberHealthRun> checkpoints = ArgumentCaptor.forClass(MemberHealthRun.class);
+        verify(runRepository, times(3)).saveProgress(checkpoints.capture());
+        assertThat(checkpoints.getAllValues()).containsExactly(
+                run.advancedTo((short) 1, uuid(2), 2),
+                run.advancedTo((short) 1, uuid(3), 3),
+                run.advancedTo((short) 2, uuid(5), 5));
+        verify(runRepository).complete(run.advancedTo((short) 2, uuid(5), 5));
+    }
 
-        DimMemberHealth savedHealth = healthCaptor.getValue();
-        assertThat(savedHealth.getHealthScore()).isEqualTo(5);
-        assertThat(savedHealth.getEngagementLevel()).isEqualTo(EngagementLevel.LURKER);
-        assertThat(savedHealth.getChurnRisk()).isEqualTo(ChurnRisk.HIGH);
+    @Test
+    void shouldResumeUnfinishedRunFromItsCheckpoint() {
+        // Given
+        Instant windowEnd = NOW.minus(Duration.ofDays(1));
+        UUID checkpointUser = uuid(7);
+        UUID next = uuid(8);
+        MemberHealthRun run = new MemberHealthRun(3, windowEnd.minus(Duration.ofDays(30)), windowEnd, (short) 2,
+                checkpointUser, 40);
+        when(runRepository.findUnfinished()).thenReturn(Optional.of(run));
+        when(batchRepository.findTenants()).thenReturn(List.of(TENANT_1, TENANT_2));
+        streams(TENANT_2, checkpointUser, next);
+        when(batchRepository.scoreChunk(TENANT_2, checkpointUser, next, run.windowStart(), windowEnd, NOW, SCORING))
+                .thenReturn(1);
+
+        // When
+        job.calculateMemberHealth();
+
+        // Then
+        verify(batchRepository, never()).findChunkBounds(eq((short) 1), any(), eq(2));
+        verify(batchRepository, never()).expireDaysBefore(any());
+        verify(batchRepository, never()).markActiveMembersDirty();
+        verify(runRepository, never()).start(any(), any());
+        verify(runRepository).complete(run.advancedTo((short) 2, next, 41));
     }
 
     @Test
-    void shouldHandleEmptyStats() {
+    void shouldLeaveRunUnfinishedWhenAChunkFails() {
         // Given
-        when(factActivityRepository.findUserActivityStats(any(Instant.class)))
-                .thenReturn(Collections.emptyList());
+        newRun();
+        when(batchRepository.findTenants()).thenReturn(List.of(TENANT_1));
+        streams(TENANT_1, null, uuid(1));
+        when(batchRepository.scoreChunk(TENANT_1, null, uuid(1), WINDOW_START, WINDOW_END, NOW, SCORING))
+                .thenThrow(new IllegalStateException("connection lost"));
 
         // When
         job.calculateMemberHealth();
 
         // Then
-        verify(dimMemberHealthRepository, org.mockito.Mockito.never()).save(any(DimMemberHealth.class));
+        verify(runRepository, never()).saveProgress(any());
+        verify(runRepository, never()).complete(any());
+    }
+
+    private MemberHealthRun newRun() {
+        MemberHealthRun run = new MemberHealthRun(1, WINDOW_START, WINDOW_END, null, null, 0);
+        when(runRepository.findUnfinished()).thenReturn(Optional.empty());
+        when(runRepository.start(WINDOW_START, WINDOW_END)).thenReturn(run);
+        return run;
+    }
+
+    private void streams(Tenant tenant, UUID afterUserId, UUID... bounds) {
+        when(batchRepository.findChunkBounds(eq(tenant.code()), afterUserId == null ? isNull() : eq(afterUserId),
+                eq(2))).thenReturn(List.of(bounds));
+    }
+
+    private void scores(Tenant tenant, UUID afterUserId, UUID lastUserId, int scored) {
+        when(batchRepository.scoreChunk(tenant, afterUserId, lastUserId, WINDOW_START, WINDOW_END, NOW, SCORING))
+                .thenReturn(scored);
+    }
+
+    private static UUID uuid(long n) {
+        return new UUID(0, n);
     }
 }
@@ -0,0 +1,80 @@
+package com.openforum.datalake.job;
+
+import com.openforum.datalake.repository.MemberHealthBatchRepository;
+import com.openforum.datalake.repository.MemberHealthRunRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.testcontainers.service.connection.ServiceConnection;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@DataJpaTest
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Import({ MemberHealthBatchRepository.class, MemberHealthRunRepository.class })
+@Transactional(propagation = Propagation.NOT_SUPPORTED) // Chunks and checkpoints commit on their own
+@Testcontainers
+class MemberHealthRunCheckpointTest {
+
+    private static final Clock NOW = Clock.fixed(Instant.parse("2024-06-01T01:00:00Z"), ZoneOffset.UTC);
+    private static final MemberHealthScoring SCORING = new MemberHealthScoring(Map.of("POST_CREATED", 2.0), 1, 0,
+            80, 20, 10, 50);
+
+    @Container
+    @ServiceConnection
+    static PostgreSQLContainer<?> postgres = new PostgreSQLContainer<>("postgres:16-alpine");
+
+    @Autowired
+    private MemberHealthBatchRepository batchRepository;
+
+    @Autowired
+    private MemberHealthRunRepository runRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Test
+    void shouldCheckpointEveryChunkOfEveryTenantAndComplete() {
+        // Given more chunks of two members than the 2 * 2 workers keep in flight, and a second tenant
+        markDirty(tenant("tenant-a"), 11);
+        markDirty(tenant("tenant-b"), 3);
+
+        // When
+        new MemberHealthCalculationJob(batchRepository, runRepository, SCORING, 30, 2, 2, NOW)
+                .calculateMemberHealth();
+
+        // Then
+        assertThat(runRepository.findUnfinished()).isEmpty();
+        assertThat(jdbcTemplate.queryForObject("SELECT members_scored FROM member_health_runs"
+                + " WHERE completed_at IS NOT NULL", Long.class)).isEqualTo(14);
+        assertThat(jdbcTemplate.queryForObject("SELECT COUNT(*) FROM dim_member_health", Long.class))
+                .isEqualTo(14);
+        assertThat(jdbcTemplate.queryForObject("SELECT COUNT(*) FROM member_health_dirty", Long.class)).isZero();
+    }
+
+    private short tenant(String tenantId) {
+        return jdbcTemplate.queryForObject("INSERT INTO dim_tenants (tenant_id) VALUES (?) RETURNING tenant_code",
+                Short.class, tenantId);
+    }
+
+    private void markDirty(short tenantCode, int members) {
+        for (int i = 0; i < members; i++) {
+            jdbcTemplate.update("INSERT INTO member_health_dirty (tenant_code, user_id) VALUES (?, ?)", tenantCode,
+                    UUID.randomUUID());
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package com.openforum.datalake.job;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.within;
+
+class MemberHealthScoringTest {
+
+    @Test
+    void shouldHalveADaysPointsEveryHalfLife() {
+        MemberHealthScoring scoring = new MemberHealthScoring(Map.of(), 1, 7, 80, 20, 10, 50);
+
+        assertThat(Math.pow(scoring.dailyDecay(), 7)).isCloseTo(0.5, within(1e-12));
+    }
+
+    @Test
+    void shouldNotDecayWithoutHalfLife() {
+        MemberHealthScoring scoring = new MemberHealthScoring(Map.of(), 1, 0, 80, 20, 10, 50);
+
+        assertThat(scoring.dailyDecay()).isEqualTo(1);
+    }
+
+    @Test
+    void shouldWeighEveryActivityTypeOneByDefault() {
+        MemberHealthScoring scoring = new MemberHealthScoring(1, 1, 1, 1, 1, 1, 1, 0, 80, 20, 10, 50);
+
+        assertThat(scoring.weights()).containsOnlyKeys("THREAD_CREATED", "THREAD_IMPORTED", "POST_CREATED",
+                "POST_IMPORTED", "REACTION", "SUBSCRIPTION_CREATED").allSatisfy((type, weight) ->
+                assertThat(weight).isEqualTo(1.0));
+        assertThat(scoring.otherWeight()).isEqualTo(1);
+        assertThat(scoring.dailyDecay()).isEqualTo(1);
+    }
+
+    @Test
+    void shouldRejectThresholdsOutOfOrder() {
+        assertThatThrownBy(() -> new MemberHealthScoring(Map.of(), 1, 0, 20, 80, 10, 50))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> new MemberHealthScoring(Map.of(), 1, 0, 80, 20, 50, 10))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void shouldRejectNegativeHalfLife() {
+        assertThatThrownBy(() -> new MemberHealthScoring(Map.of(), 1, -1, 80, 20, 10, 50))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+}
@@ -0,0 +1,36 @@
+package com.openforum.datalake.job;
+
+import com.openforum.datalake.repository.ActiveUserBitmapRepository;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class RetentionBitmapJobTest {
+
+    @Mock
+    private ActiveUserBitmapRepository repository;
+
+    @Test
+    void shouldFoldBatchesUntilTheQueueIsDrained() {
+        when(repository.foldPendingUsers(100)).thenReturn(100, 100, 37);
+
+        new RetentionBitmapJob(repository, 100).fold();
+
+        verify(repository, times(3)).foldPendingUsers(100);
+    }
+
+    @Test
+    void shouldStopAtAFailedBatch() {
+        when(repository.foldPendingUsers(100)).thenReturn(100).thenThrow(new IllegalStateException("lock timeout"));
+
+        new RetentionBitmapJob(repository, 100).fold();
+
+        verify(repository, times(2)).foldPendingUsers(100);
+    }
+}
@@ -0,0 +1,112 @@
+package com.openforum.datalake.loader;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.openforum.datalake.ingestor.DecodedEvent;
+import com.openforum.datalake.ingestor.EventEnvelope;
+import com.openforum.datalake.ingestor.EventIngestionService;
+import com.openforum.datalake.ingestor.ForumEventDecoder;
+import com.openforum.datalake.ingestor.counters.ThreadCounterBuffer;
+import com.openforum.datalake.repository.BulkLoadCheckpointRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.boot.DefaultApplicationArguments;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class BulkLoadRunnerTest {
+
+    @TempDir
+    Path dir;
+
+    @Mock
+    private EventIngestionService eventIngestionService;
+
+    @Mock
+    private BulkLoadCheckpointRepository checkpointRepository;
+
+    @Mock
+    private ThreadCounterBuffer threadCounterBuffer;
+
+    private ObjectMapper objectMapper;
+    private BulkLoadRunner runner;
+
+    @BeforeEach
+    void setUp() {
+        objectMapper = new ObjectMapper();
+        objectMapper.registerModule(new JavaTimeModule());
+        runner = new BulkLoadRunner(new ForumEventDecoder(objectMapper), eventIngestionService, checkpointRepository,
+                threadCounterBuffer, 2, 2, 4096, 60);
+    }
+
+    @Test
+    void shouldLoadFilesInBatchesAndCheckpointEachBatch() throws Exception {
+        List<String> lines = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            lines.add(objectMapper.writeValueAsString(reaction(UUID.randomUUID())));
+        }
+        lines.add(2, "{not json");
+        Path file = Files.write(dir.resolve("events.ndjson"), lines);
+        when(checkpointRepository.find(anyString())).thenReturn(Optional.empty());
+
+        runner.run(new DefaultApplicationArguments("--bulk-load=" + dir));
+
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<List<DecodedEvent>> batches = ArgumentCaptor.forClass(List.class);
+        verify(eventIngestionService, times(3)).ingestBatch(batches.capture());
+        assertThat(batches.getAllValues()).extracting(List::size).containsExactly(2, 2, 1);
+
+        ArgumentCaptor<BulkLoadCheckpoint> checkpoints = ArgumentCaptor.forClass(BulkLoadCheckpoint.class);
+        verify(checkpointRepository, times(4)).save(checkpoints.capture());
+        BulkLoadCheckpoint last = checkpoints.getValue();
+        assertThat(last.completed()).isTrue();
+        assertThat(last.eventsLoaded()).isEqualTo(6);
+        assertThat(last.byteOffset()).isEqualTo(Files.size(file));
+        verify(threadCounterBuffer).flush();
+        assertThat(runner.getExitCode()).isZero();
+    }
+
+    @Test
+    void shouldSkipCompletedFiles() throws Exception {
+        Path file = Files.write(dir.resolve("done.ndjson"),
+                List.of(objectMapper.writeValueAsString(reaction(UUID.randomUUID()))));
+        when(checkpointRepository.find(file.toAbsolutePath().normalize().toString()))
+                .thenReturn(Optional.of(new BulkLoadCheckpoint(file.toString(), Files.size(file), 1, true)));
+
+        runner.run(new DefaultApplicationArguments("--bulk-load=" + file));
+
+        verify(eventIngestionService, never()).ingestBatch(anyList());
+        verify(checkpointRepository, never()).save(any());
+    }
+
+    private static EventEnvelope reaction(UUID eventId) {
+        ObjectNode payload = new ObjectMapper().createObjectNode();
+        payload.put("targetId", UUID.randomUUID().toString());
+        payload.put("reactorId", UUID.randomUUID().toString());
+        payload.put("type", "LIKE");
+        return new EventEnvelope(eventId, "tenant-1", "ReactionAdded", Instant.parse("2024-05-01T10:00:00Z"),
+                payload);
+    }
+}
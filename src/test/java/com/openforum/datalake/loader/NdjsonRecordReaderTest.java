@@ -0,0 +1,61 @@
+package com.openforum.datalake.loader;
+
+import com.openforum.datalake.ingestor.RawJson;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class NdjsonRecordReaderTest {
+
+    private static final String DUMP = "{\"n\":1}\r\n\n  {\"n\":2}\n{\"n\":\"" + "x".repeat(100) + "\"}\n{\"n\":4}";
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void shouldSplitRecordsAcrossSmallBuffers() throws IOException {
+        Path file = Files.writeString(dir.resolve("events.ndjson"), DUMP);
+
+        // A 16 byte buffer forces refills mid-record and growth for the long record
+        assertThat(readAll(file, 0, 16)).containsExactly("{\"n\":1}", "{\"n\":2}",
+                "{\"n\":\"" + "x".repeat(100) + "\"}", "{\"n\":4}");
+    }
+
+    @Test
+    void shouldResumeFromOffsetInGzipFile() throws IOException {
+        Path file = dir.resolve("events.ndjson.gz");
+        try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(file))) {
+            out.write(DUMP.getBytes(StandardCharsets.UTF_8));
+        }
+
+        long afterSecond;
+        try (NdjsonRecordReader reader = new NdjsonRecordReader(file, 0, 1024)) {
+            reader.next();
+            reader.next();
+            afterSecond = reader.offset();
+        }
+
+        assertThat(readAll(file, afterSecond, 1024)).hasSize(2).last().isEqualTo("{\"n\":4}");
+    }
+
+    private static List<String> readAll(Path file, long offset, int bufferSize) throws IOException {
+        List<String> records = new ArrayList<>();
+        try (NdjsonRecordReader reader = new NdjsonRecordReader(file, offset, bufferSize)) {
+            RawJson record;
+            while ((record = reader.next()) != null) {
+                records.add(record.asString());
+            }
+        }
+        return records;
+    }
+}
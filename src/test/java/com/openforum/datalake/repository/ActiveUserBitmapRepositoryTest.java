@@ -0,0 +1,159 @@
+package com.openforum.datalake.repository;
+
+import com.openforum.datalake.domain.ActivityInterval;
+import com.openforum.datalake.domain.FactActivity;
+import com.openforum.datalake.dto.RetentionCohort;
+import com.openforum.datalake.sketch.RoaringBitmap;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.jackson.JacksonAutoConfiguration;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.testcontainers.service.connection.ServiceConnection;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@DataJpaTest
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Import({ ActiveUserBitmapRepository.class, FactActivityBatchWriter.class, FactCodeDictionary.class,
+        JacksonAutoConfiguration.class })
+@Testcontainers
+class ActiveUserBitmapRepositoryTest {
+
+    private static final LocalDate APRIL = LocalDate.parse("2024-04-01");
+    private static final LocalDate MAY = LocalDate.parse("2024-05-01");
+    private static final LocalDate JULY = LocalDate.parse("2024-07-01");
+
+    @Container
+    @ServiceConnection
+    static PostgreSQLContainer<?> postgres = new PostgreSQLContainer<>("postgres:16-alpine");
+
+    @Autowired
+    private ActiveUserBitmapRepository repository;
+
+    @Autowired
+    private FactActivityBatchWriter batchWriter;
+
+    @Autowired
+    private FactCodeDictionary factCodeDictionary;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Test
+    void shouldGiveMembersDenseOrdinalsInOrderOfFirstActivity() {
+        UUID early = UUID.fromString("00000000-0000-0000-0000-000000000003");
+        UUID first = UUID.fromString("00000000-0000-0000-0000-000000000001");
+        UUID second = UUID.fromString("00000000-0000-0000-0000-000000000002");
+        batchWriter.insertAll(List.of(
+                fact("tenant-a", first, "2024-04-10T10:00:00Z"),
+                fact("tenant-a", early, "2024-04-03T10:00:00Z"),
+                fact("tenant-a", second, "2024-04-10T09:00:00Z"),
+                fact("tenant-a", first, "2024-05-02T10:00:00Z"),
+                fact("tenant-b", first, "2024-04-05T10:00:00Z")));
+
+        assertThat(repository.foldPendingUsers(100)).isEqualTo(5);
+        assertThat(repository.foldPendingUsers(100)).isZero();
+
+        UUID late = UUID.randomUUID();
+        batchWriter.insertAll(List.of(
+                fact("tenant-a", late, "2024-05-03T10:00:00Z"),
+                fact("tenant-a", second, "2024-03-30T10:00:00Z")));
+        assertThat(repository.foldPendingUsers(100)).isEqualTo(2);
+
+        // Ordinals never change; a member seen on an earlier day moves to that day
+        assertThat(jdbcTemplate.queryForList("""
+                SELECT t.tenant_id, o.user_id, o.ordinal, o.first_day::text AS first_day
+                FROM dim_user_ordinals o
+                JOIN dim_tenants t ON t.tenant_code = o.tenant_code
+                ORDER BY 1, 3""")).containsExactly(
+                        Map.of("tenant_id", "tenant-a", "user_id", early, "ordinal", 0, "first_day", "2024-04-03"),
+                        Map.of("tenant_id", "tenant-a", "user_id", first, "ordinal", 1, "first_day", "2024-04-10"),
+                        Map.of("tenant_id", "tenant-a", "user_id", second, "ordinal", 2, "first_day", "2024-03-30"),
+                        Map.of("tenant_id", "tenant-a", "user_id", late, "ordinal", 3, "first_day", "2024-05-03"),
+                        Map.of("tenant_id", "tenant-b", "user_id", first, "ordinal", 0, "first_day", "2024-04-05"));
+        short tenant = tenantCode("tenant-a");
+        assertThat(bitmap(tenant, ActivityInterval.MONTH, APRIL).toArray()).containsExactly(0, 1, 2);
+        assertThat(bitmap(tenant, ActivityInterval.MONTH, MAY).toArray()).containsExactly(1, 3);
+        assertThat(bitmap(tenant, ActivityInterval.WEEK, LocalDate.parse("2024-04-08")).toArray())
+                .containsExactly(1, 2);
+    }
+
+    @Test
+    void shouldComputeCohortRetentionByBitmapIntersection() {
+        UUID a = UUID.randomUUID();
+        UUID b = UUID.randomUUID();
+        UUID c = UUID.randomUUID();
+        UUID d = UUID.randomUUID();
+        batchWriter.insertAll(List.of(
+                fact("tenant-a", a, "2024-04-02T10:00:00Z"),
+                fact("tenant-a", b, "2024-04-15T10:00:00Z"),
+                fact("tenant-a", c, "2024-04-20T10:00:00Z"),
+                fact("tenant-a", a, "2024-05-06T10:00:00Z"),
+                fact("tenant-a", b, "2024-05-10T10:00:00Z"),
+                fact("tenant-a", d, "2024-05-05T10:00:00Z"),
+                fact("tenant-a", a, "2024-06-01T10:00:00Z"),
+                fact("tenant-a", d, "2024-06-30T23:00:00Z"),
+                fact("tenant-b", c, "2024-04-20T10:00:00Z")));
+        // In batches smaller than the queue
+        assertThat(List.of(repository.foldPendingUsers(4), repository.foldPendingUsers(4),
+                repository.foldPendingUsers(4))).containsExactly(4, 4, 1);
+        short tenant = tenantCode("tenant-a");
+
+        assertThat(repository.findRetention(tenant, ActivityInterval.MONTH, APRIL, JULY)).containsExactly(
+                new RetentionCohort(APRIL, 3, List.of(3L, 2L, 1L)),
+                new RetentionCohort(MAY, 1, List.of(1L, 1L)));
+        // The weeks starting on Monday 1 to 22 April
+        assertThat(repository.findRetention(tenant, ActivityInterval.WEEK, APRIL, LocalDate.parse("2024-04-29")))
+                .containsExactly(
+                        new RetentionCohort(APRIL, 1, List.of(1L, 0L, 0L, 0L)),
+                        new RetentionCohort(LocalDate.parse("2024-04-15"), 2, List.of(2L, 0L)));
+
+        batchWriter.insertAll(List.of(fact("tenant-a", d, "2024-04-28T10:00:00Z")));
+        repository.foldPendingUsers(2);
+
+        assertThat(repository.findRetention(tenant, ActivityInterval.MONTH, APRIL, JULY)).containsExactly(
+                new RetentionCohort(APRIL, 4, List.of(4L, 3L, 2L)));
+    }
+
+    @Test
+    void shouldComputeRetentionPerWeekOrMonthOnly() {
+        assertThatThrownBy(() -> repository.findRetention((short) 1, ActivityInterval.DAY, APRIL, MAY))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    private RoaringBitmap bitmap(short tenantCode, ActivityInterval granularity, LocalDate start) {
+        return RoaringBitmap.fromBytes(jdbcTemplate.queryForObject("""
+                SELECT bitmap FROM agg_active_user_bitmaps
+                WHERE tenant_code = ? AND granularity = ? AND period_start = ?""", byte[].class,
+                tenantCode, granularity.name(), start));
+    }
+
+    private short tenantCode(String tenantId) {
+        return factCodeDictionary.findTenantCode(tenantId).orElseThrow();
+    }
+
+    private static FactActivity fact(String tenantId, UUID userId, String occurredAt) {
+        return FactActivity.builder()
+                .id(UUID.randomUUID())
+                .eventId(UUID.randomUUID())
+                .tenantId(tenantId)
+                .userId(userId)
+                .activityType("POST_CREATED")
+                .targetId(UUID.randomUUID())
+                .occurredAt(Instant.parse(occurredAt))
+                .build();
+    }
+}
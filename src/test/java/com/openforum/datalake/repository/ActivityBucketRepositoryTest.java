@@ -0,0 +1,162 @@
+package com.openforum.datalake.repository;
+
+import com.openforum.datalake.domain.ActivityInterval;
+import com.openforum.datalake.domain.FactActivity;
+import com.openforum.datalake.dto.ActivityPoint;
+import com.openforum.datalake.repository.ActivityBucketRepository.TenantMonth;
+import com.openforum.datalake.sketch.HyperLogLog;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.jackson.JacksonAutoConfiguration;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.testcontainers.service.connection.ServiceConnection;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@DataJpaTest
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Import({ ActivityBucketRepository.class, FactActivityBatchWriter.class, FactCodeDictionary.class,
+        JacksonAutoConfiguration.class })
+@Testcontainers
+class ActivityBucketRepositoryTest {
+
+    private static final LocalDate APRIL = LocalDate.parse("2024-04-01");
+    private static final LocalDate MAY = LocalDate.parse("2024-05-01");
+    private static final LocalDate JUNE = LocalDate.parse("2024-06-01");
+
+    @Container
+    @ServiceConnection
+    static PostgreSQLContainer<?> postgres = new PostgreSQLContainer<>("postgres:16-alpine");
+
+    @Autowired
+    private ActivityBucketRepository repository;
+
+    @Autowired
+    private FactActivityBatchWriter batchWriter;
+
+    @Autowired
+    private FactCodeDictionary factCodeDictionary;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Test
+    void shouldBucketIngestedActivityByHourDayAndWeek() {
+        batchWriter.insertAll(List.of(
+                fact("tenant-a", UUID.randomUUID(), "2024-05-06T10:15:00Z"),
+                fact("tenant-a", UUID.randomUUID(), "2024-05-06T10:45:00Z"),
+                fact("tenant-a", null, "2024-05-06T11:00:00Z"),
+                fact("tenant-a", UUID.randomUUID(), "2024-05-12T23:59:59Z"),
+                fact("tenant-a", UUID.randomUUID(), "2024-05-13T00:00:00Z"),
+                fact("tenant-b", UUID.randomUUID(), "2024-05-06T10:00:00Z")));
+        batchWriter.insertAll(List.of(fact("tenant-a", UUID.randomUUID(), "2024-05-06T10:30:00Z")));
+        short tenant = tenantCode("tenant-a");
+
+        assertThat(repository.findActivities(tenant, ActivityInterval.HOUR, day("2024-05-06"), day("2024-05-07")))
+                .containsExactly(
+                        new ActivityPoint(Instant.parse("2024-05-06T10:00:00Z"), 3),
+                        new ActivityPoint(Instant.parse("2024-05-06T11:00:00Z"), 1));
+        assertThat(repository.findActivities(tenant, ActivityInterval.DAY, day("2024-05-06"), day("2024-05-13")))
+                .containsExactly(ActivityPoint.ofDay(day("2024-05-06"), 4), ActivityPoint.ofDay(day("2024-05-12"), 1));
+        // Widened to the weeks starting on Monday 6 and 13 May
+        assertThat(repository.findActivities(tenant, ActivityInterval.WEEK, day("2024-05-08"), day("2024-05-14")))
+                .containsExactly(ActivityPoint.ofDay(day("2024-05-06"), 5), ActivityPoint.ofDay(day("2024-05-13"), 1));
+    }
+
+    @Test
+    void shouldReadCompactedMonthsInsteadOfTheirDays() {
+        batchWriter.insertAll(List.of(
+                fact("tenant-a", UUID.randomUUID(), "2024-04-01T00:00:00Z"),
+                fact("tenant-a", UUID.randomUUID(), "2024-04-30T23:00:00Z"),
+                fact("tenant-a", UUID.randomUUID(), "2024-05-02T12:00:00Z")));
+        short tenant = tenantCode("tenant-a");
+
+        assertThat(repository.findMonthsToCompact(MAY)).containsExactly(new TenantMonth(tenant, APRIL));
+        repository.compactMonth(tenant, APRIL);
+        assertThat(repository.findMonthsToCompact(MAY)).isEmpty();
+        // Written around the ingestor, so only the days show it
+        jdbcTemplate.update("UPDATE agg_daily_tenant_activity SET activity_count = activity_count + 10");
+
+        assertThat(repository.findActivities(tenant, ActivityInterval.MONTH, APRIL, JUNE))
+                .containsExactly(ActivityPoint.ofDay(APRIL, 2), ActivityPoint.ofDay(MAY, 11));
+        assertThat(repository.findMonthsToCompact(MAY)).containsExactly(new TenantMonth(tenant, APRIL));
+        repository.compactMonth(tenant, APRIL);
+        assertThat(repository.findActivities(tenant, ActivityInterval.MONTH, APRIL, JUNE))
+                .containsExactly(ActivityPoint.ofDay(APRIL, 22), ActivityPoint.ofDay(MAY, 11));
+    }
+
+    @Test
+    void shouldEstimateActiveUsersFromTheCompactedMonthsAndTheDays() {
+        UUID regular = UUID.randomUUID();
+        batchWriter.insertAll(List.of(
+                fact("tenant-a", regular, "2024-04-03T10:00:00Z"),
+                fact("tenant-a", regular, "2024-04-20T10:00:00Z"),
+                fact("tenant-a", UUID.randomUUID(), "2024-04-20T11:00:00Z"),
+                fact("tenant-a", UUID.randomUUID(), "2024-04-29T11:00:00Z"),
+                fact("tenant-a", regular, "2024-05-02T10:00:00Z"),
+                fact("tenant-a", UUID.randomUUID(), "2024-05-02T10:00:00Z")));
+        short tenant = tenantCode("tenant-a");
+        repository.compactMonth(tenant, APRIL);
+
+        HyperLogLog april = new HyperLogLog();
+        jdbcTemplate.query("SELECT sketch FROM agg_daily_user_sketches WHERE day < '2024-05-01'",
+                rs -> { april.merge(HyperLogLog.fromBytes(rs.getBytes(1))); });
+        assertThat(HyperLogLog.fromBytes(jdbcTemplate.queryForObject(
+                "SELECT sketch FROM agg_monthly_user_sketches WHERE month = '2024-04-01'", byte[].class)))
+                .isEqualTo(april);
+        assertThat(repository.findActiveUsers(tenant, ActivityInterval.MONTH, APRIL, day("2024-05-15")))
+                .containsExactly(ActivityPoint.ofDay(APRIL, 3), ActivityPoint.ofDay(MAY, 2));
+        assertThat(repository.findActiveUsers(tenant, ActivityInterval.WEEK, day("2024-04-29"), day("2024-05-06")))
+                .containsExactly(ActivityPoint.ofDay(day("2024-04-29"), 3));
+        assertThat(repository.countActiveUsers(tenant, APRIL, JUNE)).isEqualTo(4);
+        // Only part of April, so read from its days
+        assertThat(repository.countActiveUsers(tenant, day("2024-04-20"), JUNE)).isEqualTo(4);
+        assertThat(repository.countActiveUsers(tenant, day("2024-04-21"), JUNE)).isEqualTo(3);
+    }
+
+    @Test
+    void shouldExpireHoursBeforeTheRetention() {
+        batchWriter.insertAll(List.of(
+                fact("tenant-a", UUID.randomUUID(), "2024-05-06T10:15:00Z"),
+                fact("tenant-a", UUID.randomUUID(), "2024-05-07T10:15:00Z")));
+
+        assertThat(repository.expireHours(Instant.parse("2024-05-07T00:00:00Z"))).isEqualTo(1);
+
+        assertThat(jdbcTemplate.queryForList("SELECT hour FROM agg_hourly_tenant_activity", Timestamp.class))
+                .containsExactly(Timestamp.from(Instant.parse("2024-05-07T10:00:00Z")));
+        assertThat(jdbcTemplate.queryForObject("SELECT SUM(activity_count) FROM agg_daily_tenant_activity",
+                Long.class)).isEqualTo(2);
+    }
+
+    private short tenantCode(String tenantId) {
+        return factCodeDictionary.findTenantCode(tenantId).orElseThrow();
+    }
+
+    private static LocalDate day(String day) {
+        return LocalDate.parse(day);
+    }
+
+    private static FactActivity fact(String tenantId, UUID userId, String occurredAt) {
+        return FactActivity.builder()
+                .id(UUID.randomUUID())
+                .eventId(UUID.randomUUID())
+                .tenantId(tenantId)
+                .userId(userId)
+                .activityType("POST_CREATED")
+                .targetId(UUID.randomUUID())
+                .occurredAt(Instant.parse(occurredAt))
+                .build();
+    }
+}
@@ -0,0 +1,277 @@
+package com.openforum.datalake.repository;
+
+import com.openforum.datalake.domain.FactActivity;
+import com.openforum.datalake.dto.ActivityRollupReconciliation.Mismatch;
+import com.openforum.datalake.dto.ActivityPoint;
+import com.openforum.datalake.sketch.HyperLogLog;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.jackson.JacksonAutoConfiguration;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.testcontainers.service.connection.ServiceConnection;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+@DataJpaTest
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Import({ DailyTenantActivityRepository.class, FactActivityBatchWriter.class, FactCodeDictionary.class,
+        JacksonAutoConfiguration.class })
+@Testcontainers
+class DailyTenantActivityRepositoryTest {
+
+    private static final LocalDate MAY_10 = LocalDate.parse("2024-05-10");
+    private static final LocalDate MAY_11 = LocalDate.parse("2024-05-11");
+    private static final LocalDate MAY_12 = LocalDate.parse("2024-05-12");
+
+    @Container
+    @ServiceConnection
+    static PostgreSQLContainer<?> postgres = new PostgreSQLContainer<>("postgres:16-alpine");
+
+    @Autowired
+    private DailyTenantActivityRepository repository;
+
+    @Autowired
+    private FactActivityBatchWriter batchWriter;
+
+    @Autowired
+    private FactCodeDictionary factCodeDictionary;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Test
+    void shouldSumTheStripesOfEachDay() {
+        short tenant = tenant("tenant-a");
+        short other = tenant("tenant-b");
+        rollUp(tenant, "2024-05-09", 1, 4);
+        rollUp(tenant, "2024-05-10", 1, 3);
+        rollUp(tenant, "2024-05-10", 2, 2);
+        rollUp(tenant, "2024-05-11", 1, 0);
+        rollUp(other, "2024-05-10", 1, 7);
+
+        assertThat(repository.findDailyActiveUsers(tenant, MAY_10, MAY_12)).containsExactly(
+                ActivityPoint.ofDay(MAY_10, 5), ActivityPoint.ofDay(MAY_11, 0));
+    }
+
+    @Test
+    void shouldMatchTheFactsAsIngested() {
+        UUID member = UUID.randomUUID();
+        batchWriter.insertAll(List.of(
+                fact("tenant-a", member, "POST_CREATED", "2024-05-10T10:00:00Z"),
+                fact("tenant-a", member, "REACTION", "2024-05-10T09:00:00Z"),
+                fact("tenant-a", UUID.randomUUID(), "POST_CREATED", "2024-05-11T23:59:59Z"),
+                fact("tenant-b", member, "POST_CREATED", "2024-05-11T00:00:00Z"),
+                fact("tenant-b", null, "THREAD_CREATED", "2024-05-11T08:00:00Z")));
+        batchWriter.insertAll(List.of(fact("tenant-a", member, "THREAD_CREATED", "2024-05-10T11:00:00Z")));
+
+        assertThat(repository.findMismatches(MAY_10, MAY_12)).isEmpty();
+        assertThat(repository.findDailyActiveUsers(factCodeDictionary.findTenantCode("tenant-a").orElseThrow(),
+                MAY_10, MAY_12)).containsExactly(ActivityPoint.ofDay(MAY_10, 1), ActivityPoint.ofDay(MAY_11, 1));
+    }
+
+    @Test
+    void shouldRecomputeDaysThatDifferFromTheFacts() {
+        UUID removed = UUID.randomUUID();
+        batchWriter.insertAll(List.of(
+                fact("tenant-a", UUID.randomUUID(), "POST_CREATED", "2024-05-10T10:00:00Z"),
+                fact("tenant-a", removed, "REACTION", "2024-05-10T11:00:00Z"),
+                fact("tenant-a", UUID.randomUUID(), "POST_CREATED", "2024-05-11T10:00:00Z"),
+                fact("tenant-b", UUID.randomUUID(), "POST_CREATED", "2024-05-10T10:00:00Z")));
+        // Written around the ingestor
+        jdbcTemplate.update("DELETE FROM fact_activity WHERE user_id = ?", removed);
+
+        List<Mismatch> mismatches = repository.findMismatches(MAY_10, MAY_12);
+
+        assertThat(mismatches).containsExactly(new Mismatch("tenant-a", MAY_10, 2, 1, 2, 1));
+        repository.recompute("tenant-a", MAY_10, 5000);
+        assertThat(repository.findMismatches(MAY_10, MAY_12)).isEmpty();
+        short tenant = factCodeDictionary.findTenantCode("tenant-a").orElseThrow();
+        // Only the tenant day that differs is rewritten
+        assertThat(jdbcTemplate.queryForList("SELECT DISTINCT tenant_code FROM agg_daily_tenant_activity"
+                + " WHERE day = '2024-05-10' AND stripe = 0", Short.class)).containsExactly(tenant);
+        assertThat(jdbcTemplate.queryForList("SELECT DISTINCT stripe FROM agg_daily_tenant_activity"
+                + " WHERE day = '2024-05-11'", Integer.class)).doesNotContain(0);
+        assertThat(jdbcTemplate.queryForList("SELECT stripe FROM agg_daily_user_sketches"
+                + " WHERE tenant_code = ? AND day = '2024-05-10'", Integer.class, tenant)).containsExactly(0);
+        assertThat(jdbcTemplate.queryForList("SELECT DISTINCT stripe FROM agg_hourly_tenant_activity"
+                + " WHERE tenant_code <> ?", Integer.class, tenant)).doesNotContain(0);
+        assertThat(repository.findActiveUsers(tenant, MAY_10, MAY_11, 1))
+                .containsExactly(ActivityPoint.ofDay(MAY_10, 1));
+    }
+
+    @Test
+    void shouldFoldTheStripesOfCompletedDays() {
+        short tenant = tenant("tenant-a");
+        rollUp(tenant, "2024-05-10", 0, 3);
+        rollUp(tenant, "2024-05-10", 1, 2);
+        rollUp(tenant, "2024-05-10", 2, 1);
+        rollUp(tenant, "2024-05-11", 5, 4);
+        rollUp(tenant, "2024-05-12", 1, 1);
+        rollUp(tenant, "2024-05-12", 2, 1);
+        hour(tenant, "2024-05-11T10:00:00Z", 1);
+        hour(tenant, "2024-05-11T10:00:00Z", 2);
+        hour(tenant, "2024-05-12T10:00:00Z", 1);
+
+        assertThat(repository.foldStripes(MAY_12)).isEqualTo(3);
+
+        assertThat(jdbcTemplate.queryForList("SELECT day || ':' || stripe || ':' || activity_count || ':'"
+                + " || first_active_users FROM agg_daily_tenant_activity ORDER BY day, stripe", String.class))
+                .containsExactly("2024-05-10:0:30:6", "2024-05-11:0:10:4", "2024-05-12:1:10:1", "2024-05-12:2:10:1");
+        assertThat(jdbcTemplate.queryForList("SELECT stripe || ':' || activity_count FROM agg_hourly_tenant_activity"
+                + " ORDER BY hour, stripe", String.class)).containsExactly("0:20", "1:10");
+        assertThat(repository.findDailyActiveUsers(tenant, MAY_10, MAY_12.plusDays(1))).containsExactly(
+                ActivityPoint.ofDay(MAY_10, 6), ActivityPoint.ofDay(MAY_11, 4), ActivityPoint.ofDay(MAY_12, 2));
+    }
+
+    @Test
+    void shouldSketchTheMembersNewToEachDay() {
+        UUID regular = UUID.randomUUID();
+        UUID occasional = UUID.randomUUID();
+        List<FactActivity> facts = new ArrayList<>();
+        HyperLogLog may10 = new HyperLogLog();
+        for (int i = 0; i < 50; i++) {
+            UUID member = UUID.randomUUID();
+            facts.add(fact("tenant-a", member, "REACTION", "2024-05-10T10:00:00Z"));
+            may10.add(hashOf(member));
+        }
+        facts.add(fact("tenant-a", regular, "POST_CREATED", "2024-05-10T11:00:00Z"));
+        facts.add(fact("tenant-a", regular, "POST_CREATED", "2024-05-11T11:00:00Z"));
+        facts.add(fact("tenant-a", occasional, "POST_CREATED", "2024-05-11T12:00:00Z"));
+        facts.add(fact("tenant-b", UUID.randomUUID(), "POST_CREATED", "2024-05-11T12:00:00Z"));
+        batchWriter.insertAll(facts);
+        batchWriter.insertAll(List.of(fact("tenant-a", regular, "REACTION", "2024-05-11T13:00:00Z")));
+        may10.add(hashOf(regular));
+        HyperLogLog may11 = new HyperLogLog();
+        may11.add(hashOf(regular));
+        may11.add(hashOf(occasional));
+        short tenant = factCodeDictionary.findTenantCode("tenant-a").orElseThrow();
+
+        assertThat(HyperLogLog.fromBytes(jdbcTemplate.queryForObject("SELECT sketch FROM agg_daily_user_sketches"
+                + " WHERE tenant_code = ? AND day = '2024-05-10'", byte[].class, tenant))).isEqualTo(may10);
+        long twoDays = HyperLogLog.fromBytes(may10.toBytes()).merge(may11).estimate();
+        assertThat(twoDays).isCloseTo(52, within(1L));
+        assertThat(repository.findActiveUsers(tenant, MAY_10, MAY_12.plusDays(1), 2)).containsExactly(
+                ActivityPoint.ofDay(MAY_10, may10.estimate()), ActivityPoint.ofDay(MAY_11, twoDays),
+                ActivityPoint.ofDay(MAY_12, may11.estimate()));
+        assertThat(repository.findActiveUsers(tenant, MAY_11, MAY_12.plusDays(1), 1))
+                .containsExactly(ActivityPoint.ofDay(MAY_11, 2));
+    }
+
+    @Test
+    void shouldRaiseTheRegistersInSqlAsTheSketchDoes() {
+        List<UUID> members = new ArrayList<>();
+        HyperLogLog expected = new HyperLogLog();
+        for (int i = 0; i < 3000; i++) {
+            UUID member = UUID.randomUUID();
+            members.add(member);
+            expected.add(hashOf(member));
+        }
+        // Repeated members, so registers repeat within one call
+        List<UUID> later = List.of(members.get(0), members.get(0), UUID.randomUUID(), UUID.randomUUID());
+        later.forEach(member -> expected.add(hashOf(member)));
+
+        byte[] sketch = addMembers(null, members);
+        sketch = addMembers(sketch, later);
+
+        assertThat(HyperLogLog.fromBytes(sketch)).isEqualTo(expected);
+        byte[] edges = jdbcTemplate.queryForObject("SELECT hll_add(NULL, ARRAY[16383, 5, 0, 5], ARRAY[4, 2, 3, 1])",
+                byte[].class);
+        byte[] expectedEdges = new byte[HyperLogLog.REGISTERS];
+        expectedEdges[0] = 3;
+        expectedEdges[5] = 2;
+        expectedEdges[HyperLogLog.REGISTERS - 1] = 4;
+        assertThat(edges).isEqualTo(expectedEdges);
+        assertThat(jdbcTemplate.queryForObject("SELECT hll_add(?, NULL, NULL)", byte[].class, (Object) sketch))
+                .isEqualTo(sketch);
+    }
+
+    @Test
+    void shouldFoldTheSketchStripesOfEachDay() {
+        short tenant = tenant("tenant-a");
+        SplittableRandom random = new SplittableRandom(3);
+        HyperLogLog first = new HyperLogLog();
+        HyperLogLog second = new HyperLogLog();
+        for (int i = 0; i < 1000; i++) {
+            first.add(random.nextLong());
+            second.add(random.nextLong());
+        }
+        sketch(tenant, MAY_10, 11, first);
+        sketch(tenant, MAY_10, 12, second);
+        sketch(tenant, MAY_11, 11, first);
+        sketch(tenant, MAY_12, 11, first);
+        sketch(tenant, MAY_12, 12, second);
+        // Weeks back, as late facts leave them
+        sketch(tenant, MAY_10.minusDays(30), 0, first);
+        sketch(tenant, MAY_10.minusDays(30), 3, second);
+
+        assertThat(repository.foldSketchStripes(MAY_12)).isEqualTo(2);
+
+        assertThat(jdbcTemplate.queryForList("SELECT day || ':' || stripe FROM agg_daily_user_sketches"
+                + " ORDER BY day, stripe", String.class)).containsExactly("2024-04-10:0", "2024-05-10:0",
+                "2024-05-11:11", "2024-05-12:11", "2024-05-12:12");
+        HyperLogLog union = HyperLogLog.fromBytes(first.toBytes()).merge(second);
+        assertThat(HyperLogLog.fromBytes(jdbcTemplate.queryForObject("SELECT sketch FROM agg_daily_user_sketches"
+                + " WHERE day = '2024-05-10'", byte[].class))).isEqualTo(union);
+        assertThat(HyperLogLog.fromBytes(jdbcTemplate.queryForObject("SELECT sketch FROM agg_daily_user_sketches"
+                + " WHERE day = '2024-04-10'", byte[].class))).isEqualTo(union);
+        assertThat(repository.findActiveUsers(tenant, MAY_10, MAY_11, 1))
+                .containsExactly(ActivityPoint.ofDay(MAY_10, union.estimate()));
+    }
+
+    private byte[] addMembers(byte[] sketch, List<UUID> members) {
+        return jdbcTemplate.queryForObject("SELECT hll_add(CAST(? AS bytea), array_agg(hll_register(m)),"
+                + " array_agg(hll_rank(m))) FROM unnest(?) AS m", byte[].class, sketch,
+                members.toArray(UUID[]::new));
+    }
+
+    private long hashOf(UUID member) {
+        return jdbcTemplate.queryForObject("SELECT uuid_hash_extended(?, 0)", Long.class, member);
+    }
+
+    private void sketch(short tenantCode, LocalDate day, int stripe, HyperLogLog sketch) {
+        jdbcTemplate.update("INSERT INTO agg_daily_user_sketches (tenant_code, day, stripe, sketch)"
+                + " VALUES (?, ?, ?, ?)", tenantCode, day, stripe, sketch.toBytes());
+    }
+
+    private short tenant(String tenantId) {
+        return jdbcTemplate.queryForObject("INSERT INTO dim_tenants (tenant_id) VALUES (?) RETURNING tenant_code",
+                Short.class, tenantId);
+    }
+
+    private void rollUp(short tenantCode, String day, int stripe, int firstActiveUsers) {
+        jdbcTemplate.update("INSERT INTO agg_daily_tenant_activity (tenant_code, day, activity_code, stripe,"
+                + " activity_count, first_active_users) VALUES (?, ?::date, 0, ?, 10, ?)", tenantCode, day, stripe,
+                firstActiveUsers);
+    }
+
+    private void hour(short tenantCode, String hour, int stripe) {
+        jdbcTemplate.update("INSERT INTO agg_hourly_tenant_activity (tenant_code, hour, activity_code, stripe,"
+                + " activity_count) VALUES (?, ?::timestamptz, 0, ?, 10)", tenantCode, hour, stripe);
+    }
+
+    private static FactActivity fact(String tenantId, UUID userId, String type, String occurredAt) {
+        return FactActivity.builder()
+                .id(UUID.randomUUID())
+                .eventId(UUID.randomUUID())
+                .tenantId(tenantId)
+                .userId(userId)
+                .activityType(type)
+                .targetId(UUID.randomUUID())
+                .occurredAt(Instant.parse(occurredAt))
+                .build();
+    }
+}
@@ -0,0 +1,229 @@
+package com.openforum.datalake.repository;
+
+import com.openforum.datalake.domain.FactActivity;
+import com.openforum.datalake.ingestor.RawJson;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.jackson.JacksonAutoConfiguration;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.testcontainers.service.connection.ServiceConnection;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@DataJpaTest
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Import({ FactActivityBatchWriter.class, FactCodeDictionary.class, JacksonAutoConfiguration.class })
+@Testcontainers
+class FactActivityBatchWriterTest {
+
+    private static final Logger log = LoggerFactory.getLogger(FactActivityBatchWriterTest.class);
+
+    private static final int ROWS = 5_000;
+
+    @Container
+    @ServiceConnection
+    static PostgreSQLContainer<?> postgres = new PostgreSQLContainer<>("postgres:16-alpine");
+
+    @Autowired
+    private FactActivityBatchWriter batchWriter;
+
+    @Autowired
+    private FactActivityRepository factActivityRepository;
+
+    @Autowired
+    private FactCodeDictionary factCodeDictionary;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Test
+    void shouldIgnoreDuplicateEvents() {
+        List<FactActivity> facts = facts(10);
+
+        assertThat(batchWriter.insertAll(facts)).isEqualTo(10);
+        // Redelivery of the same events (new row ids, same event ids) is a no-op
+        assertThat(batchWriter.insertAll(withFreshIds(facts))).isZero();
+        assertThat(countFacts()).isEqualTo(10);
+    }
+
+    @Test
+    void shouldReturnEventIdsOfInsertedFactsOnly() {
+        List<FactActivity> stored = facts(2);
+        batchWriter.insertAll(stored);
+        List<FactActivity> redelivered = new ArrayList<>(withFreshIds(stored));
+        FactActivity fresh = facts(1).get(0);
+        redelivered.add(fresh);
+
+        assertThat(batchWriter.insertReturningEventIds(redelivered)).containsExactly(fresh.getEventId());
+    }
+
+    @Test
+    void shouldCountInsertedFactsPerUserAndDay() {
+        UUID userId = UUID.randomUUID();
+        List<FactActivity> facts = facts(3);
+        facts.forEach(fact -> fact.setUserId(userId));
+        facts.get(2).getId().setOccurredAt(Instant.parse("2024-05-09T23:59:59Z"));
+        facts.get(1).getId().setOccurredAt(Instant.parse("2024-05-10T00:00:00Z"));
+        facts.get(0).getId().setOccurredAt(Instant.parse("2024-05-10T12:00:00Z"));
+
+        batchWriter.insertAll(facts);
+        batchWriter.insertAll(withFreshIds(facts));
+        batchWriter.insertAll(facts(1));
+
+        assertThat(jdbcTemplate.queryForList("SELECT day::text AS day, activity_count FROM agg_user_daily_activity"
+                + " WHERE user_id = ? ORDER BY day", userId)).containsExactly(
+                        Map.of("day", "2024-05-09", "activity_count", 1),
+                        Map.of("day", "2024-05-10", "activity_count", 2));
+        assertThat(jdbcTemplate.queryForObject("SELECT generation FROM member_health_dirty WHERE user_id = ?",
+                Long.class, userId)).isZero();
+        assertThat(jdbcTemplate.queryForObject("SELECT COUNT(*) FROM member_health_dirty", Long.class))
+                .isEqualTo(2);
+    }
+
+    @Test
+    void shouldRollUpInsertedFactsPerTenantDayAndType() {
+        UUID member = UUID.randomUUID();
+        List<FactActivity> posts = facts(2);
+        posts.get(0).setUserId(member);
+        posts.forEach(fact -> fact.getId().setOccurredAt(Instant.parse("2024-05-10T10:00:00Z")));
+        List<FactActivity> later = facts(2);
+        // Earlier in the day, but the member was already counted under the type of their first batch
+        later.get(0).setUserId(member);
+        later.get(0).setActivityType("REACTION");
+        later.get(1).setUserId(null);
+        later.forEach(fact -> fact.getId().setOccurredAt(Instant.parse("2024-05-10T09:00:00Z")));
+
+        batchWriter.insertAll(posts);
+        batchWriter.insertAll(later);
+        batchWriter.insertAll(withFreshIds(posts));
+
+        assertThat(jdbcTemplate.queryForList("""
+                SELECT a.activity_type, SUM(r.activity_count)::int AS activities,
+                       SUM(r.first_active_users)::int AS first_active_users
+                FROM agg_daily_tenant_activity r
+                JOIN dim_activity_types a ON a.activity_code = r.activity_code
+                WHERE r.day = '2024-05-10'
+                GROUP BY a.activity_type
+                ORDER BY a.activity_type""")).containsExactly(
+                        Map.of("activity_type", "POST_CREATED", "activities", 3, "first_active_users", 2),
+                        Map.of("activity_type", "REACTION", "activities", 1, "first_active_users", 0));
+    }
+
+    @Test
+    void shouldStoreRawMetadataSliceAsJsonb() {
+        byte[] record = "{\"eventType\":\"PostCreated\",\"payload\":{\"content\":\"Grüße\",\"n\":1}}"
+                .getBytes(StandardCharsets.UTF_8);
+        int offset = new String(record, StandardCharsets.UTF_8).indexOf("{\"content");
+        FactActivity fact = facts(1).get(0);
+        fact.setMetadata(null);
+        fact.setRawMetadata(new RawJson(record, offset, record.length - offset - 1));
+
+        assertThat(batchWriter.insertAll(List.of(fact))).isEqualTo(1);
+        assertThat(jdbcTemplate.queryForObject("SELECT metadata ->> 'content' FROM fact_activity", String.class))
+                .isEqualTo("Grüße");
+        assertThat(jdbcTemplate.queryForObject("SELECT (metadata ->> 'n')::int FROM fact_activity", Integer.class))
+                .isEqualTo(1);
+    }
+
+    @Test
+    void shouldStorePromotedColumns() {
+        FactActivity fact = facts(1).get(0);
+        UUID categoryId = UUID.randomUUID();
+        fact.setCategoryId(categoryId);
+        fact.setSentiment(0.75);
+        fact.setIsAdmin(false);
+
+        batchWriter.insertAll(List.of(fact));
+
+        assertThat(jdbcTemplate.queryForMap("SELECT category_id, sentiment, is_admin FROM fact_activity"))
+                .containsExactlyInAnyOrderEntriesOf(Map.of("category_id", categoryId, "sentiment", 0.75,
+                        "is_admin", false));
+    }
+
+    @Test
+    void shouldOutperformPerRowSaves() {
+        // Warm up both paths so connection setup and statement parsing are not measured
+        List<FactActivity> warmUp = facts(100);
+        factCodeDictionary.encode(warmUp);
+        factActivityRepository.saveAllAndFlush(warmUp);
+        batchWriter.insertAll(facts(100));
+
+        List<FactActivity> perRow = facts(ROWS);
+        long start = System.nanoTime();
+        perRow.forEach(fact -> {
+            factCodeDictionary.encode(fact);
+            factActivityRepository.save(fact);
+        });
+        factActivityRepository.flush();
+        double perRowRate = rowsPerSecond(ROWS, System.nanoTime() - start);
+
+        List<FactActivity> batched = facts(ROWS);
+        start = System.nanoTime();
+        int inserted = batchWriter.insertAll(batched);
+        double batchedRate = rowsPerSecond(ROWS, System.nanoTime() - start);
+
+        log.info("fact_activity inserts: per-row save {} rows/s, multi-row insert {} rows/s ({}x)",
+                Math.round(perRowRate), Math.round(batchedRate), String.format("%.1f", batchedRate / perRowRate));
+
+        assertThat(inserted).isEqualTo(ROWS);
+        assertThat(countFacts()).isEqualTo(2L * ROWS + 200);
+        assertThat(batchedRate).isGreaterThan(perRowRate);
+    }
+
+    private long countFacts() {
+        return jdbcTemplate.queryForObject("SELECT COUNT(*) FROM fact_activity", Long.class);
+    }
+
+    private static double rowsPerSecond(int rows, long nanos) {
+        return rows / (nanos / 1_000_000_000.0);
+    }
+
+    private static List<FactActivity> facts(int count) {
+        Instant base = Instant.now().truncatedTo(ChronoUnit.MILLIS);
+        List<FactActivity> facts = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            facts.add(FactActivity.builder()
+                    .id(UUID.randomUUID())
+                    .eventId(UUID.randomUUID())
+                    .tenantId("tenant-1")
+                    .userId(UUID.randomUUID())
+                    .activityType("POST_CREATED")
+                    .targetId(UUID.randomUUID())
+                    .occurredAt(base.minusSeconds(i))
+                    .metadata(Map.of("content", "Post " + i))
+                    .build());
+        }
+        return facts;
+    }
+
+    private static List<FactActivity> withFreshIds(List<FactActivity> facts) {
+        return facts.stream()
+                .map(f -> FactActivity.builder()
+                        .id(UUID.randomUUID())
+                        .eventId(f.getEventId())
+                        .tenantId(f.getTenantId())
+                        .userId(f.getUserId())
+                        .activityType(f.getActivityType())
+                        .targetId(f.getTargetId())
+                        .occurredAt(f.getId().getOccurredAt())
+                        .metadata(f.getMetadata())
+                        .build())
+                .toList();
+    }
+}
@@ -0,0 +1,189 @@
+package com.openforum.datalake.repository;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.YearMonth;
+import java.time.ZoneOffset;
+import java.time.temporal.ChronoUnit;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Runs the daily active users query the activity endpoint ran over raw facts,
+ * before {@code agg_daily_tenant_activity}, for the last 30 days against a year of activity laid out in plain monthly
+ * partitions and in monthly partitions split by {@code HASH (tenant_code)}, and
+ * logs the partitions the planner scans for each layout.
+ * <p>
+ * Needs a PostgreSQL database it may create the {@code pruning_benchmark}
+ * schema in. Run after {@code mvn test-compile}:
+ *
+ * <pre>
+ * java -Dbenchmark.jdbc-url=jdbc:postgresql://localhost:5432/postgres?user=postgres \
+ *     -cp target/test-classes:target/classes:$(cat cp.txt) \
+ *     com.openforum.datalake.repository.FactActivityPruningBenchmark
+ * </pre>
+ *
+ * where {@code cp.txt} comes from {@code mvn dependency:build-classpath -Dmdep.outputFile=cp.txt}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FactActivityPruningBenchmark {
+
+    private static final Logger log = LoggerFactory.getLogger(FactActivityPruningBenchmark.class);
+
+    private static final String SCHEMA = "pruning_benchmark";
+    private static final YearMonth FIRST_MONTH = YearMonth.of(2024, 1);
+    private static final int MONTHS = 12;
+    private static final int TENANTS = 200;
+    private static final Pattern RELATION = Pattern.compile("\"Relation Name\": \"([^\"]+)\"");
+
+    // As Hibernate generated it for the former FactActivityRepository.countDailyActiveUsers
+    private static final String DAILY_ACTIVE_USERS = """
+            SELECT CAST(occurred_at AS date), COUNT(DISTINCT user_id)
+            FROM pruning_benchmark.fact_activity
+            WHERE tenant_code = ? AND occurred_at >= ?
+            GROUP BY CAST(occurred_at AS date)
+            ORDER BY CAST(occurred_at AS date)
+            """;
+
+    /** Hash partitions per month; 0 for plain monthly partitions. */
+    @Param({ "0", "8" })
+    public int tenantHashPartitions;
+
+    @Param({ "2000000" })
+    public int rows;
+
+    private Connection connection;
+    private PreparedStatement query;
+    private Timestamp startDate;
+    private int tenant;
+
+    @Setup
+    public void setUp() throws SQLException {
+        connection = DriverManager.getConnection(System.getProperty("benchmark.jdbc-url",
+                "jdbc:postgresql://localhost:5432/postgres?user=postgres"));
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("DROP SCHEMA IF EXISTS " + SCHEMA + " CASCADE");
+            statement.execute("CREATE SCHEMA " + SCHEMA);
+            statement.execute("""
+                    CREATE TABLE pruning_benchmark.fact_activity (
+                        id UUID NOT NULL,
+                        event_id UUID NOT NULL,
+                        user_id UUID NOT NULL,
+                        target_id UUID,
+                        occurred_at TIMESTAMP WITH TIME ZONE NOT NULL,
+                        tenant_code SMALLINT NOT NULL,
+                        activity_code SMALLINT NOT NULL,
+                        PRIMARY KEY (id, occurred_at, tenant_code)
+                    ) PARTITION BY RANGE (occurred_at)
+                    """);
+            statement.execute("CREATE INDEX ON pruning_benchmark.fact_activity (tenant_code, occurred_at)");
+            for (int i = 0; i < MONTHS; i++) {
+                createMonth(statement, FIRST_MONTH.plusMonths(i));
+            }
+            // Uniform over the year, 500 members per tenant
+            statement.execute("INSERT INTO pruning_benchmark.fact_activity"
+                    + " SELECT gen_random_uuid(), gen_random_uuid(), md5((g % " + TENANTS * 500 + ")::text)::uuid,"
+                    + " gen_random_uuid(),"
+                    + " TIMESTAMPTZ '" + start(FIRST_MONTH) + "' + random() * INTERVAL '" + MONTHS + " months',"
+                    + " g % " + TENANTS + ", 3"
+                    + " FROM generate_series(1, " + rows + ") g");
+            statement.execute("VACUUM ANALYZE pruning_benchmark.fact_activity");
+        }
+        startDate = Timestamp.from(start(FIRST_MONTH.plusMonths(MONTHS)).minus(30, ChronoUnit.DAYS));
+        query = connection.prepareStatement(DAILY_ACTIVE_USERS);
+        log.info("tenantHashPartitions={} scans {}", tenantHashPartitions, scannedPartitions());
+    }
+
+    @TearDown
+    public void tearDown() throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("DROP SCHEMA " + SCHEMA + " CASCADE");
+        }
+        connection.close();
+    }
+
+    @Benchmark
+    public int countDailyActiveUsers() throws SQLException {
+        query.setShort(1, (short) (tenant++ % TENANTS));
+        query.setTimestamp(2, startDate);
+        int days = 0;
+        try (ResultSet resultSet = query.executeQuery()) {
+            while (resultSet.next()) {
+                days += resultSet.getInt(2) > 0 ? 1 : 0;
+            }
+        }
+        return days;
+    }
+
+    private void createMonth(Statement statement, YearMonth month) throws SQLException {
+        String table = SCHEMA + "." + FactPartitionRepository.partitionName(month);
+        String partition = "CREATE TABLE " + table + " PARTITION OF " + SCHEMA + ".fact_activity "
+                + FactPartitionRepository.boundFor(month);
+        if (tenantHashPartitions == 0) {
+            statement.execute(partition);
+            return;
+        }
+        statement.execute(partition + " PARTITION BY HASH (tenant_code)");
+        for (int remainder = 0; remainder < tenantHashPartitions; remainder++) {
+            statement.execute("CREATE TABLE " + table + "_h" + remainder + " PARTITION OF " + table
+                    + " FOR VALUES WITH (MODULUS " + tenantHashPartitions + ", REMAINDER " + remainder + ")");
+        }
+    }
+
+    private Set<String> scannedPartitions() throws SQLException {
+        Set<String> relations = new LinkedHashSet<>();
+        try (PreparedStatement explain = connection.prepareStatement("EXPLAIN (FORMAT JSON) " + DAILY_ACTIVE_USERS)) {
+            explain.setShort(1, (short) 1);
+            explain.setTimestamp(2, startDate);
+            try (ResultSet resultSet = explain.executeQuery()) {
+                resultSet.next();
+                Matcher matcher = RELATION.matcher(resultSet.getString(1));
+                while (matcher.find()) {
+                    relations.add(matcher.group(1));
+                }
+            }
+        }
+        return relations;
+    }
+
+    private static Instant start(YearMonth month) {
+        return month.atDay(1).atStartOfDay().toInstant(ZoneOffset.UTC);
+    }
+
+    public static void main(String[] args) throws Exception {
+        new Runner(new OptionsBuilder()
+                .include(FactActivityPruningBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
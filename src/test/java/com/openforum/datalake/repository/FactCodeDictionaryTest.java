@@ -0,0 +1,90 @@
+package com.openforum.datalake.repository;
+
+import com.openforum.datalake.domain.FactActivity;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.testcontainers.service.connection.ServiceConnection;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@DataJpaTest
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Import(FactCodeDictionary.class)
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+@Testcontainers
+class FactCodeDictionaryTest {
+
+    @Container
+    @ServiceConnection
+    static PostgreSQLContainer<?> postgres = new PostgreSQLContainer<>("postgres:16-alpine");
+
+    @Autowired
+    private FactCodeDictionary factCodeDictionary;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Test
+    void shouldAssignCodesOnceAndShareThemAcrossInstances() {
+        FactActivity first = fact("tenant-codes", "POST_CREATED");
+        FactActivity second = fact("tenant-codes", "FLAIR_CHANGED");
+        factCodeDictionary.encode(List.of(first, second));
+
+        assertThat(second.getTenantCode()).isEqualTo(first.getTenantCode());
+        assertThat(first.getActivityCode()).isEqualTo(jdbcTemplate.queryForObject(
+                "SELECT activity_code FROM dim_activity_types WHERE activity_type = 'POST_CREATED'", Short.class));
+        assertThat(second.getActivityCode()).isNotNull().isNotEqualTo(first.getActivityCode());
+
+        // Another ingestor process resolves the same codes
+        FactActivity elsewhere = fact("tenant-codes", "FLAIR_CHANGED");
+        new FactCodeDictionary(jdbcTemplate).encode(List.of(elsewhere));
+        assertThat(elsewhere.getTenantCode()).isEqualTo(first.getTenantCode());
+        assertThat(elsewhere.getActivityCode()).isEqualTo(second.getActivityCode());
+        assertThat(factCodeDictionary.findTenantCode("tenant-codes")).contains(first.getTenantCode());
+        assertThat(factCodeDictionary.findTenantCode("tenant-unknown")).isEmpty();
+    }
+
+    @Test
+    void shouldNotCacheCodesOfRolledBackTransactions() {
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+        FactActivity rolledBack = fact("tenant-rolled-back", "POST_CREATED");
+        transaction.executeWithoutResult(status -> {
+            factCodeDictionary.encode(List.of(rolledBack));
+            status.setRollbackOnly();
+        });
+
+        assertThat(rolledBack.getTenantCode()).isNotNull();
+        assertThat(factCodeDictionary.findTenantCode("tenant-rolled-back")).isEmpty();
+        FactActivity retried = fact("tenant-rolled-back", "POST_CREATED");
+        transaction.executeWithoutResult(status -> factCodeDictionary.encode(List.of(retried)));
+        assertThat(factCodeDictionary.findTenantCode("tenant-rolled-back")).contains(retried.getTenantCode());
+    }
+
+    private static FactActivity fact(String tenantId, String activityType) {
+        return FactActivity.builder()
+                .id(UUID.randomUUID())
+                .eventId(UUID.randomUUID())
+                .tenantId(tenantId)
+                .activityType(activityType)
+                .occurredAt(Instant.parse("2024-05-10T08:00:00Z"))
+                .build();
+    }
+}
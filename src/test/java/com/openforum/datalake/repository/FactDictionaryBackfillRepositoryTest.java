@@ -0,0 +1,82 @@
+package com.openforum.datalake.repository;
+
+import com.openforum.datalake.ingestor.MetadataPromotion;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.testcontainers.service.connection.ServiceConnection;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@DataJpaTest
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Import(FactDictionaryBackfillRepository.class)
+@Testcontainers
+class FactDictionaryBackfillRepositoryTest {
+
+    private static final Map<String, String> SENTIMENT = Map.of(MetadataPromotion.SENTIMENT, "sentiment");
+
+    @Container
+    @ServiceConnection
+    static PostgreSQLContainer<?> postgres = new PostgreSQLContainer<>("postgres:16-alpine");
+
+    @Autowired
+    private FactDictionaryBackfillRepository backfillRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Test
+    void shouldMoveTheFactsChunkByChunkAndDropTheOldTable() {
+        UUID member = UUID.randomUUID();
+        insertLegacyFact(UUID.randomUUID(), "tenant-a", member, "POST_CREATED", "2024-05-10T10:00:00Z",
+                "{\"sentiment\":0.5}");
+        insertLegacyFact(UUID.randomUUID(), "tenant-a", member, "LEGACY_VIEW", "2024-05-10T11:00:00Z", "{}");
+        insertLegacyFact(UUID.randomUUID(), "tenant-b", UUID.randomUUID(), "REACTION", "2024-05-11T10:00:00Z",
+                "{\"sentiment\":\"high\"}");
+        // Replayed and ingested again since V8
+        UUID replayed = UUID.randomUUID();
+        insertLegacyFact(replayed, "tenant-b", member, "REACTION", "2024-05-11T11:00:00Z", "{}");
+        jdbcTemplate.update("INSERT INTO dim_tenants (tenant_id) VALUES ('tenant-b')");
+        jdbcTemplate.update("INSERT INTO fact_activity (id, event_id, occurred_at, tenant_code)"
+                + " SELECT gen_random_uuid(), ?, '2024-05-11T11:00:00Z', tenant_code FROM dim_tenants"
+                + " WHERE tenant_id = 'tenant-b'", replayed);
+
+        assertThat(backfillRepository.isPending()).isTrue();
+        assertThat(backfillRepository.backfillChunk(SENTIMENT, 2)).isEqualTo(2);
+        assertThat(backfillRepository.backfillChunk(SENTIMENT, 2)).isEqualTo(2);
+        assertThat(backfillRepository.backfillChunk(SENTIMENT, 2)).isZero();
+
+        assertThat(backfillRepository.isPending()).isFalse();
+        assertThat(backfillRepository.backfillChunk(SENTIMENT, 2)).isZero();
+        assertThat(jdbcTemplate.queryForObject("SELECT COUNT(*) FROM fact_activity", Long.class)).isEqualTo(4);
+        assertThat(jdbcTemplate.queryForList("SELECT t.tenant_id || ':' || a.activity_type || ':'"
+                + " || COALESCE(f.sentiment::text, '-') FROM fact_activity f"
+                + " JOIN dim_tenants t USING (tenant_code) JOIN dim_activity_types a USING (activity_code)"
+                + " ORDER BY f.occurred_at", String.class))
+                .containsExactly("tenant-a:POST_CREATED:0.5", "tenant-a:LEGACY_VIEW:-", "tenant-b:REACTION:-");
+        // Counted like ingested facts, the replayed one only once
+        assertThat(jdbcTemplate.queryForObject("SELECT SUM(activity_count) FROM agg_daily_tenant_activity",
+                Long.class)).isEqualTo(3);
+        assertThat(jdbcTemplate.queryForObject("SELECT SUM(activity_count) FROM agg_user_daily_activity"
+                + " WHERE user_id = ?", Long.class, member)).isEqualTo(2);
+    }
+
+    private void insertLegacyFact(UUID eventId, String tenantId, UUID userId, String type, String occurredAt,
+            String metadata) {
+        jdbcTemplate.update("INSERT INTO fact_activity_v7 (id, event_id, tenant_id, user_id, activity_type,"
+                + " occurred_at, metadata) VALUES (?, ?, ?, ?, ?, ?, ?::jsonb)", UUID.randomUUID(), eventId,
+                tenantId, userId, type, Timestamp.from(Instant.parse(occurredAt)), metadata);
+    }
+}
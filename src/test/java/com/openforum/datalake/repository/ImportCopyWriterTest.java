@@ -0,0 +1,167 @@
+package com.openforum.datalake.repository;
+
+import com.openforum.datalake.domain.DimThread;
+import com.openforum.datalake.domain.FactActivity;
+import com.openforum.datalake.ingestor.RawJson;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.jackson.JacksonAutoConfiguration;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.testcontainers.service.connection.ServiceConnection;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@DataJpaTest
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Import({ ImportCopyWriter.class, FactCodeDictionary.class, JacksonAutoConfiguration.class })
+@Testcontainers
+class ImportCopyWriterTest {
+
+    private static final Instant CREATED = Instant.parse("2023-03-01T08:00:00.123456Z");
+
+    @Container
+    @ServiceConnection
+    static PostgreSQLContainer<?> postgres = new PostgreSQLContainer<>("postgres:16-alpine");
+
+    @Autowired
+    private ImportCopyWriter importCopyWriter;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Test
+    void shouldMergeThreadsFactsAndReplyCounts() {
+        DimThread thread = thread("Migrated thread");
+        List<FactActivity> facts = new ArrayList<>();
+        facts.add(fact("THREAD_IMPORTED", thread.getThreadId(), CREATED, Map.of("title", "Migrated thread")));
+        for (int i = 1; i <= 3; i++) {
+            facts.add(fact("POST_IMPORTED", thread.getThreadId(), CREATED.plusSeconds(60L * i), null));
+        }
+        FactActivity raw = fact("POST_IMPORTED", thread.getThreadId(), CREATED.plusSeconds(600), null);
+        raw.setRawMetadata(RawJson.of("{\"content\":\"Grüße\"}".getBytes(StandardCharsets.UTF_8)));
+        raw.setCategoryId(UUID.fromString("3f1c2a4e-9b7d-4c1e-8a2f-5d6e7f809a1b"));
+        raw.setSentiment(-0.25);
+        raw.setIsAdmin(true);
+        facts.add(raw);
+
+        int inserted = importCopyWriter.load(List.of(thread), facts);
+
+        assertThat(inserted).isEqualTo(5);
+        Map<String, Object> row = jdbcTemplate.queryForMap(
+                "SELECT title, status, tags::text AS tags, created_at, last_activity_at, reply_count "
+                        + "FROM dim_threads WHERE thread_id = ?",
+                thread.getThreadId());
+        assertThat(row.get("title")).isEqualTo("Migrated thread");
+        assertThat(row.get("status")).isEqualTo("OPEN");
+        assertThat(row.get("tags")).isEqualTo("[\"import\"]");
+        assertThat(((Timestamp) row.get("created_at")).toInstant()).isEqualTo(CREATED);
+        assertThat(((Timestamp) row.get("last_activity_at")).toInstant())
+                .isEqualTo(CREATED.plusSeconds(600));
+        assertThat(row.get("reply_count")).isEqualTo(4);
+        assertThat(jdbcTemplate.queryForList(
+                "SELECT metadata ->> 'content' FROM fact_activity WHERE metadata ? 'content'", String.class))
+                .containsExactly("Grüße");
+        assertThat(jdbcTemplate.queryForMap("SELECT category_id::text AS category_id, sentiment, is_admin"
+                + " FROM fact_activity WHERE metadata ? 'content'")).containsExactlyInAnyOrderEntriesOf(Map.of(
+                        "category_id", "3f1c2a4e-9b7d-4c1e-8a2f-5d6e7f809a1b", "sentiment", -0.25, "is_admin", true));
+        assertThat(jdbcTemplate.queryForObject(
+                "SELECT f.metadata ->> 'title' FROM fact_activity f JOIN dim_activity_types a USING (activity_code)"
+                        + " WHERE a.activity_type = 'THREAD_IMPORTED'",
+                String.class)).isEqualTo("Migrated thread");
+    }
+
+    @Test
+    void shouldNotCountRedeliveredRepliesTwice() {
+        DimThread thread = thread("Replayed thread");
+        List<FactActivity> replies = List.of(
+                fact("POST_IMPORTED", thread.getThreadId(), CREATED.plusSeconds(60), null),
+                fact("POST_IMPORTED", thread.getThreadId(), CREATED.plusSeconds(120), null));
+
+        importCopyWriter.load(List.of(thread), replies);
+        int reinserted = importCopyWriter.load(List.of(thread("Replayed thread", thread.getThreadId())),
+                replies.stream().map(ImportCopyWriterTest::redelivered).toList());
+
+        assertThat(reinserted).isZero();
+        assertThat(jdbcTemplate.queryForObject("SELECT reply_count FROM dim_threads WHERE thread_id = ?",
+                Integer.class, thread.getThreadId())).isEqualTo(2);
+        assertThat(jdbcTemplate.queryForObject("SELECT activity_count FROM agg_user_daily_activity"
+                + " WHERE user_id = ?", Integer.class, replies.get(0).getUserId())).isEqualTo(1);
+        assertThat(jdbcTemplate.queryForObject("SELECT generation FROM member_health_dirty WHERE user_id = ?",
+                Long.class, replies.get(0).getUserId())).isZero();
+        assertThat(jdbcTemplate.queryForObject("SELECT SUM(r.activity_count) FROM agg_daily_tenant_activity r"
+                + " JOIN dim_activity_types a ON a.activity_code = r.activity_code"
+                + " WHERE a.activity_type = 'POST_IMPORTED'", Long.class)).isEqualTo(2);
+    }
+
+    @Test
+    void shouldKeepRepliesToThreadsNotImportedYet() {
+        UUID threadId = UUID.randomUUID();
+
+        importCopyWriter.load(List.of(), List.of(
+                fact("POST_IMPORTED", threadId, CREATED.plusSeconds(60), null),
+                fact("POST_IMPORTED", threadId, CREATED.plusSeconds(120), null)));
+        importCopyWriter.load(List.of(), List.of(fact("POST_IMPORTED", threadId, CREATED.plusSeconds(30), null)));
+
+        Map<String, Object> pending = jdbcTemplate.queryForMap(
+                "SELECT replies, last_activity_at, first_reply_at FROM pending_thread_replies WHERE thread_id = ?",
+                threadId);
+        assertThat(pending.get("replies")).isEqualTo(3);
+        assertThat(((Timestamp) pending.get("last_activity_at")).toInstant()).isEqualTo(CREATED.plusSeconds(120));
+        assertThat(pending.get("first_reply_at")).isNull();
+    }
+
+    private static DimThread thread(String title) {
+        return thread(title, UUID.randomUUID());
+    }
+
+    private static DimThread thread(String title, UUID threadId) {
+        DimThread thread = new DimThread();
+        thread.setThreadId(threadId);
+        thread.setTenantId("tenant-import");
+        thread.setTitle(title);
+        thread.setStatus("OPEN");
+        thread.setTags(List.of("import"));
+        thread.setCreatedAt(CREATED);
+        thread.setLastActivityAt(CREATED);
+        return thread;
+    }
+
+    private static FactActivity fact(String type, UUID threadId, Instant occurredAt, Map<String, Object> metadata) {
+        return FactActivity.builder()
+                .id(UUID.randomUUID())
+                .eventId(UUID.randomUUID())
+                .tenantId("tenant-import")
+                .userId(UUID.randomUUID())
+                .activityType(type)
+                .targetId(threadId)
+                .occurredAt(occurredAt)
+                .metadata(metadata)
+                .build();
+    }
+
+    private static FactActivity redelivered(FactActivity fact) {
+        return FactActivity.builder()
+                .id(UUID.randomUUID())
+                .eventId(fact.getEventId())
+                .tenantId(fact.getTenantId())
+                .userId(fact.getUserId())
+                .activityType(fact.getActivityType())
+                .targetId(fact.getTargetId())
+                .occurredAt(fact.getId().getOccurredAt())
+                .build();
+    }
+}
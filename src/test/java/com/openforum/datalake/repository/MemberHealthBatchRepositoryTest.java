@@ -0,0 +1,232 @@
+package com.openforum.datalake.repository;
+
+import com.openforum.datalake.job.MemberHealthRun;
+import com.openforum.datalake.job.MemberHealthScoring;
+import com.openforum.datalake.repository.MemberHealthBatchRepository.Tenant;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.testcontainers.service.connection.ServiceConnection;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@DataJpaTest
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Import({ MemberHealthBatchRepository.class, MemberHealthRunRepository.class })
+@Testcontainers
+class MemberHealthBatchRepositoryTest {
+
+    private static final Instant FROM = Instant.parse("2024-05-01T00:00:00Z");
+    private static final Instant TO = Instant.parse("2024-05-31T00:00:00Z");
+    private static final Instant CALCULATED_AT = Instant.parse("2024-05-31T01:00:00Z");
+    // Posts score 2 and reactions 1; other types score 0.5
+    private static final MemberHealthScoring SCORING = new MemberHealthScoring(
+            Map.of("POST_CREATED", 2.0, "REACTION", 1.0), 0.5, 0, 80, 20, 10, 50);
+
+    @Container
+    @ServiceConnection
+    static PostgreSQLContainer<?> postgres = new PostgreSQLContainer<>("postgres:16-alpine");
+
+    @Autowired
+    private MemberHealthBatchRepository batchRepository;
+
+    @Autowired
+    private MemberHealthRunRepository runRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Test
+    void shouldFindTheLastMemberOfEveryChunkOfOneTenant() {
+        short tenant = tenant("tenant-a");
+        short other = tenant("tenant-b");
+        for (int i = 1; i <= 5; i++) {
+            markDirty(tenant, new UUID(0, i), 0);
+        }
+        markDirty(other, new UUID(0, 6), 0);
+
+        assertThat(batchRepository.findTenants()).extracting(Tenant::id).containsExactly("tenant-a", "tenant-b");
+        assertThat(bounds(tenant, null)).containsExactly(new UUID(0, 2), new UUID(0, 4), new UUID(0, 5));
+        assertThat(bounds(tenant, new UUID(0, 1))).containsExactly(new UUID(0, 3), new UUID(0, 5));
+        assertThat(bounds(tenant, new UUID(0, 5))).isEmpty();
+    }
+
+    @Test
+    void shouldScoreWeightedActivityOfTheWindowInOneChunk() {
+        Tenant tenant = new Tenant(tenant("tenant-a"), "tenant-a");
+        short post = activityType("POST_CREATED");
+        short reaction = activityType("REACTION");
+        short view = activityType("THREAD_VIEWED");
+        UUID before = new UUID(0, 1);
+        UUID champion = new UUID(0, 2);
+        UUID contributor = new UUID(0, 3);
+        UUID inactive = new UUID(0, 4);
+        UUID after = new UUID(0, 5);
+        countDay(tenant.code(), champion, "2024-05-01", post, 30);
+        countDay(tenant.code(), champion, "2024-05-30", reaction, 25);
+        countDay(tenant.code(), champion, "2024-05-31", post, 50); // outside the window
+        countDay(tenant.code(), contributor, "2024-05-20", view, 20);
+        countDay(tenant.code(), contributor, "2024-05-20", 0, 16); // untyped
+        countDay(tenant.code(), contributor, "2024-05-21", reaction, 3);
+        for (UUID member : List.of(before, champion, contributor, inactive, after)) {
+            markDirty(tenant.code(), member, 0);
+        }
+
+        int scored = batchRepository.scoreChunk(tenant, before, inactive, FROM, TO, CALCULATED_AT, SCORING);
+
+        assertThat(scored).isEqualTo(3);
+        assertThat(jdbcTemplate.queryForMap("SELECT tenant_id, health_score, churn_risk, engagement_level,"
+                + " calculated_at FROM dim_member_health WHERE user_id = ?", champion))
+                .containsExactlyInAnyOrderEntriesOf(Map.of("tenant_id", "tenant-a", "health_score", 85,
+                        "churn_risk", "LOW", "engagement_level", "CHAMPION", "calculated_at",
+                        Timestamp.from(CALCULATED_AT)));
+        assertThat(health(contributor)).isEqualTo(Map.of("health_score", 21, "churn_risk", "MEDIUM",
+                "engagement_level", "CONTRIBUTOR"));
+        assertThat(health(inactive)).isEqualTo(Map.of("health_score", 0, "churn_risk", "HIGH",
+                "engagement_level", "LURKER"));
+        assertThat(jdbcTemplate.queryForList("SELECT user_id FROM member_health_dirty ORDER BY user_id",
+                UUID.class)).containsExactly(before, after);
+    }
+
+    @Test
+    void shouldDecayActivityByAgeAndCapTheScore() {
+        Tenant tenant = new Tenant(tenant("tenant-a"), "tenant-a");
+        short post = activityType("POST_CREATED");
+        UUID recent = new UUID(0, 1);
+        UUID old = new UUID(0, 2);
+        UUID busy = new UUID(0, 3);
+        countDay(tenant.code(), recent, "2024-05-30", post, 20); // the window's last day, not decayed
+        countDay(tenant.code(), old, "2024-05-20", post, 20); // two half-lives old
+        countDay(tenant.code(), busy, "2024-05-30", post, 500);
+        for (UUID member : List.of(recent, old, busy)) {
+            markDirty(tenant.code(), member, 0);
+        }
+        MemberHealthScoring decaying = new MemberHealthScoring(Map.of("POST_CREATED", 2.0), 1, 5, 80, 20, 10, 50);
+
+        batchRepository.scoreChunk(tenant, null, busy, FROM, TO, CALCULATED_AT, decaying);
+
+        assertThat(health(recent)).containsEntry("health_score", 40);
+        assertThat(health(old)).containsEntry("health_score", 10);
+        assertThat(health(busy)).containsEntry("health_score", MemberHealthScoring.MAX_SCORE);
+    }
+
+    @Test
+    void shouldDecayTheScoresOfInactiveMembersDayByDay() {
+        Tenant tenant = new Tenant(tenant("tenant-a"), "tenant-a");
+        short post = activityType("POST_CREATED");
+        UUID inactive = new UUID(0, 1);
+        countDay(tenant.code(), inactive, "2024-05-30", post, 20);
+        MemberHealthScoring decaying = new MemberHealthScoring(Map.of("POST_CREATED", 2.0), 1, 1, 80, 20, 10, 50);
+        batchRepository.markActiveMembersDirty();
+        batchRepository.scoreChunk(tenant, null, inactive, FROM, TO, CALCULATED_AT, decaying);
+        assertThat(health(inactive)).containsEntry("health_score", 40);
+
+        // A day later, without new activity
+        Instant nextFrom = FROM.plus(Duration.ofDays(1));
+        Instant nextTo = TO.plus(Duration.ofDays(1));
+        batchRepository.expireDaysBefore(nextFrom);
+        assertThat(batchRepository.markActiveMembersDirty()).isEqualTo(1);
+        batchRepository.scoreChunk(tenant, null, inactive, nextFrom, nextTo, CALCULATED_AT.plus(Duration.ofDays(1)),
+                decaying);
+
+        assertThat(health(inactive)).containsEntry("health_score", 20);
+    }
+
+    @Test
+    void shouldExpireDaysBeforeTheWindowAndMarkTheirMembers() {
+        short tenant = tenant("tenant-a");
+        UUID old = new UUID(0, 1);
+        UUID recent = new UUID(0, 2);
+        countDay(tenant, old, "2024-04-30", 3);
+        countDay(tenant, old, "2024-05-02", 1);
+        countDay(tenant, recent, "2024-05-01", 1);
+        markDirty(tenant, old, 6);
+
+        assertThat(batchRepository.expireDaysBefore(FROM)).isEqualTo(1);
+
+        assertThat(jdbcTemplate.queryForList("SELECT day::text FROM agg_user_daily_activity ORDER BY day",
+                String.class)).containsExactly("2024-05-01", "2024-05-02");
+        assertThat(jdbcTemplate.queryForList("SELECT user_id, generation FROM member_health_dirty"))
+                .containsExactly(Map.of("user_id", old, "generation", 7L));
+    }
+
+    @Test
+    void shouldReplaceTheScoresOfMembersAlreadyScored() {
+        Tenant tenant = new Tenant(tenant("tenant-a"), "tenant-a");
+        UUID existing = new UUID(0, 1);
+        jdbcTemplate.update("INSERT INTO dim_member_health (user_id, tenant_id, health_score, churn_risk,"
+                + " engagement_level, calculated_at) VALUES (?, 'default', 90, 'LOW', 'CHAMPION', NOW())", existing);
+        markDirty(tenant.code(), existing, 2);
+
+        batchRepository.scoreChunk(tenant, null, existing, FROM, TO, CALCULATED_AT, SCORING);
+
+        assertThat(jdbcTemplate.queryForMap("SELECT tenant_id, health_score, churn_risk, engagement_level"
+                + " FROM dim_member_health WHERE user_id = ?", existing))
+                .isEqualTo(Map.of("tenant_id", "tenant-a", "health_score", 0, "churn_risk", "HIGH",
+                        "engagement_level", "LURKER"));
+        assertThat(jdbcTemplate.queryForObject("SELECT COUNT(*) FROM member_health_dirty", Integer.class)).isZero();
+    }
+
+    @Test
+    void shouldResumeOnlyTheLatestRunUntilItCompletes() {
+        MemberHealthRun finished = runRepository.start(FROM, TO);
+        runRepository.complete(finished);
+        assertThat(runRepository.findUnfinished()).isEmpty();
+
+        MemberHealthRun run = runRepository.start(FROM, TO);
+        UUID lastUser = UUID.randomUUID();
+        runRepository.saveProgress(run.advancedTo((short) 2, lastUser, 5000));
+
+        assertThat(runRepository.findUnfinished()).contains(new MemberHealthRun(run.runId(), FROM, TO, (short) 2,
+                lastUser, 5000));
+        runRepository.complete(run.advancedTo((short) 2, lastUser, 5000));
+        assertThat(runRepository.findUnfinished()).isEmpty();
+    }
+
+    private List<UUID> bounds(short tenantCode, UUID afterUserId) {
+        return batchRepository.findChunkBounds(tenantCode, afterUserId, 2);
+    }
+
+    private Map<String, Object> health(UUID userId) {
+        return jdbcTemplate.queryForMap("SELECT health_score, churn_risk, engagement_level FROM dim_member_health"
+                + " WHERE user_id = ?", userId);
+    }
+
+    private short activityType(String activityType) {
+        return jdbcTemplate.queryForObject("INSERT INTO dim_activity_types (activity_type) VALUES (?)"
+                + " ON CONFLICT (activity_type) DO UPDATE SET activity_type = EXCLUDED.activity_type"
+                + " RETURNING activity_code", Short.class, activityType);
+    }
+
+    private short tenant(String tenantId) {
+        return jdbcTemplate.queryForObject("INSERT INTO dim_tenants (tenant_id) VALUES (?) RETURNING tenant_code",
+                Short.class, tenantId);
+    }
+
+    private void countDay(short tenantCode, UUID userId, String day, int count) {
+        countDay(tenantCode, userId, day, 0, count);
+    }
+
+    private void countDay(short tenantCode, UUID userId, String day, int activityCode, int count) {
+        jdbcTemplate.update("INSERT INTO agg_user_daily_activity (tenant_code, user_id, day, activity_code,"
+                + " activity_count) VALUES (?, ?, ?::date, ?, ?)", tenantCode, userId, day, activityCode, count);
+    }
+
+    private void markDirty(short tenantCode, UUID userId, long generation) {
+        jdbcTemplate.update("INSERT INTO member_health_dirty (tenant_code, user_id, generation) VALUES (?, ?, ?)",
+                tenantCode, userId, generation);
+    }
+}
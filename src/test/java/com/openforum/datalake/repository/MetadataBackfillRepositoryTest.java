@@ -0,0 +1,104 @@
+package com.openforum.datalake.repository;
+
+import com.openforum.datalake.ingestor.MetadataPromotion;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.testcontainers.service.connection.ServiceConnection;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.YearMonth;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@DataJpaTest
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Import(MetadataBackfillRepository.class)
+@Testcontainers
+class MetadataBackfillRepositoryTest {
+
+    private static final YearMonth MAY = YearMonth.of(2024, 5);
+    private static final Map<String, String> ALL_FIELDS = Map.of(MetadataPromotion.CATEGORY_ID, "categoryId",
+            MetadataPromotion.SENTIMENT, "sentiment", MetadataPromotion.IS_ADMIN, "isAdmin");
+
+    @Container
+    @ServiceConnection
+    static PostgreSQLContainer<?> postgres = new PostgreSQLContainer<>("postgres:16-alpine");
+
+    @Autowired
+    private MetadataBackfillRepository backfillRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Test
+    void shouldFillPromotedColumnsChunkByChunk() {
+        UUID category = UUID.randomUUID();
+        for (int i = 0; i < 20; i++) {
+            insertFact(Instant.parse("2024-05-10T08:00:00Z").plusSeconds(i), "{\"content\":\"no fields\"}");
+        }
+        insertFact(Instant.parse("2024-05-11T08:00:00Z"),
+                "{\"categoryId\":\"" + category + "\",\"sentiment\":0.5,\"isAdmin\":true}");
+        insertFact(Instant.parse("2024-05-12T08:00:00Z"),
+                "{\"categoryId\":\"not-a-uuid\",\"sentiment\":\"high\",\"isAdmin\":false}");
+        UUID june = insertFact(Instant.parse("2024-06-01T00:00:00Z"), "{\"sentiment\":1}");
+        jdbcTemplate.update("INSERT INTO metadata_backfill (month) VALUES ('2024-05-01'), ('2024-06-01')");
+
+        assertThat(backfillRepository.backfillChunk(MAY, ALL_FIELDS, 10)).isTrue();
+        assertThat(backfillRepository.backfillChunk(MAY, ALL_FIELDS, 10)).isTrue();
+        assertThat(backfillRepository.backfillChunk(MAY, ALL_FIELDS, 10)).isFalse();
+
+        assertThat(jdbcTemplate.queryForMap("SELECT category_id, sentiment, is_admin FROM fact_activity"
+                + " WHERE metadata ->> 'sentiment' = '0.5'")).containsExactlyInAnyOrderEntriesOf(
+                        Map.of("category_id", category, "sentiment", 0.5, "is_admin", true));
+        Map<String, Object> malformed = jdbcTemplate.queryForMap("SELECT category_id, sentiment, is_admin"
+                + " FROM fact_activity WHERE metadata ->> 'sentiment' = 'high'");
+        assertThat(malformed.get("category_id")).isNull();
+        assertThat(malformed.get("sentiment")).isNull();
+        assertThat(malformed.get("is_admin")).isEqualTo(false);
+        assertThat(jdbcTemplate.queryForObject("SELECT sentiment FROM fact_activity WHERE id = ?", Double.class,
+                june)).isNull();
+        assertThat(jdbcTemplate.queryForMap("SELECT rows_updated, completed FROM metadata_backfill"
+                + " WHERE month = '2024-05-01'")).containsExactlyInAnyOrderEntriesOf(
+                        Map.of("rows_updated", 2L, "completed", true));
+        assertThat(backfillRepository.findPendingMonths()).containsExactly(YearMonth.of(2024, 6));
+    }
+
+    @Test
+    void shouldNotRewriteRowsThatAlreadyHaveTheirValues() {
+        UUID promoted = insertFact(Instant.parse("2024-05-10T08:00:00Z"), "{\"sentiment\":-1}");
+        jdbcTemplate.update("UPDATE fact_activity SET sentiment = -1 WHERE id = ?", promoted);
+        UUID pending = insertFact(Instant.parse("2024-05-11T08:00:00Z"), "{\"sentiment\":2,\"isAdmin\":true}");
+        jdbcTemplate.update("INSERT INTO metadata_backfill (month) VALUES ('2024-05-01')");
+        List<Object> versions = jdbcTemplate.queryForList("SELECT ctid::text FROM fact_activity WHERE id = ?",
+                Object.class, promoted);
+
+        backfillRepository.backfillChunk(MAY, Map.of(MetadataPromotion.SENTIMENT, "sentiment"), 10);
+
+        assertThat(jdbcTemplate.queryForList("SELECT ctid::text FROM fact_activity WHERE id = ?", Object.class,
+                promoted)).isEqualTo(versions);
+        // Only the configured column is filled
+        assertThat(jdbcTemplate.queryForMap("SELECT sentiment, is_admin FROM fact_activity WHERE id = ?", pending))
+                .containsEntry("sentiment", 2.0).containsEntry("is_admin", null);
+        assertThat(jdbcTemplate.queryForObject("SELECT rows_updated FROM metadata_backfill", Long.class))
+                .isEqualTo(1L);
+    }
+
+    private UUID insertFact(Instant occurredAt, String metadata) {
+        UUID id = UUID.randomUUID();
+        jdbcTemplate.update("INSERT INTO fact_activity (id, event_id, user_id, occurred_at, tenant_code, metadata)"
+                + " VALUES (?, ?, ?, ?, 1, ?::jsonb)", id, UUID.randomUUID(), UUID.randomUUID(),
+                Timestamp.from(occurredAt), metadata);
+        return id;
+    }
+}
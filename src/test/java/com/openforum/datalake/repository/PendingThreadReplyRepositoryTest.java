@@ -0,0 +1,90 @@
+package com.openforum.datalake.repository;
+
+import com.openforum.datalake.domain.DimThread;
+import com.openforum.datalake.ingestor.counters.OrphanedReplies;
+import com.openforum.datalake.ingestor.counters.ThreadCounterDelta;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.testcontainers.service.connection.ServiceConnection;
+import org.springframework.context.annotation.Import;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@DataJpaTest
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Import(PendingThreadReplyRepository.class)
+@Testcontainers
+class PendingThreadReplyRepositoryTest {
+
+    private static final Instant T0 = Instant.parse("2024-05-01T10:00:00Z");
+
+    @Container
+    @ServiceConnection
+    static PostgreSQLContainer<?> postgres = new PostgreSQLContainer<>("postgres:16-alpine");
+
+    @Autowired
+    private PendingThreadReplyRepository repository;
+
+    @Autowired
+    private DimThreadRepository dimThreadRepository;
+
+    @Test
+    void shouldMergeSpilledCountersOfSameThread() {
+        UUID threadId = UUID.randomUUID();
+
+        repository.spill(Map.of(threadId,
+                new OrphanedReplies(new ThreadCounterDelta(2, T0.plusSeconds(60), T0.plusSeconds(30)), T0)));
+        repository.spill(Map.of(threadId,
+                new OrphanedReplies(new ThreadCounterDelta(1, T0.plusSeconds(10), null), T0.plusSeconds(5))));
+
+        assertThat(repository.claim(List.of(threadId, UUID.randomUUID())))
+                .containsExactly(Map.entry(threadId,
+                        new ThreadCounterDelta(3, T0.plusSeconds(60), T0.plusSeconds(30))));
+        assertThat(repository.claim(List.of(threadId))).isEmpty();
+    }
+
+    @Test
+    void shouldClaimOnlyThreadsThatExist() {
+        UUID created = thread();
+        UUID missing = UUID.randomUUID();
+        repository.spill(Map.of(
+                created, new OrphanedReplies(new ThreadCounterDelta(1, T0, T0), T0),
+                missing, new OrphanedReplies(new ThreadCounterDelta(1, T0, T0), T0)));
+
+        assertThat(repository.findExistingThreads(List.of(created, missing))).containsExactly(created);
+        assertThat(repository.claimResolved()).containsOnlyKeys(created);
+        assertThat(repository.claim(List.of(missing))).containsOnlyKeys(missing);
+    }
+
+    @Test
+    void shouldExpireThreadsFirstSeenBeforeCutoff() {
+        UUID stale = UUID.randomUUID();
+        UUID fresh = UUID.randomUUID();
+        repository.spill(Map.of(
+                stale, new OrphanedReplies(new ThreadCounterDelta(1, T0, T0), T0),
+                fresh, new OrphanedReplies(new ThreadCounterDelta(1, T0, T0), T0.plusSeconds(3600))));
+
+        assertThat(repository.expire(T0.plusSeconds(60))).isEqualTo(1);
+        assertThat(repository.claim(List.of(stale, fresh))).containsOnlyKeys(fresh);
+    }
+
+    private UUID thread() {
+        DimThread thread = new DimThread();
+        thread.setThreadId(UUID.randomUUID());
+        thread.setTenantId("tenant-1");
+        thread.setCreatedAt(T0);
+        thread.setLastActivityAt(T0);
+        dimThreadRepository.saveAndFlush(thread);
+        return thread.getThreadId();
+    }
+}
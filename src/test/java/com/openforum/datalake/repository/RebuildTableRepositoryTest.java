@@ -0,0 +1,216 @@
+package com.openforum.datalake.repository;
+
+import com.openforum.datalake.domain.DimThread;
+import com.openforum.datalake.domain.FactActivity;
+import com.openforum.datalake.sketch.DDSketch;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.jackson.JacksonAutoConfiguration;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.testcontainers.service.connection.ServiceConnection;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.time.Instant;
+import java.time.YearMonth;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+@DataJpaTest
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Import({ RebuildTableRepository.class, RebuildCopyWriter.class, FactPartitionRepository.class,
+        FactCodeDictionary.class, JacksonAutoConfiguration.class })
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+@Testcontainers
+class RebuildTableRepositoryTest {
+
+    private static final YearMonth MONTH = YearMonth.of(2024, 5);
+    private static final Instant CREATED = Instant.parse("2024-05-10T08:00:00Z");
+
+    @Container
+    @ServiceConnection
+    static PostgreSQLContainer<?> postgres = new PostgreSQLContainer<>("postgres:16-alpine");
+
+    @Autowired
+    private RebuildTableRepository rebuildTableRepository;
+
+    @Autowired
+    private RebuildCopyWriter rebuildCopyWriter;
+
+    @Autowired
+    private FactPartitionRepository factPartitionRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Test
+    void shouldSwapInRebuiltTablesWithDerivedCounters() {
+        factPartitionRepository.createPartition(MONTH);
+        UUID staleThread = UUID.randomUUID();
+        jdbcTemplate.update("INSERT INTO dim_threads (thread_id, tenant_id, title, reply_count) VALUES (?, ?, ?, 7)",
+                staleThread, "tenant-rebuild", "Stale");
+
+        rebuildTableRepository.createShadowTables(factPartitionRepository.findAttachedMonths());
+        DimThread thread = thread();
+        UUID missingThread = UUID.randomUUID();
+        rebuildCopyWriter.load(List.of(thread), List.of(
+                fact("THREAD_CREATED", thread.getThreadId(), CREATED),
+                fact("POST_IMPORTED", thread.getThreadId(), CREATED.plusSeconds(60)),
+                fact("POST_CREATED", thread.getThreadId(), CREATED.plusSeconds(600)),
+                fact("POST_CREATED", missingThread, CREATED.plusSeconds(120))));
+        // Redelivered thread and duplicate fact
+        FactActivity reply = fact("POST_CREATED", thread.getThreadId(), CREATED.plusSeconds(900));
+        rebuildCopyWriter.load(List.of(thread()), List.of(reply));
+        rebuildCopyWriter.load(List.of(), List.of(reply));
+
+        assertThat(rebuildTableRepository.finishShadowTables()).isEqualTo(1);
+        rebuildTableRepository.swap(5000);
+
+        Map<String, Object> row = jdbcTemplate.queryForMap(
+                "SELECT reply_count, response_time_minutes FROM dim_threads WHERE thread_id = ?",
+                thread.getThreadId());
+        assertThat(row.get("reply_count")).isEqualTo(3);
+        assertThat(row.get("response_time_minutes")).isEqualTo(10);
+        DDSketch responseTimes = DDSketch.fromBytes(jdbcTemplate.queryForObject(
+                "SELECT sketch FROM agg_response_sketches WHERE tenant_id = ? AND day = '2024-05-10'", byte[].class,
+                thread.getTenantId()));
+        assertThat(responseTimes.count()).isEqualTo(1);
+        assertThat(responseTimes.quantile(1)).isCloseTo(10, within(DDSketch.RELATIVE_ACCURACY * 10));
+        assertThat(jdbcTemplate.queryForObject("SELECT COUNT(*) FROM dim_threads WHERE thread_id = ?", Long.class,
+                staleThread)).isZero();
+        assertThat(jdbcTemplate.queryForObject("SELECT COUNT(*) FROM fact_activity", Long.class)).isEqualTo(5);
+        assertThat(jdbcTemplate.queryForObject("SELECT replies FROM pending_thread_replies WHERE thread_id = ?",
+                Integer.class, missingThread)).isEqualTo(1);
+        assertThat(factPartitionRepository.findAttachedMonths()).containsExactly(MONTH);
+        assertThat(jdbcTemplate.queryForObject("SELECT COUNT(*) FROM fact_activity_y2024m05", Long.class))
+                .isEqualTo(5);
+        assertThat(jdbcTemplate.queryForObject("SELECT title FROM dim_threads_retired WHERE thread_id = ?",
+                String.class, staleThread)).isEqualTo("Stale");
+    }
+
+    @Test
+    void shouldDeriveMemberHealthInputsOfTheWindow() {
+        FactActivity recent = fact("POST_CREATED", UUID.randomUUID(), Instant.now());
+        FactActivity old = fact("POST_CREATED", UUID.randomUUID(), Instant.parse("2023-05-10T08:00:00Z"));
+        UUID staleMember = UUID.randomUUID();
+        jdbcTemplate.update("INSERT INTO member_health_dirty (tenant_code, user_id) VALUES (1, ?)", staleMember);
+
+        rebuildTableRepository.createShadowTables(factPartitionRepository.findAttachedMonths());
+        rebuildCopyWriter.load(List.of(), List.of(recent, old));
+        rebuildTableRepository.finishShadowTables();
+        rebuildTableRepository.swap(5000);
+
+        assertThat(jdbcTemplate.queryForList("SELECT user_id FROM agg_user_daily_activity", UUID.class))
+                .containsExactly(recent.getUserId());
+        assertThat(jdbcTemplate.queryForList("SELECT user_id FROM member_health_dirty", UUID.class))
+                .containsExactlyInAnyOrder(recent.getUserId(), staleMember);
+    }
+
+    @Test
+    void shouldDeriveTheDailyRollupOfAllDays() {
+        UUID member = UUID.randomUUID();
+        FactActivity first = fact("POST_CREATED", UUID.randomUUID(), Instant.parse("2023-05-10T08:00:00Z"));
+        FactActivity second = fact("THREAD_CREATED", UUID.randomUUID(), Instant.parse("2023-05-10T07:00:00Z"));
+        FactActivity nextDay = fact("POST_CREATED", UUID.randomUUID(), Instant.parse("2023-05-11T08:00:00Z"));
+        List.of(first, second, nextDay).forEach(fact -> fact.setUserId(member));
+
+        rebuildTableRepository.createShadowTables(factPartitionRepository.findAttachedMonths());
+        rebuildCopyWriter.load(List.of(), List.of(first, second, nextDay));
+        rebuildTableRepository.finishShadowTables();
+        rebuildTableRepository.swap(5000);
+
+        // The member is counted under the type of their earliest activity of each day
+        assertThat(jdbcTemplate.queryForList("""
+                SELECT r.day::text AS day, a.activity_type, r.stripe, r.activity_count::int AS activities,
+                       r.first_active_users
+                FROM agg_daily_tenant_activity r
+                JOIN dim_activity_types a ON a.activity_code = r.activity_code
+                ORDER BY 1, 2""")).containsExactly(
+                        Map.of("day", "2023-05-10", "activity_type", "POST_CREATED", "stripe", 0, "activities", 1,
+                                "first_active_users", 0),
+                        Map.of("day", "2023-05-10", "activity_type", "THREAD_CREATED", "stripe", 0, "activities", 1,
+                                "first_active_users", 1),
+                        Map.of("day", "2023-05-11", "activity_type", "POST_CREATED", "stripe", 0, "activities", 1,
+                                "first_active_users", 1));
+        assertThat(jdbcTemplate.queryForList("SELECT day || ':' || stripe FROM agg_daily_user_sketches ORDER BY day",
+                String.class)).containsExactly("2023-05-10:0", "2023-05-11:0");
+        // A completed month, compacted as it is derived; its hours are past the retention
+        assertThat(jdbcTemplate.queryForObject("""
+                SELECT SUM(activity_count) FROM agg_monthly_tenant_activity WHERE month = '2023-05-01'""",
+                Long.class)).isEqualTo(3);
+        assertThat(jdbcTemplate.queryForObject("SELECT COUNT(*) FROM agg_monthly_user_sketches", Long.class))
+                .isEqualTo(1);
+        assertThat(jdbcTemplate.queryForObject("SELECT COUNT(*) FROM agg_hourly_tenant_activity", Long.class))
+                .isZero();
+        // Queued for the retention bitmaps
+        assertThat(jdbcTemplate.queryForList("SELECT day::text FROM pending_active_users ORDER BY day", String.class))
+                .containsExactly("2023-05-10", "2023-05-11");
+    }
+
+    @Test
+    void shouldKeepRelationNamesStableAcrossRebuilds() {
+        rebuildTableRepository.createShadowTables(factPartitionRepository.findAttachedMonths());
+        rebuildTableRepository.swap(5000);
+        List<String> first = relationNames();
+
+        rebuildTableRepository.createShadowTables(factPartitionRepository.findAttachedMonths());
+        rebuildTableRepository.swap(5000);
+
+        assertThat(relationNames()).isEqualTo(first)
+                .contains("fact_activity_default", "fact_activity_pkey", "dim_threads_pkey",
+                        "agg_user_daily_activity_day_idx", "member_health_dirty_pkey",
+                        "agg_daily_tenant_activity_pkey", "agg_daily_active_users_pkey",
+                        "agg_daily_user_sketches_pkey", "agg_hourly_tenant_activity_pkey",
+                        "agg_monthly_tenant_activity_pkey", "agg_monthly_user_sketches_pkey",
+                        "dim_user_ordinals_pkey", "dim_user_ordinals_tenant_code_ordinal_key",
+                        "dim_user_ordinals_tenant_code_first_day_ordinal_idx", "agg_active_user_bitmaps_pkey",
+                        "pending_active_users_pkey", "agg_response_sketches_tenant_id_day_category_id_key")
+                .noneMatch(name -> name.contains("rebuild"));
+    }
+
+    private List<String> relationNames() {
+        return jdbcTemplate.queryForList("""
+                SELECT relname FROM pg_class
+                WHERE relnamespace = 'public'::regnamespace
+                  AND (relname LIKE 'fact\\_activity%' OR relname LIKE 'dim\\_threads%'
+                       OR relname LIKE 'pending\\_thread\\_replies%' OR relname LIKE 'agg\\_%'
+                       OR relname LIKE 'member\\_health\\_dirty%' OR relname LIKE 'dim\\_user\\_ordinals%'
+                       OR relname LIKE 'pending\\_active\\_users%')
+                  AND relname NOT LIKE '%retired%'
+                ORDER BY relname
+                """, String.class);
+    }
+
+    private static DimThread thread() {
+        DimThread thread = new DimThread();
+        thread.setThreadId(UUID.fromString("5c4d0c8e-7c53-4f0e-9d55-0c1a3d1a1b01"));
+        thread.setTenantId("tenant-rebuild");
+        thread.setTitle("Rebuilt thread");
+        thread.setStatus("OPEN");
+        thread.setCreatedAt(CREATED);
+        thread.setLastActivityAt(CREATED);
+        return thread;
+    }
+
+    private static FactActivity fact(String type, UUID targetId, Instant occurredAt) {
+        return FactActivity.builder()
+                .id(UUID.randomUUID())
+                .eventId(UUID.randomUUID())
+                .tenantId("tenant-rebuild")
+                .userId(UUID.randomUUID())
+                .activityType(type)
+                .targetId(targetId)
+                .occurredAt(occurredAt)
+                .build();
+    }
+}
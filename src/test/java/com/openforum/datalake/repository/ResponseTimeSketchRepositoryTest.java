@@ -0,0 +1,90 @@
+package com.openforum.datalake.repository;
+
+import com.openforum.datalake.repository.ResponseTimeSketchRepository.FirstResponse;
+import com.openforum.datalake.sketch.DDSketch;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.testcontainers.service.connection.ServiceConnection;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@DataJpaTest
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Import(ResponseTimeSketchRepository.class)
+@Testcontainers
+class ResponseTimeSketchRepositoryTest {
+
+    private static final LocalDate APRIL_30 = LocalDate.parse("2024-04-30");
+    private static final LocalDate MAY_1 = LocalDate.parse("2024-05-01");
+    private static final LocalDate MAY_2 = LocalDate.parse("2024-05-02");
+    private static final UUID BILLING = UUID.fromString("00000000-0000-0000-0000-00000000000b");
+
+    @Container
+    @ServiceConnection
+    static PostgreSQLContainer<?> postgres = new PostgreSQLContainer<>("postgres:16-alpine");
+
+    @Autowired
+    private ResponseTimeSketchRepository repository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Test
+    void shouldMergeTheSketchesOfTheDaysAndCategories() {
+        repository.add(List.of(
+                response(APRIL_30, BILLING, 10),
+                response(MAY_1, BILLING, 20),
+                response(MAY_1, null, 30),
+                new FirstResponse("tenant-b", MAY_1, null, 40)));
+        // Added to the stored sketches
+        repository.add(List.of(response(MAY_1, BILLING, 25), response(MAY_1, null, 0)));
+
+        assertThat(jdbcTemplate.queryForObject("SELECT COUNT(*) FROM agg_response_sketches", Long.class))
+                .isEqualTo(4);
+        assertThat(repository.findResponseTimes("tenant-a", null, null, null)).isEqualTo(sketch(10, 20, 30, 25, 0));
+        assertThat(repository.findResponseTimes("tenant-a", BILLING, null, null)).isEqualTo(sketch(10, 20, 25));
+        assertThat(repository.findResponseTimes("tenant-a", null, MAY_1, MAY_2)).isEqualTo(sketch(20, 30, 25, 0));
+        assertThat(repository.findResponseTimes("tenant-a", BILLING, null, MAY_1)).isEqualTo(sketch(10));
+        assertThat(repository.findResponseTimes("tenant-a", null, MAY_2, null).isEmpty()).isTrue();
+    }
+
+    @Test
+    void shouldBucketResponseTimesInSqlAsTheSketchDoes() {
+        byte[] bytes = jdbcTemplate.queryForObject("""
+                SELECT string_agg(int4send(key) || int4send(threads), ''::bytea ORDER BY key)
+                FROM (
+                    SELECT ddsketch_key(m) AS key, COUNT(*)::int AS threads
+                    FROM generate_series(-1, 200000) m
+                    GROUP BY 1
+                ) b""", byte[].class);
+
+        DDSketch expected = new DDSketch();
+        for (int minutes = -1; minutes <= 200_000; minutes++) {
+            expected.add(minutes);
+        }
+        assertThat(DDSketch.fromBytes(bytes)).isEqualTo(expected);
+    }
+
+    private static FirstResponse response(LocalDate day, UUID categoryId, int minutes) {
+        return new FirstResponse("tenant-a", day, categoryId, minutes);
+    }
+
+    private static DDSketch sketch(long... minutes) {
+        DDSketch sketch = new DDSketch();
+        for (long value : minutes) {
+            sketch.add(value);
+        }
+        return sketch;
+    }
+}
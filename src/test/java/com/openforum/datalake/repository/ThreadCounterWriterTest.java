@@ -0,0 +1,158 @@
+package com.openforum.datalake.repository;
+
+import com.openforum.datalake.domain.DimThread;
+import com.openforum.datalake.ingestor.counters.OrphanedReplies;
+import com.openforum.datalake.ingestor.counters.ThreadCounterDelta;
+import com.openforum.datalake.sketch.DDSketch;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.testcontainers.service.connection.ServiceConnection;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+@DataJpaTest
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Import({ ThreadCounterWriter.class, ResponseTimeSketchRepository.class, PendingThreadReplyRepository.class })
+@Testcontainers
+class ThreadCounterWriterTest {
+
+    private static final Instant CREATED = Instant.parse("2024-05-01T10:00:00Z");
+
+    @Container
+    @ServiceConnection
+    static PostgreSQLContainer<?> postgres = new PostgreSQLContainer<>("postgres:16-alpine");
+
+    @Autowired
+    private ThreadCounterWriter writer;
+
+    @Autowired
+    private ResponseTimeSketchRepository responseTimeSketchRepository;
+
+    @Autowired
+    private PendingThreadReplyRepository pendingThreadReplyRepository;
+
+    @Autowired
+    private DimThreadRepository dimThreadRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Test
+    void shouldSetFirstResponseTimeOnlyOnce() {
+        UUID threadId = thread();
+
+        writer.apply(Map.of(threadId,
+                new ThreadCounterDelta(2, CREATED.plusSeconds(600), CREATED.plusSeconds(5 * 60 + 59))));
+        writer.apply(Map.of(threadId, new ThreadCounterDelta(1, CREATED.plusSeconds(60), CREATED.plusSeconds(60))));
+
+        Map<String, Object> row = jdbcTemplate.queryForMap(
+                "SELECT reply_count, response_time_minutes, last_activity_at FROM dim_threads WHERE thread_id = ?",
+                threadId);
+        assertThat(row.get("reply_count")).isEqualTo(3);
+        assertThat(row.get("response_time_minutes")).isEqualTo(5);
+        assertThat(((Timestamp) row.get("last_activity_at")).toInstant()).isEqualTo(CREATED.plusSeconds(600));
+        DDSketch responseTimes = responseTimeSketchRepository.findResponseTimes("tenant-1", null,
+                LocalDate.parse("2024-05-01"), LocalDate.parse("2024-05-02"));
+        assertThat(responseTimes.count()).isEqualTo(1);
+        assertThat(responseTimes.quantile(0.5)).isCloseTo(5, within(DDSketch.RELATIVE_ACCURACY * 5));
+    }
+
+    @Test
+    void shouldOrderThreadsAsPostgresOrdersThem() {
+        // Both signs in either half, where UUID.compareTo and PostgreSQL disagree
+        List<UUID> threadIds = List.of(new UUID(-1, 0), new UUID(1, -1), new UUID(1, 1), new UUID(0, 2),
+                UUID.randomUUID(), UUID.randomUUID(), UUID.randomUUID(), UUID.randomUUID());
+
+        List<UUID> ordered = jdbcTemplate.queryForList("SELECT id FROM unnest(?) AS t (id) ORDER BY id", UUID.class,
+                (Object) threadIds.toArray(UUID[]::new));
+
+        assertThat(threadIds.stream().sorted(ThreadCounterWriter.THREAD_ORDER).toList()).isEqualTo(ordered);
+    }
+
+    @Test
+    void shouldLeaveResponseTimeUnsetForImportedReplies() {
+        UUID threadId = thread();
+
+        writer.apply(Map.of(threadId, new ThreadCounterDelta(4, CREATED.plusSeconds(60), null)));
+
+        assertThat(jdbcTemplate.queryForObject(
+                "SELECT response_time_minutes FROM dim_threads WHERE thread_id = ?", Integer.class, threadId))
+                .isNull();
+        assertThat(responseTimeSketchRepository.findResponseTimes("tenant-1", null, null, null).isEmpty()).isTrue();
+    }
+
+    @Test
+    void shouldReportUnknownThreads() {
+        UUID known = thread();
+        UUID unknown = UUID.randomUUID();
+
+        assertThat(writer.apply(Map.of(
+                known, new ThreadCounterDelta(1, CREATED, CREATED),
+                unknown, new ThreadCounterDelta(1, CREATED, CREATED))))
+                .containsExactly(unknown);
+    }
+
+    @Test
+    void shouldApplySpilledCountersOfCreatedThreadsAndSpillUnknownOnes() {
+        UUID created = thread();
+        UUID unknown = UUID.randomUUID();
+        pendingThreadReplyRepository.spill(Map.of(created,
+                new OrphanedReplies(new ThreadCounterDelta(2, CREATED.plusSeconds(120), CREATED.plusSeconds(60)),
+                        CREATED)));
+
+        writer.applyInTransaction(Map.of(
+                created, new ThreadCounterDelta(1, CREATED.plusSeconds(300), CREATED.plusSeconds(300)),
+                unknown, new ThreadCounterDelta(1, CREATED, CREATED)), Set.of(created));
+
+        assertThat(jdbcTemplate.queryForMap(
+                "SELECT reply_count, response_time_minutes FROM dim_threads WHERE thread_id = ?", created))
+                .containsEntry("reply_count", 3).containsEntry("response_time_minutes", 1);
+        assertThat(jdbcTemplate.queryForList("SELECT thread_id FROM pending_thread_replies", UUID.class))
+                .containsExactly(unknown);
+    }
+
+    @Test
+    void shouldAdoptSpilledCountersOfThreadsCreatedSince() {
+        UUID late = UUID.randomUUID();
+        pendingThreadReplyRepository.spill(Map.of(late,
+                new OrphanedReplies(new ThreadCounterDelta(2, CREATED.plusSeconds(120), null), CREATED)));
+        assertThat(writer.adoptPendingReplies()).isZero();
+
+        thread(late);
+
+        assertThat(writer.adoptPendingReplies()).isEqualTo(1);
+        assertThat(jdbcTemplate.queryForObject("SELECT reply_count FROM dim_threads WHERE thread_id = ?",
+                Integer.class, late)).isEqualTo(2);
+        assertThat(jdbcTemplate.queryForObject("SELECT COUNT(*) FROM pending_thread_replies", Long.class)).isZero();
+    }
+
+    private UUID thread() {
+        return thread(UUID.randomUUID());
+    }
+
+    private UUID thread(UUID threadId) {
+        DimThread thread = new DimThread();
+        thread.setThreadId(threadId);
+        thread.setTenantId("tenant-1");
+        thread.setCreatedAt(CREATED);
+        thread.setLastActivityAt(CREATED);
+        dimThreadRepository.saveAndFlush(thread);
+        return thread.getThreadId();
+    }
+}
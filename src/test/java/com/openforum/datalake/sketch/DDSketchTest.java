@@ -0,0 +1,107 @@
+package com.openforum.datalake.sketch;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.within;
+
+class DDSketchTest {
+
+    private static final double[] QUANTILES = { 0, 0.01, 0.25, 0.5, 0.75, 0.9, 0.99, 0.999, 1 };
+
+    @Test
+    void shouldHoldNothingWhenEmpty() {
+        DDSketch sketch = new DDSketch();
+
+        assertThat(sketch.isEmpty()).isTrue();
+        assertThat(sketch.count()).isZero();
+        assertThat(sketch.toBytes()).isEmpty();
+        assertThat(DDSketch.fromBytes(sketch.toBytes())).isEqualTo(sketch);
+        assertThatThrownBy(() -> sketch.quantile(0.5)).isInstanceOf(IllegalStateException.class);
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = { 1, 10, 1_000, 100_000 })
+    void shouldAnswerQuantilesWithinTheRelativeAccuracy(int count) {
+        SplittableRandom random = new SplittableRandom(count);
+        long[] values = new long[count];
+        DDSketch sketch = new DDSketch();
+        for (int i = 0; i < count; i++) {
+            // Long tailed, like response times: mostly minutes, some days
+            values[i] = (long) Math.exp(random.nextDouble(0, 12));
+            sketch.add(values[i]);
+        }
+        Arrays.sort(values);
+
+        assertThat(sketch.count()).isEqualTo(count);
+        for (double q : QUANTILES) {
+            long expected = values[(int) (q * (count - 1))];
+            assertThat(sketch.quantile(q)).isCloseTo(expected, within(expected * DDSketch.RELATIVE_ACCURACY));
+        }
+        assertThat(DDSketch.fromBytes(sketch.toBytes())).isEqualTo(sketch);
+    }
+
+    @Test
+    void shouldMergeIntoTheSketchOfAllValues() {
+        SplittableRandom random = new SplittableRandom(7);
+        DDSketch april = new DDSketch();
+        DDSketch may = new DDSketch();
+        DDSketch both = new DDSketch();
+        for (int i = 0; i < 10_000; i++) {
+            long value = random.nextLong(i < 5_000 ? 60 : 10_000);
+            (i % 3 == 0 ? april : may).add(value);
+            both.add(value);
+        }
+
+        DDSketch merged = DDSketch.fromBytes(april.toBytes()).merge(may);
+
+        assertThat(merged).isEqualTo(both).hasSameHashCodeAs(both);
+        assertThat(DDSketch.fromBytes(may.toBytes()).merge(april)).isEqualTo(both);
+        assertThat(merged.count()).isEqualTo(10_000);
+        assertThat(merged.quantile(0.99)).isEqualTo(both.quantile(0.99));
+    }
+
+    @Test
+    void shouldCountZeroAndNegativeValuesAsZero() {
+        DDSketch sketch = new DDSketch();
+        sketch.add(-3);
+        sketch.add(0);
+        sketch.add(1);
+
+        assertThat(sketch.quantile(0)).isZero();
+        assertThat(sketch.quantile(0.5)).isZero();
+        assertThat(sketch.quantile(1)).isCloseTo(1, within(DDSketch.RELATIVE_ACCURACY));
+    }
+
+    @Test
+    void shouldWriteAscendingKeyAndCountPairs() {
+        DDSketch sketch = new DDSketch();
+        sketch.add(2);
+        sketch.add(1);
+        sketch.add(0);
+        sketch.add(1);
+
+        ByteBuffer buffer = ByteBuffer.wrap(sketch.toBytes());
+        int[] pairs = new int[buffer.remaining() / Integer.BYTES];
+        buffer.asIntBuffer().get(pairs);
+        assertThat(pairs).containsExactly(0, 1, 1, 2, 36, 1);
+        assertThat(DDSketch.key(2)).isEqualTo(36);
+    }
+
+    @Test
+    void shouldRejectOtherFormatsAndQuantiles() {
+        assertThatThrownBy(() -> DDSketch.fromBytes(new byte[5])).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> DDSketch.fromBytes(ByteBuffer.allocate(16).putInt(3).putInt(1).putInt(2).putInt(1)
+                .array())).isInstanceOf(IllegalArgumentException.class);
+        DDSketch sketch = new DDSketch();
+        sketch.add(5);
+        assertThatThrownBy(() -> sketch.quantile(1.5)).isInstanceOf(IllegalArgumentException.class);
+    }
+}
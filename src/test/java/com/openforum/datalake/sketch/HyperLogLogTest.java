@@ -0,0 +1,95 @@
+package com.openforum.datalake.sketch;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.util.SplittableRandom;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.within;
+
+class HyperLogLogTest {
+
+    @Test
+    void shouldEstimateNothingWhenEmpty() {
+        HyperLogLog sketch = new HyperLogLog();
+
+        assertThat(sketch.estimate()).isZero();
+        assertThat(sketch.isEmpty()).isTrue();
+    }
+
+    @Test
+    void shouldCountSmallSetsAlmostExactly() {
+        SplittableRandom random = new SplittableRandom(7);
+        HyperLogLog sketch = new HyperLogLog();
+        for (int distinct = 1; distinct <= 200; distinct++) {
+            long hash = random.nextLong();
+            sketch.add(hash);
+            sketch.add(hash);
+
+            assertThat(sketch.estimate()).isCloseTo(distinct, within(Math.max(1L, distinct / 100)));
+        }
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = { 1_000, 10_000, 40_000, 80_000, 250_000, 1_000_000 })
+    void shouldEstimateWithinThreeStandardErrorsOfTheExactCount(int distinct) {
+        SplittableRandom random = new SplittableRandom(distinct);
+        HyperLogLog sketch = new HyperLogLog();
+        for (int i = 0; i < distinct; i++) {
+            long hash = random.nextLong();
+            sketch.add(hash);
+            if (i % 3 == 0) {
+                sketch.add(hash);
+            }
+        }
+
+        double standardError = 1.04 / Math.sqrt(HyperLogLog.REGISTERS);
+        assertThat((double) sketch.estimate()).isCloseTo(distinct, within(3 * standardError * distinct));
+    }
+
+    @Test
+    void shouldMergeIntoTheSketchOfTheUnion() {
+        SplittableRandom random = new SplittableRandom(11);
+        HyperLogLog monday = new HyperLogLog();
+        HyperLogLog tuesday = new HyperLogLog();
+        HyperLogLog week = new HyperLogLog();
+        for (int i = 0; i < 30_000; i++) {
+            long hash = random.nextLong();
+            // A third of the members are active on both days
+            if (i % 3 != 2) {
+                monday.add(hash);
+            }
+            if (i % 3 != 0) {
+                tuesday.add(hash);
+            }
+            week.add(hash);
+        }
+
+        assertThat(HyperLogLog.fromBytes(monday.toBytes()).merge(tuesday)).isEqualTo(week);
+        assertThat((double) week.estimate()).isCloseTo(30_000, within(750.0));
+    }
+
+    @Test
+    void shouldReadTheStoredRegisterLayout() {
+        byte[] registers = new byte[HyperLogLog.REGISTERS];
+        registers[0] = 1;
+        registers[HyperLogLog.REGISTERS - 1] = 51;
+        HyperLogLog sketch = new HyperLogLog();
+
+        // Register 0, first of the remaining bits set
+        sketch.add(0x0002_0000_0000_0000L);
+        // Last register, none of the remaining bits set
+        sketch.add(0xFFFC_0000_0000_0000L);
+
+        assertThat(sketch.toBytes()).isEqualTo(registers);
+        assertThat(HyperLogLog.fromBytes(registers)).isEqualTo(sketch);
+    }
+
+    @Test
+    void shouldRejectSketchesOfAnotherPrecision() {
+        assertThatThrownBy(() -> HyperLogLog.fromBytes(new byte[4096])).isInstanceOf(IllegalArgumentException.class);
+    }
+}
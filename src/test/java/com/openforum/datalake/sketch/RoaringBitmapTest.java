@@ -0,0 +1,113 @@
+package com.openforum.datalake.sketch;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.BitSet;
+import java.util.SplittableRandom;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class RoaringBitmapTest {
+
+    @Test
+    void shouldHoldNothingWhenEmpty() {
+        RoaringBitmap bitmap = new RoaringBitmap();
+
+        assertThat(bitmap.isEmpty()).isTrue();
+        assertThat(bitmap.cardinality()).isZero();
+        assertThat(bitmap.contains(0)).isFalse();
+        assertThat(RoaringBitmap.fromBytes(bitmap.toBytes())).isEqualTo(bitmap);
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = { 10, 4_096, 4_097, 70_000, 300_000 })
+    void shouldHoldTheSameValuesAsABitSet(int count) {
+        SplittableRandom random = new SplittableRandom(count);
+        BitSet expected = new BitSet();
+        RoaringBitmap bitmap = new RoaringBitmap();
+        // Dense low ordinals and a sparse tail, so both container kinds are used
+        for (int i = 0; i < count; i++) {
+            int value = i % 4 == 0 ? random.nextInt(5_000_000) : random.nextInt(count);
+            expected.set(value);
+            bitmap.add(value);
+            bitmap.add(value);
+        }
+
+        assertThat(bitmap.cardinality()).isEqualTo(expected.cardinality());
+        assertThat(bitmap.toArray()).isEqualTo(expected.stream().toArray());
+        assertThat(bitmap.contains(expected.nextClearBit(0))).isFalse();
+        assertThat(RoaringBitmap.fromBytes(bitmap.toBytes())).isEqualTo(bitmap);
+    }
+
+    @Test
+    void shouldUniteAndCountTheIntersection() {
+        SplittableRandom random = new SplittableRandom(3);
+        BitSet march = new BitSet();
+        BitSet april = new BitSet();
+        RoaringBitmap marchBitmap = new RoaringBitmap();
+        RoaringBitmap aprilBitmap = new RoaringBitmap();
+        for (int i = 0; i < 50_000; i++) {
+            int value = random.nextInt(200_000);
+            march.set(value);
+            marchBitmap.add(value);
+            value = random.nextInt(i < 40_000 ? 100_000 : 400_000);
+            april.set(value);
+            aprilBitmap.add(value);
+        }
+        BitSet both = (BitSet) march.clone();
+        both.and(april);
+        BitSet either = (BitSet) march.clone();
+        either.or(april);
+
+        assertThat(RoaringBitmap.andCardinality(marchBitmap, aprilBitmap)).isEqualTo(both.cardinality());
+        assertThat(RoaringBitmap.andCardinality(aprilBitmap, marchBitmap)).isEqualTo(both.cardinality());
+        RoaringBitmap union = RoaringBitmap.fromBytes(marchBitmap.toBytes()).or(aprilBitmap);
+        assertThat(union.toArray()).isEqualTo(either.stream().toArray());
+        assertThat(union).isEqualTo(RoaringBitmap.fromBytes(aprilBitmap.toBytes()).or(marchBitmap));
+        assertThat(marchBitmap.toArray()).isEqualTo(march.stream().toArray());
+    }
+
+    @Test
+    void shouldTurnAnArrayIntoABitmapWhenUnitedBeyondItsLimit() {
+        RoaringBitmap evens = new RoaringBitmap();
+        RoaringBitmap odds = new RoaringBitmap();
+        for (int i = 0; i < 3_000; i++) {
+            evens.add(2 * i);
+            odds.add(2 * i + 1);
+        }
+
+        RoaringBitmap union = evens.or(odds);
+
+        assertThat(union.cardinality()).isEqualTo(6_000);
+        // One bitmap container: header, offset and 1024 words
+        assertThat(union.toBytes()).hasSize(8 + 8 + 8 * 1024);
+        assertThat(RoaringBitmap.andCardinality(union, RoaringBitmap.of(1, 5_999, 6_000))).isEqualTo(2);
+    }
+
+    @Test
+    void shouldWriteThePortableFormatWithoutRunContainers() {
+        byte[] bytes = RoaringBitmap.of(1, 3, 65_536 + 7).toBytes();
+
+        ByteBuffer buffer = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+        assertThat(buffer.getInt()).isEqualTo(12346);
+        assertThat(buffer.getInt()).isEqualTo(2);
+        // Key and cardinality - 1 of each container, then their offsets
+        assertThat(new int[] { buffer.getChar(), buffer.getChar(), buffer.getChar(), buffer.getChar() })
+                .containsExactly(0, 1, 1, 0);
+        assertThat(new int[] { buffer.getInt(), buffer.getInt() }).containsExactly(24, 28);
+        assertThat(new int[] { buffer.getChar(), buffer.getChar(), buffer.getChar() }).containsExactly(1, 3, 7);
+        assertThat(buffer.hasRemaining()).isFalse();
+    }
+
+    @Test
+    void shouldRejectOtherFormatsAndNegativeValues() {
+        assertThatThrownBy(() -> RoaringBitmap.fromBytes(new byte[] { 59, 48, 0, 0, 0, 0, 0, 0 }))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> new RoaringBitmap().add(-1)).isInstanceOf(IllegalArgumentException.class);
+    }
+}